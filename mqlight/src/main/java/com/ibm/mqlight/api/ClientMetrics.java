@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the runtime metrics of a client, as returned by {@link NonBlockingClient#getMetrics()}.
+ * Counts are cumulative from when the client was created.  The snapshot does not change once it has
+ * been taken.
+ */
+public interface ClientMetrics {
+
+    /**
+     * A histogram of latencies.  Latencies are recorded with a precision of about 6%.
+     */
+    interface Latency {
+
+        /**
+         * @return the number of latencies recorded.
+         */
+        long getCount();
+
+        /**
+         * @param unit the unit to return the latency in.
+         * @return the mean latency, or zero if no latencies have been recorded.
+         */
+        long getMean(TimeUnit unit);
+
+        /**
+         * @param unit the unit to return the latency in.
+         * @return the maximum latency, or zero if no latencies have been recorded.
+         */
+        long getMax(TimeUnit unit);
+
+        /**
+         * @param percentile the percentile of interest, from 0 to 100.
+         * @param unit the unit to return the latency in.
+         * @return the latency that the given percentage of the recorded latencies are at or below,
+         *         or zero if no latencies have been recorded.
+         */
+        long getValueAtPercentile(double percentile, TimeUnit unit);
+    }
+
+    /**
+     * @param qos the quality of service of interest.
+     * @return the number of messages that have been successfully sent with the given quality of service.
+     */
+    long getMessagesSent(QOS qos);
+
+    /**
+     * @param qos the quality of service of interest.
+     * @return the number of bytes of encoded messages that have been successfully sent with the given
+     *         quality of service.
+     */
+    long getBytesSent(QOS qos);
+
+    /**
+     * @param qos the quality of service of interest.
+     * @return the number of messages that have been received with the given quality of service.
+     */
+    long getMessagesReceived(QOS qos);
+
+    /**
+     * @param qos the quality of service of interest.
+     * @return the number of bytes of encoded messages that have been received with the given quality
+     *         of service.
+     */
+    long getBytesReceived(QOS qos);
+
+    /**
+     * @return the latency between an {@link QOS#AT_LEAST_ONCE} message being sent and the server
+     *         confirming that it has been received.
+     */
+    Latency getSendLatency();
+
+    /**
+     * @return the latency between an {@link QOS#AT_LEAST_ONCE} message being delivered to the client
+     *         and it being confirmed (either automatically or by calling {@link Delivery#confirm()}).
+     */
+    Latency getConfirmLatency();
+
+    /**
+     * @return the number of sends that have been passed to the server but have not yet completed.
+     */
+    int getOutstandingSends();
+
+    /**
+     * @return the number of operations (for example, sends and subscribes) waiting for the client to
+     *         be connected to the server.
+     */
+    int getPendingWork();
+
+    /**
+     * @return the number of {@link QOS#AT_LEAST_ONCE} messages delivered to the client that have not
+     *         yet been confirmed, for each subscribed destination.  Destinations are identified by the
+     *         address of their link: <code>private:</code><em>topic pattern</em> or
+     *         <code>share:</code><em>share name</em><code>:</code><em>topic pattern</em>.
+     */
+    Map<String, Integer> getUnconfirmedDeliveries();
+
+    /**
+     * @return the number of times that the client has reconnected to the server, after its connection
+     *         was broken.
+     */
+    long getReconnects();
+
+    /**
+     * @return the number of callbacks waiting to be run by the client's callback service, or -1 if
+     *         the callback service does not report this.  The callback service can be shared with
+     *         other clients, in which case their callbacks are included.
+     */
+    long getQueuedCallbacks();
+}
@@ -19,6 +19,7 @@
 package com.ibm.mqlight.api;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
 import com.ibm.mqlight.api.logging.Logger;
 import com.ibm.mqlight.api.logging.LoggerFactory;
@@ -36,19 +37,114 @@ public class ClientOptions {
 
     private static final Logger logger = LoggerFactory.getLogger(ClientOptions.class);
 
+    /**
+     * Determines how the client runs callbacks into application code, such as those made to
+     * a <code>DestinationListener</code> when a message is delivered.
+     */
+    public enum CallbackExecution {
+        /**
+         * Callbacks are run by a fixed number of threads.  Callbacks that share an ordering
+         * (see {@link SubscribeOptions.Ordering}) are always run by the same thread, so a
+         * callback that blocks also holds up callbacks for any other ordering that maps to
+         * that thread.  This is the default.
+         */
+        THREAD_POOL,
+        /**
+         * Callbacks are run by a work-stealing pool of threads, so that callbacks for different
+         * orderings can run on whichever thread is free.  This suits callbacks that do not block.
+         */
+        FORK_JOIN,
+        /**
+         * Callbacks are run on virtual threads, if the Java runtime supports them, and otherwise
+         * by a bounded pool of threads.  A callback that blocks only holds up callbacks that
+         * share its ordering.  This suits callbacks that block, for example by making database
+         * or HTTP calls.
+         */
+        VIRTUAL_THREAD
+    }
+
+    /**
+     * Determines what happens when an application sends a message while the client is
+     * already holding as many bytes, or messages, of uncompleted sends as it is allowed (see
+     * {@link ClientOptionsBuilder#setSendBufferLimits(long, int)}).
+     */
+    public enum SendBufferPolicy {
+        /**
+         * The message is accepted, and the <code>send</code> method returns <code>false</code>.
+         * The application should stop sending until its
+         * {@link NonBlockingClientListener#onDrain(NonBlockingClient, Object)} method is called.
+         * This is the default.
+         */
+        SIGNAL,
+        /**
+         * The message is not sent.  The <code>send</code> method returns <code>false</code>,
+         * and the send's <code>CompletionListener</code> is notified of a
+         * {@link SendBufferFullException}.
+         */
+        REJECT,
+        /**
+         * The <code>send</code> method blocks the calling thread until enough of the
+         * uncompleted sends have completed to make room for the message.  If the thread is
+         * interrupted while it waits, the message is rejected in the same way as for
+         * {@link #REJECT}.
+         * <p>
+         * A send made from the thread that processes the client's completed sends - for
+         * example from a callback when the client uses a callback service that runs callbacks
+         * on that thread - cannot wait, as the room it is waiting for would never be made.  Such
+         * a send is rejected, in the same way as for {@link #REJECT}, if the buffer is full.
+         */
+        BLOCK
+    }
+
     private final String id;
     private final String user;
     private final String password;
     private final SSLOptions sslOptions;
-
-    private ClientOptions(String id, String user, String password, SSLOptions sslOptions) {
+    private final int writeCoalescingMaxBytes;
+    private final long writeCoalescingMaxDelay;
+    private final int maxSenderLinks;
+    private final long senderLinkIdleTimeout;
+    private final Executor processingExecutor;
+    private final CallbackExecution callbackExecution;
+    private final int callbackThreads;
+    private final long maxInboundBufferedBytes;
+    private final long maxSendBufferBytes;
+    private final int maxSendBufferMessages;
+    private final SendBufferPolicy sendBufferPolicy;
+    private final File sendSpoolDirectory;
+    private final boolean spoolUnsettledSends;
+    private final boolean jmxEnabled;
+    private final boolean pooledDeliveryBuffers;
+
+    private ClientOptions(String id, String user, String password, SSLOptions sslOptions,
+                          int writeCoalescingMaxBytes, long writeCoalescingMaxDelay,
+                          int maxSenderLinks, long senderLinkIdleTimeout, Executor processingExecutor,
+                          CallbackExecution callbackExecution, int callbackThreads, long maxInboundBufferedBytes,
+                          long maxSendBufferBytes, int maxSendBufferMessages, SendBufferPolicy sendBufferPolicy,
+                          File sendSpoolDirectory, boolean spoolUnsettledSends, boolean jmxEnabled, boolean pooledDeliveryBuffers) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, id, user, "******", sslOptions);
+        logger.entry(this, methodName, id, user, "******", sslOptions, writeCoalescingMaxBytes, writeCoalescingMaxDelay, maxSenderLinks, senderLinkIdleTimeout, processingExecutor, callbackExecution, callbackThreads, maxInboundBufferedBytes,
+                     maxSendBufferBytes, maxSendBufferMessages, sendBufferPolicy, sendSpoolDirectory, spoolUnsettledSends, jmxEnabled, pooledDeliveryBuffers);
 
         this.id = id;
         this.user = user;
         this.password = password;
         this.sslOptions = sslOptions;
+        this.writeCoalescingMaxBytes = writeCoalescingMaxBytes;
+        this.writeCoalescingMaxDelay = writeCoalescingMaxDelay;
+        this.maxSenderLinks = maxSenderLinks;
+        this.senderLinkIdleTimeout = senderLinkIdleTimeout;
+        this.processingExecutor = processingExecutor;
+        this.callbackExecution = callbackExecution;
+        this.callbackThreads = callbackThreads;
+        this.maxInboundBufferedBytes = maxInboundBufferedBytes;
+        this.maxSendBufferBytes = maxSendBufferBytes;
+        this.maxSendBufferMessages = maxSendBufferMessages;
+        this.sendBufferPolicy = sendBufferPolicy;
+        this.sendSpoolDirectory = sendSpoolDirectory;
+        this.spoolUnsettledSends = spoolUnsettledSends;
+        this.jmxEnabled = jmxEnabled;
+        this.pooledDeliveryBuffers = pooledDeliveryBuffers;
 
         logger.exit(this, methodName);
     }
@@ -69,6 +165,128 @@ public class ClientOptions {
         return sslOptions;
     }
 
+    /**
+     * @return the maximum number of bytes that the client will accumulate before writing them to
+     *         the network, when write coalescing is enabled.  A value of zero indicates that write
+     *         coalescing is disabled.
+     */
+    public int getWriteCoalescingMaxBytes() {
+        return writeCoalescingMaxBytes;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, that the client will defer writing data to the
+     *         network, when write coalescing is enabled.
+     */
+    public long getWriteCoalescingMaxDelay() {
+        return writeCoalescingMaxDelay;
+    }
+
+    /**
+     * @return the maximum number of links, used for sending messages, that the client will keep
+     *         open at any one time.  A value of zero indicates that there is no limit.
+     */
+    public int getMaxSenderLinks() {
+        return maxSenderLinks;
+    }
+
+    /**
+     * @return the time, in milliseconds, that a link used for sending messages can remain unused
+     *         before the client closes it.  A value of zero indicates that links are not closed
+     *         for being idle.
+     */
+    public long getSenderLinkIdleTimeout() {
+        return senderLinkIdleTimeout;
+    }
+
+    /**
+     * @return the executor used to run the client's internal processing, or <code>null</code>
+     *         if this processing is run on the threads that request it.
+     */
+    public Executor getProcessingExecutor() {
+        return processingExecutor;
+    }
+
+    /**
+     * @return how the client runs callbacks into application code.
+     */
+    public CallbackExecution getCallbackExecution() {
+        return callbackExecution;
+    }
+
+    /**
+     * @return the maximum number of threads that the client uses to run callbacks.  When
+     *         callbacks are run on virtual threads, this only applies if the Java runtime does
+     *         not support virtual threads.
+     */
+    public int getCallbackThreads() {
+        return callbackThreads;
+    }
+
+    /**
+     * @return the number of bytes of received, but not yet confirmed, messages beyond which the
+     *         client stops granting more credit to subscriptions that use adaptive credit.  A
+     *         value of zero indicates that there is no limit.
+     */
+    public long getMaxInboundBufferedBytes() {
+        return maxInboundBufferedBytes;
+    }
+
+    /**
+     * @return the number of bytes of uncompleted sends that the client can hold before its
+     *         send buffer is full.  A value of zero indicates that there is no limit.
+     */
+    public long getMaxSendBufferBytes() {
+        return maxSendBufferBytes;
+    }
+
+    /**
+     * @return the number of uncompleted sends that the client can hold before its send
+     *         buffer is full.  A value of zero indicates that there is no limit.
+     */
+    public int getMaxSendBufferMessages() {
+        return maxSendBufferMessages;
+    }
+
+    /**
+     * @return what happens when a message is sent while the client's send buffer is full.
+     */
+    public SendBufferPolicy getSendBufferPolicy() {
+        return sendBufferPolicy;
+    }
+
+    /**
+     * @return the directory in which the client spools sends to disk, or <code>null</code> if
+     *         sends are only held in memory.
+     */
+    public File getSendSpoolDirectory() {
+        return sendSpoolDirectory;
+    }
+
+    /**
+     * @return <code>true</code> if every at-least-once send is spooled until it is confirmed,
+     *         or <code>false</code> if only sends made while the client is not connected are spooled.
+     */
+    public boolean isSpoolUnsettledSends() {
+        return spoolUnsettledSends;
+    }
+
+    /**
+     * @return <code>true</code> if the client registers an MBean, describing its state, with the
+     *         platform MBean server.
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * @return <code>true</code> if messages are received into buffers drawn from a pool, rather
+     *         than into a newly allocated buffer for each message.
+     */
+    public boolean isPooledDeliveryBuffers() {
+        return pooledDeliveryBuffers;
+    }
+
     @Override
     public String toString() {
         return super.toString()
@@ -76,6 +294,21 @@ public class ClientOptions {
                 + ", user=" + user
                 + ", password=" + (password == null ? null : "******")
                 + ", sslOption=" + sslOptions.toString()
+                + ", writeCoalescingMaxBytes=" + writeCoalescingMaxBytes
+                + ", writeCoalescingMaxDelay=" + writeCoalescingMaxDelay
+                + ", maxSenderLinks=" + maxSenderLinks
+                + ", senderLinkIdleTimeout=" + senderLinkIdleTimeout
+                + ", processingExecutor=" + processingExecutor
+                + ", callbackExecution=" + callbackExecution
+                + ", callbackThreads=" + callbackThreads
+                + ", maxInboundBufferedBytes=" + maxInboundBufferedBytes
+                + ", maxSendBufferBytes=" + maxSendBufferBytes
+                + ", maxSendBufferMessages=" + maxSendBufferMessages
+                + ", sendBufferPolicy=" + sendBufferPolicy
+                + ", sendSpoolDirectory=" + sendSpoolDirectory
+                + ", spoolUnsettledSends=" + spoolUnsettledSends
+                + ", jmxEnabled=" + jmxEnabled
+                + ", pooledDeliveryBuffers=" + pooledDeliveryBuffers
                 + "]";
     }
 
@@ -167,6 +400,21 @@ public class ClientOptions {
         private File clientCertFile = null;
         private File clientKeyFile = null;
         private String clientKeyFilePassphrase = null;
+        private int writeCoalescingMaxBytes = 0;
+        private long writeCoalescingMaxDelay = 0;
+        private int maxSenderLinks = 0;
+        private long senderLinkIdleTimeout = 0;
+        private Executor processingExecutor = null;
+        private CallbackExecution callbackExecution = CallbackExecution.THREAD_POOL;
+        private int callbackThreads = 5;
+        private long maxInboundBufferedBytes = 0;
+        private long maxSendBufferBytes = 0;
+        private int maxSendBufferMessages = 0;
+        private SendBufferPolicy sendBufferPolicy = SendBufferPolicy.SIGNAL;
+        private File sendSpoolDirectory = null;
+        private boolean spoolUnsettledSends = false;
+        private boolean jmxEnabled = false;
+        private boolean pooledDeliveryBuffers = false;
 
         private ClientOptionsBuilder() {}
 
@@ -411,6 +659,353 @@ public class ClientOptions {
             return this;
         }
 
+        /**
+         * Enables coalescing of the data that the client writes to the network.  By default, the
+         * client writes to the network each time it sends a message, confirms a delivery, or
+         * otherwise has data to send to the server.  When write coalescing is enabled, and the
+         * client has further work queued up, it defers writing until either that work has been
+         * completed or one of the thresholds specified by this method is reached.  This trades a
+         * small increase in latency for a reduction in the number of network writes made when
+         * the client is heavily loaded.
+         *
+         * @param maxBytes the maximum number of bytes that will be accumulated before they are
+         *                 written to the network.  Must be greater than or equal to zero.  A value
+         *                 of zero disables write coalescing.
+         * @param maxDelay the maximum time, in milliseconds, that writing data to the network
+         *                 will be deferred for.  Must be greater than or equal to zero.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified for either argument.
+         */
+        public ClientOptionsBuilder setWriteCoalescing(int maxBytes, long maxDelay) throws IllegalArgumentException {
+            final String methodName = "setWriteCoalescing";
+            logger.entry(this, methodName, maxBytes, maxDelay);
+
+            if (maxBytes < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Write coalescing maximum bytes value '" + maxBytes + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            if (maxDelay < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Write coalescing maximum delay value '" + maxDelay + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.writeCoalescingMaxBytes = maxBytes;
+            this.writeCoalescingMaxDelay = maxDelay;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Limits the number of links that the client keeps open for sending messages.  A link is
+         * retained after sending a message when the message is sent with
+         * {@link SendOptions.SendOptionsBuilder#setRetainLink(boolean)} set to <code>true</code>,
+         * which is the default.  A client that sends messages to a large number of different
+         * topics can use this method to bound the number of links (and therefore the memory, both
+         * in the client and the server) that it uses.  When the limit is exceeded, the least
+         * recently used links that have no messages awaiting confirmation are closed.
+         *
+         * @param maxSenderLinks the maximum number of links to keep open for sending messages.
+         *                       Must be greater than or equal to zero.  A value of zero, which is
+         *                       the default, means that there is no limit.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified.
+         */
+        public ClientOptionsBuilder setMaxSenderLinks(int maxSenderLinks) throws IllegalArgumentException {
+            final String methodName = "setMaxSenderLinks";
+            logger.entry(this, methodName, maxSenderLinks);
+
+            if (maxSenderLinks < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Maximum sender links value '" + maxSenderLinks + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.maxSenderLinks = maxSenderLinks;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets how long a link, kept open for sending messages, can go unused before the client
+         * closes it.  Together with {@link #setMaxSenderLinks(int)} this allows a client that
+         * sends to many different topics to retain links (avoiding the cost of re-establishing a
+         * link for each message) without the number of links growing without bound.  Links with
+         * messages awaiting confirmation are not closed until those messages are confirmed.
+         *
+         * @param idleTimeout the time, in milliseconds, after which an unused sending link is
+         *                    closed.  Must be greater than or equal to zero.  A value of zero,
+         *                    which is the default, means that links are not closed for being idle.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified.
+         */
+        public ClientOptionsBuilder setSenderLinkIdleTimeout(long idleTimeout) throws IllegalArgumentException {
+            final String methodName = "setSenderLinkIdleTimeout";
+            logger.entry(this, methodName, idleTimeout);
+
+            if (idleTimeout < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Sender link idle timeout value '" + idleTimeout + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.senderLinkIdleTimeout = idleTimeout;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets an executor to run the client's internal processing, such as encoding protocol
+         * frames and handling data received from the network.  By default this processing is
+         * run on whichever thread requests it - for example, an application thread calling one
+         * of the client's <code>send</code> methods, or a thread reading from the network.
+         * Supplying an executor means that these threads only need to queue the work, which
+         * keeps the time spent in calls such as <code>send</code> short and predictable, and
+         * stops network threads being held up by processing driven by the application.
+         * <p>
+         * The client never runs more than one task at a time for each of its internal
+         * components, so a single executor can be shared by many clients.  If the executor
+         * rejects a task, the work is run on the requesting thread instead.
+         *
+         * @param executor the executor to use, or <code>null</code> (the default) to run the
+         *                 processing on the threads that request it.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         */
+        public ClientOptionsBuilder setProcessingExecutor(Executor executor) {
+            final String methodName = "setProcessingExecutor";
+            logger.entry(this, methodName, executor);
+
+            this.processingExecutor = executor;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets how the client runs callbacks into application code, such as those made when a
+         * message is delivered.  The default, {@link CallbackExecution#THREAD_POOL}, suits
+         * callbacks that return quickly.  Applications whose callbacks block - for example by
+         * making database or HTTP calls - should consider {@link CallbackExecution#VIRTUAL_THREAD},
+         * so that one slow callback does not hold up unrelated callbacks.
+         *
+         * @param callbackExecution how callbacks are run.  Cannot be <code>null</code>.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if <code>null</code> is specified.
+         */
+        public ClientOptionsBuilder setCallbackExecution(CallbackExecution callbackExecution) throws IllegalArgumentException {
+            final String methodName = "setCallbackExecution";
+            logger.entry(this, methodName, callbackExecution);
+
+            if (callbackExecution == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Callback execution cannot be null");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.callbackExecution = callbackExecution;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of threads that the client uses to run callbacks into
+         * application code.  When callbacks are run on virtual threads (see
+         * {@link #setCallbackExecution(CallbackExecution)}) this only applies if the Java runtime
+         * does not support virtual threads.
+         *
+         * @param callbackThreads the number of threads.  Must be greater than zero.  The default
+         *                        is 5.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a value less than one is specified.
+         */
+        public ClientOptionsBuilder setCallbackThreads(int callbackThreads) throws IllegalArgumentException {
+            final String methodName = "setCallbackThreads";
+            logger.entry(this, methodName, callbackThreads);
+
+            if (callbackThreads <= 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Callback threads value '" + callbackThreads + "' is invalid, it must be greater than zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.callbackThreads = callbackThreads;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets a limit on the number of bytes of received messages that the client holds before
+         * they are confirmed.  Once the limit is reached, subscriptions that use adaptive credit
+         * (see {@link SubscribeOptions.SubscribeOptionsBuilder#setAdaptiveCredit(int, int)}) are
+         * not granted any more credit until some of the messages have been confirmed.  This
+         * bounds the memory used for messages that the application has not yet processed,
+         * however many subscriptions the client has.  Subscriptions that use a fixed amount of
+         * credit are not affected by this limit, although the messages they receive count
+         * towards it.
+         *
+         * @param maxInboundBufferedBytes the limit, in bytes.  Must be greater than or equal to
+         *                                zero.  A value of zero, which is the default, means
+         *                                that there is no limit.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified.
+         */
+        public ClientOptionsBuilder setMaxInboundBufferedBytes(long maxInboundBufferedBytes) throws IllegalArgumentException {
+            final String methodName = "setMaxInboundBufferedBytes";
+            logger.entry(this, methodName, maxInboundBufferedBytes);
+
+            if (maxInboundBufferedBytes < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Maximum inbound buffered bytes value '" + maxInboundBufferedBytes + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.maxInboundBufferedBytes = maxInboundBufferedBytes;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets limits on the messages that the client holds for sends that have not yet
+         * completed.  This includes messages queued while the client is connecting or
+         * reconnecting to the server, as well as messages that have been passed to the server
+         * but not yet confirmed.  Once either limit is reached the client's send buffer is full,
+         * and sending another message has the effect set by
+         * {@link #setSendBufferPolicy(SendBufferPolicy)}.  Once both the bytes and the number of
+         * messages held fall below half of their limits, the client's listener is notified by
+         * its <code>onDrain</code> method, if a send has returned <code>false</code>.
+         *
+         * @param maxBytes the limit on the number of bytes of encoded messages.  Must be greater
+         *                 than or equal to zero.  A value of zero, which is the default, means
+         *                 that there is no limit.
+         * @param maxMessages the limit on the number of messages.  Must be greater than or equal
+         *                    to zero.  A value of zero, which is the default, means that there is
+         *                    no limit.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified.
+         */
+        public ClientOptionsBuilder setSendBufferLimits(long maxBytes, int maxMessages) throws IllegalArgumentException {
+            final String methodName = "setSendBufferLimits";
+            logger.entry(this, methodName, maxBytes, maxMessages);
+
+            if (maxBytes < 0 || maxMessages < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Send buffer limits '" + maxBytes + "' and '" + maxMessages + "' are invalid, they must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.maxSendBufferBytes = maxBytes;
+            this.maxSendBufferMessages = maxMessages;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets what happens when an application sends a message while the client's send
+         * buffer is full (see {@link #setSendBufferLimits(long, int)}).
+         *
+         * @param sendBufferPolicy the policy to apply.  Cannot be <code>null</code>.  The
+         *                         default is {@link SendBufferPolicy#SIGNAL}.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if <code>null</code> is specified.
+         */
+        public ClientOptionsBuilder setSendBufferPolicy(SendBufferPolicy sendBufferPolicy) throws IllegalArgumentException {
+            final String methodName = "setSendBufferPolicy";
+            logger.entry(this, methodName, sendBufferPolicy);
+
+            if (sendBufferPolicy == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Send buffer policy cannot be null");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.sendBufferPolicy = sendBufferPolicy;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Spools sends to files in a directory on local disk, rather than holding them in memory,
+         * while the client is not connected to the server.  Spooled sends are sent, in order, once
+         * the client connects.  Sends that are still spooled when the client's process ends are
+         * recovered from the directory by the next client created with the same spool directory,
+         * and sent once it connects - as the application that made these sends is no longer
+         * running, no <code>CompletionListener</code> is notified when they complete.
+         * <p>
+         * Only one client at a time can use a spool directory.
+         *
+         * @param directory the directory to spool sends into, which is created if it does not
+         *                  exist.  A value of <code>null</code>, which is the default, means that
+         *                  sends are not spooled.
+         * @param spoolUnsettledSends when <code>true</code>, every at-least-once send is also
+         *                            spooled from the point it is sent until the server confirms
+         *                            it, so that it can be recovered if the client's process
+         *                            ends before then.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         */
+        public ClientOptionsBuilder setSendSpool(File directory, boolean spoolUnsettledSends) {
+            final String methodName = "setSendSpool";
+            logger.entry(this, methodName, directory, spoolUnsettledSends);
+
+            this.sendSpoolDirectory = directory;
+            this.spoolUnsettledSends = spoolUnsettledSends;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Registers an MBean for the client with the platform MBean server, so that its state -
+         * including its subscriptions and its connection to the server - can be monitored using
+         * JMX.  The MBean is registered with the name
+         * <code>com.ibm.mqlight:type=NonBlockingClient,id=</code><em>client id</em> (quoted as
+         * required), while the client is not stopped.
+         *
+         * @param jmxEnabled <code>true</code> to register an MBean for the client.  The default
+         *                   is <code>false</code>.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         */
+        public ClientOptionsBuilder setJmxEnabled(boolean jmxEnabled) {
+            final String methodName = "setJmxEnabled";
+            logger.entry(this, methodName, jmxEnabled);
+
+            this.jmxEnabled = jmxEnabled;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Receives messages into buffers drawn from a pool, which are returned to the pool once
+         * each message has been decoded, rather than allocating a new buffer for every message.
+         * This reduces the garbage produced by a client that receives messages at a high rate.
+         *
+         * @param pooledDeliveryBuffers <code>true</code> to receive messages into pooled buffers.
+         *                              The default is <code>false</code>.
+         * @return the same instance of <code>ClientOptionsBuilder</code> that this method was invoked on.
+         */
+        public ClientOptionsBuilder setPooledDeliveryBuffers(boolean pooledDeliveryBuffers) {
+            final String methodName = "setPooledDeliveryBuffers";
+            logger.entry(this, methodName, pooledDeliveryBuffers);
+
+            this.pooledDeliveryBuffers = pooledDeliveryBuffers;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
         /**
          * @return an instance of the <code>ClientOptions</code> object, built using the various
          *         settings of this <code>ClientOptionsBuilder</code> class at the point this method
@@ -418,7 +1013,9 @@ public class ClientOptions {
          */
         public ClientOptions build() {
             final SSLOptions sslOptions = new SSLOptions(keyStoreFile, keyStoreFilePassphrase, certFile, verifyName, clientCertFile, clientKeyFile, clientKeyFilePassphrase);
-            return new ClientOptions(id, user, password, sslOptions);
+            return new ClientOptions(id, user, password, sslOptions, writeCoalescingMaxBytes, writeCoalescingMaxDelay, maxSenderLinks, senderLinkIdleTimeout, processingExecutor, callbackExecution, callbackThreads, maxInboundBufferedBytes,
+                                     maxSendBufferBytes, maxSendBufferMessages, sendBufferPolicy, sendSpoolDirectory, spoolUnsettledSends, jmxEnabled,
+                                     pooledDeliveryBuffers);
         }
     }
 }
@@ -0,0 +1,353 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.mqlight.api.ClientOptions.CallbackExecution;
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.NonBlockingClientImpl;
+import com.ibm.mqlight.api.impl.callback.CallbackServiceFactory;
+import com.ibm.mqlight.api.impl.network.NettyNetworkService;
+import com.ibm.mqlight.api.impl.timer.HashedWheelTimerService;
+import com.ibm.mqlight.api.logging.Logger;
+import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.network.NetworkService;
+
+/**
+ * A set of resources - threads used to run callbacks and to process data, and the network and
+ * timer services - that can be shared by many clients.  Each client created using
+ * {@link NonBlockingClient#create(String, ClientOptions, NonBlockingClientListener, Object)}
+ * has threads of its own, so an application that creates a large number of clients should
+ * instead create them using a single <code>ClientRuntime</code>, so that the number of threads
+ * depends on the size of the runtime rather than on the number of clients.  For example:
+ * <pre>
+ * ClientRuntime runtime = ClientRuntime.builder().setCallbackThreads(8).build();
+ * NonBlockingClient client = runtime.createClient("amqp://localhost", null, listener, null);
+ * ...
+ * runtime.shutdown();
+ * runtime.awaitTermination(10, TimeUnit.SECONDS);
+ * </pre>
+ * The callback settings of the {@link ClientOptions} used to create a client are ignored, as
+ * callbacks are run using the runtime's threads.
+ */
+public class ClientRuntime {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRuntime.class);
+
+    static class ClientRuntimeThreadFactory implements ThreadFactory {
+        final ThreadFactory factory = Executors.defaultThreadFactory();
+        final String name;
+        ClientRuntimeThreadFactory(String name) {
+            this.name = name;
+        }
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = factory.newThread(r);
+            t.setName(ClientRuntime.class.getSimpleName() + "-" + name + "-" + t.getName());
+            return t;
+        }
+    }
+
+    private final CallbackService callbackService;
+    private final NetworkService networkService = new NettyNetworkService();
+    private final HashedWheelTimerService timerService;
+    private final ThreadPoolExecutor processingExecutor;
+    private final Set<NonBlockingClient> clients = Collections.newSetFromMap(new WeakHashMap<NonBlockingClient, Boolean>());
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private boolean shutdown = false;
+
+    private ClientRuntime(CallbackExecution callbackExecution, int callbackThreads, int processingThreads, long timerResolution) {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, callbackExecution, callbackThreads, processingThreads, timerResolution);
+
+        callbackService = CallbackServiceFactory.create(callbackExecution, callbackThreads);
+        if (processingThreads > 0) {
+            processingExecutor = new ThreadPoolExecutor(processingThreads, processingThreads, 500, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ClientRuntimeThreadFactory("processing"));
+            processingExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            processingExecutor = null;
+        }
+        // A wheel of 1024 ticks covers the heartbeat intervals commonly used, at the default resolution
+        timerService = new HashedWheelTimerService(timerResolution, TimeUnit.MILLISECONDS, 1024);
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * @return a new instance of <code>ClientRuntimeBuilder</code> that can be used to build
+     *         (immutable) instances of <code>ClientRuntime</code>.
+     */
+    public static ClientRuntimeBuilder builder() {
+        return new ClientRuntimeBuilder();
+    }
+
+    /**
+     * Creates a new instance of the <code>NonBlockingClient</code>, in starting state, that uses
+     * the resources of this runtime.  The arguments have the same meaning as those of
+     * {@link NonBlockingClient#create(String, ClientOptions, NonBlockingClientListener, Object)}.
+     *
+     * @param service a URI for the service to connect to, or <code>null</code> to locate a
+     *        suitable service based on the environment.
+     * @param options a set of options that determine the behaviour of the client.
+     * @param listener a listener that is notified of major life-cycle events for the client.
+     * @param context a context object that is passed into the listener.
+     * @param <T> the type of the context.
+     * @return a new instance of <code>NonBlockingClient</code>
+     * @throws IllegalArgumentException thrown if one or more of the <code>options</code> is not valid.
+     * @throws IllegalStateException thrown if the runtime has been shut down.
+     */
+    public <T> NonBlockingClient createClient(String service, ClientOptions options,
+            NonBlockingClientListener<T> listener, T context)
+    throws IllegalArgumentException, IllegalStateException {
+        final String methodName = "createClient";
+        logger.entry(this, methodName, service, options, listener, context);
+
+        final NonBlockingClient client;
+        synchronized(this) {
+            if (shutdown) {
+                final IllegalStateException exception = new IllegalStateException("Cannot create a client because the runtime has been shut down");
+                logger.throwing(this, methodName, exception);
+                throw exception;
+            }
+            client = new NonBlockingClientImpl(service, callbackService, networkService, timerService,
+                                               processingExecutor, options, listener, context);
+            clients.add(client);
+        }
+
+        logger.exit(this, methodName, client);
+
+        return client;
+    }
+
+    /**
+     * Shuts down the runtime.  Any clients created using the runtime that have not already been
+     * stopped are stopped and, once they have all reported that they have stopped, the threads
+     * owned by the runtime are released.  No more clients can be created using the runtime.
+     * This method does not wait for the clients to stop - use
+     * {@link #awaitTermination(long, TimeUnit)} to do this.
+     */
+    public void shutdown() {
+        final String methodName = "shutdown";
+        logger.entry(this, methodName);
+
+        final ArrayList<NonBlockingClient> toStop;
+        synchronized(this) {
+            if (shutdown) {
+                logger.exit(this, methodName);
+                return;
+            }
+            shutdown = true;
+            toStop = new ArrayList<>(clients);
+            clients.clear();
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(toStop.size() + 1);
+        final CompletionListener<Void> stopListener = new CompletionListener<Void>() {
+            @Override
+            public void onSuccess(NonBlockingClient client, Void context) {
+                if (remaining.decrementAndGet() == 0) release();
+            }
+            @Override
+            public void onError(NonBlockingClient client, Void context, Exception exception) {
+                if (remaining.decrementAndGet() == 0) release();
+            }
+        };
+        for (NonBlockingClient client : toStop) {
+            try {
+                client.stop(stopListener, null);
+            } catch(StateException e) {
+                logger.data(this, methodName, "Unable to stop client", client, e);
+                remaining.decrementAndGet();
+            }
+        }
+        if (remaining.decrementAndGet() == 0) release();
+
+        logger.exit(this, methodName);
+    }
+
+    private void release() {
+        final String methodName = "release";
+        logger.entry(this, methodName);
+
+        CallbackServiceFactory.shutdown(callbackService);
+        if (processingExecutor != null) processingExecutor.shutdown();
+        timerService.shutdown();
+        terminated.countDown();
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Waits for the runtime to finish shutting down, after a call to {@link #shutdown()}.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the units of <code>timeout</code>.
+     * @return <code>true</code> if the runtime's clients have stopped and its threads have been
+     *         released, or <code>false</code> if the timeout expired first.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * @return the callback service used to run callbacks for the clients created using this
+     *         runtime.
+     */
+    public CallbackService getCallbackService() {
+        return callbackService;
+    }
+
+    /**
+     * A builder for <code>ClientRuntime</code> objects.
+     */
+    public static class ClientRuntimeBuilder {
+
+        private CallbackExecution callbackExecution = CallbackExecution.THREAD_POOL;
+        private int callbackThreads = Runtime.getRuntime().availableProcessors();
+        private int processingThreads = Runtime.getRuntime().availableProcessors();
+        private long timerResolution = 10;
+
+        private ClientRuntimeBuilder() {}
+
+        /**
+         * Sets how the runtime runs callbacks into application code.  See
+         * {@link ClientOptions.ClientOptionsBuilder#setCallbackExecution(CallbackExecution)}.
+         *
+         * @param callbackExecution how callbacks are run.  Cannot be <code>null</code>.  The
+         *                          default is {@link CallbackExecution#THREAD_POOL}.
+         * @return the same instance of <code>ClientRuntimeBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if <code>null</code> is specified.
+         */
+        public ClientRuntimeBuilder setCallbackExecution(CallbackExecution callbackExecution) throws IllegalArgumentException {
+            final String methodName = "setCallbackExecution";
+            logger.entry(this, methodName, callbackExecution);
+
+            if (callbackExecution == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Callback execution cannot be null");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.callbackExecution = callbackExecution;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of threads that the runtime uses to run callbacks into
+         * application code, for all of its clients.
+         *
+         * @param callbackThreads the number of threads.  Must be greater than zero.  The default
+         *                        is the number of available processors.
+         * @return the same instance of <code>ClientRuntimeBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a value less than one is specified.
+         */
+        public ClientRuntimeBuilder setCallbackThreads(int callbackThreads) throws IllegalArgumentException {
+            final String methodName = "setCallbackThreads";
+            logger.entry(this, methodName, callbackThreads);
+
+            if (callbackThreads <= 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Callback threads value '" + callbackThreads + "' is invalid, it must be greater than zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.callbackThreads = callbackThreads;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of threads that the runtime uses for the internal processing of
+         * all of its clients.  See {@link ClientOptions.ClientOptionsBuilder#setProcessingExecutor(java.util.concurrent.Executor)}.
+         * A client created with its own processing executor uses that executor instead.
+         *
+         * @param processingThreads the number of threads.  Must be greater than or equal to zero.
+         *                          A value of zero means that processing is run on the threads that
+         *                          request it.  The default is the number of available processors.
+         * @return the same instance of <code>ClientRuntimeBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a negative value is specified.
+         */
+        public ClientRuntimeBuilder setProcessingThreads(int processingThreads) throws IllegalArgumentException {
+            final String methodName = "setProcessingThreads";
+            logger.entry(this, methodName, processingThreads);
+
+            if (processingThreads < 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Processing threads value '" + processingThreads + "' is invalid, it must be greater than or equal to zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.processingThreads = processingThreads;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Sets how precisely the runtime's timers - used, for example, to send heartbeats and to
+         * detect idle connections - complete.  The runtime tracks the timers for all of its
+         * clients using a single timing wheel, which checks for timers that are due once per
+         * period of this length, so a timer can complete up to this long after it is due.
+         *
+         * @param timerResolution the resolution, in milliseconds.  Must be greater than zero.
+         *                        The default is 10 milliseconds.
+         * @return the same instance of <code>ClientRuntimeBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if a value less than one is specified.
+         */
+        public ClientRuntimeBuilder setTimerResolution(long timerResolution) throws IllegalArgumentException {
+            final String methodName = "setTimerResolution";
+            logger.entry(this, methodName, timerResolution);
+
+            if (timerResolution <= 0) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Timer resolution value '" + timerResolution + "' is invalid, it must be greater than zero");
+                logger.throwing(this,  methodName, exception);
+                throw exception;
+            }
+            this.timerResolution = timerResolution;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * @return a new <code>ClientRuntime</code>, built using the settings of this
+         *         <code>ClientRuntimeBuilder</code> at the point this method is invoked.
+         */
+        public ClientRuntime build() {
+            return new ClientRuntime(callbackExecution, callbackThreads, processingThreads, timerResolution);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.ibm.mqlight.api;
 
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 
 import com.google.gson.Gson;
@@ -176,6 +177,26 @@ public abstract class NonBlockingClient {
      */
     public abstract ClientState getState();
 
+    /**
+     * @return the number of bytes of encoded messages that the client is holding for sends that
+     *         have not yet completed.  This is always zero if no send buffer limits are set.
+     * @see ClientOptions.ClientOptionsBuilder#setSendBufferLimits(long, int)
+     */
+    public abstract long getSendBufferBytes();
+
+    /**
+     * @return the number of sends that the client is holding that have not yet completed.  This
+     *         is always zero if no send buffer limits are set.
+     * @see ClientOptions.ClientOptionsBuilder#setSendBufferLimits(long, int)
+     */
+    public abstract int getSendBufferMessages();
+
+    /**
+     * @return a snapshot of the client's runtime metrics, for example the number of messages
+     *         sent and received, and the latency of sends.
+     */
+    public abstract ClientMetrics getMetrics();
+
     /**
      * Sends a string message to a topic.
      * @param topic the topic to send the message to. Cannot be null.
@@ -582,6 +603,61 @@ public abstract class NonBlockingClient {
         return sendJson(topic, json, properties, defaultSendOptions, null, null);
     }
 
+    /**
+     * Sends a batch of messages to a topic.  This is functionally equivalent to calling one of the send
+     * methods for each element of the batch, but the client processes the batch as a single unit of work
+     * and writes the messages to the network together.  This substantially reduces the per-message cost
+     * of sending large numbers of small messages.
+     * @param topic the topic to send the messages to. Cannot be null.
+     * @param data the messages to send.  Cannot be null or empty, and cannot contain null elements.  Each
+     *             element is sent in the same way as one of the send methods would send it: a
+     *             <code>String</code> is sent as a string message, a <code>ByteBuffer</code> is sent as a
+     *             bytes message, and any other object is converted to JSON using the Google Gson library.
+     * @param properties a {@link Map} of properties that will be carried alongside each of the messages.  Keys must
+     *                   be non-null and values must be one of the following types: <code>null</code>,
+     *                   <code>Boolean</code>, <code>Byte</code>, <code>Short</code>, <code>Integer</code>,
+     *                   <code>Long</code>, <code>Float</code>, <code>Double</code>, <code>byte[]</code>, and
+     *                   <code>String</code>.
+     * @param sendOptions a set of options that determine exactly how the messages are sent.
+     * @param listener a listener object that is notified once, when every message in the batch has been sent.  The
+     *                 listener is notified of success only if all of the messages were sent successfully, otherwise
+     *                 it is notified of the first error encountered sending a message from the batch.
+     * @param context a context object that is passed into the listener.  This can be used within the listener code to
+     *                identify the specific instance of the sendBatch method relating to the listener invocation.
+     * @param <T> the type of the context, used to propagate an arbitrary object between method calls on an
+     *            instance of this object, and the various listeners that are used to provide notification
+     *            of client related events.
+     * @return a <code>boolean</code> <code>true</code> if the messages were sent
+     *         immediately, or <code>false</code> if the messages were buffered in
+     *         memory due to a backlog of messages to send over the network)
+     * @throws StoppedException if the client is in stopped or stopping state when this method is invoked.
+     * @throws IllegalArgumentException if an invalid value is specified for one of the arguments.
+     */
+    public abstract <T> boolean sendBatch(String topic, List<?> data, Map<String, Object> properties, SendOptions sendOptions, CompletionListener<T> listener, T context)
+            throws StoppedException, IllegalArgumentException;
+
+    /**
+     * Sends a batch of messages to a topic.  This is equivalent to calling:
+     * <code>sendBatch(topic, data, null, SendOptions.builder().build(), listener, context)</code>
+     * @param topic the topic to send the messages to. Cannot be null.
+     * @param data the messages to send.  Cannot be null or empty, and cannot contain null elements.
+     * @param listener a listener object that is notified once, when every message in the batch has been sent.
+     * @param context a context object that is passed into the listener.
+     * @param <T> the type of the context, used to propagate an arbitrary object between method calls on an
+     *            instance of this object, and the various listeners that are used to provide notification
+     *            of client related events.
+     * @return a <code>boolean</code> <code>true</code> if the messages were sent
+     *         immediately, or <code>false</code> if the messages were buffered in
+     *         memory due to a backlog of messages to send over the network)
+     * @throws StoppedException if the client is in stopped or stopping state when this method is invoked.
+     * @throws IllegalArgumentException if an invalid value is specified for one of the arguments.
+     * @see NonBlockingClient#sendBatch(String, List, Map, SendOptions, CompletionListener, Object)
+     */
+    public <T> boolean sendBatch(String topic, List<?> data, CompletionListener<T> listener, T context)
+            throws StoppedException, IllegalArgumentException {
+        return sendBatch(topic, data, null, defaultSendOptions, listener, context);
+    }
+
     /**
      * Requests that the client transitions into started state.
      * This prepares the client to send and/or receive messages from the server. As new instances of
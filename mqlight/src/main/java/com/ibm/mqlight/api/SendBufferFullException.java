@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api;
+
+/**
+ * Used to indicate that a message was not sent because the client was already holding as
+ * many uncompleted sends as it is allowed to.
+ *
+ * @see ClientOptions.ClientOptionsBuilder#setSendBufferLimits(long, int)
+ */
+public class SendBufferFullException extends ClientException {
+
+    private static final long serialVersionUID = 3851205762914617530L;
+
+    public SendBufferFullException(String message) {
+        super(message);
+    }
+
+    public SendBufferFullException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -35,21 +35,65 @@ public class SubscribeOptions {
 
     private static final Logger logger = LoggerFactory.getLogger(SubscribeOptions.class);
 
+    /**
+     * Determines which of the messages delivered to a destination's
+     * {@link DestinationListener} are guaranteed to be passed to it one at a time, in the order
+     * that they were received.  Messages that are not ordered relative to each other can be
+     * passed to the listener concurrently, by different threads, when the client uses a
+     * {@link com.ibm.mqlight.api.callback.CallbackService} that runs callbacks in parallel.
+     */
+    public enum Ordering {
+        /**
+         * Messages are ordered with respect to all of the other callbacks made by the client.
+         * This is the default.
+         */
+        CLIENT,
+        /**
+         * Messages are ordered with respect to the other messages delivered to the same
+         * destination.  The destination's <code>onUnsubscribed</code> callback is made after
+         * any messages already being delivered to the destination.
+         */
+        SUBSCRIPTION,
+        /**
+         * Messages are ordered with respect to the other messages delivered to the same
+         * destination with the same topic.  This requires the topic of each message to be
+         * read before it is dispatched to the listener.  The destination's
+         * <code>onUnsubscribed</code> callback is not ordered with respect to the messages
+         * already being delivered to the destination, and may be made before them.
+         */
+        TOPIC,
+        /**
+         * Messages are not ordered.  This is best suited to a destination that shares its
+         * messages between several clients, where there is no overall order to preserve.
+         * The destination's <code>onUnsubscribed</code> callback is not ordered with respect
+         * to the messages already being delivered to the destination, and may be made before
+         * them.
+         */
+        NONE
+    }
+
     private final boolean autoConfirm;
     private final int credit;
     private final QOS qos;
     private final String shareName;
     private final long ttl;
+    private final Ordering ordering;
+    private final int minCredit;
+    private final int maxCredit;
 
-    private SubscribeOptions(boolean autoConfirm, int credit, QOS qos, String shareName, long ttl) {
+    private SubscribeOptions(boolean autoConfirm, int credit, QOS qos, String shareName, long ttl, Ordering ordering,
+                             int minCredit, int maxCredit) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, autoConfirm, credit, qos, shareName, ttl);
+        logger.entry(this, methodName, autoConfirm, credit, qos, shareName, ttl, ordering, minCredit, maxCredit);
 
         this.autoConfirm = autoConfirm;
         this.credit = credit;
         this.qos = qos;
         this.shareName = shareName;
         this.ttl = ttl;
+        this.ordering = ordering;
+        this.minCredit = minCredit;
+        this.maxCredit = maxCredit;
 
         logger.exit(this, methodName);
     }
@@ -74,6 +118,33 @@ public class SubscribeOptions {
         return ttl;
     }
 
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * @return <code>true</code> if the credit granted to the subscription is adjusted to suit
+     *         the rate at which messages are confirmed, or <code>false</code> if the
+     *         subscription always uses the amount of credit returned by {@link #getCredit()}.
+     */
+    public boolean isAdaptiveCredit() {
+        return maxCredit > 0;
+    }
+
+    /**
+     * @return the least credit granted to the subscription, when adaptive credit is used.
+     */
+    public int getMinCredit() {
+        return minCredit;
+    }
+
+    /**
+     * @return the most credit granted to the subscription, when adaptive credit is used.
+     */
+    public int getMaxCredit() {
+        return maxCredit;
+    }
+
     @Override
     public String toString() {
         return super.toString()
@@ -81,7 +152,10 @@ public class SubscribeOptions {
                 + ", credit=" + credit
                 + ", qos=" + qos
                 + ", share=" + shareName
-                + ", ttl=" + ttl + "]";
+                + ", ttl=" + ttl
+                + ", ordering=" + ordering
+                + ", minCredit=" + minCredit
+                + ", maxCredit=" + maxCredit + "]";
     }
 
     /**
@@ -101,6 +175,9 @@ public class SubscribeOptions {
         private QOS qos = QOS.AT_MOST_ONCE;
         private String shareName = null;
         private long ttl = 0;
+        private Ordering ordering = Ordering.CLIENT;
+        private int minCredit = 0;
+        private int maxCredit = 0;
 
         private SubscribeOptionsBuilder() {}
 
@@ -256,12 +333,76 @@ public class SubscribeOptions {
             return this;
         }
 
+        /**
+         * Sets which messages delivered to the destination must be passed to its
+         * {@link DestinationListener} in order.  Relaxing the ordering allows messages to be
+         * processed in parallel, by a {@link com.ibm.mqlight.api.callback.CallbackService} that
+         * supports this.
+         * @param ordering the ordering to apply.  The default if this is not specified is
+         *                 {@link Ordering#CLIENT}.
+         * @return the instance of <code>SubscribeOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if <code>null</code> is specified.
+         */
+        public SubscribeOptionsBuilder setOrdering(Ordering ordering) throws IllegalArgumentException {
+            final String methodName = "setOrdering";
+            logger.entry(this, methodName, ordering);
+
+            if (ordering == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("ordering cannot be null");
+                logger.throwing(this, methodName, exception);
+                throw exception;
+            }
+            this.ordering = ordering;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
+        /**
+         * Lets the client adjust the credit granted to the subscription, rather than always
+         * granting the amount set by {@link #setCredit(int)}.  The client measures how quickly
+         * the application confirms messages, and how long it takes for messages to arrive once
+         * credit has been granted, and keeps enough credit outstanding for the server to
+         * send messages as fast as they are being processed.  This suits fast consumers on
+         * high latency networks, which a small fixed credit would hold back, as well as slow
+         * consumers, for which a large fixed credit would mean holding many unprocessed
+         * messages in memory.  The value set by {@link #setCredit(int)} is used as the starting
+         * point, once it has been brought within the bounds set by this method.
+         * <p>
+         * The client can also stop granting credit when too many bytes of unconfirmed messages
+         * are held, see {@link ClientOptions.ClientOptionsBuilder#setMaxInboundBufferedBytes(long)}.
+         *
+         * @param minCredit the least credit to grant the subscription.  Must be greater than zero.
+         * @param maxCredit the most credit to grant the subscription.  Must be greater than or
+         *                  equal to <code>minCredit</code>.
+         * @return the instance of <code>SubscribeOptionsBuilder</code> that this method was invoked on.
+         * @throws IllegalArgumentException if invalid bounds are specified.
+         */
+        public SubscribeOptionsBuilder setAdaptiveCredit(int minCredit, int maxCredit) throws IllegalArgumentException {
+            final String methodName = "setAdaptiveCredit";
+            logger.entry(this, methodName, minCredit, maxCredit);
+
+            if (minCredit <= 0 || maxCredit < minCredit) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Adaptive credit bounds '" + minCredit + "' and '" + maxCredit + "' are invalid, the minimum must be greater than zero and no more than the maximum");
+                logger.throwing(this, methodName, exception);
+                throw exception;
+            }
+            this.minCredit = minCredit;
+            this.maxCredit = maxCredit;
+
+            logger.exit(this, methodName, this);
+
+            return this;
+        }
+
         /**
          * @return an instance of SubscribeOptions based on the current settings of
          *         this builder.
          */
         public SubscribeOptions build() {
-            return new SubscribeOptions(autoConfirm, credit, qos, shareName, ttl);
+            final int initialCredit = maxCredit > 0 ? Math.min(Math.max(credit, minCredit), maxCredit) : credit;
+            return new SubscribeOptions(autoConfirm, initialCredit, qos, shareName, ttl, ordering, minCredit, maxCredit);
         }
     }
 }
@@ -19,7 +19,6 @@
 package com.ibm.mqlight.api.impl;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import com.ibm.mqlight.api.BytesDelivery;
 import com.ibm.mqlight.api.QOS;
@@ -29,9 +28,8 @@ class BytesDeliveryImpl extends DeliveryImpl implements BytesDelivery {
 
     private final ByteBuffer data;
     
-    protected BytesDeliveryImpl(NonBlockingClientImpl client, QOS qos, String shareName, String topic, 
-                                String topicPattern, long ttl, ByteBuffer data, Map<String, Object> properties, DeliveryRequest req) {
-        super(client, qos, shareName, topic, topicPattern, ttl, properties, req);
+    protected BytesDeliveryImpl(NonBlockingClientImpl client, QOS qos, ReceivedMessage received, long ttl, ByteBuffer data, DeliveryRequest req) {
+        super(client, qos, received, ttl, req);
         this.data = data;
     }
     
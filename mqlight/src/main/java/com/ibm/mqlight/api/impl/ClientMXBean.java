@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The management interface of the MBean registered for a client, when JMX is enabled in its
+ * {@link com.ibm.mqlight.api.ClientOptions}.  Values are read without synchronizing with the
+ * client, so are only approximate while the client is busy.
+ */
+public interface ClientMXBean {
+
+    /**
+     * Describes a destination that the client is subscribed to.
+     */
+    class Subscription {
+        private final String address;
+        private final String state;
+        private final String qos;
+        private final int credit;
+        private final int pendingDeliveries;
+
+        @ConstructorProperties({"address", "state", "qos", "credit", "pendingDeliveries"})
+        public Subscription(String address, String state, String qos, int credit, int pendingDeliveries) {
+            this.address = address;
+            this.state = state;
+            this.qos = qos;
+            this.credit = credit;
+            this.pendingDeliveries = pendingDeliveries;
+        }
+
+        /**
+         * @return the address of the subscription's link, for example <code>private:</code><em>topic pattern</em>.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return the state of the subscription's link, for example <code>ESTABLISHED</code>.
+         */
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * @return the quality of service of the subscription.
+         */
+        public String getQos() {
+            return qos;
+        }
+
+        /**
+         * @return the link credit requested for the subscription or, if the subscription uses
+         *         adaptive credit, the credit it currently aims to keep outstanding.
+         */
+        public int getCredit() {
+            return credit;
+        }
+
+        /**
+         * @return the number of at-least-once deliveries that have not yet been confirmed.
+         */
+        public int getPendingDeliveries() {
+            return pendingDeliveries;
+        }
+    }
+
+    /**
+     * @return the client's id.
+     */
+    String getId();
+
+    /**
+     * @return the state of the client, as reported by {@link com.ibm.mqlight.api.NonBlockingClient#getState()}.
+     */
+    String getState();
+
+    /**
+     * @return the state of the client's internal state machine, which distinguishes (for example)
+     *         between looking up an endpoint and connecting to it.
+     */
+    String getInternalState();
+
+    /**
+     * @return the host and port of the endpoint that the client is using, or <code>null</code> if
+     *         it does not yet have one.
+     */
+    String getEndpoint();
+
+    /**
+     * @return the destinations that the client is subscribed to.
+     */
+    Subscription[] getSubscriptions();
+
+    /**
+     * @return the number of bytes written to the network by the client's current connection.
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the number of bytes read from the network by the client's current connection.
+     */
+    long getBytesRead();
+
+    /**
+     * @return the number of at-least-once sends on the current connection waiting to be confirmed
+     *         by the server.
+     */
+    int getInProgressOutboundDeliveries();
+
+    /**
+     * @return the number of at-most-once sends on the current connection waiting to be written to
+     *         the network.
+     */
+    int getInflightQos0Sends();
+}
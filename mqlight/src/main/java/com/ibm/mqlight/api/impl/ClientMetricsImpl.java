@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.mqlight.api.ClientMetrics;
+import com.ibm.mqlight.api.QOS;
+
+/**
+ * The counters behind a client's {@link ClientMetrics}.  Counters are updated by the client's own
+ * processing (so there is little contention for them) and read by whichever thread asks for a
+ * snapshot.
+ */
+class ClientMetricsImpl {
+
+    private final AtomicLongArray messagesSent = new AtomicLongArray(QOS.values().length);
+    private final AtomicLongArray bytesSent = new AtomicLongArray(QOS.values().length);
+    private final AtomicLongArray messagesReceived = new AtomicLongArray(QOS.values().length);
+    private final AtomicLongArray bytesReceived = new AtomicLongArray(QOS.values().length);
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LatencyHistogram confirmLatency = new LatencyHistogram();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    void sent(QOS qos, int bytes, long sendNanos) {
+        messagesSent.incrementAndGet(qos.ordinal());
+        bytesSent.addAndGet(qos.ordinal(), bytes);
+        if (qos == QOS.AT_LEAST_ONCE) sendLatency.record(System.nanoTime() - sendNanos);
+    }
+
+    void received(QOS qos, int bytes) {
+        messagesReceived.incrementAndGet(qos.ordinal());
+        bytesReceived.addAndGet(qos.ordinal(), bytes);
+    }
+
+    void confirmed(long deliveryNanos) {
+        confirmLatency.record(System.nanoTime() - deliveryNanos);
+    }
+
+    void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * Takes a snapshot of the counters, together with the client's current queue depths.
+     */
+    ClientMetrics snapshot(int outstandingSends, int pendingWork, Map<String, Integer> unconfirmedDeliveries, long queuedCallbacks) {
+        return new Snapshot(this, outstandingSends, pendingWork, unconfirmedDeliveries, queuedCallbacks);
+    }
+
+    private static class Snapshot implements ClientMetrics {
+        private final long[] messagesSent;
+        private final long[] bytesSent;
+        private final long[] messagesReceived;
+        private final long[] bytesReceived;
+        private final Latency sendLatency;
+        private final Latency confirmLatency;
+        private final long reconnects;
+        private final int outstandingSends;
+        private final int pendingWork;
+        private final Map<String, Integer> unconfirmedDeliveries;
+        private final long queuedCallbacks;
+
+        private Snapshot(ClientMetricsImpl metrics, int outstandingSends, int pendingWork, Map<String, Integer> unconfirmedDeliveries, long queuedCallbacks) {
+            messagesSent = copy(metrics.messagesSent);
+            bytesSent = copy(metrics.bytesSent);
+            messagesReceived = copy(metrics.messagesReceived);
+            bytesReceived = copy(metrics.bytesReceived);
+            sendLatency = metrics.sendLatency.snapshot();
+            confirmLatency = metrics.confirmLatency.snapshot();
+            reconnects = metrics.reconnects.get();
+            this.outstandingSends = outstandingSends;
+            this.pendingWork = pendingWork;
+            this.unconfirmedDeliveries = Collections.unmodifiableMap(unconfirmedDeliveries);
+            this.queuedCallbacks = queuedCallbacks;
+        }
+
+        private static long[] copy(AtomicLongArray array) {
+            final long[] result = new long[array.length()];
+            for (int i = 0; i < result.length; ++i) result[i] = array.get(i);
+            return result;
+        }
+
+        @Override
+        public long getMessagesSent(QOS qos) {
+            return messagesSent[qos.ordinal()];
+        }
+
+        @Override
+        public long getBytesSent(QOS qos) {
+            return bytesSent[qos.ordinal()];
+        }
+
+        @Override
+        public long getMessagesReceived(QOS qos) {
+            return messagesReceived[qos.ordinal()];
+        }
+
+        @Override
+        public long getBytesReceived(QOS qos) {
+            return bytesReceived[qos.ordinal()];
+        }
+
+        @Override
+        public Latency getSendLatency() {
+            return sendLatency;
+        }
+
+        @Override
+        public Latency getConfirmLatency() {
+            return confirmLatency;
+        }
+
+        @Override
+        public int getOutstandingSends() {
+            return outstandingSends;
+        }
+
+        @Override
+        public int getPendingWork() {
+            return pendingWork;
+        }
+
+        @Override
+        public Map<String, Integer> getUnconfirmedDeliveries() {
+            return unconfirmedDeliveries;
+        }
+
+        @Override
+        public long getReconnects() {
+            return reconnects;
+        }
+
+        @Override
+        public long getQueuedCallbacks() {
+            return queuedCallbacks;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("ClientMetrics [");
+            for (QOS qos : QOS.values()) {
+                sb.append(qos).append(": sent=").append(getMessagesSent(qos)).append(" (").append(getBytesSent(qos))
+                  .append(" bytes), received=").append(getMessagesReceived(qos)).append(" (").append(getBytesReceived(qos))
+                  .append(" bytes), ");
+            }
+            sb.append("sendLatency=").append(sendLatency)
+              .append(", confirmLatency=").append(confirmLatency)
+              .append(", outstandingSends=").append(outstandingSends)
+              .append(", pendingWork=").append(pendingWork)
+              .append(", unconfirmedDeliveries=").append(unconfirmedDeliveries)
+              .append(", reconnects=").append(reconnects)
+              .append(", queuedCallbacks=").append(queuedCallbacks)
+              .append("]");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ibm.mqlight.api.endpoint.Endpoint;
+import com.ibm.mqlight.api.impl.engine.EngineConnection;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * The MBean registered, with the platform MBean server, for a client that has JMX enabled.
+ */
+class ClientMonitor implements ClientMXBean {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(ClientMonitor.class);
+
+    private final NonBlockingClientImpl client;
+    private final ObjectName name;
+    private boolean registered = false;
+
+    ClientMonitor(NonBlockingClientImpl client) throws JMException {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, client);
+
+        this.client = client;
+        this.name = new ObjectName("com.ibm.mqlight:type=NonBlockingClient,id=" + ObjectName.quote(client.getId()));
+
+        logger.exit(this, methodName);
+    }
+
+    ObjectName getName() {
+        return name;
+    }
+
+    /**
+     * Registers the MBean, if it is not already registered.  A failure to register (for example,
+     * because another client with the same id is already registered) is traced and ignored.
+     */
+    synchronized void register() {
+        final String methodName = "register";
+        logger.entry(this, methodName);
+
+        if (!registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+                registered = true;
+            } catch (JMException e) {
+                logger.data(this, methodName, "Unable to register MBean", name, e);
+            }
+        }
+
+        logger.exit(this, methodName, registered);
+    }
+
+    /**
+     * Unregisters the MBean, if it is registered.
+     */
+    synchronized void unregister() {
+        final String methodName = "unregister";
+        logger.entry(this, methodName);
+
+        if (registered) {
+            registered = false;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.data(this, methodName, "Unable to unregister MBean", name, e);
+            }
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    @Override
+    public String getId() {
+        return client.getId();
+    }
+
+    @Override
+    public String getState() {
+        return String.valueOf(client.getState());
+    }
+
+    @Override
+    public String getInternalState() {
+        return String.valueOf(client.getInternalState());
+    }
+
+    @Override
+    public String getEndpoint() {
+        final Endpoint endpoint = client.getCurrentEndpoint();
+        return endpoint == null ? null : endpoint.getHost() + ":" + endpoint.getPort();
+    }
+
+    @Override
+    public Subscription[] getSubscriptions() {
+        return client.describeSubscriptions();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        final EngineConnection connection = client.getCurrentConnection();
+        return connection == null ? 0 : connection.getBytesWritten();
+    }
+
+    @Override
+    public long getBytesRead() {
+        final EngineConnection connection = client.getCurrentConnection();
+        return connection == null ? 0 : connection.getBytesRead();
+    }
+
+    @Override
+    public int getInProgressOutboundDeliveries() {
+        final EngineConnection connection = client.getCurrentConnection();
+        return connection == null ? 0 : connection.getInProgressOutboundDeliveryCount();
+    }
+
+    @Override
+    public int getInflightQos0Sends() {
+        final EngineConnection connection = client.getCurrentConnection();
+        return connection == null ? 0 : connection.getInflightQos0Count();
+    }
+}
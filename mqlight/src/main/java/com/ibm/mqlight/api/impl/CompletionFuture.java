@@ -23,12 +23,12 @@ import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.StateException;
 import com.ibm.mqlight.api.callback.CallbackService;
 import com.ibm.mqlight.api.impl.callback.CallbackPromiseImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class CompletionFuture<T> implements Promise<T> {
   
-    private static final Logger logger = LoggerFactory.getLogger(CompletionFuture.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(CompletionFuture.class);
   
     private boolean complete = false;
     
@@ -18,15 +18,19 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 
 public abstract class ComponentImpl implements Component {
 
-    private static final Logger logger = LoggerFactory.getLogger(ComponentImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(ComponentImpl.class);
 
     public static final ComponentImpl NOBODY = new ComponentImpl() {
         public void tell(Message message, Component self) {}
@@ -35,50 +39,129 @@ public abstract class ComponentImpl implements Component {
         }
     };
 
-    private final LinkedList<Message> queue = new LinkedList<>();
-    private boolean scheduled = false;
-    protected final Object componentMonitor = new Object();
+    // Messages waiting to be delivered.  Any number of threads can add messages to the queue,
+    // but only the thread that has set the 'scheduled' flag removes them.
+    private final Queue<Message> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    // The maximum number of messages delivered by each task run on the executor, before the
+    // task gives up its thread to any other work waiting for the executor.
+    private static final int EXECUTOR_BATCH_SIZE = 256;
+
+    // If not null, messages are delivered by tasks run on this executor.  Otherwise messages are
+    // delivered on the thread that queues a message when no delivery is already in progress.
+    private final Executor executor;
+
+    private final Runnable deliveryTask = new Runnable() {
+        @Override
+        public void run() {
+            deliverMessages(EXECUTOR_BATCH_SIZE);
+        }
+    };
+
+    protected ComponentImpl() {
+        this(null);
+    }
+
+    /**
+     * @param executor the executor used to deliver messages to this component, or
+     *                 <code>null</code> to deliver messages on the thread that calls
+     *                 {@link #tell(Message, Component)}.
+     */
+    protected ComponentImpl(Executor executor) {
+        this.executor = executor;
+    }
 
     public void tell(Message message, Component self) {
         final String methodName = "tell";
         logger.entry(this, methodName, message, self);
 
         message.setSender(self);
-        boolean execute;
-        synchronized(queue) {
-            queue.addLast(message);
-            execute = !scheduled;
-            if (execute) scheduled = true;
+        queue.offer(message);
+        if (scheduled.compareAndSet(false, true)) {
+            if (executor == null) {
+                deliverMessages(Integer.MAX_VALUE);
+            } else {
+                scheduleDelivery();
+            }
         }
-        if (execute) deliverMessages();
 
         logger.exit(this, methodName);
     }
 
-    private void deliverMessages() {
-        final String methodName = "deliverMessages";
+    private void scheduleDelivery() {
+        final String methodName = "scheduleDelivery";
         logger.entry(this, methodName);
 
+        try {
+            executor.execute(deliveryTask);
+        } catch (RejectedExecutionException e) {
+            // The executor has been shut down or is saturated - fall back to delivering the
+            // messages on this thread, rather than leaving them stranded in the queue.
+            logger.data(this, methodName, "Executor rejected delivery task: {}", e);
+            deliverMessages(Integer.MAX_VALUE);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    private void deliverMessages(int limit) {
+        final String methodName = "deliverMessages";
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, limit);
+
+        int delivered = 0;
         while(true) {
-            Message message = null;
-            synchronized(queue) {
-                if (queue.isEmpty()) {
-                    scheduled = false;
-                    break;
+            if (delivered == limit && !queue.isEmpty()) {
+                // Leave the 'scheduled' flag set, and continue in a new task
+                scheduleDelivery();
+                logger.exit(this, methodName);
+                return;
+            }
+            Message message = queue.poll();
+            if (message == null) {
+                // Still holding the 'scheduled' flag, so no other thread can be delivering
+                // messages while the component reacts to its mailbox draining.
+                try {
+                    onMailboxDrained();
+                } catch (Throwable e) {
+                    logger.ffdc(methodName, FFDCProbeId.PROBE_002, e);
                 }
-                else message = queue.removeFirst();
+                if (!queue.isEmpty()) continue;
+
+                scheduled.set(false);
+                // A message may have been queued after the poll, but before the flag was
+                // cleared, by a thread that saw the flag set and so left it to us to deliver.
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) break;
+                continue;
             }
-            synchronized(componentMonitor) {
-              try {
+            ++delivered;
+            // Only the thread holding the 'scheduled' flag gets here, so onReceive() is never
+            // called concurrently and needs no further locking.
+            try {
                 onReceive(message);
-              } catch (Throwable e) {
+            } catch (Throwable e) {
                 logger.ffdc(methodName, FFDCProbeId.PROBE_001, e);
-              }
             }
         }
 
         logger.exit(this, methodName);
     }
 
+    /**
+     * @return <code>true</code> if there are messages queued, waiting to be delivered to this
+     *         component's {@link #onReceive(Message)} method.
+     */
+    protected boolean hasQueuedMessages() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Called after this component has processed all of the messages that were queued for it.
+     * This is never called concurrently with {@link #onReceive(Message)}.  The default
+     * implementation does nothing.
+     */
+    protected void onMailboxDrained() {
+    }
+
     protected abstract void onReceive(Message message);
 }
@@ -24,12 +24,12 @@ import com.ibm.mqlight.api.Delivery;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.StateException;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public abstract class DeliveryImpl implements Delivery {
 
-    private static final Logger logger = LoggerFactory.getLogger(DeliveryImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(DeliveryImpl.class);
   
     private final NonBlockingClientImpl client;
     private final QOS qos;
@@ -38,6 +38,7 @@ public abstract class DeliveryImpl implements Delivery {
     private final String topicPattern;
     private final long ttl;
     private final Map<String, Object> properties;
+    private final ReceivedMessage received;
     private final DeliveryRequest deliveryRequest;
     private boolean confirmed = false;
 
@@ -52,11 +53,33 @@ public abstract class DeliveryImpl implements Delivery {
         this.topicPattern = topicPattern;
         this.ttl = ttl;
         this.properties = properties;
+        this.received = null;
         this.deliveryRequest = deliveryRequest;
         
         logger.exit(this, methodName);
     }
 
+    /**
+     * Creates a delivery whose share, topic, topic pattern and properties are only worked out
+     * from <code>received</code> when they are first asked for.
+     */
+    protected DeliveryImpl(NonBlockingClientImpl client, QOS qos, ReceivedMessage received, long ttl, DeliveryRequest deliveryRequest) {
+        final String methodName = "<init>";
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, client, qos, received, ttl, deliveryRequest);
+
+        this.client = client;
+        this.qos = qos;
+        this.share = null;
+        this.topic = null;
+        this.topicPattern = null;
+        this.ttl = ttl;
+        this.properties = null;
+        this.received = received;
+        this.deliveryRequest = deliveryRequest;
+
+        logger.exit(this, methodName);
+    }
+
     @Override
     public abstract Type getType();
 
@@ -91,17 +114,17 @@ public abstract class DeliveryImpl implements Delivery {
 
     @Override
     public String getShare() {
-        return share;
+        return received == null ? share : received.getShare();
     }
 
     @Override
     public String getTopic() {
-        return topic;
+        return received == null ? topic : received.getTopic();
     }
 
     @Override
     public String getTopicPattern() {
-        return topicPattern;
+        return received == null ? topicPattern : received.getTopicPattern();
     }
 
     @Override
@@ -111,6 +134,6 @@ public abstract class DeliveryImpl implements Delivery {
 
     @Override
     public Map<String, Object> getProperties() {
-        return properties;
+        return received == null ? properties : received.getProperties();
     }
 }
@@ -18,39 +18,43 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import java.net.URI;
+import io.netty.buffer.ByteBuf;
+
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Section;
 import org.apache.qpid.proton.codec.DecodeException;
 
 import com.google.gson.GsonBuilder;
 import com.ibm.mqlight.api.Delivery;
 import com.ibm.mqlight.api.DestinationListener;
 import com.ibm.mqlight.api.MalformedDelivery;
+import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.QOS;
+import com.ibm.mqlight.api.SubscribeOptions;
 import com.ibm.mqlight.api.callback.CallbackService;
-import com.ibm.mqlight.api.impl.callback.CallbackPromiseImpl;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class DestinationListenerWrapper<T> {
 
-    private static final Logger logger = LoggerFactory.getLogger(DestinationListenerWrapper.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(DestinationListenerWrapper.class);
 
     private final NonBlockingClientImpl client;
     private final GsonBuilder gsonBuilder;
     private final DestinationListener<T> listener;
     private final T context;
+    private final SubscribeOptions.Ordering ordering;
 
     private static final Symbol malformedConditionSymbol = Symbol.getSymbol("x-opt-message-malformed-condition");
     private static final Symbol malformedDescriptionSymbol = Symbol.getSymbol("x-opt-message-malformed-description");
@@ -58,13 +62,19 @@ class DestinationListenerWrapper<T> {
     private static final Symbol malformedMQMDCCSIDSymbol = Symbol.getSymbol("x-opt-message-malformed-MQMD.CodedCharSetId");
 
     protected DestinationListenerWrapper(NonBlockingClientImpl client, GsonBuilder gsonBuilder, DestinationListener<T> listener, T context) {
+        this(client, gsonBuilder, listener, context, SubscribeOptions.Ordering.CLIENT);
+    }
+
+    protected DestinationListenerWrapper(NonBlockingClientImpl client, GsonBuilder gsonBuilder, DestinationListener<T> listener, T context,
+                                         SubscribeOptions.Ordering ordering) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, gsonBuilder, listener, context);
+        logger.entry(this, methodName, client, gsonBuilder, listener, context, ordering);
 
         this.client = client;
         this.gsonBuilder = gsonBuilder;
         this.listener = listener;
         this.context = context;
+        this.ordering = ordering;
 
         logger.exit(this, methodName);
     }
@@ -74,12 +84,13 @@ class DestinationListenerWrapper<T> {
         logger.entry(this, methodName, callbackService, topicPattern, share, error);
 
         if (listener != null) {
+            final Object orderingCtx = ordering == SubscribeOptions.Ordering.CLIENT ? client : this;
             callbackService.run(new Runnable() {
                 @Override
                 public void run() {
                     listener.onUnsubscribed(client, context, topicPattern, share, error);
                 }
-            }, client, new CallbackPromiseImpl(client, true));
+            }, orderingCtx, client.newCallbackPromise(orderingCtx));
         }
 
         logger.exit(this, methodName);
@@ -88,7 +99,28 @@ class DestinationListenerWrapper<T> {
     protected void onDelivery(final CallbackService callbackService, final DeliveryRequest deliveryRequest, final QOS qos, final boolean autoConfirm) {
 
         final String methodName = "onDelivery";
-        logger.entry(this, methodName, callbackService, deliveryRequest, qos, autoConfirm);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, callbackService, deliveryRequest, qos, autoConfirm);
+
+        // Work out which callbacks this delivery must be ordered with respect to.  Ordering by
+        // topic means finding the message's address here - which is read directly from the
+        // encoded message, leaving the message to be decoded in the callback.
+        final Object orderingCtx;
+        switch(ordering) {
+        case SUBSCRIPTION:
+            orderingCtx = this;
+            break;
+        case TOPIC:
+            final String address = peekAddress(deliveryRequest.buf);
+            // If there is no address, leave the callback to report the message as malformed
+            orderingCtx = (address == null) ? this : address;
+            break;
+        case NONE:
+            orderingCtx = deliveryRequest;
+            break;
+        default:
+            orderingCtx = client;
+            break;
+        }
 
         callbackService.run(new Runnable() {
             @Override
@@ -96,11 +128,11 @@ class DestinationListenerWrapper<T> {
                 final String methodName = "run";
                 logger.entry(this, methodName);
 
-                // take ownership of the message data and release it from the DeliveryRequest, this
-                // will avoids retaining the message data until the DeliveryRequest completes
-                // settlement.  This buffer will be retained if an error occurs parsing, otherwise
-                // it will be be naturally garbage collected after this method exits
-                byte[] data = deliveryRequest.buf;
+                // take ownership of the message data and release it from the DeliveryRequest.  The
+                // data can be held in a pooled buffer, which is released once the parts of the message
+                // needed to drive the listener have been decoded.  Anything else the delivery might
+                // need (the address and properties of the message) is copied out, still encoded.
+                final ByteBuf data = deliveryRequest.buf;
                 deliveryRequest.buf = null;
 
                 MalformedDelivery.MalformedReason malformedReason = null;
@@ -112,127 +144,123 @@ class DestinationListenerWrapper<T> {
                 String payloadString = null;
                 boolean payloadIsJson = false;
 
-                org.apache.qpid.proton.message.Message msg = Proton.message();
-                try {
-                    msg.decode(data, 0, data.length);
-                } catch(BufferOverflowException | BufferUnderflowException | DecodeException e) {
-                    malformedReason = MalformedDelivery.MalformedReason.PAYLOADNOTAMQP;
-                    malformedDescription = "The message could not be decoded because the message data is not a valid AMQP message";
-
-                    payloadBytes = data;
-                }
+                long ttl = 0;
+                byte[] encodedProperties = null;
+                Map<Symbol, Object> annotations = null;
 
-                Map<String, Object> properties = new HashMap<>();
-                if (malformedReason == null) {
-                    Object msgBodyValue = ((AmqpValue)msg.getBody()).getValue();
-                    if (msgBodyValue instanceof Binary) {
-                        Binary binaryValue = (Binary)msgBodyValue;
-                        if ((binaryValue.getArrayOffset() == 0) && (binaryValue.getArray().length == binaryValue.getLength())) {
-                            payloadBytes = binaryValue.getArray();
-                        } else {
-                            payloadBytes = new byte[binaryValue.getLength()];
-                            System.arraycopy(binaryValue.getArray(), binaryValue.getArrayOffset(), payloadBytes, 0, binaryValue.getLength());
+                try {
+                    // Only the body and delivery annotations are decoded here, as these decide
+                    // which callback to drive.  The other sections are skipped over, and decoded
+                    // only if the application asks for them.
+                    final MessageSections sections = MessageSections.find(data);
+                    boolean valid = sections != null;
+                    Object msgBodyValue = null;
+                    if (valid) {
+                        try {
+                            final ByteBuf body = sections.slice(MessageSections.AMQP_VALUE, MessageSections.AMQP_VALUE);
+                            if (body != null) {
+                                final Section bodySection = decode(body).getBody();
+                                if (bodySection instanceof AmqpValue) msgBodyValue = ((AmqpValue)bodySection).getValue();
+                            }
+                            final ByteBuf deliveryAnnotations = sections.slice(MessageSections.DELIVERY_ANNOTATIONS, MessageSections.DELIVERY_ANNOTATIONS);
+                            if (deliveryAnnotations != null) {
+                                final DeliveryAnnotations decoded = decode(deliveryAnnotations).getDeliveryAnnotations();
+                                if (decoded != null) annotations = decoded.getValue();
+                            }
+                        } catch(BufferOverflowException | BufferUnderflowException | DecodeException e) {
+                            valid = false;
                         }
-                    } else if (msgBodyValue instanceof String) {
-                        payloadString = (String)msgBodyValue;
-                        payloadIsJson = "application/json".equalsIgnoreCase(msg.getContentType());
-                    } else {
-                        malformedReason = MalformedDelivery.MalformedReason.FORMATNOMAPPING;
-                        malformedDescription = "The message payload uses an AMQP format that the MQ Light client cannot process";
+                    }
+
+                    if (!valid) {
+                        malformedReason = MalformedDelivery.MalformedReason.PAYLOADNOTAMQP;
+                        malformedDescription = "The message could not be decoded because the message data is not a valid AMQP message";
 
-                        payloadBytes = data;
+                        payloadBytes = toByteArray(data);
                     }
 
-                    if ((msg.getApplicationProperties() != null) && (msg.getApplicationProperties().getValue() != null)) {
-                        Map<?, ?> msgMap = msg.getApplicationProperties().getValue();
-                        for (Map.Entry<?, ?> entry : msgMap.entrySet()) {
-                            if (entry.getKey() instanceof String) {
-                                Object value = entry.getValue();
-                                if (value == null) {
-                                    properties.put((String)entry.getKey(), null);
-                                } else if (value instanceof Binary) {
-                                    properties.put((String)entry.getKey(), ((Binary)value).getArray());
-                                } else {
-                                    for (int i = 0; i < NonBlockingClientImpl.validPropertyValueTypes.length; ++i) {
-                                        if (NonBlockingClientImpl.validPropertyValueTypes[i].isAssignableFrom(value.getClass())) {
-                                            properties.put((String)entry.getKey(), value);
-                                        }
-                                    }
-                                }
+                    if (malformedReason == null) {
+                        encodedProperties = sections.copy(MessageSections.PROPERTIES, MessageSections.APPLICATION_PROPERTIES);
+                        if (msgBodyValue instanceof Binary) {
+                            Binary binaryValue = (Binary)msgBodyValue;
+                            if ((binaryValue.getArrayOffset() == 0) && (binaryValue.getArray().length == binaryValue.getLength())) {
+                                payloadBytes = binaryValue.getArray();
+                            } else {
+                                payloadBytes = new byte[binaryValue.getLength()];
+                                System.arraycopy(binaryValue.getArray(), binaryValue.getArrayOffset(), payloadBytes, 0, binaryValue.getLength());
                             }
+                        } else if (msgBodyValue instanceof String) {
+                            payloadString = (String)msgBodyValue;
+                            payloadIsJson = "application/json".equalsIgnoreCase(sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_CONTENT_TYPE));
+                        } else {
+                            malformedReason = MalformedDelivery.MalformedReason.FORMATNOMAPPING;
+                            malformedDescription = "The message payload uses an AMQP format that the MQ Light client cannot process";
+
+                            payloadBytes = toByteArray(data);
+                        }
+
+                        if (malformedReason == null) {
+                            ttl = sections.getUnsignedInt(MessageSections.HEADER, MessageSections.HEADER_TTL);
                         }
                     }
+                } finally {
+                    data.release();
                 }
 
-                String parts[] = new SubscriptionTopic(deliveryRequest.topicPattern).split();
-                String shareName = parts[1];
-                String topicPattern = parts[0];
-                long ttl = 0;
-                String topic = "";
-                if (malformedReason == null) {
-                    try {
-                        topic = URI.create(msg.getAddress()).getPath();
-                    } catch(IllegalArgumentException e) {
-                    }
-                    if (topic == null) topic = "";
-                    else if (topic.startsWith("/")) topic = topic.substring(1);
-                    ttl = msg.getTtl();
-
-                    if (msg.getDeliveryAnnotations() != null) {
-                        Map<Symbol, Object> annotations = msg.getDeliveryAnnotations().getValue();
-                        if (annotations.containsKey(malformedConditionSymbol) &&
-                            annotations.get(malformedConditionSymbol) instanceof Symbol) {
-                            String condition = annotations.get(malformedConditionSymbol).toString();
-                            if (condition.equals("FORMATNOMAPPING")) {
-                                malformedReason = MalformedDelivery.MalformedReason.FORMATNOMAPPING;
-                            } else if (condition.equals("JMSNOMAPPING")) {
-                                malformedReason = MalformedDelivery.MalformedReason.JMSNOMAPPING;
-                            } else if (condition.equals("PAYLOADENCODING")) {
-                                malformedReason = MalformedDelivery.MalformedReason.PAYLOADENCODING;
-                            } else if (condition.equals("PAYLOADNOTAMQP")) {
-                                malformedReason = MalformedDelivery.MalformedReason.PAYLOADNOTAMQP;
-                            }
+                if (malformedReason == null && annotations != null) {
+                    if (annotations.containsKey(malformedConditionSymbol) &&
+                        annotations.get(malformedConditionSymbol) instanceof Symbol) {
+                        String condition = annotations.get(malformedConditionSymbol).toString();
+                        if (condition.equals("FORMATNOMAPPING")) {
+                            malformedReason = MalformedDelivery.MalformedReason.FORMATNOMAPPING;
+                        } else if (condition.equals("JMSNOMAPPING")) {
+                            malformedReason = MalformedDelivery.MalformedReason.JMSNOMAPPING;
+                        } else if (condition.equals("PAYLOADENCODING")) {
+                            malformedReason = MalformedDelivery.MalformedReason.PAYLOADENCODING;
+                        } else if (condition.equals("PAYLOADNOTAMQP")) {
+                            malformedReason = MalformedDelivery.MalformedReason.PAYLOADNOTAMQP;
+                        }
 
-                            if (malformedReason != null &&
-                                annotations.containsKey(malformedDescriptionSymbol) &&
-                                annotations.get(malformedDescriptionSymbol) instanceof String) {
-                                malformedDescription = (String)annotations.get(malformedDescriptionSymbol);
+                        if (malformedReason != null &&
+                            annotations.containsKey(malformedDescriptionSymbol) &&
+                            annotations.get(malformedDescriptionSymbol) instanceof String) {
+                            malformedDescription = (String)annotations.get(malformedDescriptionSymbol);
 
-                                if (annotations.containsKey(malformedMQMDFormatSymbol) &&
-                                    annotations.get(malformedMQMDFormatSymbol) instanceof String) {
-                                    malformedMQMDFormat = (String)annotations.get(malformedMQMDFormatSymbol);
-                                }
+                            if (annotations.containsKey(malformedMQMDFormatSymbol) &&
+                                annotations.get(malformedMQMDFormatSymbol) instanceof String) {
+                                malformedMQMDFormat = (String)annotations.get(malformedMQMDFormatSymbol);
+                            }
 
-                                if (annotations.containsKey(malformedMQMDCCSIDSymbol) &&
-                                    annotations.get(malformedMQMDCCSIDSymbol) instanceof Integer) {
-                                    malformedMQMDCCSID = (Integer)annotations.get(malformedMQMDCCSIDSymbol);
-                                }
+                            if (annotations.containsKey(malformedMQMDCCSIDSymbol) &&
+                                annotations.get(malformedMQMDCCSIDSymbol) instanceof Integer) {
+                                malformedMQMDCCSID = (Integer)annotations.get(malformedMQMDCCSIDSymbol);
                             }
                         }
                     }
                 }
 
+                final ReceivedMessage received = new ReceivedMessage(deliveryRequest.topicPattern, encodedProperties);
                 if (payloadBytes != null) {
                     if (malformedReason == null) {
-                        BytesDeliveryImpl delivery = new BytesDeliveryImpl(client, qos, shareName, topic, topicPattern, ttl, ByteBuffer.wrap(payloadBytes), properties, autoConfirm ? null : deliveryRequest);
+                        BytesDeliveryImpl delivery = new BytesDeliveryImpl(client, qos, received, ttl, ByteBuffer.wrap(payloadBytes), autoConfirm ? null : deliveryRequest);
                         listener.onMessage(client, context, delivery);
                     } else {
-                        MalformedDeliveryImpl delivery = new MalformedDeliveryImpl(client, qos, shareName, topic, topicPattern, ttl, ByteBuffer.wrap(payloadBytes),
-                                properties, autoConfirm ? null : deliveryRequest, malformedReason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
+                        MalformedDeliveryImpl delivery = new MalformedDeliveryImpl(client, qos, received, ttl, ByteBuffer.wrap(payloadBytes),
+                                autoConfirm ? null : deliveryRequest, malformedReason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
                         listener.onMalformed(client, context, delivery);
                     }
                 } else {
                     if (malformedReason == null) {
                         Delivery delivery;
                         if (payloadIsJson) {
-                            delivery = new JsonDeliveryImpl(client, qos, shareName, topic, topicPattern, ttl, payloadString, gsonBuilder, properties, autoConfirm ? null : deliveryRequest);
+                            delivery = new JsonDeliveryImpl(client, qos, received, ttl, payloadString, gsonBuilder, autoConfirm ? null : deliveryRequest);
                         } else {
-                            delivery = new StringDeliveryImpl(client, qos, shareName, topic, topicPattern, ttl, payloadString, properties, autoConfirm ? null : deliveryRequest);
+                            delivery = new StringDeliveryImpl(client, qos, received, ttl, payloadString, autoConfirm ? null : deliveryRequest);
                         }
                         listener.onMessage(client, context, delivery);
                     } else {
-                        MalformedDeliveryImpl delivery = new MalformedDeliveryImpl(client, qos, shareName, topic, topicPattern, ttl, ByteBuffer.wrap(payloadString.getBytes(Charset.forName("UTF-8"))),
-                                properties, autoConfirm ? null : deliveryRequest, malformedReason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
+                        MalformedDeliveryImpl delivery = new MalformedDeliveryImpl(client, qos, received, ttl, ByteBuffer.wrap(payloadString.getBytes(UTF8)),
+                                autoConfirm ? null : deliveryRequest, malformedReason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
                         listener.onMalformed(client, context, delivery);
                     }
                 }
@@ -243,8 +271,71 @@ class DestinationListenerWrapper<T> {
 
                 logger.exit(this, methodName);
             }
-        }, client, new CallbackPromiseImpl(client, true));
+        }, orderingCtx, new DeliveryPromise(client.newCallbackPromise(orderingCtx), deliveryRequest));
 
         logger.exit(this, methodName);
     }
+
+    /**
+     * Completes the promise for a delivery callback, releasing the message data if the callback
+     * fails without having taken it from the delivery request - for example, because the callback
+     * could not be scheduled.
+     */
+    private static class DeliveryPromise implements Promise<Void> {
+        private final Promise<Void> promise;
+        private final DeliveryRequest deliveryRequest;
+
+        private DeliveryPromise(Promise<Void> promise, DeliveryRequest deliveryRequest) {
+            this.promise = promise;
+            this.deliveryRequest = deliveryRequest;
+        }
+
+        @Override
+        public void setFailure(Exception exception) throws IllegalStateException {
+            deliveryRequest.releaseBuf();
+            promise.setFailure(exception);
+        }
+
+        @Override
+        public void setSuccess(Void result) throws IllegalStateException {
+            promise.setSuccess(result);
+        }
+
+        @Override
+        public boolean isComplete() {
+            return promise.isComplete();
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Reads the address of an encoded AMQP message, without decoding the rest of the message.
+     *
+     * @param buf the encoded message, between its reader and writer indexes.
+     * @return the address, or <code>null</code> if the message does not have an address or
+     *         is not a valid AMQP message.
+     */
+    static String peekAddress(ByteBuf buf) {
+        final MessageSections sections = MessageSections.find(buf);
+        return sections == null ? null : sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_TO);
+    }
+
+    /**
+     * Decodes some of the sections of an encoded message.
+     *
+     * @param sections a buffer, backed by an array, holding the encoded sections.
+     * @return a message containing only the decoded sections.
+     */
+    private static org.apache.qpid.proton.message.Message decode(ByteBuf sections) {
+        final org.apache.qpid.proton.message.Message msg = Proton.message();
+        msg.decode(sections.array(), sections.arrayOffset() + sections.readerIndex(), sections.readableBytes());
+        return msg;
+    }
+
+    private static byte[] toByteArray(ByteBuf buf) {
+        final byte[] result = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), result);
+        return result;
+    }
 }
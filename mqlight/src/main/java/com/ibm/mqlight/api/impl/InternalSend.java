@@ -21,25 +21,33 @@ package com.ibm.mqlight.api.impl;
 import io.netty.buffer.ByteBuf;
 
 import com.ibm.mqlight.api.QOS;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class InternalSend<T> extends Message implements QueueableWork {
 
-    private static final Logger logger = LoggerFactory.getLogger(InternalSend.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalSend.class);
 
     final String topic;
     final QOS qos;
-    final ByteBuf buf;
+    ByteBuf buf;
     final int length;
     final boolean retainLink;
     final CompletionFuture<T> future;
+    // When the send was requested, used to measure how long it takes to complete
+    final long createdNanos = System.nanoTime();
+    SendSpool.Record record = null;
+    boolean recovered = false;
 
     InternalSend(NonBlockingClientImpl client, String topic, QOS qos, ByteBuf buf, int length, boolean retainLink) {
+        this(topic, qos, buf, length, retainLink, new CompletionFuture<T>(client));
+    }
+
+    InternalSend(String topic, QOS qos, ByteBuf buf, int length, boolean retainLink, CompletionFuture<T> future) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, topic, qos, buf, length);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, qos, buf, length, retainLink, future);
 
-        this.future = new CompletionFuture<>(client);
+        this.future = future;
         this.topic = topic;
         this.qos = qos;
         this.buf = buf;
@@ -48,4 +56,37 @@ class InternalSend<T> extends Message implements QueueableWork {
 
         logger.exit(this, methodName);
     }
+
+    /**
+     * Returns the buffer holding the encoded message to its pool.  Called once the send
+     * has been completed (successfully or otherwise) and the message will not be re-sent.
+     */
+    void releaseBuf() {
+        if (buf != null) {
+            buf.release();
+            buf = null;
+        }
+    }
+
+    /**
+     * Writes the encoded message to a spool, unless it has already been spooled.
+     *
+     * @return <code>true</code> if the message is held in the spool.
+     */
+    boolean spool(SendSpool spool) {
+        if (record == null) {
+            record = spool.append(topic, qos, retainLink, buf);
+        }
+        return record != null;
+    }
+
+    /**
+     * Ensures that the encoded message is held in a buffer, reading it back from the spool if
+     * it has been released.
+     */
+    void load(SendSpool spool) {
+        if (buf == null) {
+            buf = spool.read(record);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.mqlight.api.QOS;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * A batch of messages, sent to the same topic, that is passed through the client (and engine)
+ * as a single message.  Each message in the batch is represented by an {@link InternalSend} so
+ * that, should the batch need to be queued or re-sent, the messages can be handled individually.
+ * The future associated with the batch completes once every message in the batch has completed -
+ * failing with the first exception reported for any of the messages.
+ */
+class InternalSendBatch<T> extends Message {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalSendBatch.class);
+
+    final String topic;
+    final List<InternalSend<Void>> sends;
+    final CompletionFuture<T> future;
+
+    private int outstanding;
+    private Exception cause = null;
+
+    InternalSendBatch(NonBlockingClientImpl client, String topic, QOS qos, List<ByteBuf> bufs, boolean retainLink) {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, client, topic, qos, bufs, retainLink);
+
+        this.future = new CompletionFuture<>(client);
+        this.topic = topic;
+        this.sends = new ArrayList<>(bufs.size());
+        this.outstanding = bufs.size();
+        for (ByteBuf buf : bufs) {
+            sends.add(new InternalSend<Void>(topic, qos, buf, buf.readableBytes(), retainLink, new MemberFuture(client)));
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    private void memberComplete(Exception exception) {
+        final String methodName = "memberComplete";
+        logger.entry(this, methodName, exception);
+
+        final boolean complete;
+        final Exception firstCause;
+        synchronized(this) {
+            if (cause == null) cause = exception;
+            complete = --outstanding == 0;
+            firstCause = cause;
+        }
+        if (complete) {
+            if (firstCause == null) {
+                future.setSuccess(null);
+            } else {
+                future.setFailure(firstCause);
+            }
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * The future for an individual message in the batch.  This has no listener of its own,
+     * and instead contributes towards the completion of the batch.
+     */
+    private class MemberFuture extends CompletionFuture<Void> {
+        private MemberFuture(NonBlockingClientImpl client) {
+            super(client);
+        }
+
+        @Override
+        public void setSuccess(Void result) throws IllegalStateException {
+            super.setSuccess(result);
+            memberComplete(null);
+        }
+
+        @Override
+        public void setFailure(Exception exception) throws IllegalStateException {
+            super.setFailure(exception);
+            memberComplete(exception);
+        }
+    }
+}
@@ -18,12 +18,12 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class InternalStart<T> extends Message {
   
-    private static final Logger logger = LoggerFactory.getLogger(InternalStart.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalStart.class);
   
     final CompletionFuture<T> future;
     InternalStart(NonBlockingClientImpl client) {
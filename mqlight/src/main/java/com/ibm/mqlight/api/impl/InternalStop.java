@@ -18,12 +18,12 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class InternalStop<T> extends Message {
   
-    private static final Logger logger = LoggerFactory.getLogger(InternalStop.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalStop.class);
   
     final CompletionFuture<T> future;
     InternalStop(NonBlockingClientImpl client) {
@@ -21,33 +21,39 @@ package com.ibm.mqlight.api.impl;
 import com.google.gson.GsonBuilder;
 import com.ibm.mqlight.api.DestinationListener;
 import com.ibm.mqlight.api.QOS;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.SubscribeOptions;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class InternalSubscribe<T> extends Message implements QueueableWork {
 
-    private static final Logger logger = LoggerFactory.getLogger(InternalSubscribe.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalSubscribe.class);
 
     final CompletionFuture<T> future;
     final SubscriptionTopic topic;
     final QOS qos;
     final int credit;
+    final int minCredit;
+    final int maxCredit;
     final boolean autoConfirm;
     final long ttl;
     final DestinationListenerWrapper<T> destListener;
 
-    InternalSubscribe(NonBlockingClientImpl client, SubscriptionTopic topic, QOS qos, int credit, boolean autoConfirm, long ttl,
-                      GsonBuilder gsonBuilder, DestinationListener<T> destListener, T context) {
+    InternalSubscribe(NonBlockingClientImpl client, SubscriptionTopic topic, QOS qos, int credit, int minCredit, int maxCredit,
+                      boolean autoConfirm, long ttl, GsonBuilder gsonBuilder, DestinationListener<T> destListener, T context,
+                      SubscribeOptions.Ordering ordering) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, topic, qos, credit, autoConfirm, ttl, gsonBuilder, destListener, context);
+        logger.entry(this, methodName, client, topic, qos, credit, minCredit, maxCredit, autoConfirm, ttl, gsonBuilder, destListener, context, ordering);
 
         future = new CompletionFuture<>(client);
         this.topic = topic;
         this.qos = qos;
         this.credit = credit;
+        this.minCredit = minCredit;
+        this.maxCredit = maxCredit;
         this.autoConfirm = autoConfirm;
         this.ttl = ttl;
-        this.destListener = new DestinationListenerWrapper<>(client, gsonBuilder, destListener, context);
+        this.destListener = new DestinationListenerWrapper<>(client, gsonBuilder, destListener, context, ordering);
 
         logger.exit(this, methodName);
     }
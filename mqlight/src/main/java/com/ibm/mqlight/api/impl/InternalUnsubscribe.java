@@ -18,12 +18,12 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class InternalUnsubscribe<T> extends Message implements QueueableWork {
   
-    private static final Logger logger = LoggerFactory.getLogger(InternalUnsubscribe.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(InternalUnsubscribe.class);
   
     final CompletionFuture<T> future;
     final String topicPattern;
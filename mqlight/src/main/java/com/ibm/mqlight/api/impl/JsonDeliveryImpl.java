@@ -18,8 +18,6 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import java.util.Map;
-
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -28,12 +26,12 @@ import com.google.gson.JsonSyntaxException;
 import com.ibm.mqlight.api.JsonDelivery;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class JsonDeliveryImpl extends DeliveryImpl implements JsonDelivery {
 
-    private static final Logger logger = LoggerFactory.getLogger(JsonDeliveryImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(JsonDeliveryImpl.class);
 
     private final String jsonString;
     private final GsonBuilder gsonBuilder;
@@ -41,14 +39,12 @@ public class JsonDeliveryImpl extends DeliveryImpl implements JsonDelivery {
     private Gson gson;
     private JsonParser jsonParser;
 
-    protected JsonDeliveryImpl(NonBlockingClientImpl client, QOS qos,
-                               String share, String topic, String topicPattern, long ttl,
-                               String data, GsonBuilder gsonBuilder,
-                               Map<String, Object> properties, DeliveryRequest deliveryRequest) {
-        super(client, qos, share, topic, topicPattern, ttl, properties, deliveryRequest);
+    protected JsonDeliveryImpl(NonBlockingClientImpl client, QOS qos, ReceivedMessage received, long ttl,
+                               String data, GsonBuilder gsonBuilder, DeliveryRequest deliveryRequest) {
+        super(client, qos, received, ttl, deliveryRequest);
 
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, qos, share, topic, topicPattern, ttl, data, gsonBuilder, properties, deliveryRequest);
+        logger.entry(this, methodName, client, qos, received, ttl, data, gsonBuilder, deliveryRequest);
 
         jsonString = data;
         this.gsonBuilder = gsonBuilder;
@@ -18,9 +18,9 @@
  */
 package com.ibm.mqlight.api.impl;
 
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.logging.logback.LogbackLoggingImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 
 /**
  * Sets up logging using logback, when it is available.
@@ -30,7 +30,7 @@ import com.ibm.mqlight.api.logging.LoggerFactory;
  */
 public class LogbackLogging {
     
-    private static final Logger logger = LoggerFactory.getLogger(LogbackLogging.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(LogbackLogging.class);
   
     /** Indicates whether or not logback is available. If it is not, methods in this class do nothing. */
     private static final boolean logbackAvailable;
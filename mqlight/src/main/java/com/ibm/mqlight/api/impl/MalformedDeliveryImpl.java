@@ -19,30 +19,29 @@
 package com.ibm.mqlight.api.impl;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import com.ibm.mqlight.api.MalformedDelivery;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class MalformedDeliveryImpl extends BytesDeliveryImpl implements MalformedDelivery {
 
-    private static final Logger logger = LoggerFactory.getLogger(MalformedDeliveryImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(MalformedDeliveryImpl.class);
 
     private final MalformedReason reason;
     private final String description;
     private final String format;
     private final int ccsid;
 
-    protected MalformedDeliveryImpl(NonBlockingClientImpl client, QOS qos, String shareName, String topic, String topicPattern, long ttl,
-                                    ByteBuffer data, Map<String, Object> properties, DeliveryRequest req, MalformedReason reason,
+    protected MalformedDeliveryImpl(NonBlockingClientImpl client, QOS qos, ReceivedMessage received, long ttl,
+                                    ByteBuffer data, DeliveryRequest req, MalformedReason reason,
                                     String malformedDescription, String malformedMQMDFormat, int malformedMQMDCCSID) {
-        super(client, qos, shareName, topic, topicPattern, ttl, data, properties, req);
+        super(client, qos, received, ttl, data, req);
 
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, qos, shareName, topic, topicPattern, ttl, data, properties, req, reason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
+        logger.entry(this, methodName, client, qos, received, ttl, data, req, reason, malformedDescription, malformedMQMDFormat, malformedMQMDCCSID);
 
         this.reason = reason;
         this.description = malformedDescription;
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.codec.DroppingWritableBuffer;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.ProtonJMessage;
+
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * Encodes outbound AMQP messages into pooled buffers.
+ * <p>
+ * The size of the buffer is estimated, up-front, from the sections of the message that
+ * the client populates (address, content type, application properties and body).  The
+ * estimate is an upper bound for the AMQP encoding of these types so, in practice, each
+ * message is encoded exactly once into a buffer drawn from the pool.  The resulting
+ * buffer must be released (see {@link InternalSend#releaseBuf()}) once the client has
+ * finished with it.
+ */
+class MessageEncoder {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(MessageEncoder.class);
+
+    /** Allows for the section descriptors, list / map headers and the scalar fields of the header and properties sections. */
+    static final int FIXED_OVERHEAD = 128;
+
+    /** Largest encoding of a variable width type's constructor and length (str32-utf8, vbin32, etc.) */
+    private static final int VARIABLE_WIDTH_OVERHEAD = 5;
+
+    /** Largest encoding of a fixed width type (e.g. long, double, timestamp) including its constructor. */
+    private static final int FIXED_WIDTH_SIZE = 9;
+
+    /** Used for any value whose encoded size cannot be cheaply bounded. */
+    private static final int UNKNOWN_SIZE = 64;
+
+    /** Encoding of the descriptor for an amqp-value section. */
+    private static final byte[] AMQP_VALUE_DESCRIPTOR = new byte[] { 0x00, 0x53, 0x77 };
+
+    /** Format codes for binary data with a one byte and four byte length. */
+    private static final byte VBIN8 = (byte)0xa0;
+    private static final byte VBIN32 = (byte)0xb0;
+
+    /** Largest encoding of an amqp-value section, excluding the binary data it contains. */
+    private static final int BINARY_VALUE_SECTION_OVERHEAD = AMQP_VALUE_DESCRIPTOR.length + VARIABLE_WIDTH_OVERHEAD;
+
+    private static final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    private MessageEncoder() {}
+
+    /**
+     * Encodes a message into a pooled buffer.
+     *
+     * @param msg the message to encode.
+     * @return a buffer whose readable bytes are the encoded form of the message.  The
+     *         buffer is always backed by an array.
+     */
+    static ByteBuf encode(Message msg) {
+        final String methodName = "encode";
+        logger.entry(methodName, msg);
+
+        final ByteBuf buf = encode(msg, 0);
+
+        logger.exit(methodName, buf);
+
+        return buf;
+    }
+
+    private static ByteBuf encode(Message msg, int additionalCapacity) {
+        final String methodName = "encode";
+
+        ByteBuf buf = null;
+        final int estimate = estimateEncodedSize(msg);
+        if (fits(estimate, additionalCapacity)) {
+            buf = encode(msg, estimate, additionalCapacity);
+        }
+
+        if (buf == null) {
+            // Should not happen, as the estimate is an upper bound - but a user supplied
+            // value might not be accounted for.  So measure the exact size of the encoded
+            // message, and try once more with that.
+            final int length = (msg instanceof ProtonJMessage) ? ((ProtonJMessage)msg).encode(new DroppingWritableBuffer()) : -1;
+            if (logger.isTraceEnabled()) logger.data(methodName, (Object)"Estimate too small: {}, actual: {}", estimate, length);
+            if (fits(length, additionalCapacity)) {
+                buf = encode(msg, length, additionalCapacity);
+            }
+            if (buf == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("Message is too large to be encoded");
+                logger.throwing(methodName, exception);
+                throw exception;
+            }
+        }
+
+        return buf;
+    }
+
+    /**
+     * @return <code>true</code> if a buffer can be allocated for <code>capacity</code> bytes of
+     *         encoded message, followed by <code>additionalCapacity</code> bytes.
+     */
+    private static boolean fits(int capacity, int additionalCapacity) {
+        return capacity >= 0 && (long)capacity + additionalCapacity <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return a buffer containing the encoded message, or <code>null</code> if the message does
+     *         not fit into <code>capacity</code> bytes.
+     */
+    private static ByteBuf encode(Message msg, int capacity, int additionalCapacity) {
+        final ByteBuf buf = allocator.heapBuffer(capacity + additionalCapacity, capacity + additionalCapacity);
+        try {
+            final int length = msg.encode(buf.array(), buf.arrayOffset(), capacity);
+            buf.writerIndex(length);
+            return buf;
+        } catch (BufferOverflowException e) {
+            buf.release();
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a message, with a binary body, into a pooled buffer.  The body is supplied
+     * separately from the message and is copied directly from <code>body</code> into the
+     * pooled buffer, after the other sections of the message have been encoded.  This means
+     * that the body is only copied once, regardless of whether <code>body</code> is a heap,
+     * direct or memory-mapped buffer.
+     *
+     * @param msg the message to encode.  This must not already have a body.
+     * @param body the binary data to encode as the body of the message.  The data between
+     *             the position and limit of this buffer is used - and neither the position
+     *             or limit are modified.
+     * @return a buffer whose readable bytes are the encoded form of the message.  The
+     *         buffer is always backed by an array.
+     */
+    static ByteBuf encode(Message msg, ByteBuffer body) {
+        final String methodName = "encode";
+        logger.entry(methodName, msg, body);
+
+        final int bodyLength = body.remaining();
+        final ByteBuf buf = encode(msg, BINARY_VALUE_SECTION_OVERHEAD + bodyLength);
+
+        // Append an amqp-value section containing the data as binary.
+        buf.writeBytes(AMQP_VALUE_DESCRIPTOR);
+        if (bodyLength <= 0xff) {
+            buf.writeByte(VBIN8);
+            buf.writeByte(bodyLength);
+        } else {
+            buf.writeByte(VBIN32);
+            buf.writeInt(bodyLength);
+        }
+        buf.writeBytes(body.duplicate());
+
+        logger.exit(methodName, buf);
+
+        return buf;
+    }
+
+    /**
+     * @param msg the message for which to calculate an encoded size.
+     * @return an upper bound on the number of bytes needed to encode the message.
+     */
+    static int estimateEncodedSize(Message msg) {
+        int size = FIXED_OVERHEAD;
+        size += estimateEncodedSize(msg.getAddress());
+        size += estimateEncodedSize(msg.getContentType());
+
+        final ApplicationProperties applicationProperties = msg.getApplicationProperties();
+        if (applicationProperties != null && applicationProperties.getValue() != null) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)applicationProperties.getValue()).entrySet()) {
+                size += estimateEncodedSize(entry.getKey());
+                size += estimateEncodedSize(entry.getValue());
+            }
+        }
+
+        final Object body = msg.getBody();
+        if (body instanceof AmqpValue) {
+            size += estimateEncodedSize(((AmqpValue)body).getValue());
+        } else if (body instanceof Data) {
+            size += estimateEncodedSize(((Data)body).getValue());
+        } else if (body != null) {
+            size += UNKNOWN_SIZE;
+        }
+
+        return size;
+    }
+
+    private static int estimateEncodedSize(Object value) {
+        final int result;
+        if (value == null) {
+            result = 1;
+        } else if (value instanceof String) {
+            // Each UTF-16 char encodes to at most 3 bytes of UTF-8 (surrogate pairs encode to 4 bytes)
+            result = VARIABLE_WIDTH_OVERHEAD + (((String)value).length() * 3);
+        } else if (value instanceof Symbol) {
+            result = VARIABLE_WIDTH_OVERHEAD + value.toString().length();
+        } else if (value instanceof Binary) {
+            result = VARIABLE_WIDTH_OVERHEAD + ((Binary)value).getLength();
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            result = FIXED_WIDTH_SIZE;
+        } else {
+            result = UNKNOWN_SIZE;
+        }
+        return result;
+    }
+}
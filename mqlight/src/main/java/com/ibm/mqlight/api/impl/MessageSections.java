@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Locates the sections of an encoded AMQP message, so that each section can be decoded only
+ * if it is needed.  The sections are found by reading the descriptor of each section and
+ * skipping over its value, without decoding it.  A few scalar fields (such as the address of
+ * the message) can also be read directly from the encoded sections.
+ */
+final class MessageSections {
+
+    /** Descriptor codes of the AMQP message sections, in the order they appear in a message. */
+    static final int HEADER = 0x70;
+    static final int DELIVERY_ANNOTATIONS = 0x71;
+    static final int MESSAGE_ANNOTATIONS = 0x72;
+    static final int PROPERTIES = 0x73;
+    static final int APPLICATION_PROPERTIES = 0x74;
+    static final int DATA = 0x75;
+    static final int AMQP_SEQUENCE = 0x76;
+    static final int AMQP_VALUE = 0x77;
+    static final int FOOTER = 0x78;
+
+    /** Index of the <code>ttl</code> field in the header section. */
+    static final int HEADER_TTL = 2;
+
+    /** Index of the <code>to</code> field (the address) in the properties section. */
+    static final int PROPERTIES_TO = 2;
+
+    /** Index of the <code>content-type</code> field in the properties section. */
+    static final int PROPERTIES_CONTENT_TYPE = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Map<String, Integer> symbolicDescriptors = new HashMap<>();
+    static {
+        symbolicDescriptors.put("amqp:header:list", HEADER);
+        symbolicDescriptors.put("amqp:delivery-annotations:map", DELIVERY_ANNOTATIONS);
+        symbolicDescriptors.put("amqp:message-annotations:map", MESSAGE_ANNOTATIONS);
+        symbolicDescriptors.put("amqp:properties:list", PROPERTIES);
+        symbolicDescriptors.put("amqp:application-properties:map", APPLICATION_PROPERTIES);
+        symbolicDescriptors.put("amqp:data:binary", DATA);
+        symbolicDescriptors.put("amqp:amqp-sequence:list", AMQP_SEQUENCE);
+        symbolicDescriptors.put("amqp:amqp-value:*", AMQP_VALUE);
+        symbolicDescriptors.put("amqp:footer:map", FOOTER);
+    }
+
+    private final ByteBuf buf;
+
+    /** Start and end indexes of each section, indexed by descriptor code less {@link #HEADER}, or -1 if the section is absent. */
+    private final int[] starts = new int[FOOTER - HEADER + 1];
+    private final int[] ends = new int[FOOTER - HEADER + 1];
+
+    private MessageSections(ByteBuf buf) {
+        this.buf = buf;
+        Arrays.fill(starts, -1);
+        Arrays.fill(ends, -1);
+    }
+
+    /**
+     * Finds the sections of an encoded message.  The buffer's indexes are not changed, and the
+     * buffer must not be released while the result is in use.
+     *
+     * @param buf the encoded message, between its reader and writer indexes.
+     * @return the sections of the message, or <code>null</code> if the data is not a sequence
+     *         of AMQP message sections.
+     */
+    static MessageSections find(ByteBuf buf) {
+        final MessageSections result = new MessageSections(buf);
+        final int end = buf.writerIndex();
+        int index = buf.readerIndex();
+        int previous = -1;
+        while (index < end) {
+            // Each section is a described type, with a numeric or symbolic descriptor
+            final int start = index;
+            if (index + 3 > end || buf.getByte(index) != 0) return null;
+            final int descriptor;
+            switch(buf.getUnsignedByte(index + 1)) {
+            case 0x53:  // smallulong
+                descriptor = buf.getUnsignedByte(index + 2);
+                index += 3;
+                break;
+            case 0x80:  // ulong
+                if (index + 10 > end) return null;
+                final long code = buf.getLong(index + 2);
+                if (code < HEADER || code > FOOTER) return null;
+                descriptor = (int)code;
+                index += 10;
+                break;
+            case 0xa3:  // sym8
+                final int length = buf.getUnsignedByte(index + 2);
+                if (index + 3 + length > end) return null;
+                final Integer symbolic = symbolicDescriptors.get(buf.toString(index + 3, length, UTF8));
+                if (symbolic == null) return null;
+                descriptor = symbolic;
+                index += 3 + length;
+                break;
+            default:
+                return null;
+            }
+
+            // Sections must be in order, and only the body sections can be repeated
+            if (descriptor < HEADER || descriptor > FOOTER || descriptor < previous) return null;
+            if (descriptor == previous && descriptor != DATA && descriptor != AMQP_SEQUENCE) return null;
+
+            index = skipValue(buf, index, end);
+            if (index < 0) return null;
+            if (descriptor != previous) result.starts[descriptor - HEADER] = start;
+            result.ends[descriptor - HEADER] = index;
+            previous = descriptor;
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the message contains the section.
+     */
+    boolean contains(int section) {
+        return starts[section - HEADER] >= 0;
+    }
+
+    /**
+     * @return a buffer sharing the encoded sections from <code>first</code> to <code>last</code>
+     *         (inclusive) that are present in the message, or <code>null</code> if none of them
+     *         are.  The result is itself a valid encoding of a message, containing only these
+     *         sections.
+     */
+    ByteBuf slice(int first, int last) {
+        int start = -1;
+        int end = -1;
+        for (int section = first; section <= last; ++section) {
+            if (contains(section)) {
+                if (start < 0) start = starts[section - HEADER];
+                end = ends[section - HEADER];
+            }
+        }
+        return start < 0 ? null : buf.slice(start, end - start);
+    }
+
+    /**
+     * @return a copy of the encoded sections from <code>first</code> to <code>last</code>, or
+     *         <code>null</code> if none of them are present.
+     */
+    byte[] copy(int first, int last) {
+        final ByteBuf slice = slice(first, last);
+        if (slice == null) return null;
+        final byte[] result = new byte[slice.readableBytes()];
+        slice.getBytes(slice.readerIndex(), result);
+        return result;
+    }
+
+    /**
+     * @return the string or symbol value of a field of a list section (such as the properties
+     *         section), or <code>null</code> if it is not present or is not a string.
+     */
+    String getString(int section, int field) {
+        int index = findField(section, field);
+        if (index < 0) return null;
+        final int end = ends[section - HEADER];
+        final int length;
+        switch(buf.getUnsignedByte(index)) {
+        case 0xa1:  // str8-utf8
+        case 0xa3:  // sym8
+            if (index + 2 > end) return null;
+            length = buf.getUnsignedByte(index + 1);
+            index += 2;
+            break;
+        case 0xb1:  // str32-utf8
+        case 0xb3:  // sym32
+            if (index + 5 > end) return null;
+            length = buf.getInt(index + 1);
+            index += 5;
+            break;
+        default:    // null, or not a string
+            return null;
+        }
+        if (length < 0 || length > end - index) return null;
+        return buf.toString(index, length, UTF8);
+    }
+
+    /**
+     * @return the unsigned integer value of a field of a list section (such as the header
+     *         section), or 0 if it is not present or is not an unsigned integer.
+     */
+    long getUnsignedInt(int section, int field) {
+        final int index = findField(section, field);
+        if (index < 0) return 0;
+        final int end = ends[section - HEADER];
+        switch(buf.getUnsignedByte(index)) {
+        case 0x52:  // smalluint
+            return index + 2 > end ? 0 : buf.getUnsignedByte(index + 1);
+        case 0x70:  // uint
+            return index + 5 > end ? 0 : buf.getUnsignedInt(index + 1);
+        default:    // uint0, null, or not an unsigned integer
+            return 0;
+        }
+    }
+
+    /**
+     * @return the index of the encoded value of a field of a list section, or -1 if the
+     *         section or field is not present.
+     */
+    private int findField(int section, int field) {
+        if (!contains(section)) return -1;
+        final int end = ends[section - HEADER];
+        // Skip the descriptor, to the list that is the value of the section
+        int index = skipValue(buf, starts[section - HEADER] + 1, end);
+        if (index < 0 || index + 1 > end) return -1;
+        final long count;
+        switch(buf.getUnsignedByte(index)) {
+        case 0xc0:  // list8
+            if (index + 3 > end) return -1;
+            count = buf.getUnsignedByte(index + 2);
+            index += 3;
+            break;
+        case 0xd0:  // list32
+            if (index + 9 > end) return -1;
+            count = buf.getUnsignedInt(index + 5);
+            index += 9;
+            break;
+        default:    // list0, or not a list
+            return -1;
+        }
+        if (count <= field) return -1;
+        for (int i = 0; i < field && index >= 0; ++i) {
+            index = skipValue(buf, index, end);
+        }
+        return (index < 0 || index + 1 > end) ? -1 : index;
+    }
+
+    /**
+     * @return the index following the AMQP encoded value at <code>index</code>, or -1 if the
+     *         value is not valid or extends beyond <code>end</code>.
+     */
+    private static int skipValue(ByteBuf buf, int index, int end) {
+        if (index + 1 > end) return -1;
+        final int formatCode = buf.getUnsignedByte(index);
+        if (formatCode == 0) {
+            // A described type: the descriptor, followed by the value
+            final int next = skipValue(buf, index + 1, end);
+            return next < 0 ? -1 : skipValue(buf, next, end);
+        }
+
+        // The width of the encoding is given by the subcategory (the top four bits) of the
+        // format code: either a fixed width, or a one or four byte size followed by that
+        // number of bytes.
+        final long next;
+        switch(formatCode >> 4) {
+        case 0x4: next = index + 1L; break;
+        case 0x5: next = index + 2L; break;
+        case 0x6: next = index + 3L; break;
+        case 0x7: next = index + 5L; break;
+        case 0x8: next = index + 9L; break;
+        case 0x9: next = index + 17L; break;
+        case 0xa:
+        case 0xc:
+        case 0xe:
+            if (index + 2 > end) return -1;
+            next = index + 2L + buf.getUnsignedByte(index + 1);
+            break;
+        case 0xb:
+        case 0xd:
+        case 0xf:
+            if (index + 5 > end) return -1;
+            next = index + 5L + buf.getUnsignedInt(index + 1);
+            break;
+        default:
+            return -1;
+        }
+        return next > end ? -1 : (int)next;
+    }
+}
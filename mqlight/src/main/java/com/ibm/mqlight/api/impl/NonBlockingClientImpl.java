@@ -20,16 +20,24 @@ package com.ibm.mqlight.api.impl;
 
 import io.netty.buffer.ByteBuf;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
 
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
@@ -40,7 +48,9 @@ import com.github.oxo42.stateless4j.StateMachine;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.ibm.mqlight.api.ClientException;
+import com.ibm.mqlight.api.ClientMetrics;
 import com.ibm.mqlight.api.ClientOptions;
+import com.ibm.mqlight.api.ClientRuntimeException;
 import com.ibm.mqlight.api.ClientState;
 import com.ibm.mqlight.api.CompletionListener;
 import com.ibm.mqlight.api.DestinationListener;
@@ -50,6 +60,7 @@ import com.ibm.mqlight.api.NonBlockingClientListener;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.ReplacedException;
+import com.ibm.mqlight.api.SendBufferFullException;
 import com.ibm.mqlight.api.SendOptions;
 import com.ibm.mqlight.api.StartingException;
 import com.ibm.mqlight.api.StateException;
@@ -62,6 +73,8 @@ import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.endpoint.EndpointService;
 import com.ibm.mqlight.api.impl.callback.CallbackExceptionNotification;
 import com.ibm.mqlight.api.impl.callback.CallbackPromiseImpl;
+import com.ibm.mqlight.api.impl.callback.CallbackServiceFactory;
+import com.ibm.mqlight.api.impl.callback.ExecutorCallbackService;
 import com.ibm.mqlight.api.impl.callback.FlushResponse;
 import com.ibm.mqlight.api.impl.callback.ThreadPoolCallbackService;
 import com.ibm.mqlight.api.impl.endpoint.BluemixEndpointService;
@@ -79,20 +92,21 @@ import com.ibm.mqlight.api.impl.engine.Engine;
 import com.ibm.mqlight.api.impl.engine.EngineConnection;
 import com.ibm.mqlight.api.impl.engine.OpenRequest;
 import com.ibm.mqlight.api.impl.engine.OpenResponse;
+import com.ibm.mqlight.api.impl.engine.SendBatchRequest;
 import com.ibm.mqlight.api.impl.engine.SendRequest;
 import com.ibm.mqlight.api.impl.engine.SendResponse;
 import com.ibm.mqlight.api.impl.engine.SubscribeRequest;
 import com.ibm.mqlight.api.impl.engine.SubscribeResponse;
 import com.ibm.mqlight.api.impl.engine.UnsubscribeRequest;
 import com.ibm.mqlight.api.impl.engine.UnsubscribeResponse;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.network.NettyNetworkService;
 import com.ibm.mqlight.api.impl.timer.CancelResponse;
 import com.ibm.mqlight.api.impl.timer.PopResponse;
 import com.ibm.mqlight.api.impl.timer.TimerPromiseImpl;
 import com.ibm.mqlight.api.impl.timer.TimerServiceImpl;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 import com.ibm.mqlight.api.network.NetworkService;
 import com.ibm.mqlight.api.timer.TimerService;
 
@@ -101,7 +115,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
     static {
         LogbackLogging.setup();
     }
-    private static final Logger logger = LoggerFactory.getLogger(NonBlockingClientImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(NonBlockingClientImpl.class);
 
     private final EndpointService endpointService;
     private final CallbackService callbackService;
@@ -109,6 +123,14 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
     private final TimerService timer;
     private final GsonBuilder gsonBuilder;
     private final Gson gson;
+    private final ClientOptions clientOptions;
+    // Limits the sends held by the client, or null if the client's options set no limits
+    private final SendBudget sendBudget;
+
+    private final ClientMetricsImpl metrics = new ClientMetricsImpl();
+    // The client's MBean, or null if JMX is not enabled in the client's options
+    private ClientMonitor monitor = null;
+    private SendSpool sendSpool = null;
 
     private final StateMachine<NonBlockingClientState, NonBlockingClientTrigger> stateMachine;
 
@@ -125,7 +147,8 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
     private volatile String serviceUri = null;
 
     private Endpoint currentEndpoint = null;
-    private EngineConnection currentConnection = null;
+    // Read by the client monitor, which runs on JMX threads
+    private volatile EngineConnection currentConnection = null;
     private final Map<SendRequest, InternalSend<?>> outstandingSends = new HashMap<>();
 
     private final NonBlockingClientListenerWrapper<?> clientListener;
@@ -134,14 +157,26 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
 
     private int undrainedSends = 0;
     private boolean pendingDrain = false;
+    // The thread currently running the client's processing, used to stop a send blocking the
+    // thread that would complete the sends it is waiting for.  Each thread only compares this
+    // with itself, so it does not need to be volatile.
+    private Thread processingThread = null;
+
+    // The number of callbacks, run with an ordering context other than this client, that have
+    // not yet completed.  Stopping the client waits for these, as well as the callbacks run with
+    // the client as their ordering context.
+    private final AtomicInteger outstandingCallbacks = new AtomicInteger(0);
+    // Set while a flush of the callback service is waiting for the outstanding callbacks.
+    private final AtomicBoolean flushWaiting = new AtomicBoolean(false);
 
     private boolean stoppedByUser = false;
     private ClientException lastException = null;
 
     long retryDelay = 0;
 
-    // topic pattern -> information about subscribed destination
-    private final HashMap<SubscriptionTopic, SubData> subscribedDestinations = new HashMap<>();
+    // topic pattern -> information about subscribed destination.  Only updated by the client's own
+    // processing, but concurrent so that getMetrics() can iterate over it from any thread.
+    private final Map<SubscriptionTopic, SubData> subscribedDestinations = new ConcurrentHashMap<>();
 
     static class SubData {
         private enum State {
@@ -156,16 +191,20 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         final DestinationListenerWrapper<?> listener;
         private final QOS qos;
         private final int credit;
+        private final int minCredit;
+        private final int maxCredit;
         private final boolean autoConfirm;
         private final long ttl;
 
         InternalSubscribe<?> inProgressSubscribe;
         InternalUnsubscribe<?> inProgressUnsubscribe;
 
-        public SubData(DestinationListenerWrapper<?> listener, QOS qos, int credit, boolean autoConfirm, long ttl) {
+        public SubData(DestinationListenerWrapper<?> listener, QOS qos, int credit, int minCredit, int maxCredit, boolean autoConfirm, long ttl) {
             this.listener = listener;
             this.qos = qos;
             this.credit = credit;
+            this.minCredit = minCredit;
+            this.maxCredit = maxCredit;
             this.autoConfirm = autoConfirm;
             this.ttl = ttl;
         }
@@ -174,7 +213,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         public String toString() {
             return "SubData [state=" + state + ", pending=" + pending + ", pendingDeliveries="
                     + pendingDeliveries + ", listener=" + listener + ", qos=" + qos + ", credit="
-                    + credit + ", autoConfirm=" + autoConfirm + ", ttl=" + ttl
+                    + credit + ", minCredit=" + minCredit + ", maxCredit=" + maxCredit + ", autoConfirm=" + autoConfirm + ", ttl=" + ttl
                     + ", inProgressSubscribe=" + inProgressSubscribe + ", inProgressUnsubscribe="
                     + inProgressUnsubscribe + "]";
         }
@@ -195,8 +234,21 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             ClientOptions options,
             NonBlockingClientListener<T>listener,
             T context) {
+        this(endpointService, callbackService, engine, timerService, gsonBuilder, options,
+             options == null ? null : options.getProcessingExecutor(), listener, context);
+    }
+
+    protected <T> NonBlockingClientImpl(EndpointService endpointService,
+            CallbackService callbackService,
+            ComponentImpl engine,
+            TimerService timerService,
+            GsonBuilder gsonBuilder,
+            ClientOptions options,
+            Executor processingExecutor,
+            NonBlockingClientListener<T>listener,
+            T context) {
         final String methodName = "<init>";
-        logger.entry(this, methodName, callbackService, engine, timerService, gsonBuilder, options, listener, context);
+        logger.entry(this, methodName, callbackService, engine, timerService, gsonBuilder, options, processingExecutor, listener, context);
 
         if (endpointService == null) {
           final IllegalArgumentException exception = new IllegalArgumentException("EndpointService cannot be null");
@@ -226,14 +278,105 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         this.gsonBuilder = gsonBuilder == null ? new GsonBuilder() : gsonBuilder;
         this.gson = this.gsonBuilder.create();
         if (options == null) options = defaultClientOptions;
+        this.clientOptions = options;
+        this.sendBudget = (options.getMaxSendBufferBytes() == 0 && options.getMaxSendBufferMessages() == 0) ?
+                null : new SendBudget(options.getMaxSendBufferBytes(), options.getMaxSendBufferMessages());
+        this.component = new ComponentImpl(processingExecutor) {
+            @Override
+            protected void onReceive(Message message) {
+                final Thread previous = processingThread;
+                processingThread = Thread.currentThread();
+                try {
+                    NonBlockingClientImpl.this.onReceive(message);
+                } finally {
+                    processingThread = previous;
+                }
+            }
+        };
         clientId = options.getId() != null ? options.getId() : generateClientId();
         logger.setClientId(clientId);
         clientListener = new NonBlockingClientListenerWrapper<>(this, listener, context);
         stateMachine = NonBlockingFSMFactory.newStateMachine(this);
+        if (options.isJmxEnabled()) {
+            try {
+                monitor = new ClientMonitor(this);
+                monitor.register();
+            } catch(JMException e) {
+                // Carry on, without the MBean.
+                logger.data(this, methodName, "Unable to create MBean", (Object)e);
+            }
+        }
+        if (options.getSendSpoolDirectory() != null) {
+            try {
+                openSendSpool();
+            } catch(IOException e) {
+                final ClientRuntimeException exception = new ClientRuntimeException("Unable to use send spool directory: " + e.getMessage(), e);
+                logger.throwing(this, methodName, exception);
+                throw exception;
+            }
+        }
         endpointService.lookup(new EndpointPromiseImpl(this));
         logger.exit(this, methodName);
     }
 
+    /**
+     * Opens the spool directory set in the client's options, and queues any sends recovered from
+     * it to be sent once the client connects.  Recovered sends were made by a previous user of
+     * the spool directory, so there is no listener to notify when they complete.
+     */
+    private void openSendSpool() throws IOException {
+        final String methodName = "openSendSpool";
+        logger.entry(this, methodName);
+
+        sendSpool = new SendSpool(clientOptions.getSendSpoolDirectory(), SendSpool.DEFAULT_SEGMENT_SIZE);
+        for (SendSpool.Record record : sendSpool.getRecovered()) {
+            final InternalSend<Void> is = new InternalSend<>(record.topic, record.qos, null, record.length, record.retainLink, new CompletionFuture<Void>(this));
+            is.record = record;
+            is.recovered = true;
+            if (sendBudget != null) sendBudget.add(record.length, 1);
+            pendingWork.addLast(is);
+        }
+
+        logger.exit(this, methodName, sendSpool.getRecovered().size());
+    }
+
+    /**
+     * Leaves a send that was recovered from the spool in the spool when it fails, so that it is
+     * recovered again when the client is restarted.  No application is waiting to be told that
+     * it failed, so would not send it again.
+     */
+    private void retainRecoveredSend(InternalSend<?> is) {
+        if (is.recovered) {
+            is.record = null;
+        }
+    }
+
+    /**
+     * Queues a send to be sent once the client has connected.  If the client has a spool, the
+     * encoded message is moved out of memory and into the spool.
+     */
+    private void queueSend(InternalSend<?> is) {
+        if (sendSpool != null && is.spool(sendSpool)) {
+            is.releaseBuf();
+        }
+        pendingWork.addLast(is);
+    }
+
+    /**
+     * Creates the request that passes a send to the engine, reading the encoded message back
+     * from the client's spool if it has been spooled.  If the client spools unsettled sends, an
+     * at-least-once send is written to the spool until it is confirmed.
+     */
+    private SendRequest newSendRequest(InternalSend<?> is) {
+        if (sendSpool != null) {
+            if (is.qos == QOS.AT_LEAST_ONCE && clientOptions.isSpoolUnsettledSends()) {
+                is.spool(sendSpool);
+            }
+            is.load(sendSpool);
+        }
+        return new SendRequest(currentConnection, is.topic, is.buf, is.length, is.qos, is.retainLink);
+    }
+
     public <T> NonBlockingClientImpl(EndpointService endpointService,
                                      CallbackService callbackService,
                                      NetworkService networkService,
@@ -242,16 +385,45 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                                      ClientOptions options,
                                      NonBlockingClientListener<T>listener,
                                      T context) {
-        this(endpointService, callbackService, new Engine(networkService, timerService), timerService, gsonBuilder, options, listener, context);
+        this(endpointService, callbackService,
+             new Engine(networkService, timerService, options == null ? null : options.getProcessingExecutor()),
+             timerService, gsonBuilder, options, listener, context);
     }
 
-    public <T> NonBlockingClientImpl(String service, ClientOptions options, NonBlockingClientListener<T> listener, T context) {
-        this(service == null ? new BluemixEndpointService(null, null)
+    /**
+     * Creates a client that shares its callback, network and timer services, and the executors
+     * used for its internal processing, with other clients.  A processing executor specified
+     * in <code>options</code> takes precedence over <code>processingExecutor</code>.
+     */
+    public <T> NonBlockingClientImpl(String service,
+                                     CallbackService callbackService,
+                                     NetworkService networkService,
+                                     TimerService timerService,
+                                     Executor processingExecutor,
+                                     ClientOptions options,
+                                     NonBlockingClientListener<T> listener,
+                                     T context) {
+        this(createEndpointService(service, options), callbackService,
+             new Engine(networkService, timerService,
+                        options == null || options.getProcessingExecutor() == null ? processingExecutor : options.getProcessingExecutor()),
+             timerService, null, options,
+             options == null || options.getProcessingExecutor() == null ? processingExecutor : options.getProcessingExecutor(),
+             listener, context);
+    }
+
+    private static EndpointService createEndpointService(String service, ClientOptions options) {
+        return service == null ? new BluemixEndpointService(null, null)
                 : new SingleEndpointService(service,
                         options == null ? null : options.getUser(),
                         options == null ? null : options.getPassword(),
-                        options == null ? null : options.getSSLOptions()),
-                new ThreadPoolCallbackService(5), new NettyNetworkService(),
+                        options == null ? null : options.getSSLOptions());
+    }
+
+    public <T> NonBlockingClientImpl(String service, ClientOptions options, NonBlockingClientListener<T> listener, T context) {
+        this(createEndpointService(service, options),
+                CallbackServiceFactory.create(options == null ? ClientOptions.CallbackExecution.THREAD_POOL : options.getCallbackExecution(),
+                                              options == null ? 5 : options.getCallbackThreads()),
+                new NettyNetworkService(),
                 new TimerServiceImpl(), null, options, listener, context);
     }
 
@@ -272,12 +444,79 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         return externalState;
     }
 
+    @Override
+    public long getSendBufferBytes() {
+        return sendBudget == null ? 0 : sendBudget.getBytes();
+    }
+
+    @Override
+    public int getSendBufferMessages() {
+        return sendBudget == null ? 0 : sendBudget.getMessages();
+    }
+
+    NonBlockingClientState getInternalState() {
+        return stateMachine.getState();
+    }
+
+    Endpoint getCurrentEndpoint() {
+        return currentEndpoint;
+    }
+
+    EngineConnection getCurrentConnection() {
+        return currentConnection;
+    }
+
+    ClientMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * @return a description of each destination the client is subscribed to, for its MBean.
+     *         Subscriptions that use adaptive credit report their current credit window.
+     */
+    ClientMXBean.Subscription[] describeSubscriptions() {
+        final EngineConnection connection = currentConnection;
+        final List<ClientMXBean.Subscription> result = new ArrayList<>();
+        for (Map.Entry<SubscriptionTopic, SubData> entry : subscribedDestinations.entrySet()) {
+            final SubData sd = entry.getValue();
+            final int window = connection == null ? -1 : connection.getCreditWindow(entry.getKey().toString());
+            result.add(new ClientMXBean.Subscription(entry.getKey().getTopic(), String.valueOf(sd.state), String.valueOf(sd.qos),
+                                                     window < 0 ? sd.credit : window, sd.pendingDeliveries.size()));
+        }
+        return result.toArray(new ClientMXBean.Subscription[result.size()]);
+    }
+
+    @Override
+    public ClientMetrics getMetrics() {
+        final String methodName = "getMetrics";
+        logger.entry(this, methodName);
+
+        // The queue depths are read without synchronizing with the client's processing, so are
+        // only approximate if the client is busy.
+        final Map<String, Integer> unconfirmedDeliveries = new HashMap<>();
+        for (Map.Entry<SubscriptionTopic, SubData> entry : subscribedDestinations.entrySet()) {
+            unconfirmedDeliveries.put(entry.getKey().getTopic(), entry.getValue().pendingDeliveries.size());
+        }
+        final long queuedCallbacks;
+        if (callbackService instanceof ExecutorCallbackService) {
+            queuedCallbacks = ((ExecutorCallbackService) callbackService).getQueuedCallbackCount();
+        } else if (callbackService instanceof ThreadPoolCallbackService) {
+            queuedCallbacks = ((ThreadPoolCallbackService) callbackService).getQueuedCallbackCount();
+        } else {
+            queuedCallbacks = -1;
+        }
+        final ClientMetrics result = metrics.snapshot(outstandingSends.size(), pendingWork.size(), unconfirmedDeliveries, queuedCallbacks);
+
+        logger.exit(this, methodName, result);
+        return result;
+    }
+
     @Override
     public <T> boolean send(String topic, String data, Map<String, Object> properties,
             SendOptions sendOptions, CompletionListener<T> listener, T context)
             throws StoppedException {
         final String methodName = "send";
-        logger.entry(this, methodName, topic, data, properties, sendOptions, listener, context);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, data, properties, sendOptions, listener, context);
 
         if (data == null) {
           final IllegalArgumentException exception = new IllegalArgumentException("data cannot be null");
@@ -287,7 +526,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         org.apache.qpid.proton.message.Message protonMsg = Proton.message();
         protonMsg.setBody(new AmqpValue(data));
 
-        final boolean result = send(topic, protonMsg, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
+        final boolean result = send(topic, protonMsg, (ByteBuffer)null, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
 
         logger.exit(this, methodName, result);
 
@@ -299,20 +538,18 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             SendOptions sendOptions, CompletionListener<T> listener, T context)
             throws StoppedException {
         final String methodName = "send";
-       logger.entry(this, methodName, topic, data, properties, sendOptions, listener, context);
+       if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, data, properties, sendOptions, listener, context);
 
         if (data == null) {
           final IllegalArgumentException exception = new IllegalArgumentException("data cannot be null");
           logger.throwing(this, methodName, exception);
           throw exception;
         }
+        // The body is not set into the proton message.  Instead, the data is copied directly into
+        // the buffer that the message is encoded into.  This avoids an intermediate copy, and
+        // works equally well for heap, direct and memory-mapped buffers.
         org.apache.qpid.proton.message.Message protonMsg = Proton.message();
-        int pos = data.position();
-        byte[] dataBytes = new byte[data.remaining()];
-        data.get(dataBytes);
-        data.position(pos);
-        protonMsg.setBody(new AmqpValue(new Binary(dataBytes)));
-        final boolean result = send(topic, protonMsg, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
+        final boolean result = send(topic, protonMsg, data, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
 
         logger.exit(this, methodName, result);
 
@@ -324,7 +561,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             Map<String, Object> properties, SendOptions sendOptions,
             CompletionListener<T> listener, T context) throws StoppedException {
         final String methodName = "send";
-        logger.entry(this, methodName, topic, json, properties, sendOptions, listener, context);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, json, properties, sendOptions, listener, context);
 
         String jsonString;
         synchronized(gson) {
@@ -342,7 +579,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             Map<String, Object> properties, SendOptions sendOptions,
             CompletionListener<T> listener, T context) throws StoppedException {
         final String methodName = "send";
-        logger.entry(this, methodName, topic, json, type, properties, sendOptions, listener, context);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, json, type, properties, sendOptions, listener, context);
 
         String jsonString;
         synchronized(gson) {
@@ -361,12 +598,12 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             CompletionListener<T> listener, T context)
     throws StoppedException {
         final String methodName = "sendJson";
-        logger.entry(this, methodName, topic, json, properties, sendOptions, listener, context);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, json, properties, sendOptions, listener, context);
 
         org.apache.qpid.proton.message.Message protonMsg = Proton.message();
         protonMsg.setBody(new AmqpValue(json));
         protonMsg.setContentType("application/json");
-        final boolean result = send(topic, protonMsg, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
+        final boolean result = send(topic, protonMsg, (ByteBuffer)null, properties, sendOptions == null ? defaultSendOptions : sendOptions, listener, context);
 
         logger.exit(this, methodName, result);
 
@@ -391,10 +628,10 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
     }
 
     private <T> boolean send(String topic, org.apache.qpid.proton.message.Message protonMsg,
-                                       Map<String, Object> properties,
+                                       ByteBuffer binaryBody, Map<String, Object> properties,
                                        SendOptions sendOptions, CompletionListener<T> listener, T context) throws StoppedException {
         final String methodName = "send";
-        logger.entry(this, methodName, topic, protonMsg, properties, sendOptions, listener, context);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, protonMsg, binaryBody, properties, sendOptions, listener, context);
 
         if (topic == null) {
           final IllegalArgumentException exception = new IllegalArgumentException("topic cannot be null");
@@ -402,10 +639,106 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
           throw exception;
         }
 
-        protonMsg.setAddress("amqp:///" + topic);
-        protonMsg.setTtl(sendOptions.getTtl());
-        Map<String, Object> amqpProperties = new HashMap<>();
+        final ByteBuf buf = encode(topic, protonMsg, binaryBody, toApplicationProperties(properties), sendOptions);
+        if (!reserveSendBuffer(buf.readableBytes(), 1, listener, context)) {
+            buf.release();
+            logger.exit(this, methodName, false);
+            return false;
+        }
+        InternalSend<T> is = new InternalSend<T>(this, topic, sendOptions.getQos(), buf, buf.readableBytes(), sendOptions.getRetainLink());
+        final boolean result = submit(is, is.future, listener, context);
+
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    @Override
+    public <T> boolean sendBatch(String topic, List<?> data, Map<String, Object> properties,
+            SendOptions sendOptions, CompletionListener<T> listener, T context)
+            throws StoppedException {
+        final String methodName = "sendBatch";
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, topic, data, properties, sendOptions, listener, context);
+
+        if (topic == null) {
+          final IllegalArgumentException exception = new IllegalArgumentException("topic cannot be null");
+          logger.throwing(this, methodName, exception);
+          throw exception;
+        }
+        if (data == null || data.isEmpty()) {
+          final IllegalArgumentException exception = new IllegalArgumentException("data cannot be null or empty");
+          logger.throwing(this, methodName, exception);
+          throw exception;
+        }
+        if (sendOptions == null) sendOptions = defaultSendOptions;
+
+        // Validate the whole batch before encoding any of it, so that nothing needs to be released
+        // if an element of the batch turns out to be invalid.
+        for (Object element : data) {
+            if (element == null) {
+                final IllegalArgumentException exception = new IllegalArgumentException("data cannot contain null elements");
+                logger.throwing(this, methodName, exception);
+                throw exception;
+            }
+        }
+
+        final ApplicationProperties applicationProperties = toApplicationProperties(properties);
+        final List<ByteBuf> bufs = new ArrayList<>(data.size());
+        try {
+            for (Object element : data) {
+                org.apache.qpid.proton.message.Message protonMsg = Proton.message();
+                ByteBuffer binaryBody = null;
+                if (element instanceof String) {
+                    protonMsg.setBody(new AmqpValue(element));
+                } else if (element instanceof ByteBuffer) {
+                    binaryBody = (ByteBuffer)element;
+                } else {
+                    String jsonString;
+                    synchronized(gson) {
+                        jsonString = gson.toJson(element);
+                    }
+                    protonMsg.setBody(new AmqpValue(jsonString));
+                    protonMsg.setContentType("application/json");
+                }
+                bufs.add(encode(topic, protonMsg, binaryBody, applicationProperties, sendOptions));
+            }
+        } catch (RuntimeException e) {
+            for (ByteBuf buf : bufs) buf.release();
+            logger.throwing(this, methodName, e);
+            throw e;
+        }
+
+        long batchBytes = 0;
+        for (ByteBuf buf : bufs) batchBytes += buf.readableBytes();
+        if (!reserveSendBuffer(batchBytes, bufs.size(), listener, context)) {
+            for (ByteBuf buf : bufs) buf.release();
+            logger.exit(this, methodName, false);
+            return false;
+        }
+
+        InternalSendBatch<T> isb = new InternalSendBatch<>(this, topic, sendOptions.getQos(), bufs, sendOptions.getRetainLink());
+        final boolean result = submit(isb, isb.future, listener, context);
+
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    /**
+     * Converts user supplied message properties into their AMQP form.
+     *
+     * @param properties the properties supplied to a send method.  May be <code>null</code>.
+     * @return the application properties to encode into a message, or <code>null</code> if
+     *         there are none.
+     * @throws IllegalArgumentException if a property has a value of an unsupported type.
+     */
+    private ApplicationProperties toApplicationProperties(Map<String, Object> properties) throws IllegalArgumentException {
+        final String methodName = "toApplicationProperties";
+        logger.entry(this, methodName, properties);
+
+        ApplicationProperties result = null;
         if ((properties != null) && !properties.isEmpty()) {
+            Map<String, Object> amqpProperties = new HashMap<>();
             for (Map.Entry<String, Object> entry : properties.entrySet()) {
                 if (!isValidPropertyValue(entry.getValue())) {
                     final IllegalArgumentException exception = new IllegalArgumentException(
@@ -435,27 +768,123 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                     amqpProperties.put(entry.getKey(), entry.getValue());
                 }
             }
-            protonMsg.setApplicationProperties(new ApplicationProperties(amqpProperties));
+            result = new ApplicationProperties(amqpProperties);
         }
 
-        byte data[] = new byte[2 * 1024];
-        int length;
-        while (true) {
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    private ByteBuf encode(String topic, org.apache.qpid.proton.message.Message protonMsg, ByteBuffer binaryBody,
+                           ApplicationProperties applicationProperties, SendOptions sendOptions) {
+        protonMsg.setAddress("amqp:///" + topic);
+        protonMsg.setTtl(sendOptions.getTtl());
+        if (applicationProperties != null) {
+            protonMsg.setApplicationProperties(applicationProperties);
+        }
+        return (binaryBody == null) ? MessageEncoder.encode(protonMsg) : MessageEncoder.encode(protonMsg, binaryBody);
+    }
+
+    /**
+     * Accounts for sends in the client's send buffer, applying the client's
+     * {@link ClientOptions.SendBufferPolicy} if the buffer is full.
+     *
+     * @return <code>true</code> if the sends should go ahead, or <code>false</code> if they
+     *         have been rejected - in which case the listener has already been notified.
+     */
+    private <T> boolean reserveSendBuffer(long bytes, int messages, CompletionListener<T> listener, T context) throws StoppedException {
+        final String methodName = "reserveSendBuffer";
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, bytes, messages, listener, context);
+
+        boolean result = true;
+        if (sendBudget == null) {
+            // No limits, so nothing to account for
+        } else if (clientOptions.getSendBufferPolicy() == ClientOptions.SendBufferPolicy.REJECT) {
+            result = sendBudget.tryAdd(bytes, messages);
+        } else if (clientOptions.getSendBufferPolicy() == ClientOptions.SendBufferPolicy.BLOCK) {
+            if (Thread.currentThread() == processingThread) {
+                // Sending from inside the client's own processing (for example, from a callback run
+                // by a SameThreadCallbackService).  Waiting would stop the sends that make room from
+                // ever completing, so reject the send rather than deadlock.
+                result = sendBudget.tryAdd(bytes, messages);
+            } else {
+                try {
+                    sendBudget.addWhenRoom(bytes, messages);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendBudget.requestDrain();
+                    result = false;
+                }
+            }
+        } else {
+            sendBudget.add(bytes, messages);
+        }
+
+        if (!result) {
+            final CompletionFuture<T> future = new CompletionFuture<>(this);
+            future.setFailure(new SendBufferFullException("The message was not sent because the client's send buffer is full"));
             try {
-                length = protonMsg.encode(data,  0,  data.length);
-                break;
-            } catch(BufferOverflowException boe) {
-                data = new byte[data.length * 2];
+                future.setListener(callbackService, listener, context);
+            } catch(StateException e) {
+                // Not expected, as the failure is not a StateException
+                logger.ffdc(methodName, FFDCProbeId.PROBE_002, e, this);
             }
         }
 
-        final ByteBuf buf = io.netty.buffer.Unpooled.wrappedBuffer(data);
-        InternalSend<T> is = new InternalSend<T>(this, topic, sendOptions.getQos(), buf, length, sendOptions.getRetainLink());
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    /**
+     * Releases the buffer holding an encoded message, once the send has completed (successfully
+     * or otherwise) and will not be sent again, and removes the send from the client's send
+     * buffer.
+     */
+    private void releaseSend(InternalSend<?> send) {
+        send.releaseBuf();
+        if (send.record != null && sendSpool != null) {
+            sendSpool.settle(send.record);
+            send.record = null;
+        }
+        if (sendBudget != null && sendBudget.remove(send.length, 1)) {
+            pendingDrain = true;
+            notifyDrainIfRequired();
+        }
+    }
+
+    /**
+     * Notifies the application that it can send again, if a send has returned <code>false</code>
+     * and the network and the client's send buffer are no longer backlogged.  A drain requested
+     * because the send buffer was full is recorded by the {@link SendBudget} itself, so that it
+     * cannot be lost between an application thread finding the buffer full and the client's
+     * processing emptying it.
+     */
+    private void notifyDrainIfRequired() {
+        if (pendingDrain && undrainedSends < 2 && (sendBudget == null || !sendBudget.isDrainRequested())) {
+            pendingDrain = false;
+            clientListener.onDrain(callbackService);
+        }
+    }
+
+    /**
+     * Passes a send (or batch of sends) to the client's component for processing and
+     * associates the application's listener with its completion.
+     *
+     * @return <code>true</code> if the application can continue sending without building
+     *         up a backlog of data, or <code>false</code> if it should wait for the
+     *         client's drain notification.
+     */
+    private <T> boolean submit(Message message, CompletionFuture<T> future, CompletionListener<T> listener, T context) throws StoppedException {
+        final String methodName = "submit";
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, message, future, listener, context);
+
         ++undrainedSends;
-        tell(is, this);
+        tell(message, this);
 
         try {
-          is.future.setListener(callbackService, listener, context);
+          future.setListener(callbackService, listener, context);
         } catch (StoppedException e) {
           logger.throwing(this, methodName, e);
           throw e;
@@ -466,8 +895,9 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
           throw exception;
         }
 
-        boolean result = undrainedSends < 2;
-        pendingDrain |= !result;
+        final boolean networkDrained = undrainedSends < 2;
+        pendingDrain |= !networkDrained;
+        final boolean result = networkDrained & (sendBudget == null || !sendBudget.requestDrainIfFull());
 
         logger.exit(this, methodName, result);
 
@@ -544,7 +974,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         final SubscriptionTopic subTopic = new SubscriptionTopic(topicPattern, subOptions.getShareName());
         boolean autoConfirm = subOptions.getAutoConfirm() || subOptions.getQOS() == QOS.AT_MOST_ONCE;
         InternalSubscribe<T> is =
-                new InternalSubscribe<>(this, subTopic, subOptions.getQOS(), subOptions.getCredit(), autoConfirm, Math.round(subOptions.getTtl() / 1000.0), gsonBuilder, destListener, context);
+                new InternalSubscribe<>(this, subTopic, subOptions.getQOS(), subOptions.getCredit(), subOptions.getMinCredit(), subOptions.getMaxCredit(), autoConfirm, Math.round(subOptions.getTtl() / 1000.0), gsonBuilder, destListener, context, subOptions.getOrdering());
         tell(is, this);
 
         try {
@@ -677,25 +1107,52 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             InternalSend<?> is = (InternalSend<?>)message;
             NonBlockingClientState state = stateMachine.getState();
             if (NonBlockingClientState.acceptingWorkStates.contains(state)) {
-                SendRequest sr = new SendRequest(currentConnection, is.topic, is.buf, is.length, is.qos, is.retainLink);
+                SendRequest sr = newSendRequest(is);
                 outstandingSends.put(sr, is);
                 engine.tell(sr, this);
             } else if (NonBlockingClientState.queueingWorkStates.contains(state)) {
-                pendingWork.addLast(is);
+                queueSend(is);
             } else {  // Assume state is in NonBlockingClientState.sendFail
+                releaseSend(is);
                 is.future.setFailure(new StoppedException("Cannot send messages because the client is in stopped state"));
             }
 
+        } else if (message instanceof InternalSendBatch) {
+            InternalSendBatch<?> isb = (InternalSendBatch<?>)message;
+            NonBlockingClientState state = stateMachine.getState();
+            if (NonBlockingClientState.acceptingWorkStates.contains(state)) {
+                List<SendRequest> requests = new ArrayList<>(isb.sends.size());
+                for (InternalSend<?> is : isb.sends) {
+                    SendRequest sr = newSendRequest(is);
+                    outstandingSends.put(sr, is);
+                    requests.add(sr);
+                }
+                engine.tell(new SendBatchRequest(requests), this);
+            } else if (NonBlockingClientState.queueingWorkStates.contains(state)) {
+                for (InternalSend<?> is : isb.sends) {
+                    queueSend(is);
+                }
+            } else {  // Assume state is in NonBlockingClientState.sendFail
+                for (InternalSend<?> is : isb.sends) {
+                    releaseSend(is);
+                    is.future.setFailure(new StoppedException("Cannot send messages because the client is in stopped state"));
+                }
+            }
+
         } else if (message instanceof SendResponse) {
             SendResponse sr = (SendResponse)message;
-            sr.request.releaseBuf();
             InternalSend<?> is = outstandingSends.remove(sr.request);
             if (is != null) {
+                // Only release the buffer if the request is still outstanding.  If it is not then
+                // the send has already been completed, or re-queued to be sent again, and the
+                // buffer is either already released or still in use.
                 if (sr.cause == null) {
+                    metrics.sent(is.qos, is.length, is.createdNanos);
                     is.future.setSuccess(null);
                 } else {
                     is.future.setFailure(sr.cause);
                 }
+                releaseSend(is);
             }
         } else if (message instanceof InternalStart) {
             pendingStarts.addLast((InternalStart<?>)message);
@@ -719,8 +1176,8 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                 SubData sd = subscribedDestinations.get(is.topic);
                 if (sd == null) {
                     // Not already subscribed - so subscribe...
-                    SubscribeRequest sr = new SubscribeRequest(currentConnection, is.topic, is.qos, is.credit, is.ttl);
-                    sd = new SubData(is.destListener, is.qos, is.credit, is.autoConfirm, is.ttl);
+                    SubscribeRequest sr = new SubscribeRequest(currentConnection, is.topic, is.qos, is.credit, is.ttl, is.minCredit, is.maxCredit);
+                    sd = new SubData(is.destListener, is.qos, is.credit, is.minCredit, is.maxCredit, is.autoConfirm, is.ttl);
                     sd.inProgressSubscribe = is;
                     sd.state = SubData.State.ATTACHING;
                     subscribedDestinations.put(is.topic, sd);
@@ -863,11 +1320,14 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             }
         } else if (message instanceof DeliveryRequest) {
             DeliveryRequest dr = (DeliveryRequest)message;
+            metrics.received(dr.qos, dr.size);
             final SubData sd = subscribedDestinations.get(new SubscriptionTopic(dr.topicPattern));
             if (sd == null) {
                 logger.data(methodName, "DeliveryRequest: subscribedDestination not found for " + dr.topicPattern);
+                dr.releaseBuf();
             } else {
                 if (dr.qos == QOS.AT_LEAST_ONCE) {
+                    dr.deliveredNanos = System.nanoTime();
                     sd.pendingDeliveries.add(dr);
                 }
                 sd.listener.onDelivery(callbackService, dr, sd.qos, sd.autoConfirm);
@@ -882,6 +1342,8 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                 final boolean success = (dr.qos == QOS.AT_MOST_ONCE || sd.pendingDeliveries.remove(dr));
                 if (!success) {
                     logger.data("Unexpected DeliveryResponse received {} from {} ", dr, message.getSender());
+                } else if (dr.qos == QOS.AT_LEAST_ONCE) {
+                    metrics.confirmed(dr.deliveredNanos);
                 }
 
                 // if we've now cleared the backlog of pending deliveries, requeue any pending work for the sub
@@ -915,13 +1377,16 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                 stateMachine.fire(NonBlockingClientTrigger.NETWORK_ERROR);
             }
         } else if (message instanceof FlushResponse) {
-            stateMachine.fire(NonBlockingClientTrigger.INBOUND_WORK_COMPLETE);
+            // The callbacks run with this client as their ordering context have completed, but
+            // callbacks run with other ordering contexts may not have.  Whichever of this and the
+            // last of those callbacks finds the other complete reports that the work is done.
+            flushWaiting.set(true);
+            if (outstandingCallbacks.get() == 0 && flushWaiting.compareAndSet(true, false)) {
+                stateMachine.fire(NonBlockingClientTrigger.INBOUND_WORK_COMPLETE);
+            }
         } else if (message instanceof DrainNotification) {
             undrainedSends = 0;
-            if (pendingDrain) {
-                pendingDrain = false;
-                clientListener.onDrain(callbackService);
-            }
+            notifyDrainIfRequired();
         } else if (message instanceof CallbackExceptionNotification) {
             Exception exception = ((CallbackExceptionNotification)message).exception;
             logger.data(this, methodName, "Exception thrown from inside callback", exception);
@@ -959,7 +1424,10 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         final String methodName = "openConnection";
         logger.entry(this, methodName);
 
-        engine.tell(new OpenRequest(currentEndpoint, clientId), this);
+        engine.tell(new OpenRequest(currentEndpoint, clientId,
+                clientOptions.getWriteCoalescingMaxBytes(), clientOptions.getWriteCoalescingMaxDelay(),
+                clientOptions.getMaxSenderLinks(), clientOptions.getSenderLinkIdleTimeout(),
+                clientOptions.getMaxInboundBufferedBytes(), clientOptions.isPooledDeliveryBuffers()), this);
 
         logger.exit(this, methodName);
     }
@@ -1014,7 +1482,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
             for (Map.Entry<SubscriptionTopic, SubData>entry : subscribedDestinations.entrySet()) {
                 SubData data = entry.getValue();
                 data.state = SubData.State.ATTACHING;
-                SubscribeRequest sr = new SubscribeRequest(currentConnection, entry.getKey(), data.qos, data.credit, data.ttl);
+                SubscribeRequest sr = new SubscribeRequest(currentConnection, entry.getKey(), data.qos, data.credit, data.ttl, data.minCredit, data.maxCredit);
                 engine.tell(sr, this);
             }
         }
@@ -1073,16 +1541,22 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         // For any inflight sends - fail AT_LEAST_ONCE, succeed AT_MOST_ONCE
         for (InternalSend<?> send : outstandingSends.values()) {
             if (send.qos == QOS.AT_MOST_ONCE) {
+                releaseSend(send);
                 send.future.setSuccess(null);
             } else {
+                retainRecoveredSend(send);
+                releaseSend(send);
                 send.future.setFailure(new StoppedException("Cannot send messages because the client is in stopped state"));
             }
         }
+        outstandingSends.clear();
 
         // Fail any pending work
         for (QueueableWork work : pendingWork) {
             if (work instanceof InternalSend<?>) {
                 InternalSend<?> is = (InternalSend<?>)work;
+                retainRecoveredSend(is);
+                releaseSend(is);
                 StoppedException stoppedException = new StoppedException("Cannot send messages because the client is in stopped state");
                 is.future.setFailure(stoppedException);
             } else if (work instanceof InternalSubscribe<?>) {
@@ -1095,6 +1569,14 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
                 iu.future.setFailure(stoppedException);
             }
         }
+        pendingWork.clear();
+
+        // Every spooled send has now completed, so release the spool directory until the client
+        // is restarted.
+        if (sendSpool != null) {
+            sendSpool.close();
+            sendSpool = null;
+        }
 
         timerPromise = null;
         currentConnection = null;
@@ -1102,7 +1584,9 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         serviceUri = null;
 
         // Ask the callback service to notify us when it has completed any previously
-        // requested callback invocations (via a FlushResponse message to the onReceive() method)
+        // requested callback invocations (via a FlushResponse message to the onReceive() method).
+        // This only waits for the callbacks run with the client as their ordering context - the
+        // FlushResponse handling also waits for any others (see OutstandingCallbackPromise).
         callbackService.run(new Runnable() {
             @Override
             public void run() {}
@@ -1183,6 +1667,15 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         stoppedByUser = false;
         lastException = null;
         externalState = ClientState.STARTING;
+        if (monitor != null) monitor.register();
+        if (sendSpool == null && clientOptions.getSendSpoolDirectory() != null) {
+            try {
+                openSendSpool();
+            } catch(IOException e) {
+                // Carry on, holding sends in memory.
+                logger.data(this, methodName, "Unable to reopen send spool", (Object)e);
+            }
+        }
 
         logger.exit(this, methodName);
     }
@@ -1218,6 +1711,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         logger.entry(this, methodName);
 
         externalState = ClientState.STOPPED;
+        if (monitor != null) monitor.unregister();
         clientListener.onStopped(callbackService, stoppedByUser ? null : lastException);
         stoppedByUser = false;
         lastException = null;
@@ -1254,6 +1748,7 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         logger.entry(this, methodName);
 
         externalState = ClientState.STARTED;
+        metrics.reconnected();
         clientListener.onRestarted(callbackService);
 
         logger.exit(this, methodName);
@@ -1272,10 +1767,12 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         for (InternalSend<?> sendRequest : outstandingSends.values()) {
             if (sendRequest.qos == QOS.AT_MOST_ONCE) {
                 // We don't know if the message made it or not - but based on this QOS - we have to assume it did...
+                releaseSend(sendRequest);
                 sendRequest.future.setSuccess(null);
             } else {
-                // And for this QOS - we can be pessimistic and assume it didn't...
-                pendingWork.addLast(sendRequest);
+                // And for this QOS - we can be pessimistic and assume it didn't, and spool it
+                // like any other send made while disconnected...
+                queueSend(sendRequest);
             }
         }
         outstandingSends.clear();
@@ -1319,12 +1816,45 @@ public class NonBlockingClientImpl extends NonBlockingClient implements FSMActio
         return result;
     }
 
-    private final ComponentImpl component = new ComponentImpl() {
-      @Override
-      protected void onReceive(Message message) {
-        NonBlockingClientImpl.this.onReceive(message);
-      }
-    };
+    /**
+     * A promise for a callback run with an ordering context other than this client, which
+     * counts the callback as outstanding until it completes.
+     */
+    private class OutstandingCallbackPromise extends CallbackPromiseImpl {
+        private OutstandingCallbackPromise() {
+            super(NonBlockingClientImpl.this, true);
+            outstandingCallbacks.incrementAndGet();
+        }
+
+        @Override
+        public void setSuccess(Void result) throws IllegalStateException {
+            super.setSuccess(result);
+            callbackCompleted();
+        }
+
+        @Override
+        public void setFailure(Exception exception) throws IllegalStateException {
+            super.setFailure(exception);
+            callbackCompleted();
+        }
+
+        private void callbackCompleted() {
+            if (outstandingCallbacks.decrementAndGet() == 0 && flushWaiting.compareAndSet(true, false)) {
+                tell(new FlushResponse(), ComponentImpl.NOBODY);
+            }
+        }
+    }
+
+    /**
+     * @param orderingCtx the ordering context that a callback will be run with.
+     * @return the promise to run the callback with.  Callbacks run with an ordering context other
+     *         than this client are counted, so that stopping the client can wait for them.
+     */
+    protected Promise<Void> newCallbackPromise(Object orderingCtx) {
+        return orderingCtx == this ? new CallbackPromiseImpl(this, true) : new OutstandingCallbackPromise();
+    }
+
+    private final ComponentImpl component;
 
     @Override
     public void tell(Message message, Component self) {
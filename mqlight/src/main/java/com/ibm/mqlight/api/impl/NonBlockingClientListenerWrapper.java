@@ -22,12 +22,12 @@ import com.ibm.mqlight.api.ClientException;
 import com.ibm.mqlight.api.NonBlockingClientListener;
 import com.ibm.mqlight.api.callback.CallbackService;
 import com.ibm.mqlight.api.impl.callback.CallbackPromiseImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class NonBlockingClientListenerWrapper<T>{
 
-    private static final Logger logger = LoggerFactory.getLogger(NonBlockingClientListenerWrapper.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(NonBlockingClientListenerWrapper.class);
   
     NonBlockingClientImpl client;
     NonBlockingClientListener<T> listener;
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.codec.DecodeException;
+
+/**
+ * The parts of a received message that are only worked out if the application asks for them -
+ * for example, by calling {@link DeliveryImpl#getProperties()}.  An application that only looks
+ * at the message payload avoids the cost of decoding and checking the message's properties,
+ * parsing its address, and splitting the subscription's topic into a share name and pattern.
+ * The properties and address are held in their encoded form until one of them is needed.
+ * <p>
+ * Deliveries can be passed between threads by the application, so the values are worked out
+ * under the object's monitor.
+ */
+class ReceivedMessage {
+
+    private final String subscribedTopic;
+    private byte[] encodedProperties;
+    private String address;
+    private ApplicationProperties applicationProperties;
+
+    private String[] subscribedTopicParts;
+    private String topic;
+    private Map<String, Object> properties;
+
+    /**
+     * @param subscribedTopic the topic of the subscription that the message was received from,
+     *                        including any share name.
+     * @param address the address of the message, or <code>null</code> if the message has no
+     *                topic.
+     * @param applicationProperties the application properties of the message, or <code>null</code>
+     *                              if it has none.
+     */
+    ReceivedMessage(String subscribedTopic, String address, ApplicationProperties applicationProperties) {
+        this.subscribedTopic = subscribedTopic;
+        this.address = address;
+        this.applicationProperties = applicationProperties;
+    }
+
+    /**
+     * @param subscribedTopic the topic of the subscription that the message was received from,
+     *                        including any share name.
+     * @param encodedProperties the encoded properties and application properties sections of
+     *                          the message, or <code>null</code> if it has neither.
+     */
+    ReceivedMessage(String subscribedTopic, byte[] encodedProperties) {
+        this.subscribedTopic = subscribedTopic;
+        this.encodedProperties = encodedProperties;
+    }
+
+    /**
+     * Decodes the address and application properties of the message, if they are still held
+     * in their encoded form.
+     */
+    private void decodeProperties() {
+        if (encodedProperties != null) {
+            final org.apache.qpid.proton.message.Message msg = Proton.message();
+            try {
+                msg.decode(encodedProperties, 0, encodedProperties.length);
+                address = msg.getAddress();
+                applicationProperties = msg.getApplicationProperties();
+            } catch(BufferOverflowException | BufferUnderflowException | DecodeException e) {
+                // Treat the message as having neither an address nor any properties
+            }
+            encodedProperties = null;
+        }
+    }
+
+    private String[] getSubscribedTopicParts() {
+        if (subscribedTopicParts == null) {
+            subscribedTopicParts = new SubscriptionTopic(subscribedTopic).split();
+        }
+        return subscribedTopicParts;
+    }
+
+    synchronized String getShare() {
+        return getSubscribedTopicParts()[1];
+    }
+
+    synchronized String getTopicPattern() {
+        return getSubscribedTopicParts()[0];
+    }
+
+    synchronized String getTopic() {
+        if (topic == null) {
+            decodeProperties();
+            String path = null;
+            if (address != null) {
+                try {
+                    path = URI.create(address).getPath();
+                } catch(IllegalArgumentException e) {
+                }
+            }
+            if (path == null) path = "";
+            else if (path.startsWith("/")) path = path.substring(1);
+            topic = path;
+        }
+        return topic;
+    }
+
+    synchronized Map<String, Object> getProperties() {
+        if (properties == null) {
+            decodeProperties();
+            properties = new HashMap<>();
+            if ((applicationProperties != null) && (applicationProperties.getValue() != null)) {
+                Map<?, ?> msgMap = applicationProperties.getValue();
+                for (Map.Entry<?, ?> entry : msgMap.entrySet()) {
+                    if (entry.getKey() instanceof String) {
+                        Object value = entry.getValue();
+                        if (value == null) {
+                            properties.put((String)entry.getKey(), null);
+                        } else if (value instanceof Binary) {
+                            properties.put((String)entry.getKey(), ((Binary)value).getArray());
+                        } else {
+                            for (int i = 0; i < NonBlockingClientImpl.validPropertyValueTypes.length; ++i) {
+                                if (NonBlockingClientImpl.validPropertyValueTypes[i].isAssignableFrom(value.getClass())) {
+                                    properties.put((String)entry.getKey(), value);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            // The properties have been copied, so the message's copy is no longer needed
+            applicationProperties = null;
+        }
+        return properties;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return super.toString() + " [subscribedTopic=" + subscribedTopic + ", address=" + address + "]";
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * Tracks the bytes and number of messages that a client is holding for sends that have not
+ * yet completed - whether they are queued waiting for the client to connect, or have been
+ * passed to the server and are waiting to be confirmed.  The budget is full once either
+ * limit is reached (the high watermark), and is considered drained once both totals fall
+ * below half of their limits (the low watermark), so that an application which waits for the
+ * budget to drain is not woken for every message that completes.
+ * <p>
+ * Sends are added to the budget by application threads, and removed from it by the client's
+ * own processing, so all of the methods are synchronized.  Whether the application is waiting
+ * for the budget to drain is also recorded here, under the same monitor, so that a send which
+ * finds the budget full cannot miss the removal that drains it.
+ * <p>
+ * A client with no limits does not use a budget at all.
+ */
+class SendBudget {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(SendBudget.class);
+
+    private final long maxBytes;
+    private final int maxMessages;
+    private long bytes = 0;
+    private int messages = 0;
+    // Set when a send found the budget full, until the budget drains below its low watermark
+    private boolean drainRequested = false;
+    // The number of threads waiting in addWhenRoom()
+    private int waiters = 0;
+
+    /**
+     * @param maxBytes the number of bytes at which the budget is full, or zero for no limit.
+     * @param maxMessages the number of messages at which the budget is full, or zero for no limit.
+     */
+    SendBudget(long maxBytes, int maxMessages) {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, maxBytes, maxMessages);
+
+        this.maxBytes = maxBytes;
+        this.maxMessages = maxMessages;
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Adds sends to the budget, whether or not there is room for them.
+     */
+    synchronized void add(long addBytes, int addMessages) {
+        bytes += addBytes;
+        messages += addMessages;
+    }
+
+    /**
+     * Adds sends to the budget, if there is room for them.  Sends are always accepted into an
+     * empty budget, so that a message larger than the limit can still be sent.
+     *
+     * @return <code>true</code> if the sends were added, or <code>false</code> if there was not
+     *         room for them - in which case a drain is requested.
+     */
+    synchronized boolean tryAdd(long addBytes, int addMessages) {
+        final boolean result = !wouldExceed(addBytes, addMessages);
+        if (result) {
+            add(addBytes, addMessages);
+        } else {
+            drainRequested = true;
+        }
+        return result;
+    }
+
+    /**
+     * Adds sends to the budget, waiting until there is room for them.  Sends are always
+     * accepted into an empty budget, so that a message larger than the limit can still be sent.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting, in which case
+     *                              the sends are not added.
+     */
+    synchronized void addWhenRoom(long addBytes, int addMessages) throws InterruptedException {
+        ++waiters;
+        try {
+            while (wouldExceed(addBytes, addMessages)) {
+                wait();
+            }
+        } finally {
+            --waiters;
+        }
+        add(addBytes, addMessages);
+    }
+
+    private boolean wouldExceed(long addBytes, int addMessages) {
+        if (messages == 0) return false;
+        return (maxBytes > 0 && bytes + addBytes > maxBytes) || (maxMessages > 0 && messages + addMessages > maxMessages);
+    }
+
+    /**
+     * Removes completed sends from the budget.
+     *
+     * @return <code>true</code> if a drain was requested and the budget is now below its low
+     *         watermark, in which case the request is cleared and the application should be
+     *         notified.
+     */
+    synchronized boolean remove(long removeBytes, int removeMessages) {
+        bytes -= removeBytes;
+        messages -= removeMessages;
+        if (waiters > 0) notifyAll();
+        final boolean result = drainRequested && isBelowLowWatermark();
+        if (result) drainRequested = false;
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if either the bytes or the number of messages has reached its
+     *         limit.
+     */
+    synchronized boolean isFull() {
+        return (maxBytes > 0 && bytes >= maxBytes) || (maxMessages > 0 && messages >= maxMessages);
+    }
+
+    /**
+     * Requests a drain if the budget is full.
+     *
+     * @return <code>true</code> if the budget is full.
+     */
+    synchronized boolean requestDrainIfFull() {
+        final boolean result = isFull();
+        if (result) drainRequested = true;
+        return result;
+    }
+
+    /**
+     * Requests a drain, unless the budget is empty (in which case there is nothing to wait for).
+     */
+    synchronized void requestDrain() {
+        if (messages > 0) drainRequested = true;
+    }
+
+    /**
+     * @return <code>true</code> if a drain has been requested, and the budget has not yet drained.
+     */
+    synchronized boolean isDrainRequested() {
+        return drainRequested;
+    }
+
+    /**
+     * @return <code>true</code> if both the bytes and the number of messages are below half
+     *         of their limits.
+     */
+    synchronized boolean isBelowLowWatermark() {
+        return (maxBytes == 0 || bytes < (maxBytes + 1) / 2) && (maxMessages == 0 || messages < (maxMessages + 1) / 2);
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized int getMessages() {
+        return messages;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return super.toString() + " [bytes=" + bytes + ", maxBytes=" + maxBytes + ", messages=" + messages + ", maxMessages=" + maxMessages + "]";
+    }
+}
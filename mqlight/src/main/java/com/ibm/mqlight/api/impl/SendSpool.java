@@ -0,0 +1,420 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.ibm.mqlight.api.QOS;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * An append-only log of encoded messages, held in memory-mapped segment files in a directory
+ * on local disk, that a client uses to hold sends outside of the Java heap.  Each record is
+ * written as:
+ * <pre>
+ *   int    length of the remainder of the record (written last, so that a partly written
+ *          record is seen as the end of the segment)
+ *   byte   state - {@link #PENDING} or {@link #SETTLED}
+ *   byte   QOS ordinal
+ *   byte   retain link (0 or 1)
+ *   short  length of the topic
+ *   bytes  topic (UTF-8)
+ *   bytes  encoded message
+ * </pre>
+ * Records are marked as settled in place, and a segment file is deleted once all of its
+ * records are settled and it is no longer being appended to.  The mapped segments are not
+ * forced to disk after each record, so pending records survive the client's process ending,
+ * but not necessarily the operating system failing.
+ * <p>
+ * A spool is only used by the client's own processing, so none of its methods are thread safe.
+ */
+class SendSpool {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(SendSpool.class);
+
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    static final byte PENDING = 1;
+    static final byte SETTLED = 2;
+
+    private static final int HEADER_SIZE = 4 + 1 + 1 + 1 + 2;
+    private static final String SEGMENT_PREFIX = "send-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String LOCK_FILE = "spool.lock";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    /**
+     * A segment file, mapped into memory.
+     */
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer map;
+        private int writePosition = 0;
+        private int pending = 0;
+
+        private Segment(File file, MappedByteBuffer map) {
+            this.file = file;
+            this.map = map;
+        }
+    }
+
+    /**
+     * A record of a send held in the spool.
+     */
+    static class Record {
+        final String topic;
+        final QOS qos;
+        final boolean retainLink;
+        final int length;
+        private final Segment segment;
+        private final int position;
+        private final int payloadPosition;
+
+        private Record(Segment segment, int position, String topic, QOS qos, boolean retainLink, int payloadPosition, int length) {
+            this.segment = segment;
+            this.position = position;
+            this.topic = topic;
+            this.qos = qos;
+            this.retainLink = retainLink;
+            this.payloadPosition = payloadPosition;
+            this.length = length;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " [file=" + segment.file.getName() + ", position=" + position + ", topic=" + topic + ", qos=" + qos + ", length=" + length + "]";
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final LinkedList<Segment> segments = new LinkedList<>();
+    private Segment current = null;
+    private final List<Record> recovered = new ArrayList<>();
+    private long nextSegmentNumber = 0;
+
+    /**
+     * Opens a spool, recovering any records left pending in the directory.
+     *
+     * @param directory the directory holding the spool's segment files.  It is created if it does not exist.
+     * @param segmentSize the size of each segment file.  Records that are larger than this are
+     *                    written to a segment file of their own.
+     * @throws IOException if the directory cannot be used, including if another client is
+     *                     already using it.
+     */
+    SendSpool(File directory, int segmentSize) throws IOException {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, directory, segmentSize);
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            final IOException exception = new IOException("Unable to create send spool directory '" + directory + "'");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+        FileLock fileLock = null;
+        try {
+            fileLock = lockFile.getChannel().tryLock();
+        } catch(OverlappingFileLockException e) {
+            // Locked by another client in this process.
+        }
+        if (fileLock == null) {
+            lockFile.close();
+            final IOException exception = new IOException("Send spool directory '" + directory + "' is in use by another client");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+        lock = fileLock;
+
+        try {
+            recover();
+        } catch(IOException e) {
+            close();
+            logger.throwing(this, methodName, e);
+            throw e;
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Scans the segment files in the directory, in the order they were written, for pending
+     * records.  Segments holding no pending records are deleted.
+     */
+    private void recover() throws IOException {
+        final String methodName = "recover";
+        logger.entry(this, methodName);
+
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            // Segment file names are zero padded, so sort in the order they were written
+            Arrays.sort(files);
+            for (File file : files) {
+                final String name = file.getName();
+                try {
+                    final long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16);
+                    nextSegmentNumber = Math.max(nextSegmentNumber, number + 1);
+                } catch(NumberFormatException e) {
+                    continue;
+                }
+
+                final Segment segment = new Segment(file, map(file, file.length()));
+                scan(segment);
+                if (segment.pending == 0) {
+                    delete(segment);
+                } else {
+                    segments.addLast(segment);
+                }
+            }
+        }
+
+        logger.exit(this, methodName, recovered.size());
+    }
+
+    private void scan(Segment segment) {
+        final ByteBuffer map = segment.map;
+        int position = 0;
+        while (position + HEADER_SIZE <= map.limit()) {
+            final int length = map.getInt(position);
+            if (length < HEADER_SIZE - 4 || position + 4 + length > map.limit()) break;
+            final byte state = map.get(position + 4);
+            final int qosOrdinal = map.get(position + 5);
+            final int topicLength = map.getShort(position + 7) & 0xffff;
+            final int payloadPosition = position + HEADER_SIZE + topicLength;
+            if (qosOrdinal < 0 || qosOrdinal >= QOS.values().length || payloadPosition > position + 4 + length) break;
+            if (state == PENDING) {
+                final byte[] topic = new byte[topicLength];
+                final ByteBuffer dup = map.duplicate();
+                dup.position(position + HEADER_SIZE);
+                dup.get(topic);
+                recovered.add(new Record(segment, position, new String(topic, UTF8), QOS.values()[qosOrdinal], map.get(position + 6) != 0,
+                                         payloadPosition, position + 4 + length - payloadPosition));
+                ++segment.pending;
+            }
+            position += 4 + length;
+        }
+        segment.writePosition = position;
+    }
+
+    /**
+     * @return the records that were left pending by a previous user of the spool directory, in
+     *         the order in which they were written.
+     */
+    List<Record> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Appends a pending record to the spool.
+     *
+     * @param buf the encoded message, which is copied into the spool.  The reader index of
+     *            the buffer is not changed.
+     * @return the record, or <code>null</code> if it could not be written - in which case the
+     *         caller should continue to hold the message in memory.
+     */
+    Record append(String topic, QOS qos, boolean retainLink, ByteBuf buf) {
+        final String methodName = "append";
+        logger.entry(this, methodName, topic, qos, retainLink, buf);
+
+        final byte[] topicBytes = topic.getBytes(UTF8);
+        final int length = buf.readableBytes();
+        final int size = HEADER_SIZE + topicBytes.length + length;
+
+        Record result = null;
+        if (topicBytes.length <= 0xffff) {
+            try {
+                Segment segment = current;
+                if (segment == null || segment.map.limit() - segment.writePosition < size) {
+                    segment = roll(size);
+                }
+
+                final int position = segment.writePosition;
+                final ByteBuffer dup = segment.map.duplicate();
+                dup.position(position + 4);
+                dup.put(PENDING);
+                dup.put((byte)qos.ordinal());
+                dup.put((byte)(retainLink ? 1 : 0));
+                dup.putShort((short)topicBytes.length);
+                dup.put(topicBytes);
+                final int payloadPosition = dup.position();
+                dup.limit(payloadPosition + length);
+                buf.getBytes(buf.readerIndex(), dup);
+                segment.map.putInt(position, size - 4);
+
+                segment.writePosition += size;
+                ++segment.pending;
+                result = new Record(segment, position, topic, qos, retainLink, payloadPosition, length);
+            } catch(IOException e) {
+                logger.data(this, methodName, "Unable to spool send", (Object)e);
+            }
+        }
+
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    /**
+     * Starts a new segment file, large enough to hold at least a record of the specified size.
+     * The previous segment file is forced to disk and, if it holds no pending records, deleted.
+     * Segments recovered from a previous user of the spool directory are never appended to, as
+     * they may end with a partly written record.
+     */
+    private Segment roll(int size) throws IOException {
+        final String methodName = "roll";
+        logger.entry(this, methodName, size);
+
+        if (current != null) {
+            if (current.pending == 0) {
+                segments.remove(current);
+                delete(current);
+            } else {
+                current.map.force();
+            }
+        }
+
+        final File file = new File(directory, String.format("%s%016x%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(file, map(file, Math.max(segmentSize, size)));
+        segments.addLast(segment);
+        current = segment;
+
+        logger.exit(this, methodName, segment.file);
+
+        return segment;
+    }
+
+    /**
+     * Copies the encoded message held by a record into a newly allocated buffer, which the
+     * caller is responsible for releasing.
+     */
+    ByteBuf read(Record record) {
+        final ByteBuf buf = allocator.heapBuffer(record.length, record.length);
+        final ByteBuffer dup = record.segment.map.duplicate();
+        dup.position(record.payloadPosition);
+        dup.limit(record.payloadPosition + record.length);
+        buf.writeBytes(dup);
+        return buf;
+    }
+
+    /**
+     * Marks a record as settled, deleting its segment file if this leaves no pending records in
+     * a segment that is no longer being appended to.
+     */
+    void settle(Record record) {
+        final String methodName = "settle";
+        logger.entry(this, methodName, record);
+
+        final Segment segment = record.segment;
+        if (segment.map.get(record.position + 4) == PENDING) {
+            segment.map.put(record.position + 4, SETTLED);
+            if (--segment.pending == 0 && segment != current) {
+                segments.remove(segment);
+                delete(segment);
+            }
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * @return the number of segment files that the spool is using.
+     */
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the spool's segment files to disk, and releases the spool directory for use by
+     * another client.
+     */
+    void close() {
+        final String methodName = "close";
+        logger.entry(this, methodName);
+
+        for (Segment segment : segments) {
+            segment.map.force();
+        }
+        try {
+            lock.release();
+        } catch(IOException e) {
+            logger.data(this, methodName, "Unable to release lock", (Object)e);
+        }
+        try {
+            lockFile.close();
+        } catch(IOException e) {
+            logger.data(this, methodName, "Unable to close lock file", (Object)e);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // The mapping remains valid once the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void delete(Segment segment) {
+        final String methodName = "delete";
+        logger.entry(this, methodName, segment.file);
+
+        // On some platforms a mapped file cannot be deleted until the mapping is garbage
+        // collected, in which case leave the file to be deleted when the spool is next opened.
+        if (!segment.file.delete()) {
+            logger.data(this, methodName, "Unable to delete segment file", (Object)segment.file);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " [directory=" + directory + ", segments=" + segments.size() + "]";
+    }
+}
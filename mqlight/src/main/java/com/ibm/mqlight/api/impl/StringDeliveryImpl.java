@@ -18,25 +18,22 @@
  */
 package com.ibm.mqlight.api.impl;
 
-import java.util.Map;
-
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.StringDelivery;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class StringDeliveryImpl extends DeliveryImpl implements StringDelivery {
     
-    private static final Logger logger = LoggerFactory.getLogger(StringDeliveryImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(StringDeliveryImpl.class);
   
     private final String data;
     
-    protected StringDeliveryImpl(NonBlockingClientImpl client, QOS qos, String share, String topic, 
-                                 String topicPattern, long ttl, String data, Map<String, Object> properties, DeliveryRequest deliveryRequest) {
-        super(client, qos, share, topic, topicPattern, ttl, properties, deliveryRequest);
+    protected StringDeliveryImpl(NonBlockingClientImpl client, QOS qos, ReceivedMessage received, long ttl, String data, DeliveryRequest deliveryRequest) {
+        super(client, qos, received, ttl, deliveryRequest);
         final String methodName = "<init>";
-        logger.entry(this, methodName, client, qos, share, topic, topicPattern, ttl, data, properties, deliveryRequest);
+        logger.entry(this, methodName, client, qos, received, ttl, data, deliveryRequest);
         
         this.data = data;
         
@@ -18,13 +18,13 @@
  */
 package com.ibm.mqlight.api.impl;
 
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.network.NettyNetworkService;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 
 public class SubscriptionTopic {
 
-  private static final Logger logger = LoggerFactory.getLogger(NettyNetworkService.class);
+  private static final TraceLogger logger = TraceLoggerFactory.getLogger(NettyNetworkService.class);
   
   private final String topic;
   private final boolean shared;
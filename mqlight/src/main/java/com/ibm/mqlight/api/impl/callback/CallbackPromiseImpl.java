@@ -23,12 +23,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class CallbackPromiseImpl implements Promise<Void> {
   
-    private static final Logger logger = LoggerFactory.getLogger(CallbackPromiseImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(CallbackPromiseImpl.class);
   
     private final AtomicBoolean complete = new AtomicBoolean(false);
     private final Component component;
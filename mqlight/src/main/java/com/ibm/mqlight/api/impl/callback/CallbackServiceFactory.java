@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import com.ibm.mqlight.api.ClientOptions.CallbackExecution;
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+public class CallbackServiceFactory {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(CallbackServiceFactory.class);
+
+    /**
+     * Creates a callback service that runs callbacks as described by <code>execution</code>.
+     *
+     * @param execution how callbacks are to be run.
+     * @param threads the maximum number of threads used to run callbacks.
+     * @return a new callback service.
+     */
+    public static CallbackService create(CallbackExecution execution, int threads) {
+        final String methodName = "create";
+        logger.entry(methodName, execution, threads);
+
+        final CallbackService result;
+        switch(execution) {
+        case FORK_JOIN:
+            result = new ForkJoinCallbackService(threads);
+            break;
+        case VIRTUAL_THREAD:
+            result = new VirtualThreadCallbackService(threads);
+            break;
+        default:
+            result = new ThreadPoolCallbackService(threads);
+            break;
+        }
+
+        logger.exit(methodName, result);
+
+        return result;
+    }
+
+    /**
+     * Shuts down a callback service created by {@link #create(CallbackExecution, int)}, once
+     * any callbacks that have already been submitted have been run.
+     *
+     * @param callbackService the callback service to shut down.
+     */
+    public static void shutdown(CallbackService callbackService) {
+        final String methodName = "shutdown";
+        logger.entry(methodName, callbackService);
+
+        if (callbackService instanceof ThreadPoolCallbackService) {
+            ((ThreadPoolCallbackService) callbackService).shutdown();
+        } else if (callbackService instanceof ExecutorCallbackService) {
+            ((ExecutorCallbackService) callbackService).shutdown();
+        }
+
+        logger.exit(methodName);
+    }
+}
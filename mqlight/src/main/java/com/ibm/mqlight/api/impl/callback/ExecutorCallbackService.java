@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.mqlight.api.ClientRuntimeException;
+import com.ibm.mqlight.api.Promise;
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * A {@link CallbackService} that runs callbacks using an {@link Executor}.
+ * <p>
+ * Callbacks that share an ordering context are queued, in order, on a serial queue that is
+ * created for that context while it has callbacks to run, and discarded once it is empty.  Each
+ * serial queue is run as a task by the executor, so callbacks for unrelated contexts can run on
+ * any thread the executor has available - unlike {@link ThreadPoolCallbackService}, where each
+ * context is tied to one of a fixed number of work lists.
+ */
+public class ExecutorCallbackService implements CallbackService {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(ExecutorCallbackService.class);
+
+    // The maximum number of callbacks run each time a serial queue is scheduled, before it
+    // makes way for other tasks waiting for the executor.
+    private static final int BATCH_SIZE = 64;
+
+    private class SerialQueue implements Runnable {
+
+        private final Object orderingCtx;
+        private final LinkedList<Runnable> runnables = new LinkedList<>();
+        private final LinkedList<Promise<Void>> promises = new LinkedList<>();
+        private boolean running = false;
+        private boolean retired = false;
+
+        private SerialQueue(Object orderingCtx) {
+            this.orderingCtx = orderingCtx;
+        }
+
+        /**
+         * @return <code>false</code> if the queue has been discarded, in which case the caller
+         *         must create a new queue for the ordering context.
+         */
+        private boolean put(Runnable runnable, Promise<Void> promise) {
+            final LinkedList<Promise<Void>> rejected;
+            synchronized(this) {
+                if (retired) return false;
+                runnables.addLast(runnable);
+                promises.addLast(promise);
+                if (running) return true;
+                running = true;
+                rejected = execute();
+            }
+            failRejected(rejected);
+            return true;
+        }
+
+        /**
+         * Called with the monitor held, once a callback has been run, to either discard the
+         * queue (if it is empty) or reschedule it.
+         *
+         * @return the promises of any callbacks that could not be scheduled, which must be
+         *         failed (see {@link #failRejected(LinkedList)}) once the monitor is released.
+         */
+        private LinkedList<Promise<Void>> reschedule() {
+            if (runnables.isEmpty()) {
+                retire();
+                return null;
+            } else {
+                return execute();
+            }
+        }
+
+        /**
+         * Called with the monitor held, to schedule the queue with the executor.  If the executor
+         * rejects the queue, the queue is discarded along with the callbacks waiting in it.
+         *
+         * @return the promises of the discarded callbacks, or <code>null</code> if the queue was
+         *         scheduled.
+         */
+        private LinkedList<Promise<Void>> execute() {
+            try {
+                executor.execute(this);
+                return null;
+            } catch(RejectedExecutionException e) {
+                logger.data(this, "execute", "Executor rejected queue: {}", e);
+                final LinkedList<Promise<Void>> rejected = new LinkedList<>(promises);
+                queued.addAndGet(-rejected.size());
+                runnables.clear();
+                promises.clear();
+                retire();
+                return rejected;
+            }
+        }
+
+        /**
+         * Called with the monitor held, to discard the queue.  Any further callbacks for the
+         * ordering context are put onto a new queue.
+         */
+        private void retire() {
+            running = false;
+            retired = true;
+            queues.remove(orderingCtx, this);
+        }
+
+        private void failRejected(LinkedList<Promise<Void>> rejected) {
+            if (rejected != null) {
+                for (Promise<Void> promise : rejected) {
+                    promise.setFailure(new ClientRuntimeException("Callback could not be run, as the executor rejected it"));
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            final String methodName = "run";
+            logger.entry(this, methodName);
+
+            for (int count = 0; ; ++count) {
+                Runnable runnable = null;
+                Promise<Void> promise = null;
+                LinkedList<Promise<Void>> rejected = null;
+                synchronized(this) {
+                    if (runnables.isEmpty() || count == BATCH_SIZE) {
+                        rejected = reschedule();
+                    } else {
+                        runnable = runnables.removeFirst();
+                        promise = promises.removeFirst();
+                    }
+                }
+                if (runnable == null) {
+                    failRejected(rejected);
+                    break;
+                }
+                queued.decrementAndGet();
+                try {
+                    runnable.run();
+                    promise.setSuccess(null);
+                } catch(Exception e) {
+                    promise.setFailure(e);
+                } catch(Throwable t) {
+                    promise.setFailure(new ClientRuntimeException("Throwable raised during callback", t));
+                    synchronized(this) {
+                        rejected = reschedule();
+                    }
+                    failRejected(rejected);
+                    throw t;
+                }
+            }
+
+            logger.exit(this, methodName);
+        }
+    }
+
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * @param executor the executor used to run callbacks.
+     */
+    public ExecutorCallbackService(Executor executor) {
+        this(executor, false);
+    }
+
+    /**
+     * @param executor the executor used to run callbacks.
+     * @param ownsExecutor <code>true</code> if the executor was created for this callback service,
+     *                     and so should be shut down by {@link #shutdown()}.
+     */
+    protected ExecutorCallbackService(Executor executor, boolean ownsExecutor) {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, executor, ownsExecutor);
+
+        if (executor == null) {
+            final IllegalArgumentException exception = new IllegalArgumentException("Executor cannot be null");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+
+        logger.exit(this, methodName);
+    }
+
+    @Override
+    public void run(Runnable runnable, Object orderingCtx, Promise<Void> promise) {
+        final String methodName = "run";
+        logger.entry(this, methodName, runnable, orderingCtx, promise);
+
+        queued.incrementAndGet();
+        while (true) {
+            SerialQueue queue = queues.get(orderingCtx);
+            if (queue == null) {
+                final SerialQueue newQueue = new SerialQueue(orderingCtx);
+                queue = queues.putIfAbsent(orderingCtx, newQueue);
+                if (queue == null) queue = newQueue;
+            }
+            if (queue.put(runnable, promise)) break;
+            // The queue was emptied and discarded after we found it - try again.
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * @return the number of callbacks that are waiting to be run.
+     */
+    public long getQueuedCallbackCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of ordering contexts that currently have callbacks waiting to be run,
+     *         or running.
+     */
+    public int getActiveOrderingContextCount() {
+        return queues.size();
+    }
+
+    /**
+     * Stops the threads used to run callbacks, once any callbacks that have already been
+     * submitted have been run.  An executor supplied to the {@link #ExecutorCallbackService(Executor)}
+     * constructor is left for its owner to shut down.
+     */
+    public void shutdown() {
+        final String methodName = "shutdown";
+        logger.entry(this, methodName);
+
+        if (ownsExecutor && executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+
+        logger.exit(this, methodName);
+    }
+}
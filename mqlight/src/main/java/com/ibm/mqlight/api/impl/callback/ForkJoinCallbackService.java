@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * A {@link CallbackService} that runs callbacks using a work-stealing {@link ForkJoinPool}.
+ * Callbacks for unrelated ordering contexts can run on any free worker thread, while
+ * callbacks that share an ordering context are run one at a time, in order.
+ */
+public class ForkJoinCallbackService extends ExecutorCallbackService {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(ForkJoinCallbackService.class);
+
+    static class ForkJoinCallbackServiceThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(ForkJoinCallbackService.class.getSimpleName() + "-" + t.getName());
+            return t;
+        }
+    }
+
+    static class ForkJoinCallbackServiceExceptionHandler implements Thread.UncaughtExceptionHandler {
+        @Override
+        public void uncaughtException(Thread thread, Throwable throwable) {
+            final String methodName = "uncaughtException";
+            logger.entry(this, methodName, thread, throwable);
+            // The callback's promise has already been failed - the pool replaces the worker thread.
+            logger.data(this, methodName, "Worker thread terminated", thread, throwable);
+            logger.exit(this, methodName);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a callback service with one worker thread per available processor.
+     */
+    public ForkJoinCallbackService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the maximum number of callbacks to run concurrently.
+     */
+    public ForkJoinCallbackService(int parallelism) {
+        this(createPool(parallelism));
+    }
+
+    private ForkJoinCallbackService(ForkJoinPool pool) {
+        super(pool, true);
+        this.pool = pool;
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        final String methodName = "createPool";
+        logger.entry(methodName, parallelism);
+
+        if (parallelism <= 0) {
+            final IllegalArgumentException exception = new IllegalArgumentException("parallelism value '" + parallelism + "' is invalid, it must be greater than zero");
+            logger.throwing(methodName, exception);
+            throw exception;
+        }
+        // asyncMode gives first-in, first-out processing of the tasks submitted by each worker
+        final ForkJoinPool result = new ForkJoinPool(parallelism, new ForkJoinCallbackServiceThreadFactory(), new ForkJoinCallbackServiceExceptionHandler(), true);
+
+        logger.exit(methodName, result);
+
+        return result;
+    }
+
+    /**
+     * @return the number of worker threads that are currently running callbacks.
+     */
+    public int getActiveThreadCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    /**
+     * @return an estimate of the number of times a worker thread has taken work queued by
+     *         another worker thread.
+     */
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+}
@@ -28,16 +28,16 @@ import java.util.concurrent.TimeUnit;
 import com.ibm.mqlight.api.ClientRuntimeException;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.callback.CallbackService;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class ThreadPoolCallbackService implements CallbackService {
 
-    private static final Logger logger = LoggerFactory.getLogger(ThreadPoolCallbackService.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(ThreadPoolCallbackService.class);
 
     private static class WorkList implements Runnable {
 
-        private static final Logger logger = LoggerFactory.getLogger(WorkList.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(WorkList.class);
 
         private final ThreadPoolExecutor executor;
         private boolean running = false;
@@ -89,6 +89,10 @@ public class ThreadPoolCallbackService implements CallbackService {
             logger.exit(this, methodName);
         }
 
+        private synchronized int size() {
+            return runnables.size();
+        }
+
         public synchronized void put(Runnable runnable, Promise<Void> promise) {
             final String methodName = "put";
             logger.entry(this, methodName, runnable, promise);
@@ -106,6 +110,7 @@ public class ThreadPoolCallbackService implements CallbackService {
 
     private final int poolSize;
     private final WorkList workLists[];
+    private final ThreadPoolExecutor executor;
 
     static class ThreadPoolCallbackServiceThreadFactory implements ThreadFactory {
         final ThreadFactory factory = Executors.defaultThreadFactory();
@@ -124,7 +129,7 @@ public class ThreadPoolCallbackService implements CallbackService {
         this.poolSize = poolSize;
         workLists = new WorkList[poolSize];
 
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, poolSize, 500, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadPoolCallbackServiceThreadFactory());
+        executor = new ThreadPoolExecutor(0, poolSize, 500, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadPoolCallbackServiceThreadFactory());
         for (int i = 0; i < poolSize; ++i) workLists[i] = new WorkList(executor);
 
         logger.exit(this, methodName);
@@ -142,4 +147,25 @@ public class ThreadPoolCallbackService implements CallbackService {
         logger.exit(this, methodName);
     }
 
+    /**
+     * @return the number of callbacks that are waiting to be run.
+     */
+    public long getQueuedCallbackCount() {
+        long result = 0;
+        for (WorkList workList : workLists) result += workList.size();
+        return result;
+    }
+
+    /**
+     * Stops the threads used to run callbacks, once any callbacks that have already been
+     * submitted have been run.  No further callbacks can be run.
+     */
+    public void shutdown() {
+        final String methodName = "shutdown";
+        logger.entry(this, methodName);
+
+        executor.shutdown();
+
+        logger.exit(this, methodName);
+    }
 }
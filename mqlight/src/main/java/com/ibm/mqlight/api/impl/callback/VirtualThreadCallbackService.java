@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+
+/**
+ * A {@link CallbackService} intended for callbacks that block, for example by making database or
+ * HTTP calls.  Where the Java runtime supports virtual threads, each ordering context's callbacks
+ * are run on a virtual thread, so that a large number of blocked callbacks do not tie up
+ * operating system threads.  On earlier runtimes, a bounded pool of platform threads is used
+ * instead.  Either way, a callback that blocks only holds up later callbacks for the same ordering
+ * context - not those for other contexts.
+ */
+public class VirtualThreadCallbackService extends ExecutorCallbackService {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(VirtualThreadCallbackService.class);
+
+    private static final Executor virtualThreadExecutor = createVirtualThreadExecutor();
+
+    static class VirtualThreadCallbackServiceThreadFactory implements ThreadFactory {
+        final ThreadFactory factory = Executors.defaultThreadFactory();
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = factory.newThread(r);
+            t.setName(VirtualThreadCallbackService.class.getSimpleName() + "-" + t.getName());
+            return t;
+        }
+    }
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor()</code> reflectively, as this
+     * code must also run on Java runtimes that do not have virtual threads.
+     *
+     * @return an executor that runs each task on a new virtual thread, or <code>null</code> if
+     *         the runtime does not support virtual threads.
+     */
+    private static Executor createVirtualThreadExecutor() {
+        final String methodName = "createVirtualThreadExecutor";
+        logger.entry(methodName);
+
+        Executor result = null;
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            result = (Executor) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            logger.data(methodName, "Virtual threads are not supported by this runtime");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.data(methodName, (Object) "Unable to create virtual thread executor", e);
+        }
+
+        logger.exit(methodName, result);
+
+        return result;
+    }
+
+    private static Executor createExecutor(int fallbackPoolSize) {
+        final String methodName = "createExecutor";
+        logger.entry(methodName, fallbackPoolSize);
+
+        if (fallbackPoolSize <= 0) {
+            final IllegalArgumentException exception = new IllegalArgumentException("Pool size value '" + fallbackPoolSize + "' is invalid, it must be greater than zero");
+            logger.throwing(methodName, exception);
+            throw exception;
+        }
+        final Executor result;
+        if (virtualThreadExecutor != null) {
+            result = virtualThreadExecutor;
+        } else {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(fallbackPoolSize, fallbackPoolSize, 500, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new VirtualThreadCallbackServiceThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            result = executor;
+        }
+
+        logger.exit(methodName, result);
+
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the Java runtime supports virtual threads, and so callbacks
+     *         will be run on virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * @param fallbackPoolSize the number of platform threads used to run callbacks if the Java
+     *                         runtime does not support virtual threads.
+     */
+    public VirtualThreadCallbackService(int fallbackPoolSize) {
+        // The virtual thread executor is shared, so is never shut down
+        super(createExecutor(fallbackPoolSize), !isVirtualThreadSupported());
+    }
+}
@@ -44,11 +44,11 @@ import com.ibm.mqlight.api.ClientRuntimeException;
 import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.endpoint.EndpointPromise;
 import com.ibm.mqlight.api.impl.LogbackLogging;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class BluemixEndpointService extends EndpointServiceImpl {
-    private static final Logger logger = LoggerFactory.getLogger(BluemixEndpointService.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(BluemixEndpointService.class);
 
     static {
         LogbackLogging.setup();
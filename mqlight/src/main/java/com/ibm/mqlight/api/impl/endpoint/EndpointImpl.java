@@ -24,11 +24,11 @@ import java.net.URISyntaxException;
 
 import com.ibm.mqlight.api.ClientOptions.SSLOptions;
 import com.ibm.mqlight.api.endpoint.Endpoint;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 class EndpointImpl implements Endpoint {
-    private static final Logger logger = LoggerFactory.getLogger(EndpointImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(EndpointImpl.class);
 
     /**
      * Property to allow the user to set a local idle timeout (in milliseconds)
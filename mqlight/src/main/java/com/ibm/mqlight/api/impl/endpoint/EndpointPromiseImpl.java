@@ -25,12 +25,12 @@ import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.endpoint.EndpointPromise;
 import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class EndpointPromiseImpl implements EndpointPromise {
 
-    private static final Logger logger = LoggerFactory.getLogger(EndpointPromiseImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(EndpointPromiseImpl.class);
   
     private final AtomicBoolean complete = new AtomicBoolean(false);
     private final Component component;
@@ -19,12 +19,12 @@
 package com.ibm.mqlight.api.impl.endpoint;
 
 import com.ibm.mqlight.api.endpoint.EndpointService;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public abstract class EndpointServiceImpl implements EndpointService {
     
-  private static final Logger logger = LoggerFactory.getLogger(EndpointServiceImpl.class);
+  private static final TraceLogger logger = TraceLoggerFactory.getLogger(EndpointServiceImpl.class);
   
     protected long calculateDelay(int retryCount) {
         final String methodName = "calculateDelay";
@@ -22,12 +22,12 @@ import com.ibm.mqlight.api.ClientOptions.SSLOptions;
 import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.endpoint.EndpointPromise;
 import com.ibm.mqlight.api.impl.LogbackLogging;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class SingleEndpointService extends EndpointServiceImpl {
 
-    private static final Logger logger = LoggerFactory.getLogger(SingleEndpointService.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(SingleEndpointService.class);
   
     static {
         LogbackLogging.setup();
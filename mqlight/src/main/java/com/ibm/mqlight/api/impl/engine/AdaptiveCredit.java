@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out how much link credit a subscription should have outstanding, from the rate at
+ * which its messages are settled and the time it takes for a message to arrive once credit
+ * has been granted.  The aim is to keep enough credit outstanding that the server is never
+ * held back waiting for credit (the link's bandwidth-delay product), with some headroom, but
+ * no more than that - in the same way that TCP receive window auto-tuning sizes a window.
+ * <p>
+ * The round trip is only sampled when the server is known to have messages waiting: when it
+ * has used up all of the link's credit, the time from granting more credit to the next message
+ * arriving is the round trip.  Credit granted to a link with nothing to send can take any length
+ * of time to be used, so measures nothing.  A link whose credit never runs out is not sampled,
+ * so the measured round trip decays over time - shrinking the window until the credit does run
+ * out, and the round trip is measured again.
+ * <p>
+ * All of the methods, apart from {@link #getWindow()}, are called by the engine, so the class
+ * is not thread safe.  The window is published for other threads to read.
+ */
+class AdaptiveCredit {
+
+    /** How much more credit than the measured rate and round trip time require is granted. */
+    private static final double HEADROOM = 2.0;
+
+    /** The shortest period over which the settlement rate is sampled. */
+    private static final long MIN_RATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Round trip time samples are capped at this, in case the server ran out of messages
+     * at the same moment as it ran out of credit.
+     */
+    private static final long MAX_RTT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** How often the round trip time decays, by an eighth, while it is not being sampled. */
+    private static final long RTT_DECAY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minCredit;
+    private final int maxCredit;
+    private volatile int window;
+
+    private long rttNanos = 0;
+    private long rttUpdated = 0;
+    private long flowTime = -1;
+    private boolean exhausted = false;
+
+    private double settleRate = 0;
+    private int settledInInterval = 0;
+    private long intervalStart = -1;
+
+    private long averageMessageSize = 0;
+
+    /**
+     * @param minCredit the least credit to grant.
+     * @param maxCredit the most credit to grant.
+     * @param initialCredit the credit to grant before anything has been measured.
+     */
+    AdaptiveCredit(int minCredit, int maxCredit, int initialCredit) {
+        this.minCredit = minCredit;
+        this.maxCredit = maxCredit;
+        this.window = Math.min(Math.max(initialCredit, minCredit), maxCredit);
+    }
+
+    /**
+     * Called when credit is granted to the link.  If the server had used up all of the link's
+     * credit, the time until the next message arrives measures the round trip.
+     *
+     * @param credit the credit the link had left before this grant.
+     */
+    void granted(long now, int credit) {
+        if (credit == 0 && exhausted && flowTime < 0) {
+            flowTime = now;
+        }
+        exhausted = false;
+    }
+
+    /**
+     * Called when a message arrives on the link.
+     *
+     * @param credit the credit the link has left, after this message.
+     */
+    void delivered(long now, int size, int credit) {
+        if (flowTime >= 0) {
+            final long sample = Math.min(now - flowTime, MAX_RTT_NANOS);
+            rttNanos = rttNanos == 0 ? sample : (rttNanos * 7 + sample) / 8;
+            rttUpdated = now;
+            flowTime = -1;
+        }
+        if (credit == 0) exhausted = true;
+        averageMessageSize = averageMessageSize == 0 ? size : (averageMessageSize * 7 + size) / 8;
+    }
+
+    /**
+     * Called when a message received on the link is settled.  Once enough settlements have
+     * been seen to measure the rate, the window is resized to match it.
+     */
+    void settled(long now) {
+        if (intervalStart < 0) {
+            // The first settlement starts the first interval
+            intervalStart = now;
+            return;
+        }
+        ++settledInInterval;
+
+        final long elapsed = now - intervalStart;
+        if (elapsed >= Math.max(rttNanos, MIN_RATE_INTERVAL_NANOS)) {
+            final double sample = settledInInterval * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+            settleRate = settleRate == 0 ? sample : settleRate * 0.75 + sample * 0.25;
+            settledInInterval = 0;
+            intervalStart = now;
+
+            if (rttNanos > 0 && now - rttUpdated >= RTT_DECAY_INTERVAL_NANOS) {
+                rttNanos -= rttNanos / 8;
+                rttUpdated = now;
+            }
+
+            if (rttNanos > 0) {
+                final double required = HEADROOM * settleRate * rttNanos / TimeUnit.SECONDS.toNanos(1);
+                window = (int)Math.min(Math.max(Math.ceil(required), minCredit), maxCredit);
+            }
+        }
+    }
+
+    /**
+     * @return the credit the link should currently have outstanding, including its
+     *         unsettled messages.
+     */
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return a moving average of the size, in bytes, of the messages received on the link,
+     *         or zero if none have been received.
+     */
+    long getAverageMessageSize() {
+        return averageMessageSize;
+    }
+
+    /**
+     * @return a moving average of the number of messages settled each second.
+     */
+    double getSettleRate() {
+        return settleRate;
+    }
+
+    /**
+     * @return a moving average of the round trip time, in nanoseconds, or zero if it has not
+     *         been measured.
+     */
+    long getRoundTripTime() {
+        return rttNanos;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " [minCredit=" + minCredit + ", maxCredit=" + maxCredit + ", window=" + window
+                + ", rttNanos=" + rttNanos + ", settleRate=" + settleRate + ", averageMessageSize=" + averageMessageSize + "]";
+    }
+}
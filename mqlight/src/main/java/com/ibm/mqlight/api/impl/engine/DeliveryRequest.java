@@ -18,6 +18,8 @@
  */
 package com.ibm.mqlight.api.impl.engine;
 
+import io.netty.buffer.ByteBuf;
+
 import org.apache.qpid.proton.engine.Connection;
 import org.apache.qpid.proton.engine.Delivery;
 
@@ -29,17 +31,35 @@ import com.ibm.mqlight.api.impl.Message;
 //       this package which are sent from some Component to the Engine component)
 public class DeliveryRequest extends Message {
 
-    public byte[] buf;
+    /**
+     * The encoded message.  This is backed by an array, and can be a pooled buffer, so whoever
+     * takes it from the request must release it once the message has been decoded.
+     */
+    public ByteBuf buf;
+    /** The size, in bytes, of the encoded message. */
+    public final int size;
     public final QOS qos;
     public final String topicPattern;
     protected final Delivery delivery;
     protected final Connection protonConnection;
+    /** When the message was passed to the subscriber, used to measure how long it takes to be confirmed. */
+    public long deliveredNanos;
 
-    public DeliveryRequest(byte[] buf, QOS qos, String topicPattern, Delivery delivery, Connection protonConnection) {
+    public DeliveryRequest(ByteBuf buf, QOS qos, String topicPattern, Delivery delivery, Connection protonConnection) {
         this.buf = buf;
+        this.size = buf == null ? 0 : buf.readableBytes();
         this.qos = qos;
         this.topicPattern = topicPattern;
         this.delivery = delivery;
         this.protonConnection = protonConnection;
     }
+
+    /**
+     * Releases the message data, if it has not already been taken from this request.
+     */
+    public void releaseBuf() {
+        final ByteBuf data = buf;
+        buf = null;
+        if (data != null) data.release();
+    }
 }
@@ -18,13 +18,18 @@
  */
 package com.ibm.mqlight.api.impl.engine;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.qpid.proton.Proton;
@@ -67,9 +72,13 @@ import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.ReplacedException;
 import com.ibm.mqlight.api.StateException;
 import com.ibm.mqlight.api.SubscribedException;
+import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
 import com.ibm.mqlight.api.impl.Message;
 import com.ibm.mqlight.api.impl.SubscriptionTopic;
+import com.ibm.mqlight.api.impl.logging.FlightRecorder;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.network.ConnectResponse;
 import com.ibm.mqlight.api.impl.network.ConnectionError;
 import com.ibm.mqlight.api.impl.network.DataRead;
@@ -82,42 +91,63 @@ import com.ibm.mqlight.api.impl.network.WriteResponse;
 import com.ibm.mqlight.api.impl.timer.PopResponse;
 import com.ibm.mqlight.api.impl.timer.TimerPromiseImpl;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 import com.ibm.mqlight.api.network.NetworkChannel;
 import com.ibm.mqlight.api.network.NetworkService;
 import com.ibm.mqlight.api.timer.TimerService;
 
 public class Engine extends ComponentImpl implements Handler {
 
-    private static final Logger logger = LoggerFactory.getLogger(Engine.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(Engine.class);
+
+    /** Inbound messages are received into pooled buffers, which are released once decoded. */
+    private static final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
 
     static class EngineProtocolTracer implements ProtocolTracer {
-        private static final Logger logger = LoggerFactory.getLogger(EngineProtocolTracer.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(EngineProtocolTracer.class);
 
         final String clientId;
+        // Always records the most recent frames, regardless of whether trace is enabled
+        final FrameRing frameRing;
 
         public EngineProtocolTracer(String clientId) {
             this.clientId = clientId;
+            this.frameRing = new FrameRing(clientId);
         }
 
         @Override
         public void receivedFrame(TransportFrame transportFrame) {
-            logger.data("receivedFrame", (Object) clientId, transportFrame);
+            frameRing.received(transportFrame);
+            if (logger.isTraceEnabled()) logger.data("receivedFrame", (Object) clientId, transportFrame);
         }
 
         @Override
         public void sentFrame(TransportFrame transportFrame) {
-            logger.data("sentFrame", (Object) clientId, transportFrame);
+            frameRing.sent(transportFrame);
+            if (logger.isTraceEnabled()) logger.data("sentFrame", (Object) clientId, transportFrame);
         }
     }
 
     private final NetworkService network;
     private final TimerService timer;
 
+    // Connections with data that has not yet been written to the network, because write
+    // coalescing is enabled and there were further messages queued for the engine.
+    private final Set<EngineConnection> deferredWrites = new LinkedHashSet<>();
+
     public Engine(NetworkService network, TimerService timer) {
+        this(network, timer, null);
+    }
+
+    /**
+     * @param network the network service used to connect to the server.
+     * @param timer the timer service used to drive heartbeats and other timeouts.
+     * @param executor the executor used to process the messages sent to the engine, or
+     *                 <code>null</code> to process them on the thread that sends them.
+     */
+    public Engine(NetworkService network, TimerService timer, Executor executor) {
+        super(executor);
         final String methodName = "<init>";
-        logger.entry(this, methodName, network, timer);
+        logger.entry(this, methodName, network, timer, executor);
 
         if (network == null) {
           final IllegalArgumentException exception = new IllegalArgumentException("NetworkService argument cannot be null");
@@ -155,8 +185,9 @@ public class Engine extends ComponentImpl implements Handler {
             } else {
                 Connection protonConnection = Proton.connection();
                 Transport transport = Proton.transport();
-                ProtocolTracer protocolTracer = new EngineProtocolTracer(or.clientId);
+                EngineProtocolTracer protocolTracer = new EngineProtocolTracer(or.clientId);
                 ((TransportImpl) transport).setProtocolTracer(protocolTracer);
+                FlightRecorder.register(protocolTracer.frameRing);
                 transport.setIdleTimeout(or.endpoint.getIdleTimeout());
                 transport.bind(protonConnection);
                 Collector collector = Proton.collector();
@@ -176,9 +207,19 @@ public class Engine extends ComponentImpl implements Handler {
 
                 EngineConnection engineConnection = new EngineConnection(protonConnection, session, or.getSender(), transport, collector, cr.channel);
                 engineConnection.openRequest = or;
+                engineConnection.writeCoalescingMaxBytes = or.writeCoalescingMaxBytes;
+                engineConnection.writeCoalescingMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(or.writeCoalescingMaxDelay);
+                engineConnection.maxSenderLinks = or.maxSenderLinks;
+                engineConnection.senderLinkIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(or.senderLinkIdleTimeout);
+                engineConnection.maxInboundBufferedBytes = or.maxInboundBufferedBytes;
+                engineConnection.pooledDeliveryBuffers = or.pooledDeliveryBuffers;
+                engineConnection.frameRing = protocolTracer.frameRing;
                 protonConnection.setContext(engineConnection);
                 cr.channel.setContext(engineConnection);
 
+                // Start timing the local idle timeout, in case the server does not respond
+                tick(engineConnection);
+
                 // Write any data from Proton to the network.
                 writeToNetwork(engineConnection);
             }
@@ -191,66 +232,23 @@ public class Engine extends ComponentImpl implements Handler {
                 engineConnection.timerPromise = null;
                 timer.cancel(tmp);
             }
+            cancelSenderReaper(engineConnection);
             protonConnection.close();
             engineConnection.closeRequest = cr;
             writeToNetwork(engineConnection);
         } else if (message instanceof SendRequest) {
             SendRequest sr = (SendRequest)message;
+            send(sr);
+            writeToNetwork(sr.connection);
 
-            EngineConnection engineConnection = sr.connection;
-
-            // Look to see if there is already a suitable sending link, and open one if there is not...
-            Link link = sr.connection.connection.linkHead(EnumSet.of(EndpointState.ACTIVE),
-                EnumSet.of(EndpointState.ACTIVE, EndpointState.UNINITIALIZED));
-            Sender linkSender;
-            boolean linkOpened = false;
-            while(true) {
-              if (link == null) {
-                linkSender = sr.connection.session.sender(sr.topic);
-                Source source = new Source();
-                Target target = new Target();
-                source.setAddress(sr.topic);
-                target.setAddress(sr.topic);
-                linkSender.setSource(source);
-                linkSender.setTarget(target);
-                linkSender.open();
-                linkOpened = true;
-                break;
-              }
-              if ((link instanceof Sender) && sr.topic.equals(link.getName())) {
-                linkSender = (Sender)link;
-                break;
-              }
-              link = link.next(EnumSet.of(EndpointState.ACTIVE),
-                  EnumSet.of(EndpointState.ACTIVE, EndpointState.UNINITIALIZED));
+        } else if (message instanceof SendBatchRequest) {
+            SendBatchRequest sbr = (SendBatchRequest)message;
+            for (SendRequest sr : sbr.requests) {
+                send(sr);
             }
-            Delivery d = linkSender.delivery(String.valueOf(engineConnection.deliveryTag++).getBytes(Charset.forName("UTF-8")));
-
-            linkSender.send(sr.buf.array(), 0, sr.length);
-
-            if (sr.qos == QOS.AT_MOST_ONCE) {
-              d.settle();
-              if (!sr.retainLink) {
-                linkSender.close();
-                linkSender.free();
-              }
-            } else {
-              engineConnection.inProgressOutboundDeliveries.put(d, sr);
-            }
-            linkSender.advance();
-            engineConnection.drained = false;
-            int delta = engineConnection.transport.head().remaining();
-            // If the link was also opened as part of processing this request then increase the
-            // amount of data expected (as the linkSender.send() won't count against the amount of
-            // data in transport.head() unless there is link credit - which there won't be until
-            // the server responds to the link open).
-            if (linkOpened) {
-              delta += sr.length;
+            if (!sbr.requests.isEmpty()) {
+                writeToNetwork(sbr.requests.get(0).connection);
             }
-            if (sr.qos == QOS.AT_MOST_ONCE) {
-              engineConnection.addInflightQos0(delta, new SendResponse(sr, null), sr.getSender(), this);
-            }
-            writeToNetwork(engineConnection);
 
         } else if (message instanceof SubscribeRequest) {
             SubscribeRequest sr = (SubscribeRequest) message;
@@ -261,7 +259,8 @@ public class Engine extends ComponentImpl implements Handler {
                 sr.getSender().tell(new SubscribeResponse(engineConnection, sr.topic, exception), this);
             } else {
                 Receiver linkReceiver = sr.connection.session.receiver(sr.topic.getTopic());
-                engineConnection.subscriptionData.put(sr.topic.toString(), new EngineConnection.SubscriptionData(sr.getSender(), sr.initialCredit, linkReceiver));
+                final AdaptiveCredit adaptiveCredit = sr.maxCredit > 0 ? new AdaptiveCredit(sr.minCredit, sr.maxCredit, sr.initialCredit) : null;
+                engineConnection.addSubscription(sr.topic.toString(), new EngineConnection.SubscriptionData(sr.getSender(), sr.initialCredit, linkReceiver, adaptiveCredit));
                 Source source = new Source();
                 source.setAddress(sr.topic.getTopic());
                 Target target = new Target();
@@ -289,7 +288,7 @@ public class Engine extends ComponentImpl implements Handler {
                 }
 
                 linkReceiver.open();
-                linkReceiver.flow(sr.initialCredit);
+                linkReceiver.flow(adaptiveCredit == null ? sr.initialCredit : adaptiveCredit.getWindow());
 
                 writeToNetwork(engineConnection);
             }
@@ -334,12 +333,19 @@ public class Engine extends ComponentImpl implements Handler {
             } else {
               subData.settled++;
               subData.unsettled--;
-
-              double available = subData.maxLinkCredit - subData.unsettled;
-              if ((available / subData.settled) <= 1.25 ||
-                  (subData.unsettled == 0 && subData.settled > 0)) {
-                subData.receiver.flow(subData.settled);
-                subData.settled = 0;
+              subData.inboundBytes -= dr.request.size;
+              engineConnection.inboundBufferedBytes -= dr.request.size;
+
+              if (subData.adaptiveCredit == null) {
+                double available = subData.maxLinkCredit - subData.unsettled;
+                if ((available / subData.settled) <= 1.25 ||
+                    (subData.unsettled == 0 && subData.settled > 0)) {
+                  subData.receiver.flow(subData.settled);
+                  subData.settled = 0;
+                }
+              } else {
+                subData.adaptiveCredit.settled(System.nanoTime());
+                flowAdaptiveCredit(engineConnection, subData);
               }
             }
 
@@ -354,7 +360,7 @@ public class Engine extends ComponentImpl implements Handler {
             WriteResponse wr = (WriteResponse)message;
             EngineConnection engineConnection = (EngineConnection)wr.context;
             if (engineConnection != null) {
-                engineConnection.bytesWritten += wr.amount;
+                engineConnection.addBytesWritten(wr.amount);
                 engineConnection.notifyInflightQos0(false);
 
                 // If all buffered network data has been sent and the last send request could not be sent immediately
@@ -373,6 +379,7 @@ public class Engine extends ComponentImpl implements Handler {
             try {
                 EngineConnection engineConnection = (EngineConnection) dr.channel.getContext();
                 if (!engineConnection.closed && !engineConnection.transport.isClosed()) {
+                    engineConnection.addBytesRead(dr.buffer.readableBytes());
                     int bytesAvailable;
                     while ((bytesAvailable = dr.buffer.readableBytes()) > 0) {
                         ByteBuffer tail = engineConnection.transport.tail();
@@ -398,6 +405,8 @@ public class Engine extends ComponentImpl implements Handler {
             DisconnectResponse dr = (DisconnectResponse)message;
             CloseRequest cr = (CloseRequest)dr.context;
             if (cr != null) {
+                // A clean close, so there is no need to keep a record of the frames
+                if (cr.connection.frameRing != null) FlightRecorder.unregister(cr.connection.frameRing);
                 cr.connection.closed = true;
                 cr.connection.notifyInflightQos0(true);
                 cr.getSender().tell(new CloseResponse(cr), this);
@@ -412,8 +421,10 @@ public class Engine extends ComponentImpl implements Handler {
                     engineConnection.timerPromise = null;
                     timer.cancel(tmp);
                 }
+                cancelSenderReaper(engineConnection);
                 engineConnection.notifyInflightQos0(true);
                 engineConnection.closed = true;
+                retainFrames(engineConnection);
                 engineConnection.transport.close_tail();
                 engineConnection.requestor.tell(new DisconnectNotification(
                         engineConnection, ce.cause), this);
@@ -421,14 +432,19 @@ public class Engine extends ComponentImpl implements Handler {
         } else if (message instanceof PopResponse) {
             PopResponse pr = (PopResponse)message;
             EngineConnection engineConnection = (EngineConnection)pr.promise.getContext();
-            long now = System.currentTimeMillis();
-            long timeout = engineConnection.transport.tick(now);
-            logger.data(this, methodName, "Timeout: {}", timeout);
-            if (timeout > 0) {
-                TimerPromiseImpl promise = new TimerPromiseImpl(this, engineConnection);
-                engineConnection.timerPromise = promise;
-                logger.data(this, methodName, "Scheduling at: {}", timeout - now);
-                timer.schedule(timeout - now, promise);
+            if (pr.promise instanceof SenderReaperPromise) {
+                if (pr.promise == engineConnection.senderReaperPromise && !engineConnection.closed) {
+                    engineConnection.senderReaperPromise = null;
+                    long delay = engineConnection.closeIdleSenders(System.nanoTime());
+                    if (delay > 0) {
+                        scheduleSenderReaper(engineConnection, delay);
+                    }
+                    writeToNetwork(engineConnection);
+                }
+            } else if (pr.promise == engineConnection.timerPromise && !engineConnection.closed) {
+                engineConnection.timerPromise = null;
+                tick(engineConnection);
+                process(engineConnection.collector);
                 writeToNetwork(engineConnection);
             }
         }
@@ -436,11 +452,200 @@ public class Engine extends ComponentImpl implements Handler {
         logger.exit(this, methodName);
     }
 
+    /**
+     * Determines whether writing data to the network should be deferred, so that it can be
+     * coalesced with data produced by processing the messages still queued for the engine.
+     * Writes are only ever deferred if write coalescing was requested when the connection was
+     * opened, and then only until the mailbox drains or the byte or latency threshold is reached.
+     *
+     * @return <code>true</code> if the write should be deferred.
+     */
+    private boolean deferWrite(EngineConnection engineConnection, int pending) {
+        if (engineConnection.writeCoalescingMaxBytes <= 0 || engineConnection.closed) {
+            return false;
+        }
+        if (pending >= engineConnection.writeCoalescingMaxBytes || !hasQueuedMessages()) {
+            return false;
+        }
+
+        final long now = System.nanoTime();
+        if (!engineConnection.writeDeferred) {
+            engineConnection.writeDeferred = true;
+            engineConnection.writeDeferredSince = now;
+            deferredWrites.add(engineConnection);
+            return true;
+        }
+        return (now - engineConnection.writeDeferredSince) < engineConnection.writeCoalescingMaxDelayNanos;
+    }
+
+    /**
+     * Writes any data that was deferred (to coalesce it with subsequent writes), now that there
+     * are no further messages queued for the engine.
+     */
+    @Override
+    protected void onMailboxDrained() {
+        if (!deferredWrites.isEmpty()) {
+            final String methodName = "onMailboxDrained";
+            logger.entry(this, methodName);
+
+            final EngineConnection[] connections = deferredWrites.toArray(new EngineConnection[deferredWrites.size()]);
+            deferredWrites.clear();
+            for (EngineConnection engineConnection : connections) {
+                if (engineConnection.writeDeferred && !engineConnection.closed) {
+                    flushToNetwork(engineConnection);
+                }
+            }
+
+            logger.exit(this, methodName);
+        }
+    }
+
+    /**
+     * Transfers the message in a send request to the engine's proton connection,
+     * opening a sending link if required.  The caller is responsible for writing any
+     * resulting data to the network.
+     */
+    private void send(SendRequest sr) {
+        final String methodName = "send";
+        logger.entry(this, methodName, sr);
+
+        EngineConnection engineConnection = sr.connection;
+
+        // Look to see if there is already a suitable sending link, and open one if there is not...
+        Sender linkSender = engineConnection.lookupSender(sr.topic);
+        boolean linkOpened = false;
+        if (linkSender == null) {
+            linkSender = engineConnection.session.sender(sr.topic);
+            Source source = new Source();
+            Target target = new Target();
+            source.setAddress(sr.topic);
+            target.setAddress(sr.topic);
+            linkSender.setSource(source);
+            linkSender.setTarget(target);
+            linkSender.open();
+            linkOpened = true;
+            engineConnection.addSender(sr.topic, linkSender);
+            if (engineConnection.senderLinkIdleTimeoutNanos > 0 && engineConnection.senderReaperPromise == null) {
+                scheduleSenderReaper(engineConnection, engineConnection.senderLinkIdleTimeoutNanos);
+            }
+        }
+        Delivery d = linkSender.delivery(String.valueOf(engineConnection.deliveryTag++).getBytes(Charset.forName("UTF-8")));
+
+        linkSender.send(sr.buf.array(), sr.buf.arrayOffset() + sr.buf.readerIndex(), sr.length);
+
+        if (sr.qos == QOS.AT_MOST_ONCE) {
+          d.settle();
+          if (!sr.retainLink) {
+            engineConnection.removeSender(linkSender);
+            linkSender.close();
+            linkSender.free();
+          }
+        } else {
+          engineConnection.addInProgressOutboundDelivery(d, sr);
+        }
+        linkSender.advance();
+        engineConnection.drained = false;
+        int delta = engineConnection.transport.head().remaining();
+        // If the link was also opened as part of processing this request then increase the
+        // amount of data expected (as the linkSender.send() won't count against the amount of
+        // data in transport.head() unless there is link credit - which there won't be until
+        // the server responds to the link open).
+        if (linkOpened) {
+          delta += sr.length;
+        }
+        if (sr.qos == QOS.AT_MOST_ONCE) {
+          engineConnection.addInflightQos0(delta, new SendResponse(sr, null), sr.getSender(), this);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    // Distinguishes the timer used to close idle sending links from the timer used to drive
+    // the AMQP transport's heartbeats, as both have the connection as their context.
+    private static class SenderReaperPromise extends TimerPromiseImpl {
+        private SenderReaperPromise(Component component, EngineConnection engineConnection) {
+            super(component, engineConnection);
+        }
+    }
+
+    /**
+     * Schedules a timer that will close any sending links that have been idle for longer than
+     * the connection's sender link idle timeout.
+     */
+    private void scheduleSenderReaper(EngineConnection engineConnection, long delayNanos) {
+        final String methodName = "scheduleSenderReaper";
+        logger.entry(this, methodName, engineConnection, delayNanos);
+
+        engineConnection.senderReaperPromise = new SenderReaperPromise(this, engineConnection);
+        // round up, so that the timer does not pop before the link has expired
+        timer.schedule(TimeUnit.NANOSECONDS.toMillis(delayNanos + 999999), engineConnection.senderReaperPromise);
+
+        logger.exit(this, methodName);
+    }
+
+    private void cancelSenderReaper(EngineConnection engineConnection) {
+        final String methodName = "cancelSenderReaper";
+        logger.entry(this, methodName, engineConnection);
+
+        if (engineConnection.senderReaperPromise != null) {
+            TimerPromiseImpl tmp = engineConnection.senderReaperPromise;
+            engineConnection.senderReaperPromise = null;
+            timer.cancel(tmp);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Tops up the credit of a link that uses adaptive credit, so that its credit plus its
+     * unsettled messages matches the window worked out for it.  The window is reduced if the
+     * connection is holding more bytes of unsettled messages than it is allowed, although a
+     * link with nothing unsettled is always allowed one message so that it cannot stall.
+     * Credit is granted in batches, rather than one message at a time, to limit the number of
+     * flow frames sent.
+     */
+    private void flowAdaptiveCredit(EngineConnection engineConnection, EngineConnection.SubscriptionData subData) {
+        final String methodName = "flowAdaptiveCredit";
+        logger.entry(this, methodName, engineConnection, subData);
+
+        final AdaptiveCredit adaptiveCredit = subData.adaptiveCredit;
+        long window = adaptiveCredit.getWindow();
+        if (engineConnection.maxInboundBufferedBytes > 0) {
+            final long spareBytes = Math.max(0, engineConnection.maxInboundBufferedBytes - engineConnection.inboundBufferedBytes);
+            final long messageSize = Math.max(1, adaptiveCredit.getAverageMessageSize());
+            window = Math.min(window, subData.unsettled + spareBytes / messageSize);
+            if (subData.unsettled == 0) window = Math.max(window, 1);
+        }
+
+        final int credit = subData.receiver.getCredit();
+        final long grant = window - subData.unsettled - credit;
+        if (grant > 0 && (grant * 4 >= window || subData.unsettled == 0)) {
+            adaptiveCredit.granted(System.nanoTime(), credit);
+            subData.receiver.flow((int)grant);
+            subData.settled = 0;
+        }
+
+        logger.exit(this, methodName);
+    }
+
     // Drains any pending data from a Proton transport object onto the network
     private void writeToNetwork(EngineConnection engineConnection) {
       final String methodName = "writeToNetwork";
       logger.entry(this, methodName, engineConnection);
 
+        final int pending = engineConnection.transport.pending();
+        if (pending > 0 && !deferWrite(engineConnection, pending)) {
+            flushToNetwork(engineConnection);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    private void flushToNetwork(EngineConnection engineConnection) {
+        final String methodName = "flushToNetwork";
+        logger.entry(this, methodName, engineConnection);
+
+        engineConnection.writeDeferred = false;
         if (engineConnection.transport.pending() > 0) {
             ByteBuffer head = engineConnection.transport.head();
             int amount = head.remaining();
@@ -452,43 +657,35 @@ public class Engine extends ComponentImpl implements Handler {
         logger.exit(this, methodName);
     }
 
-    /** Runs scheduled asynchronous Tasks. */
-    private final ScheduledExecutorService scheduler = java.util.concurrent.Executors.newScheduledThreadPool(1);
-    /** A scheduled task that runs if we receive no data from the client in the scheduled time. */
-    private ScheduledFuture<?> receiveScheduledFuture;
-
     /**
-     * Reset the local idle timers, now that we have received some data.
-     *
-     * If we have set an idle timeout the client must send some data at least that often,
-     * we double the timeout before checking.
+     * Ticks the connection's transport, and makes sure that the connection's timer is due to
+     * pop no later than the transport's next deadline.  The transport uses ticks both to send
+     * heartbeats, and to close the connection if no data has been received from the server
+     * within the local idle timeout - it tracks the data received itself, so there is no need
+     * to do anything as each event is processed.  Each connection has at most one timer
+     * outstanding.
      */
-    private void resetReceiveIdleTimer(Event event) {
-        final String methodName = "resetReceiveIdleTimer";
-        logger.entry(this, methodName, event);
-
-        if (receiveScheduledFuture != null) {
-            receiveScheduledFuture.cancel(false);
-        }
-
-        final Transport transport = event.getTransport();
-        if (transport != null) {
-            final int localIdleTimeOut = transport.getIdleTimeout();
-            if (localIdleTimeOut > 0) {
-                Runnable receiveTimeout = new Runnable() {
-                    @Override
-                    public void run() {
-                        final String methodName = "run";
-                        logger.entry(this, methodName);
-                        transport.process();
-                        transport.tick(System.currentTimeMillis());
-                        logger.exit(methodName);
-                    }
-                };
-                receiveScheduledFuture = scheduler.schedule(receiveTimeout,
-                        localIdleTimeOut, TimeUnit.MILLISECONDS);
+    private void tick(EngineConnection engineConnection) {
+        final String methodName = "tick";
+        logger.entry(this, methodName, engineConnection);
+
+        final long now = System.currentTimeMillis();
+        final long deadline = engineConnection.transport.tick(now);
+        if (logger.isTraceEnabled()) logger.data(this, methodName, "Deadline: {}", deadline);
+        if (deadline > 0) {
+            if (engineConnection.timerPromise != null && deadline < engineConnection.timerDeadline) {
+                TimerPromiseImpl tmp = engineConnection.timerPromise;
+                engineConnection.timerPromise = null;
+                timer.cancel(tmp);
+            }
+            if (engineConnection.timerPromise == null) {
+                engineConnection.timerPromise = new TimerPromiseImpl(this, engineConnection);
+                engineConnection.timerDeadline = deadline;
+                if (logger.isTraceEnabled()) logger.data(this, methodName, "Scheduling at: {}", deadline - now);
+                timer.schedule(Math.max(0, deadline - now), engineConnection.timerPromise);
             }
         }
+
         logger.exit(this, methodName);
     }
 
@@ -500,7 +697,6 @@ public class Engine extends ComponentImpl implements Handler {
             Event event = collector.peek();
             logger.data(this, methodName, "Processing event: {}", event.getType());
             event.dispatch(this);
-            resetReceiveIdleTimer(event);
 
             collector.pop();
         }
@@ -520,6 +716,7 @@ public class Engine extends ComponentImpl implements Handler {
                 engineConnection.timerPromise = null;
                 timer.cancel(tmp);
             }
+            cancelSenderReaper(engineConnection);
 
             if (event.getConnection().getLocalState() == EndpointState.CLOSED || engineConnection.openRequest == null) {
                 if (!engineConnection.closed) {
@@ -530,6 +727,7 @@ public class Engine extends ComponentImpl implements Handler {
                     NetworkClosePromiseImpl future = new NetworkClosePromiseImpl(this, cr);
                     engineConnection.channel.close(future);
                     if (cr == null) {
+                        retainFrames(engineConnection);
                         Throwable error = getClientException(remoteCondition);
                         engineConnection.requestor.tell(new DisconnectNotification(engineConnection, error), this);
                     }
@@ -541,6 +739,7 @@ public class Engine extends ComponentImpl implements Handler {
                     engineConnection.notifyInflightQos0(true);
                     engineConnection.closed = true;
                     engineConnection.channel.close(null);
+                    retainFrames(engineConnection);
 
                     final ClientException clientException;
                     // check for SASL failures
@@ -564,12 +763,24 @@ public class Engine extends ComponentImpl implements Handler {
             }
         } else if (event.getConnection().getRemoteState() == EndpointState.ACTIVE) {
             EngineConnection engineConnection = (EngineConnection)event.getConnection().getContext();
-            long now = System.currentTimeMillis();
-            long timeout = engineConnection.transport.tick(now);
-            if (timeout > 0) {
-                engineConnection.timerPromise = new TimerPromiseImpl(this, engineConnection);
-                timer.schedule(timeout - now, engineConnection.timerPromise);
-            }
+            // The remote idle timeout is now known, which may bring forward the next tick
+            tick(engineConnection);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Keeps the record of the most recent frames for a connection that has failed, so that it is included in any
+     * subsequent FFDC, and writes it to the trace.
+     */
+    private void retainFrames(EngineConnection engineConnection) {
+        final String methodName = "retainFrames";
+        logger.entry(this, methodName, engineConnection);
+
+        if (engineConnection.frameRing != null) {
+            FlightRecorder.retain(engineConnection.frameRing);
+            if (logger.isTraceEnabled()) logger.data(this, methodName, engineConnection.frameRing);
         }
 
         logger.exit(this, methodName);
@@ -659,11 +870,13 @@ public class Engine extends ComponentImpl implements Handler {
                     link.free();
 
                     EngineConnection engineConnection = (EngineConnection)event.getConnection().getContext();
-                    EngineConnection.SubscriptionData sd = engineConnection.subscriptionData.remove(link.getName());
+                    EngineConnection.SubscriptionData sd = engineConnection.removeSubscription(link.getName());
 
                     if (sd == null) {
                       logger.ffdc(this, methodName, FFDCProbeId.PROBE_001, null, this, event);
                     } else {
+                        // Messages still unsettled on the link no longer count against the connection
+                        engineConnection.inboundBufferedBytes -= sd.inboundBytes;
                         sd.subscriber.tell(new UnsubscribeResponse(engineConnection, new SubscriptionTopic(link.getName()), clientException), this);
                     }
                 }
@@ -672,6 +885,8 @@ public class Engine extends ComponentImpl implements Handler {
         } else if (link instanceof Sender) {
             if (eventType == Event.Type.LINK_REMOTE_CLOSE &&
                     link.getRemoteState() == EndpointState.CLOSED) {
+                EngineConnection engineConnection = (EngineConnection) event.getConnection().getContext();
+                engineConnection.removeSender((Sender)link);
                 if (link.getLocalState() != EndpointState.CLOSED) {
                     String msg = "The server indicated that our sending link was closed due to an error condition, ";
                     ErrorCondition remoteCondition = link.getRemoteCondition();
@@ -684,9 +899,8 @@ public class Engine extends ComponentImpl implements Handler {
                         }
                     }
                     logger.data(this, methodName, msg, link.getTarget().getAddress(), this);
-                    EngineConnection engineConnection = (EngineConnection) event.getConnection().getContext();
                     for (Delivery delivery = link.head(); delivery != null; delivery = delivery.next()) {
-                        SendRequest sr = engineConnection.inProgressOutboundDeliveries.remove(delivery);
+                        SendRequest sr = engineConnection.removeInProgressOutboundDelivery(delivery);
                         if (sr != null && sr.getSender() != null) {
                             sr.getSender().tell(new SendResponse(sr, new ClientException(msg)), this);
                         }
@@ -851,7 +1065,7 @@ public class Engine extends ComponentImpl implements Handler {
       EngineConnection engineConnection = (EngineConnection)event.getConnection().getContext();
       Delivery delivery = event.getDelivery();
       if (event.getLink() instanceof Sender) {
-          SendRequest sr = engineConnection.inProgressOutboundDeliveries.remove(delivery);
+          SendRequest sr = engineConnection.removeInProgressOutboundDelivery(delivery);
           Exception exception = null;
           if (delivery.getRemoteState() instanceof Rejected) {
               final Rejected rejected = (Rejected) delivery.getRemoteState();
@@ -867,6 +1081,7 @@ public class Engine extends ComponentImpl implements Handler {
               exception = new Exception("Message was modified");
           }
           if (!sr.retainLink) {
+              engineConnection.removeSender((Sender)event.getLink());
               event.getLink().close();
               event.getLink().free();
           }
@@ -874,12 +1089,18 @@ public class Engine extends ComponentImpl implements Handler {
       } else if (delivery.isReadable() && !delivery.isPartial()) {    // Assuming link instanceof Receiver...
           Receiver receiver = (Receiver)event.getLink();
           int amount = delivery.pending();
-          byte[] data = new byte[amount];
-          receiver.recv(data, 0, amount);
+          ByteBuf data = engineConnection.pooledDeliveryBuffers ? allocator.heapBuffer(amount, amount) : Unpooled.buffer(amount, amount);
+          receiver.recv(data.array(), data.arrayOffset(), amount);
+          data.writerIndex(amount);
           receiver.advance();
 
           EngineConnection.SubscriptionData subData = engineConnection.subscriptionData.get(event.getLink().getName());
           subData.unsettled++;
+          subData.inboundBytes += amount;
+          engineConnection.inboundBufferedBytes += amount;
+          if (subData.adaptiveCredit != null) {
+              subData.adaptiveCredit.delivered(System.nanoTime(), amount, receiver.getCredit());
+          }
           QOS qos = delivery.remotelySettled() ? QOS.AT_MOST_ONCE : QOS.AT_LEAST_ONCE;
           subData.subscriber.tell(new DeliveryRequest(data, qos, event.getLink().getName(), delivery, event.getConnection()), this);
       }
@@ -18,25 +18,32 @@
  */
 package com.ibm.mqlight.api.impl.engine;
 
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.qpid.proton.engine.Collector;
 import org.apache.qpid.proton.engine.Connection;
 import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
 import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
 import org.apache.qpid.proton.engine.Session;
 import org.apache.qpid.proton.engine.Transport;
 
 import com.ibm.mqlight.api.impl.Component;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.timer.TimerPromiseImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 import com.ibm.mqlight.api.network.NetworkChannel;
 
 public class EngineConnection {
 
-    private static final Logger logger = LoggerFactory.getLogger(EngineConnection.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(EngineConnection.class);
   
     protected final Connection connection;
     protected final Session session;
@@ -44,7 +51,7 @@ public class EngineConnection {
 
     protected static class PendingQos0Response{
       
-        private static final Logger logger = LoggerFactory.getLogger(PendingQos0Response.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(PendingQos0Response.class);
       
         long amount;
         SendResponse response;
@@ -52,7 +59,7 @@ public class EngineConnection {
         Engine engine;
         protected PendingQos0Response(long amount, SendResponse response, Component component, Engine engine) {
             final String methodName = "<init>";
-            logger.entry(this, methodName, amount, response, component, engine);
+            if (logger.isTraceEnabled()) logger.entry(this, methodName, amount, response, component, engine);
             
             this.amount = amount;
             this.response = response;
@@ -67,12 +74,14 @@ public class EngineConnection {
     // the associated callback (as supplied to the send method) based on how much data has been
     // written to the AMQP transport.
     protected final LinkedList<PendingQos0Response> inflightQos0 = new LinkedList<>();
+    private volatile int publishedInflightQos0 = 0;
 
     protected void addInflightQos0(int delta, SendResponse response, Component component, Engine engine) {
         final String methodName = "addInflightQos0";
-        logger.entry(this, methodName, delta, response, component, engine);
+        if (logger.isTraceEnabled()) logger.entry(this, methodName, delta, response, component, engine);
       
         inflightQos0.addLast(new PendingQos0Response(bytesWritten + delta, response, component, engine));
+        publishedInflightQos0 = inflightQos0.size();
         
         logger.exit(this, methodName);
     }
@@ -90,6 +99,7 @@ public class EngineConnection {
                 break;
             }
         }
+        publishedInflightQos0 = inflightQos0.size();
         
         logger.exit(this, methodName);
     }
@@ -99,30 +109,188 @@ public class EngineConnection {
     protected final NetworkChannel channel;
     protected long deliveryTag = 0;
     protected final HashMap<Delivery, SendRequest> inProgressOutboundDeliveries = new HashMap<>();
+    private volatile int publishedInProgressOutboundDeliveries = 0;
     protected final HashMap<String, SubscriptionData> subscriptionData = new HashMap<>();
+    // The subscriptions that use adaptive credit, keyed by topic, so that other threads can
+    // read their credit windows (see getCreditWindow).
+    private final ConcurrentHashMap<String, AdaptiveCredit> adaptiveCredits = new ConcurrentHashMap<>();
     protected OpenRequest openRequest = null;
     protected CloseRequest closeRequest = null;
+    // The timer that next ticks the transport, and the time (in milliseconds) that it is due.
     protected TimerPromiseImpl timerPromise = null;
+    protected long timerDeadline = 0;
     protected boolean closed = false;
+    // The most recent frames sent and received on the connection
+    protected FrameRing frameRing = null;
     protected boolean drained = true;
+    // Only updated by the engine, and published for other threads to read (see addBytesWritten)
     protected long bytesWritten = 0;
+    protected long bytesRead = 0;
+    private volatile long publishedBytesWritten = 0;
+    private volatile long publishedBytesRead = 0;
+    protected int writeCoalescingMaxBytes = 0;
+    protected long writeCoalescingMaxDelayNanos = 0;
+    protected boolean writeDeferred = false;
+    protected long writeDeferredSince = 0;
+
+    // Open sending links, keyed by topic, in least recently used order.  This saves walking
+    // the connection's list of links each time a message is sent.
+    protected final LinkedHashMap<String, SenderData> senders = new LinkedHashMap<>(16, 0.75f, true);
+    // The maximum number of sending links to retain, or zero for no limit.
+    protected int maxSenderLinks = 0;
+    // How long (in nanoseconds) a sending link can go unused before it is closed, or zero to keep it open.
+    protected long senderLinkIdleTimeoutNanos = 0;
+    protected TimerPromiseImpl senderReaperPromise = null;
+    // Bytes of received messages that have not yet been settled, and the limit beyond which
+    // subscriptions using adaptive credit are not granted more credit (zero for no limit).
+    protected long inboundBufferedBytes = 0;
+    protected long maxInboundBufferedBytes = 0;
+    // Whether received messages are held in pooled buffers, rather than newly allocated ones.
+    protected boolean pooledDeliveryBuffers = false;
+
+    private static final EnumSet<EndpointState> SENDER_LOCAL_STATES = EnumSet.of(EndpointState.ACTIVE);
+    private static final EnumSet<EndpointState> SENDER_REMOTE_STATES = EnumSet.of(EndpointState.ACTIVE, EndpointState.UNINITIALIZED);
+
+    protected static class SenderData {
+        protected final Sender sender;
+        protected long lastUsed;
+        protected SenderData(Sender sender, long lastUsed) {
+            this.sender = sender;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Finds an open sending link for a topic, and marks it as having been used.
+     * @param topic the topic to find a link for.
+     * @return the sending link, or <code>null</code> if there is no open link for the topic.
+     */
+    protected Sender lookupSender(String topic) {
+        final String methodName = "lookupSender";
+        logger.entry(this, methodName, topic);
+
+        Sender sender = null;
+        final SenderData senderData = senders.get(topic);
+        if (senderData != null) {
+            if (SENDER_LOCAL_STATES.contains(senderData.sender.getLocalState()) &&
+                SENDER_REMOTE_STATES.contains(senderData.sender.getRemoteState())) {
+                senderData.lastUsed = System.nanoTime();
+                sender = senderData.sender;
+            } else {
+                senders.remove(topic);
+            }
+        }
+
+        logger.exit(this, methodName, sender);
+
+        return sender;
+    }
+
+    /**
+     * Records a newly opened sending link.  If this takes the number of sending links above
+     * {@link #maxSenderLinks} then the least recently used links with no outstanding deliveries
+     * are closed.
+     * @param topic the topic that the link sends to.
+     * @param sender the sending link.
+     */
+    protected void addSender(String topic, Sender sender) {
+        final String methodName = "addSender";
+        logger.entry(this, methodName, topic, sender);
+
+        senders.put(topic, new SenderData(sender, System.nanoTime()));
+        if (maxSenderLinks > 0) {
+            Iterator<Map.Entry<String, SenderData>> iterator = senders.entrySet().iterator();
+            while (senders.size() > maxSenderLinks && iterator.hasNext()) {
+                Sender eldest = iterator.next().getValue().sender;
+                if (eldest != sender && isIdle(eldest)) {
+                    logger.data(this, methodName, "Closing least recently used link: {}", eldest);
+                    iterator.remove();
+                    eldest.close();
+                    eldest.free();
+                }
+            }
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Closes any sending links that have not been used for {@link #senderLinkIdleTimeoutNanos}.
+     * @param now the current value of {@link System#nanoTime()}.
+     * @return the number of nanoseconds until the next link could become eligible for closing,
+     *         or zero if there are no open sending links.
+     */
+    protected long closeIdleSenders(long now) {
+        final String methodName = "closeIdleSenders";
+        logger.entry(this, methodName, now);
+
+        long result = 0;
+        Iterator<SenderData> iterator = senders.values().iterator();
+        while (iterator.hasNext()) {
+            SenderData senderData = iterator.next();
+            long idleFor = now - senderData.lastUsed;
+            if (idleFor < senderLinkIdleTimeoutNanos) {
+                // Links are in least recently used order, so none of the remaining links have expired
+                result = senderLinkIdleTimeoutNanos - idleFor;
+                break;
+            }
+            if (isIdle(senderData.sender)) {
+                logger.data(this, methodName, "Closing idle link: {}", senderData.sender);
+                iterator.remove();
+                senderData.sender.close();
+                senderData.sender.free();
+            } else if (result == 0) {
+                // Still has deliveries outstanding - check again once another timeout has passed
+                result = senderLinkIdleTimeoutNanos;
+            }
+        }
+
+        logger.exit(this, methodName, result);
+
+        return result;
+    }
+
+    private static boolean isIdle(Sender sender) {
+        return sender.getUnsettled() == 0 && sender.getQueued() == 0;
+    }
+
+    /**
+     * Forgets about a sending link, because it is being closed.
+     * @param sender the sending link.
+     */
+    protected void removeSender(Sender sender) {
+        final String methodName = "removeSender";
+        logger.entry(this, methodName, sender);
+
+        final SenderData senderData = senders.get(sender.getName());
+        if (senderData != null && senderData.sender == sender) {
+            senders.remove(sender.getName());
+        }
+
+        logger.exit(this, methodName);
+    }
 
     protected static class SubscriptionData {
       
-        private static final Logger logger = LoggerFactory.getLogger(SubscriptionData.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(SubscriptionData.class);
       
         protected final Component subscriber;
         protected final int maxLinkCredit;
         protected final Receiver receiver;
+        // Sizes the link's credit, or null if the link always uses maxLinkCredit
+        protected final AdaptiveCredit adaptiveCredit;
         protected int unsettled;
         protected int settled;
-        protected SubscriptionData(Component subscriber, int maxLinkCredit, Receiver receiver) {
+        // Bytes of the link's received messages that have not yet been settled
+        protected long inboundBytes;
+        protected SubscriptionData(Component subscriber, int maxLinkCredit, Receiver receiver, AdaptiveCredit adaptiveCredit) {
             final String methodName = "<init>";
-            logger.entry(this, methodName, subscriber, subscriber, receiver);
+            logger.entry(this, methodName, subscriber, subscriber, receiver, adaptiveCredit);
             
             this.subscriber = subscriber;
             this.maxLinkCredit = maxLinkCredit;
             this.receiver = receiver;
+            this.adaptiveCredit = adaptiveCredit;
             this.unsettled = 0;
             this.settled = 0;
             
@@ -144,6 +312,101 @@ public class EngineConnection {
         logger.exit(this, methodName);
     }
 
+    /**
+     * Called by the engine to count bytes written to the network.  The engine's thread uses the
+     * running total directly, and a copy of it is published for {@link #getBytesWritten()}.
+     */
+    void addBytesWritten(long amount) {
+        bytesWritten += amount;
+        publishedBytesWritten = bytesWritten;
+    }
+
+    /**
+     * Called by the engine to count bytes read from the network.
+     */
+    void addBytesRead(long amount) {
+        bytesRead += amount;
+        publishedBytesRead = bytesRead;
+    }
+
+    /**
+     * @return the number of bytes written to the network.  This, and the other statistics for the
+     *         connection, can be read from any thread - but are only approximate while the
+     *         connection is in use.
+     */
+    public long getBytesWritten() {
+        return publishedBytesWritten;
+    }
+
+    /**
+     * @return the number of bytes read from the network.
+     */
+    public long getBytesRead() {
+        return publishedBytesRead;
+    }
+
+    /**
+     * Called by the engine to track an at-least-once send until the server confirms it.  The
+     * number of sends being tracked is published for {@link #getInProgressOutboundDeliveryCount()}.
+     */
+    void addInProgressOutboundDelivery(Delivery delivery, SendRequest sendRequest) {
+        inProgressOutboundDeliveries.put(delivery, sendRequest);
+        publishedInProgressOutboundDeliveries = inProgressOutboundDeliveries.size();
+    }
+
+    /**
+     * Called by the engine once the server has confirmed, or failed, an at-least-once send.
+     *
+     * @return the send, or <code>null</code> if the delivery was not being tracked.
+     */
+    SendRequest removeInProgressOutboundDelivery(Delivery delivery) {
+        final SendRequest result = inProgressOutboundDeliveries.remove(delivery);
+        publishedInProgressOutboundDeliveries = inProgressOutboundDeliveries.size();
+        return result;
+    }
+
+    /**
+     * @return the number of at-least-once sends waiting to be confirmed by the server.
+     */
+    public int getInProgressOutboundDeliveryCount() {
+        return publishedInProgressOutboundDeliveries;
+    }
+
+    /**
+     * @return the number of at-most-once sends waiting to be written to the network.
+     */
+    public int getInflightQos0Count() {
+        return publishedInflightQos0;
+    }
+
+    /**
+     * Called by the engine when a subscription's link is opened.
+     */
+    void addSubscription(String topic, SubscriptionData data) {
+        subscriptionData.put(topic, data);
+        if (data.adaptiveCredit != null) adaptiveCredits.put(topic, data.adaptiveCredit);
+    }
+
+    /**
+     * Called by the engine when a subscription's link is closed.
+     *
+     * @return the subscription's data, or <code>null</code> if there is no such subscription.
+     */
+    SubscriptionData removeSubscription(String topic) {
+        adaptiveCredits.remove(topic);
+        return subscriptionData.remove(topic);
+    }
+
+    /**
+     * @param topic the topic of a subscription, as used to name its link.
+     * @return the credit window currently worked out for the subscription, or -1 if the
+     *         subscription does not use adaptive credit.
+     */
+    public int getCreditWindow(String topic) {
+        final AdaptiveCredit adaptiveCredit = adaptiveCredits.get(topic);
+        return adaptiveCredit == null ? -1 : adaptiveCredit.getWindow();
+    }
+
     /**
      * For unit testing.
      */
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.engine;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.transport.Attach;
+import org.apache.qpid.proton.amqp.transport.Begin;
+import org.apache.qpid.proton.amqp.transport.Close;
+import org.apache.qpid.proton.amqp.transport.Detach;
+import org.apache.qpid.proton.amqp.transport.Disposition;
+import org.apache.qpid.proton.amqp.transport.End;
+import org.apache.qpid.proton.amqp.transport.Flow;
+import org.apache.qpid.proton.amqp.transport.FrameBody;
+import org.apache.qpid.proton.amqp.transport.Open;
+import org.apache.qpid.proton.amqp.transport.Transfer;
+import org.apache.qpid.proton.framing.TransportFrame;
+
+import com.ibm.mqlight.api.impl.logging.FlightRecorder;
+
+/**
+ * A fixed size record of the most recent AMQP frames sent and received on a connection, which is always enabled and is written into FFDC output.
+ * <p>
+ * Each frame is stored as a handful of primitive values (direction, frame type, channel, handle, delivery id, payload size and timestamp) in preallocated
+ * arrays, so recording a frame does not allocate. Frames are recorded by a single thread (the engine); {@link #dump(StringBuilder, String)} can be called
+ * from any thread, and omits any records that might have been overwritten while they were being read.
+ */
+final class FrameRing implements FlightRecorder.Recording, FrameBody.FrameBodyHandler<Void> {
+
+    /** The default number of frames recorded for each connection */
+    static final int DEFAULT_CAPACITY = 128;
+
+    private static final byte SENT = (byte) 0x80;
+    private static final String[] frameTypes = {
+        "?", "OPEN", "BEGIN", "ATTACH", "FLOW", "TRANSFER", "DISPOSITION", "DETACH", "END", "CLOSE"
+    };
+
+    private final String clientId;
+    private final int mask;
+    private final byte[] types;
+    private final int[] channels;
+    private final long[] handles;
+    private final long[] deliveryIds;
+    private final int[] sizes;
+    private final long[] times;
+
+    /** The number of frames recorded so far, published once each frame has been completely recorded */
+    private volatile long count = 0;
+
+    // The frame currently being recorded
+    private int slot;
+
+    FrameRing(String clientId) {
+        this(clientId, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param clientId the client id of the connection, used to identify the recording.
+     * @param capacity the number of frames to record, which must be a power of two.
+     */
+    FrameRing(String clientId, int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.clientId = clientId;
+        mask = capacity - 1;
+        types = new byte[capacity];
+        channels = new int[capacity];
+        handles = new long[capacity];
+        deliveryIds = new long[capacity];
+        sizes = new int[capacity];
+        times = new long[capacity];
+    }
+
+    int getCapacity() {
+        return mask + 1;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    void sent(TransportFrame frame) {
+        record(frame, true);
+    }
+
+    void received(TransportFrame frame) {
+        record(frame, false);
+    }
+
+    private void record(TransportFrame frame, boolean sent) {
+        final long position = count;
+        slot = (int) position & mask;
+        types[slot] = 0;
+        channels[slot] = frame.getChannel();
+        handles[slot] = -1;
+        deliveryIds[slot] = -1;
+        final Binary payload = frame.getPayload();
+        sizes[slot] = payload == null ? 0 : payload.getLength();
+        times[slot] = System.currentTimeMillis();
+        final FrameBody body = frame.getBody();
+        if (body != null) body.invoke(this, payload, null);
+        if (sent) types[slot] |= SENT;
+        count = position + 1;
+    }
+
+    private void set(int type, UnsignedInteger handle, UnsignedInteger deliveryId) {
+        types[slot] = (byte) type;
+        if (handle != null) handles[slot] = handle.longValue();
+        if (deliveryId != null) deliveryIds[slot] = deliveryId.longValue();
+    }
+
+    @Override
+    public void handleOpen(Open open, Binary payload, Void context) {
+        set(1, null, null);
+    }
+
+    @Override
+    public void handleBegin(Begin begin, Binary payload, Void context) {
+        set(2, null, null);
+    }
+
+    @Override
+    public void handleAttach(Attach attach, Binary payload, Void context) {
+        set(3, attach.getHandle(), null);
+    }
+
+    @Override
+    public void handleFlow(Flow flow, Binary payload, Void context) {
+        set(4, flow.getHandle(), flow.getDeliveryCount());
+    }
+
+    @Override
+    public void handleTransfer(Transfer transfer, Binary payload, Void context) {
+        set(5, transfer.getHandle(), transfer.getDeliveryId());
+    }
+
+    @Override
+    public void handleDisposition(Disposition disposition, Binary payload, Void context) {
+        set(6, null, disposition.getFirst());
+    }
+
+    @Override
+    public void handleDetach(Detach detach, Binary payload, Void context) {
+        set(7, detach.getHandle(), null);
+    }
+
+    @Override
+    public void handleEnd(End end, Binary payload, Void context) {
+        set(8, null, null);
+    }
+
+    @Override
+    public void handleClose(Close close, Binary payload, Void context) {
+        set(9, null, null);
+    }
+
+    @Override
+    public void dump(StringBuilder sb, String lineSeparator) {
+        final int capacity = mask + 1;
+        final long end = count;
+        final long start = Math.max(0, end - capacity);
+        final int length = (int) (end - start);
+
+        // Copy the records, then discard any that were overwritten while they were being copied
+        final byte[] type = new byte[length];
+        final int[] channel = new int[length];
+        final long[] handle = new long[length];
+        final long[] deliveryId = new long[length];
+        final int[] size = new int[length];
+        final long[] time = new long[length];
+        for (int i = 0; i < length; ++i) {
+            final int index = (int) (start + i) & mask;
+            type[i] = types[index];
+            channel[i] = channels[index];
+            handle[i] = handles[index];
+            deliveryId[i] = deliveryIds[index];
+            size[i] = sizes[index];
+            time[i] = times[index];
+        }
+        final int skip = (int) Math.min(length, Math.max(0, count - capacity + 1 - start));
+
+        sb.append("Protocol frames for client ");
+        sb.append(clientId);
+        sb.append(" (");
+        sb.append(end);
+        sb.append(" recorded, most recent last):");
+        sb.append(lineSeparator);
+        final SimpleDateFormat timeFormatter = new SimpleDateFormat("HH:mm:ss.SSS");
+        for (int i = skip; i < length; ++i) {
+            sb.append("  ");
+            sb.append(timeFormatter.format(new Date(time[i])));
+            sb.append((type[i] & SENT) != 0 ? " sent     " : " received ");
+            final int frameType = type[i] & ~SENT;
+            sb.append(String.format("%-11s", frameType < frameTypes.length ? frameTypes[frameType] : "?"));
+            sb.append(" channel=");
+            sb.append(channel[i]);
+            if (handle[i] >= 0) {
+                sb.append(" handle=");
+                sb.append(handle[i]);
+            }
+            if (deliveryId[i] >= 0) {
+                sb.append(" delivery=");
+                sb.append(deliveryId[i]);
+            }
+            sb.append(" size=");
+            sb.append(size[i]);
+            sb.append(lineSeparator);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        dump(sb, System.getProperty("line.separator"));
+        return sb.toString();
+    }
+}
@@ -25,9 +25,36 @@ public class OpenRequest extends Message {
 
     public final Endpoint endpoint;
     public final String clientId;
+    public final int writeCoalescingMaxBytes;
+    public final long writeCoalescingMaxDelay;
+    public final int maxSenderLinks;
+    public final long senderLinkIdleTimeout;
+    public final long maxInboundBufferedBytes;
+    public final boolean pooledDeliveryBuffers;
     
     public OpenRequest(Endpoint endpoint, String clientId) {
+        this(endpoint, clientId, 0, 0, 0, 0);
+    }
+
+    public OpenRequest(Endpoint endpoint, String clientId, int writeCoalescingMaxBytes, long writeCoalescingMaxDelay,
+                       int maxSenderLinks, long senderLinkIdleTimeout) {
+        this(endpoint, clientId, writeCoalescingMaxBytes, writeCoalescingMaxDelay, maxSenderLinks, senderLinkIdleTimeout, 0);
+    }
+
+    public OpenRequest(Endpoint endpoint, String clientId, int writeCoalescingMaxBytes, long writeCoalescingMaxDelay,
+                       int maxSenderLinks, long senderLinkIdleTimeout, long maxInboundBufferedBytes) {
+        this(endpoint, clientId, writeCoalescingMaxBytes, writeCoalescingMaxDelay, maxSenderLinks, senderLinkIdleTimeout, maxInboundBufferedBytes, false);
+    }
+
+    public OpenRequest(Endpoint endpoint, String clientId, int writeCoalescingMaxBytes, long writeCoalescingMaxDelay,
+                       int maxSenderLinks, long senderLinkIdleTimeout, long maxInboundBufferedBytes, boolean pooledDeliveryBuffers) {
         this.endpoint = endpoint;
         this.clientId = clientId;
+        this.writeCoalescingMaxBytes = writeCoalescingMaxBytes;
+        this.writeCoalescingMaxDelay = writeCoalescingMaxDelay;
+        this.maxSenderLinks = maxSenderLinks;
+        this.senderLinkIdleTimeout = senderLinkIdleTimeout;
+        this.maxInboundBufferedBytes = maxInboundBufferedBytes;
+        this.pooledDeliveryBuffers = pooledDeliveryBuffers;
     }
 }
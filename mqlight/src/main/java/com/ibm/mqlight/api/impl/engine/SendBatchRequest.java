@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.engine;
+
+import java.util.List;
+
+import com.ibm.mqlight.api.impl.Component;
+import com.ibm.mqlight.api.impl.Message;
+
+/**
+ * A number of {@link SendRequest}s, for the same connection, that the engine processes
+ * together - writing the resulting data to the network once all of the requests have
+ * been processed.  Each request still results in its own {@link SendResponse}.
+ */
+public class SendBatchRequest extends Message {
+    public final List<SendRequest> requests;
+
+    public SendBatchRequest(List<SendRequest> requests) {
+        this.requests = requests;
+    }
+
+    @Override
+    protected void setSender(Component sender) {
+        // The requests in the batch are never told to the engine individually, so
+        // propagate the sender to them - it is where their responses are sent.
+        super.setSender(sender);
+        for (SendRequest request : requests) {
+            request.setSender(sender);
+        }
+    }
+}
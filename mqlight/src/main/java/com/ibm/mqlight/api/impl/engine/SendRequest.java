@@ -21,6 +21,7 @@ package com.ibm.mqlight.api.impl.engine;
 import io.netty.buffer.ByteBuf;
 
 import com.ibm.mqlight.api.QOS;
+import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.Message;
 
 public class SendRequest extends Message {
@@ -43,4 +44,10 @@ public class SendRequest extends Message {
     public void releaseBuf() {
       buf.release();
     }
+
+    @Override
+    protected void setSender(Component sender) {
+        // Overridden so that SendBatchRequest can set the sender of the requests it contains
+        super.setSender(sender);
+    }
 }
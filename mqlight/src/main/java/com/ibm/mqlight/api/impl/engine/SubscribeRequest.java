@@ -28,12 +28,22 @@ public class SubscribeRequest extends Message {
     public final QOS qos;
     public final int initialCredit;
     public final long ttl;
+    // The bounds for adaptive credit, or zero if the subscription uses a fixed credit
+    public final int minCredit;
+    public final int maxCredit;
     
     public SubscribeRequest(EngineConnection connection, SubscriptionTopic topic, QOS qos, int initialCredit, long ttl) {
+        this(connection, topic, qos, initialCredit, ttl, 0, 0);
+    }
+
+    public SubscribeRequest(EngineConnection connection, SubscriptionTopic topic, QOS qos, int initialCredit, long ttl,
+                            int minCredit, int maxCredit) {
         this.connection = connection;
         this.topic = topic;
         this.qos = qos;
         this.initialCredit = initialCredit;
         this.ttl = ttl;
+        this.minCredit = minCredit;
+        this.maxCredit = maxCredit;
     }
 }
@@ -137,6 +137,8 @@ class FFDC {
       sb.append(getThreadInfo(thread));
     }
 
+    FlightRecorder.dump(sb, lineSeparator);
+
     logger.error(LogMarker.FFDC.getValue(), sb.toString());
 
     // Additionally output a javacore (to capture the full information to file)
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.logging;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps track of the always-on diagnostic recordings (for example, the recent protocol frames for each connection) that are written into the output of
+ * {@link FFDC#capture} and simulated javacores.
+ * <p>
+ * Active recordings are only weakly referenced, so they are forgotten as soon as the object that owns them is garbage collected. A recording can be explicitly
+ * retained, for example once its connection has failed, so that a later FFDC still includes it. Only the most recently retained recordings are kept.
+ */
+public final class FlightRecorder {
+
+  /**
+   * A recording that can be written into diagnostic output.
+   */
+  public interface Recording {
+    /**
+     * Writes the recording into diagnostic output. This can be called from any thread, concurrently with the recording being updated.
+     *
+     * @param sb the buffer to append the recording to.
+     * @param lineSeparator the line separator to use.
+     */
+    void dump(StringBuilder sb, String lineSeparator);
+  }
+
+  /** The maximum number of retained recordings */
+  static final int MAX_RETAINED = 4;
+
+  private static final Map<Recording, Boolean> active = new WeakHashMap<>();
+  private static final LinkedList<Recording> retained = new LinkedList<>();
+
+  private FlightRecorder() {}
+
+  /**
+   * Registers a recording, so that it is included in diagnostic output for as long as it is reachable.
+   *
+   * @param recording the recording to register.
+   */
+  public static synchronized void register(Recording recording) {
+    active.put(recording, Boolean.TRUE);
+  }
+
+  /**
+   * Unregisters a recording, so that it is no longer included in diagnostic output.
+   *
+   * @param recording the recording to unregister.
+   */
+  public static synchronized void unregister(Recording recording) {
+    active.remove(recording);
+    retained.remove(recording);
+  }
+
+  /**
+   * Retains a recording, so that it continues to be included in diagnostic output after its owner is garbage collected (at least until a further
+   * {@value #MAX_RETAINED} recordings have been retained).
+   *
+   * @param recording the recording to retain.
+   */
+  public static synchronized void retain(Recording recording) {
+    active.remove(recording);
+    retained.remove(recording);
+    retained.addLast(recording);
+    while (retained.size() > MAX_RETAINED) {
+      retained.removeFirst();
+    }
+  }
+
+  /**
+   * Writes all of the active and retained recordings into diagnostic output.
+   *
+   * @param sb the buffer to append the recordings to.
+   * @param lineSeparator the line separator to use.
+   */
+  public static void dump(StringBuilder sb, String lineSeparator) {
+    final List<Recording> recordings;
+    synchronized (FlightRecorder.class) {
+      recordings = new ArrayList<>(retained);
+      recordings.addAll(active.keySet());
+    }
+    for (Recording recording : recordings) {
+      recording.dump(sb, lineSeparator);
+      sb.append(lineSeparator);
+    }
+  }
+}
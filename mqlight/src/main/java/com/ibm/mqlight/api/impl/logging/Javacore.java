@@ -231,6 +231,9 @@ class Javacore {
       }
       sb.append(endOfLineCharacter);
     }
+
+    // Include any always-on diagnostic recordings, such as the recent protocol frames for each connection
+    FlightRecorder.dump(sb, endOfLineCharacter);
     sb.append("[EOF]");
 
     // Write the string buffer into a file
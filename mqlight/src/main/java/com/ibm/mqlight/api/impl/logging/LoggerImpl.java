@@ -23,7 +23,6 @@ import org.slf4j.MDC;
 import org.slf4j.Marker;
 
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
 
 /**
  * A trace/logger implementation that utilizes a SLF4J logger.
@@ -31,13 +30,19 @@ import com.ibm.mqlight.api.logging.Logger;
  * SLF4J loggers do not have methods to directly trace method entry, exit and exception throwing. But a {@link Marker} can be passed to various methods. Thus we use {@link Marker}s
  * to "mark" calls as entry, exit, throw, etc. It will then be up to the logger to filter and display appropriately based on these markers.
  */
-class LoggerImpl implements Logger {
+class LoggerImpl implements TraceLogger {
 
   /**
    * The underlying SLFJ logger.
    */
   private final org.slf4j.Logger logger;
 
+  /**
+   * Whether trace is enabled, as last obtained from the SLF4J logger, packed with the {@link TraceSettings} generation it was obtained in: {@code (generation << 1) | enabled}.
+   * This is a single field, rather than two, so that it is always read consistently without synchronization.
+   */
+  private int traceEnabledCache = 0;
+
   /**
    * Constructor.
    *
@@ -83,14 +88,33 @@ class LoggerImpl implements Logger {
   }
 
 
+  @Override
+  public boolean isTraceEnabled() {
+    final int generation = TraceSettings.getGeneration();
+    if (generation == 0) {
+      // Changes to the trace settings are not being reported, so cannot cache
+      return logger.isTraceEnabled();
+    }
+    final int cached = traceEnabledCache;
+    if ((cached >>> 1) == generation) {
+      return (cached & 1) != 0;
+    }
+    final boolean enabled = logger.isTraceEnabled();
+    traceEnabledCache = (generation << 1) | (enabled ? 1 : 0);
+    return enabled;
+  }
+
+
   @Override
   public void entry(String methodName) {
-    logger.trace(LogMarker.ENTRY.getValue(), methodName, (Object)null);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.ENTRY.getValue(), methodName, (Object)null);
+    }
   }
 
   @Override
   public void entry(String methodName, Object... objects) {
-    if (logger.isTraceEnabled()) {
+    if (isTraceEnabled()) {
       final Object[] objs = new Object[objects.length + 1];
       objs[0] = null;
       System.arraycopy(objects, 0, objs, 1, objects.length);
@@ -100,12 +124,14 @@ class LoggerImpl implements Logger {
 
   @Override
   public void entry(Object source, String methodName) {
-    logger.trace(LogMarker.ENTRY.getValue(), methodName, source);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.ENTRY.getValue(), methodName, source);
+    }
   }
 
   @Override
   public void entry(Object source, String methodName, Object... objects) {
-    if (logger.isTraceEnabled()) {
+    if (isTraceEnabled()) {
       final Object[] objs = new Object[objects.length + 1];
       objs[0] = source;
       System.arraycopy(objects, 0, objs, 1, objects.length);
@@ -113,35 +139,66 @@ class LoggerImpl implements Logger {
     }
   }
 
+  @Override
+  public void entry(Object source, String methodName, Object arg1) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.ENTRY.getValue(), methodName, source, arg1);
+    }
+  }
+
+  @Override
+  public void entry(Object source, String methodName, Object arg1, Object arg2) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.ENTRY.getValue(), methodName, new Object[] {source, arg1, arg2});
+    }
+  }
+
+  @Override
+  public void entry(Object source, String methodName, Object arg1, Object arg2, Object arg3) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.ENTRY.getValue(), methodName, new Object[] {source, arg1, arg2, arg3});
+    }
+  }
+
   @Override
   public void exit(String methodName) {
-    logger.trace(LogMarker.EXIT.getValue(), methodName, (Object)null);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.EXIT.getValue(), methodName, (Object)null);
+    }
   }
 
   @Override
   public void exit(String methodName, Object result) {
-    logger.trace(LogMarker.EXIT.getValue(), methodName, null, result);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.EXIT.getValue(), methodName, null, result);
+    }
   }
 
   @Override
   public void exit(Object source, String methodName) {
-    logger.trace(LogMarker.EXIT.getValue(), methodName, source);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.EXIT.getValue(), methodName, source);
+    }
   }
 
   @Override
   public void exit(Object source, String methodName, Object result) {
-    logger.trace(LogMarker.EXIT.getValue(), methodName, source, result);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.EXIT.getValue(), methodName, source, result);
+    }
   }
 
 
   @Override
   public void data(String methodName) {
-    logger.trace(LogMarker.DATA.getValue(), methodName, (Object)null);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.DATA.getValue(), methodName, (Object)null);
+    }
   }
 
   @Override
   public void data(String methodName, Object... objects) {
-    if (logger.isTraceEnabled()) {
+    if (isTraceEnabled()) {
       final Object[] objs = new Object[objects.length + 1];
       objs[0] = null;
       System.arraycopy(objects, 0, objs, 1, objects.length);
@@ -151,12 +208,14 @@ class LoggerImpl implements Logger {
 
   @Override
   public void data(Object source, String methodName) {
-    logger.trace(LogMarker.DATA.getValue(), methodName, source);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.DATA.getValue(), methodName, source);
+    }
   }
 
   @Override
   public void data(Object source, String methodName, Object... objects) {
-    if (logger.isTraceEnabled()) {
+    if (isTraceEnabled()) {
       final Object[] objs = new Object[objects.length + 1];
       objs[0] = source;
       System.arraycopy(objects, 0, objs, 1, objects.length);
@@ -164,6 +223,27 @@ class LoggerImpl implements Logger {
     }
   }
 
+  @Override
+  public void data(Object source, String methodName, Object arg1) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.DATA.getValue(), methodName, source, arg1);
+    }
+  }
+
+  @Override
+  public void data(Object source, String methodName, Object arg1, Object arg2) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.DATA.getValue(), methodName, new Object[] {source, arg1, arg2});
+    }
+  }
+
+  @Override
+  public void data(Object source, String methodName, Object arg1, Object arg2, Object arg3) {
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.DATA.getValue(), methodName, new Object[] {source, arg1, arg2, arg3});
+    }
+  }
+
   @Override
   public void throwing(String methodName, Throwable throwable) {
     // Note that as on SJF4J 1.6 when the last argument is a Throwable then the stack trace is output.
@@ -173,7 +253,9 @@ class LoggerImpl implements Logger {
 
   @Override
   public void throwing(Object source, String methodName, Throwable throwable) {
-    logger.trace(LogMarker.THROWING.getValue(), methodName, source, throwable);
+    if (isTraceEnabled()) {
+      logger.trace(LogMarker.THROWING.getValue(), methodName, source, throwable);
+    }
   }
 
   @Override
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.logging;
+
+import com.ibm.mqlight.api.logging.Logger;
+
+/**
+ * The {@link Logger} used internally by the client.  This adds methods for tracing on frequently used code paths, that are not part of the public {@link Logger} interface
+ * so that existing implementations of that interface are not affected.
+ * <p>
+ * The {@code entry} and {@code data} variants taking up to three arguments are fixed-arity, so calling them does not allocate when trace is off. Calls with more arguments
+ * than this, or with primitive arguments (which are boxed), do allocate - on frequently used code paths these calls can be guarded with {@link #isTraceEnabled()}.
+ */
+public interface TraceLogger extends Logger {
+
+  /**
+   * @return {@code true} if trace is enabled for this logger.  This is cheap enough to call on every invocation of a frequently used method, to guard trace calls that would
+   *         otherwise allocate.
+   */
+  boolean isTraceEnabled();
+
+  /**
+   * Method entry tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   */
+  void entry(Object source, String methodName, Object arg1);
+
+  /**
+   * Method entry tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   * @param arg2 Object on which toString() is called.
+   */
+  void entry(Object source, String methodName, Object arg1, Object arg2);
+
+  /**
+   * Method entry tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   * @param arg2 Object on which toString() is called.
+   * @param arg3 Object on which toString() is called.
+   */
+  void entry(Object source, String methodName, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Method data tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   */
+  void data(Object source, String methodName, Object arg1);
+
+  /**
+   * Method data tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   * @param arg2 Object on which toString() is called.
+   */
+  void data(Object source, String methodName, Object arg1, Object arg2);
+
+  /**
+   * Method data tracing.
+   *
+   * @param source Object making the trace call.
+   * @param methodName Name of the calling method.
+   * @param arg1 Object on which toString() is called.
+   * @param arg2 Object on which toString() is called.
+   * @param arg3 Object on which toString() is called.
+   */
+  void data(Object source, String methodName, Object arg1, Object arg2, Object arg3);
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.logging;
+
+/**
+ * Allows {@link LoggerImpl} instances to cache whether trace is enabled, rather than asking the underlying SLF4J logger on every trace call.
+ * <p>
+ * SLF4J has no way to be told when logging levels change, so caching is only enabled while something that can detect changes (for example, {@code LogbackLoggingImpl}
+ * listening to the logback context) has called {@link #setMonitored(boolean)}. Each change it detects must then be reported by calling {@link #changed()}, which invalidates
+ * every cached value by moving on to a new generation.
+ */
+public final class TraceSettings {
+
+  /** The current generation of the trace settings, or zero when changes are not being monitored (in which case values must not be cached). */
+  private static volatile int generation = 0;
+
+  private TraceSettings() {}
+
+  /**
+   * @return the current generation of the trace settings, which is always less than 2<sup>30</sup>, or zero if changes to the settings are not being monitored.
+   */
+  static int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Reports that the trace settings might have changed, invalidating any cached values.
+   */
+  public static synchronized void changed() {
+    if (generation != 0) generation = next(generation);
+  }
+
+  /**
+   * Sets whether changes to the trace settings are being monitored (and will be reported by calling {@link #changed()}).
+   *
+   * @param monitored {@code true} to enable caching, {@code false} to disable it.
+   */
+  public static synchronized void setMonitored(boolean monitored) {
+    generation = monitored ? next(generation) : 0;
+  }
+
+  private static int next(int current) {
+    final int result = (current + 1) & 0x3fffffff;
+    return result == 0 ? 1 : result;
+  }
+}
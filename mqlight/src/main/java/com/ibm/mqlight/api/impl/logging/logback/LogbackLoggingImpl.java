@@ -38,6 +38,7 @@ import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.joran.JoranConfigurator;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextListener;
 import ch.qos.logback.core.OutputStreamAppender;
 import ch.qos.logback.core.filter.Filter;
 import ch.qos.logback.core.joran.spi.JoranException;
@@ -47,6 +48,7 @@ import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
 import ch.qos.logback.core.util.StatusPrinter;
 
 import com.ibm.mqlight.api.ClientRuntimeException;
+import com.ibm.mqlight.api.impl.logging.TraceSettings;
 import com.ibm.mqlight.api.impl.logging.Version;
 import com.ibm.mqlight.api.logging.Logger;
 import com.ibm.mqlight.api.logging.LoggerFactory;
@@ -75,12 +77,43 @@ public class LogbackLoggingImpl {
   /** Indicates whether or not we have been setup. */
   private static AtomicBoolean setup = new AtomicBoolean(false);
 
+  /**
+   * Reports changes to the logback configuration to {@link TraceSettings}, so that whether trace is enabled can be cached by each logger.
+   */
+  private static final LoggerContextListener traceSettingsListener = new LoggerContextListener() {
+    @Override
+    public boolean isResetResistant() {
+      return true;
+    }
+    @Override
+    public void onStart(LoggerContext context) {
+      TraceSettings.changed();
+    }
+    @Override
+    public void onReset(LoggerContext context) {
+      TraceSettings.changed();
+    }
+    @Override
+    public void onStop(LoggerContext context) {
+      TraceSettings.changed();
+    }
+    @Override
+    public void onLevelChange(ch.qos.logback.classic.Logger logger, Level level) {
+      TraceSettings.changed();
+    }
+  };
+
   /**
    * The MQ Light log level required when it has not been specified via the MQLIGHT_JAVA_LOG environment variable.
    * Note that this is to support unit testing.
    */
   private static String defaultRequiredMQLightLogLevel = null;
 
+  /**
+   * The default trace buffer size, when the MQLIGHT_JAVA_LOG_TRACE_BUFFER environment variable has not been set. For unit testing purposes only.
+   */
+  private static String defaultTraceBufferSize = null;
+
   /**
    * The MQ Light logback configuration resource.
    */
@@ -105,6 +138,13 @@ public class LogbackLoggingImpl {
       final ILoggerFactory loggerFactory = org.slf4j.LoggerFactory.getILoggerFactory();
       if (loggerFactory instanceof LoggerContext) {
         final LoggerContext context = (LoggerContext) loggerFactory;
+
+        // Monitor the context for changes to the logging levels, so that trace settings can be cached
+        if (!context.getCopyOfListenerList().contains(traceSettingsListener)) {
+          context.addListener(traceSettingsListener);
+        }
+        TraceSettings.setMonitored(true);
+
         // TODO could allow the following when context already started, but:
         //      1. must not reset
         //      2. Should not be defining a rootLogger, but instead a "com.ibm.mqlight.api" logger
@@ -152,7 +192,18 @@ public class LogbackLoggingImpl {
             LoggerOutput traceOutput = getMQLightTraceOutput();
             if (traceOutput.equals(logOutput)) traceOutput = logOutput;
             final OutputStreamAppender<ILoggingEvent> traceAppender = createAppender(context, new TraceFilter(), traceOutput, "trace.pattern", "trace");
-            rootLogger.addAppender(traceAppender);
+            final int traceBufferSize = getMQLightTraceBufferSize();
+            if (traceBufferSize > 0) {
+              // Write trace from a background thread, so that tracing has less effect on the threads being traced
+              final RingBufferAppender ringBufferAppender = new RingBufferAppender(traceAppender, traceBufferSize);
+              ringBufferAppender.setContext(context);
+              ringBufferAppender.setName("trace-buffer");
+              ringBufferAppender.addFilter(new TraceFilter());
+              ringBufferAppender.start();
+              rootLogger.addAppender(ringBufferAppender);
+            } else {
+              rootLogger.addAppender(traceAppender);
+            }
 
             // Output trace header to the trace output stream, when trace is enabled
             if (rootLogger.isTraceEnabled()) {
@@ -259,6 +310,30 @@ public class LogbackLoggingImpl {
     return mqlightLogLevel;
   }
 
+  /**
+   * Obtains the number of trace events to buffer, from the MQLIGHT_JAVA_LOG_TRACE_BUFFER environment variable. When this is set, trace events are held in a
+   * {@link RingBufferAppender} of this size and written by a background thread, rather than by the thread generating them.
+   *
+   * @return The number of trace events to buffer, or zero if trace events should be written by the thread generating them.
+   */
+  private static int getMQLightTraceBufferSize() {
+    String traceBufferSize = System.getenv("MQLIGHT_JAVA_LOG_TRACE_BUFFER");
+    if (traceBufferSize == null || traceBufferSize.trim().length() == 0) traceBufferSize = defaultTraceBufferSize;
+    int result = 0;
+    if (traceBufferSize != null) {
+      try {
+        result = Integer.parseInt(traceBufferSize.trim());
+      } catch (NumberFormatException e) {
+        result = -1;
+      }
+      if (result < 0 || result > (1 << 30)) {
+        System.err.println("ERROR: MQ Light trace buffer size '"+traceBufferSize+"' is invalid");
+        result = 0;
+      }
+    }
+    return result;
+  }
+
   /**
    * Helper class to wrap a PrintStream for a logger, so that we can store additional information and test if two logger
    * PrintStreams are for the same output destination.
@@ -407,6 +482,17 @@ public class LogbackLoggingImpl {
     defaultRequiredMQLightLogLevel = value;
   }
 
+  /**
+   * *** For Unit testing purposes only ***
+   * <p>
+   * Sets the default trace buffer size, when the MQLIGHT_JAVA_LOG_TRACE_BUFFER environment variable has not been set.
+   *
+   * @param value The number of trace events to buffer, as a {@link String}.
+   */
+  public static void setDefaultTraceBufferSize(String value) {
+    defaultTraceBufferSize = value;
+  }
+
   /**
    * *** For Unit testing purposes only ***
    * <p>
@@ -486,6 +572,8 @@ public class LogbackLoggingImpl {
     if (loggerFactory instanceof LoggerContext) {
       final LoggerContext context = (LoggerContext) loggerFactory;
       context.stop();
+      // Stopping the context removes its listeners, so changes are no longer being monitored
+      TraceSettings.setMonitored(false);
     }
     setup.getAndSet(false);
   }
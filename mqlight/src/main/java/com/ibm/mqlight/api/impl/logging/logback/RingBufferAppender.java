@@ -0,0 +1,274 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.logging.logback;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import org.slf4j.Marker;
+
+import com.ibm.mqlight.api.impl.logging.LogMarker;
+
+/**
+ * A logback appender that passes events to another appender on a background thread, so that the threads generating trace only pay the cost of capturing each event, and not
+ * of formatting and writing it.
+ * <p>
+ * Events are held in a fixed size ring buffer, which is preallocated and is claimed by the threads generating events without locking. When the ring buffer is full, events
+ * are dropped rather than waiting for space. The number of dropped events is counted, and reported by a data event written to the other appender once there is space again.
+ * <p>
+ * As events are written some time after they have been captured, the arguments of each event are converted to strings when it is captured, so that the trace reflects the
+ * state of the arguments at the point the event was generated (and so that the writer thread does not read objects that other threads may be changing). The exception is
+ * the object that generated a trace event, which is kept as is so that its identity can be written.
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+  /** How long the writer thread waits for more events, when the ring buffer is empty. */
+  private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * A slot in the ring buffer. A slot can be claimed for the event at position {@code p} in the sequence of events when its {@code sequence} is {@code p}, and holds that
+   * event once its {@code sequence} is {@code p + 1}.
+   */
+  private static final class Slot {
+    private volatile long sequence;
+    private ILoggingEvent event;
+    private long threadId;
+
+    private Slot(long sequence) {
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * An event whose arguments have been converted to strings, and which otherwise delegates to the event that it was captured from.
+   */
+  static final class SnapshotEvent implements ILoggingEvent {
+    private final ILoggingEvent event;
+    private final Object[] args;
+
+    private SnapshotEvent(ILoggingEvent event, Object[] args) {
+      this.event = event;
+      this.args = args;
+    }
+
+    @Override public Object[] getArgumentArray() { return args; }
+    @Override public String getThreadName() { return event.getThreadName(); }
+    @Override public Level getLevel() { return event.getLevel(); }
+    @Override public String getMessage() { return event.getMessage(); }
+    @Override public String getFormattedMessage() { return event.getFormattedMessage(); }
+    @Override public String getLoggerName() { return event.getLoggerName(); }
+    @Override public LoggerContextVO getLoggerContextVO() { return event.getLoggerContextVO(); }
+    @Override public IThrowableProxy getThrowableProxy() { return event.getThrowableProxy(); }
+    @Override public StackTraceElement[] getCallerData() { return event.getCallerData(); }
+    @Override public boolean hasCallerData() { return event.hasCallerData(); }
+    @Override public Marker getMarker() { return event.getMarker(); }
+    @Override public Map<String, String> getMDCPropertyMap() { return event.getMDCPropertyMap(); }
+    @SuppressWarnings("deprecation")
+    @Override public Map<String, String> getMdc() { return event.getMdc(); }
+    @Override public long getTimeStamp() { return event.getTimeStamp(); }
+    @Override public void prepareForDeferredProcessing() {}
+  }
+
+  /**
+   * The thread that writes events to the other appender. The {@link TIDConverter} uses this to show the id of the thread that generated the event being written.
+   */
+  static final class WriterThread extends Thread {
+    private long eventThreadId;
+
+    private WriterThread(Runnable runnable) {
+      super(runnable, "mqlight-trace-writer");
+      setDaemon(true);
+      eventThreadId = getId();
+    }
+
+    long getEventThreadId() {
+      return eventThreadId;
+    }
+  }
+
+  private final Appender<ILoggingEvent> appender;
+  private final Slot[] slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong(0);
+  private final AtomicLong dropped = new AtomicLong(0);
+  private long head = 0;
+  private long droppedReported = 0;
+  private volatile boolean stopping = false;
+  private WriterThread writer = null;
+
+  /**
+   * @param appender The appender that events are written to. This appender is started and stopped with the ring buffer appender.
+   * @param capacity The number of events that the ring buffer can hold, which is rounded up to a power of two.
+   */
+  public RingBufferAppender(Appender<ILoggingEvent> appender, int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Ring buffer capacity '" + capacity + "' is invalid");
+    }
+    this.appender = appender;
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) size <<= 1;
+    slots = new Slot[size];
+    for (int i = 0; i < size; ++i) {
+      slots[i] = new Slot(i);
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * @return The number of events that the ring buffer can hold.
+   */
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  /**
+   * @return The number of events that have been dropped because the ring buffer was full.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  @Override
+  public void start() {
+    if (!isStarted()) {
+      if (!appender.isStarted()) appender.start();
+      stopping = false;
+      writer = new WriterThread(new Runnable() {
+        @Override
+        public void run() {
+          write();
+        }
+      });
+      writer.start();
+      super.start();
+    }
+  }
+
+  /**
+   * Stops the appender, once the events that are already in the ring buffer have been written.
+   */
+  @Override
+  public void stop() {
+    if (isStarted()) {
+      super.stop();
+      stopping = true;
+      LockSupport.unpark(writer);
+      try {
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writer = null;
+      appender.stop();
+    }
+  }
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    // Capture the parts of the event that depend on the current thread (e.g. its name and MDC), and the current state of its arguments
+    event.prepareForDeferredProcessing();
+    event = snapshot(event);
+
+    while (true) {
+      final long position = tail.get();
+      final Slot slot = slots[(int) (position & mask)];
+      final long sequence = slot.sequence;
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slot.event = event;
+          slot.threadId = Thread.currentThread().getId();
+          slot.sequence = position + 1;
+          return;
+        }
+      } else if (sequence < position) {
+        // The slot still holds the event from the previous time around the ring, so the ring buffer is full
+        dropped.incrementAndGet();
+        return;
+      }
+      // Otherwise another thread claimed this position first, so try again
+    }
+  }
+
+  /**
+   * @param event An event.
+   * @return The event, or a copy of it, whose arguments are either {@code null} or strings - except for the object that generated a trace event.
+   */
+  static ILoggingEvent snapshot(ILoggingEvent event) {
+    final Object[] args = event.getArgumentArray();
+    if (args == null) return event;
+    final int offset = TraceFilter.traceMarkerMap.containsKey(event.getMarker()) ? 1 : 0;
+    Object[] snapshot = null;
+    for (int i = offset; i < args.length; ++i) {
+      if (args[i] != null && !(args[i] instanceof String)) {
+        if (snapshot == null) snapshot = args.clone();
+        snapshot[i] = String.valueOf(args[i]);
+      }
+    }
+    return snapshot == null ? event : new SnapshotEvent(event, snapshot);
+  }
+
+  /**
+   * Writes events from the ring buffer, in the order that they were claimed, until the appender is stopped and the ring buffer is empty.
+   */
+  private void write() {
+    final WriterThread thread = (WriterThread) Thread.currentThread();
+    while (true) {
+      final Slot slot = slots[(int) (head & mask)];
+      if (slot.sequence == head + 1) {
+        final ILoggingEvent event = slot.event;
+        thread.eventThreadId = slot.threadId;
+        slot.event = null;
+        slot.sequence = head + slots.length;
+        ++head;
+        appender.doAppend(event);
+      } else {
+        thread.eventThreadId = thread.getId();
+        reportDropped();
+        if (stopping && tail.get() == head) break;
+        LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Writes a data event reporting the number of events that have been dropped since this was last reported, if any.
+   */
+  private void reportDropped() {
+    final long total = dropped.get();
+    if (total != droppedReported && getContext() instanceof LoggerContext) {
+      final LoggerContext loggerContext = (LoggerContext) getContext();
+      final LoggingEvent event = new LoggingEvent(RingBufferAppender.class.getName(), loggerContext.getLogger(RingBufferAppender.class), Level.TRACE,
+          "Trace ring buffer full, events dropped", null, new Object[] { null, total - droppedReported });
+      event.setMarker(LogMarker.DATA.getValue());
+      droppedReported = total;
+      appender.doAppend(event);
+    }
+  }
+}
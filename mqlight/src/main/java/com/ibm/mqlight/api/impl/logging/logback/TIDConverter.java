@@ -24,12 +24,16 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 
 /**
  * A logback converter to support a thread id customer conversion specifier.
+ * <p>
+ * When events are written by a {@link RingBufferAppender}, this is the id of the thread that generated the event, rather than of the thread writing it.
  */
 public class TIDConverter extends ClassicConverter {
 
   @Override
   public String convert(ILoggingEvent event) {
-    return String.format("%04d", Thread.currentThread().getId());
+    final Thread thread = Thread.currentThread();
+    final long id = thread instanceof RingBufferAppender.WriterThread ? ((RingBufferAppender.WriterThread) thread).getEventThreadId() : thread.getId();
+    return String.format("%04d", id);
   }
 
 }
@@ -28,6 +28,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
@@ -40,6 +41,7 @@ import java.nio.channels.UnresolvedAddressException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.LinkedList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
@@ -52,17 +54,17 @@ import com.ibm.mqlight.api.NetworkException;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.impl.LogbackLogging;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.impl.network.ssl.SSLEngineFactory;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 import com.ibm.mqlight.api.network.NetworkChannel;
 import com.ibm.mqlight.api.network.NetworkListener;
 import com.ibm.mqlight.api.network.NetworkService;
 
 public class NettyNetworkService implements NetworkService {
 
-    private static final Logger logger = LoggerFactory.getLogger(NettyNetworkService.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(NettyNetworkService.class);
 
     static {
         LogbackLogging.setup();
@@ -73,7 +75,7 @@ public class NettyNetworkService implements NetworkService {
 
     static class NettyInboundHandler extends ChannelInboundHandlerAdapter implements NetworkChannel {
 
-        private static final Logger logger = LoggerFactory.getLogger(NettyInboundHandler.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(NettyInboundHandler.class);
 
         private final SocketChannel channel;
         private NetworkListener listener = null;
@@ -225,43 +227,69 @@ public class NettyNetworkService implements NetworkService {
 
 
         final LinkedList<WriteRequest> pendingWrites = new LinkedList<>();
-        boolean writeInProgress = false;
-
-        private void processWriteRequest(WriteRequest toProcess) {
-            final String methodName = "processWriteRequest";
-            logger.entry(this, methodName, toProcess);
-            final Promise<Boolean> writeCompletePromise = toProcess.promise;
-            logger.data(this, methodName, "writeAndFlush {}", toProcess);
-            final ChannelFuture f = channel.writeAndFlush(toProcess.buffer);
-            f.addListener(new GenericFutureListener<ChannelFuture>() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    boolean havePendingWrites;
-                    synchronized(pendingWrites) {
-                        writeInProgress = false;
-                        havePendingWrites = !pendingWrites.isEmpty();
-                    }
-                    logger.data(this, methodName, "doWrite (complete)");
-                    writeCompletePromise.setSuccess(!havePendingWrites);
-                    doWrite();
+        /** Number of writes passed to the channel whose futures have not yet completed. */
+        int writesInFlight = 0;
+        /** Set while a call to {@link #doWrite()} is queued to run on the channel's event loop. */
+        boolean writeScheduled = false;
+
+        private final Runnable writeTask = new Runnable() {
+            @Override
+            public void run() {
+                synchronized(pendingWrites) {
+                    writeScheduled = false;
                 }
-            });
-            logger.exit(this, methodName);
+                doWrite();
+            }
+        };
+
+        private class WriteListener implements GenericFutureListener<ChannelFuture> {
+            private final Promise<Boolean> promise;
+            private WriteListener(Promise<Boolean> promise) {
+                this.promise = promise;
+            }
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                final String methodName = "operationComplete";
+                boolean drained;
+                synchronized(pendingWrites) {
+                    --writesInFlight;
+                    drained = (writesInFlight == 0) && pendingWrites.isEmpty();
+                }
+                logger.data(NettyInboundHandler.this, methodName, "write complete, drained: {}", drained);
+                promise.setSuccess(drained);
+                doWrite();
+            }
         }
 
+        /**
+         * Passes as many pending write requests to the channel as it will
+         * accept before crossing its high water mark, then flushes them with a
+         * single call. Any requests left over are written when the channel
+         * reports that it is writable again, or when an earlier write completes.
+         * <p>
+         * Must only be called from the channel's event loop, so that data is
+         * handed to the channel in the same order that it was written.
+         */
         private void doWrite() {
           final String methodName = "doWrite";
           logger.entry(this, methodName);
 
-          WriteRequest toProcess = null;
-          synchronized(pendingWrites) {
-              if (!writeInProgress && channel.isWritable() && !pendingWrites.isEmpty()) {
+          int written = 0;
+          while (true) {
+              final WriteRequest toProcess;
+              synchronized(pendingWrites) {
+                  if (pendingWrites.isEmpty() || !channel.isWritable()) break;
                   toProcess = pendingWrites.removeFirst();
-                  writeInProgress = true;
+                  ++writesInFlight;
               }
+              channel.write(toProcess.buffer).addListener(new WriteListener(toProcess.promise));
+              ++written;
           }
 
-          if (toProcess != null) processWriteRequest(toProcess);
+          if (written > 0) {
+              logger.data(this, methodName, "flush {} write(s)", written);
+              channel.flush();
+          }
 
           logger.exit(this, methodName);
         }
@@ -284,25 +312,41 @@ public class NettyNetworkService implements NetworkService {
             final String methodName = "doWrite";
             logger.entry(this, methodName, buffer, promise);
 
-            WriteRequest toProcess = null;
+            // always copy the buffer since netty wants a direct buffer anyhow, this
+            // will also avoid issues when network writes can become deferred under load
+            final WriteRequest request = new WriteRequest(copyBuffer(channel.alloc(), buffer), promise);
+            final EventLoop eventLoop = channel.eventLoop();
+            final boolean inEventLoop = eventLoop.inEventLoop();
+            boolean schedule = false;
             synchronized(pendingWrites) {
-                if (!writeInProgress && channel.isWritable()) {
-                    if (pendingWrites.isEmpty()) {
-                        // always copy the buffer since netty wants a direct buffer anyhow, this
-                        // will also avoid issues when network
-                        // writes can become deferred under load
-                        toProcess = new WriteRequest(copyBuffer(channel.alloc(), buffer), promise);
-                    } else {
-                        pendingWrites.addLast(new WriteRequest(copyBuffer(channel.alloc(), buffer), promise));
-                        toProcess = pendingWrites.removeFirst();
-                    }
-                    writeInProgress = true;
-                } else {
-                    pendingWrites.addLast(new WriteRequest(copyBuffer(channel.alloc(), buffer), promise));
+                pendingWrites.addLast(request);
+                if (!inEventLoop && !writeScheduled) {
+                    writeScheduled = true;
+                    schedule = true;
                 }
             }
 
-            if (toProcess != null) processWriteRequest(toProcess);
+            if (inEventLoop) {
+                doWrite();
+            } else if (schedule) {
+                try {
+                    eventLoop.execute(writeTask);
+                } catch (RejectedExecutionException e) {
+                    // the event loop has been shut down, so the channel is already
+                    // closed - complete the writes in the same way as a failed write
+                    logger.data(this, methodName, "event loop rejected write: {}", e);
+                    final LinkedList<WriteRequest> rejected;
+                    synchronized(pendingWrites) {
+                        writeScheduled = false;
+                        rejected = new LinkedList<>(pendingWrites);
+                        pendingWrites.clear();
+                    }
+                    for (WriteRequest toReject : rejected) {
+                        toReject.buffer.release();
+                        toReject.promise.setSuccess(true);
+                    }
+                }
+            }
 
             logger.exit(this, methodName);
         }
@@ -322,7 +366,7 @@ public class NettyNetworkService implements NetworkService {
 
     protected class ConnectListener implements GenericFutureListener<ChannelFuture> {
 
-        private final Logger logger = LoggerFactory.getLogger(ConnectListener.class);
+        private final TraceLogger logger = TraceLoggerFactory.getLogger(ConnectListener.class);
 
         private final Endpoint endpoint;
         private final Promise<NetworkChannel> promise;
@@ -23,13 +23,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
 
 public class NetworkClosePromiseImpl implements Promise<Void> {
 
-    private static final Logger logger = LoggerFactory.getLogger(NetworkClosePromiseImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(NetworkClosePromiseImpl.class);
   
     private final AtomicBoolean complete = new AtomicBoolean(false);
     private final Component component;
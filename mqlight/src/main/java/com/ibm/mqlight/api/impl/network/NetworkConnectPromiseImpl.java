@@ -25,13 +25,13 @@ import com.ibm.mqlight.api.NetworkException;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.network.NetworkChannel;
 
 public class NetworkConnectPromiseImpl implements Promise<NetworkChannel> {
     
-    private static final Logger logger = LoggerFactory.getLogger(NetworkClosePromiseImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(NetworkClosePromiseImpl.class);
   
     private final AtomicBoolean complete = new AtomicBoolean(false);
     private final Component component;
@@ -43,8 +43,8 @@ import javax.net.ssl.TrustManagerFactory;
 
 import com.ibm.mqlight.api.ClientOptions.SSLOptions;
 import com.ibm.mqlight.api.impl.LogbackLogging;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.security.KeyStoreUtils;
 import com.ibm.mqlight.api.security.PemFile;
 
@@ -54,7 +54,7 @@ import com.ibm.mqlight.api.security.PemFile;
  */
 public class SSLEngineFactory {
 
-    private static final Logger logger = LoggerFactory.getLogger(SSLEngineFactory.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(SSLEngineFactory.class);
 
     static {
         LogbackLogging.setup();
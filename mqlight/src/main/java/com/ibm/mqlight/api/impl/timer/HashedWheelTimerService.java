@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.mqlight.api.Promise;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
+import com.ibm.mqlight.api.timer.TimerService;
+
+/**
+ * A {@link TimerService} implemented as a hashed timing wheel.  Timers are placed into one of a
+ * fixed number of buckets according to when they are due, and a single thread visits one bucket
+ * per tick, completing the promises of any timers that have become due.  Scheduling and
+ * cancelling a timer take constant time, however many timers are outstanding, at the cost of
+ * timers completing up to one tick after they are due.  This makes it well suited to large
+ * numbers of timers that are usually cancelled, or that do not need to be precise - such as
+ * the heartbeat timers of many connections.
+ * <p>
+ * The thread is started when the first timer is scheduled, and waits, without ticking, while
+ * there are no timers outstanding.
+ */
+public class HashedWheelTimerService implements TimerService {
+
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(HashedWheelTimerService.class);
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static class Timeout {
+        private final Promise<Void> promise;
+        private final long deadline;
+        volatile int state = PENDING;
+        // The following fields are only accessed by the ticker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Promise<Void> promise, long deadline) {
+            this.promise = promise;
+            this.deadline = deadline;
+        }
+    }
+
+    // Saves allocating an atomic object for each timer
+    private static final AtomicIntegerFieldUpdater<Timeout> state = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (tail == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentHashMap<Promise<Void>, Timeout> promiseToTimeout = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final Object idleMonitor = new Object();
+    private final Thread thread;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean shutdown = false;
+
+    // Only accessed by the ticker thread
+    private long startTime;
+    private long tick;
+
+    /**
+     * Creates a timer service that ticks every 10 milliseconds, with a wheel of 512 buckets.
+     */
+    public HashedWheelTimerService() {
+        this(10, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param tickDuration the time between ticks, which determines how precisely timers complete.
+     * @param unit the units of <code>tickDuration</code>.
+     * @param ticksPerWheel the number of buckets in the wheel, rounded up to a power of two.  Timers
+     *                      due further in the future than one turn of the wheel are placed in a
+     *                      bucket that is visited before they are due, so a wheel that covers the
+     *                      delays most commonly used is most efficient.
+     */
+    public HashedWheelTimerService(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        final String methodName = "<init>";
+        logger.entry(this, methodName, tickDuration, unit, ticksPerWheel);
+
+        if (tickDuration <= 0) {
+            final IllegalArgumentException exception = new IllegalArgumentException("Tick duration value '" + tickDuration + "' is invalid, it must be greater than zero");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+        if (unit == null) {
+            final IllegalArgumentException exception = new IllegalArgumentException("TimeUnit cannot be null");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            final IllegalArgumentException exception = new IllegalArgumentException("Ticks per wheel value '" + ticksPerWheel + "' is invalid, it must be greater than zero and no more than 2^30");
+            logger.throwing(this, methodName, exception);
+            throw exception;
+        }
+
+        tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < ticksPerWheel) size <<= 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; ++i) wheel[i] = new Bucket();
+        mask = size - 1;
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTicker();
+            }
+        }, HashedWheelTimerService.class.getSimpleName() + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+
+        logger.exit(this, methodName);
+    }
+
+    @Override
+    public void schedule(long delay, Promise<Void> promise) {
+        final String methodName = "schedule";
+        logger.entry(this, methodName, delay, promise);
+
+        if (!started.get() && started.compareAndSet(false, true)) {
+            thread.start();
+        }
+        final Timeout timeout = new Timeout(promise, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)));
+        promiseToTimeout.put(promise, timeout);
+        scheduled.add(timeout);
+        if (pending.incrementAndGet() == 1) {
+            synchronized(idleMonitor) {
+                idleMonitor.notifyAll();
+            }
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    @Override
+    public void cancel(Promise<Void> promise) {
+        final String methodName = "cancel";
+        logger.entry(this, methodName, promise);
+
+        final Timeout timeout = promiseToTimeout.remove(promise);
+        if (timeout != null && state.compareAndSet(timeout, PENDING, CANCELLED)) {
+            // Queue the timeout for removal from its bucket before it stops counting as pending,
+            // so that the wheel is emptied before the ticker thread goes idle.
+            cancelled.add(timeout);
+            pending.decrementAndGet();
+            promise.setFailure(null);
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * @return the number of timers that have been scheduled, but have not yet completed or
+     *         been cancelled.
+     */
+    public long getPendingTimerCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the thread used by this timer service.  Any outstanding timers do not complete.
+     */
+    public void shutdown() {
+        final String methodName = "shutdown";
+        logger.entry(this, methodName);
+
+        shutdown = true;
+        thread.interrupt();
+
+        logger.exit(this, methodName);
+    }
+
+    private void runTicker() {
+        final String methodName = "runTicker";
+        logger.entry(this, methodName);
+
+        try {
+            while (!shutdown) {
+                waitWhileIdle();
+                while (!shutdown && pending.get() > 0) {
+                    final long tickDeadline = startTime + (tick + 1) * tickNanos;
+                    final long sleepNanos = tickDeadline - System.nanoTime();
+                    if (sleepNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                        continue;
+                    }
+                    removeCancelled();
+                    transferScheduled();
+                    expire(wheel[(int) (tick & mask)], tickDeadline);
+                    ++tick;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Interrupted by shutdown
+        }
+
+        logger.exit(this, methodName);
+    }
+
+    /**
+     * Waits until there is a timer outstanding, then restarts the wheel from the current time.
+     */
+    private void waitWhileIdle() throws InterruptedException {
+        synchronized(idleMonitor) {
+            while (!shutdown && pending.get() == 0) {
+                idleMonitor.wait();
+            }
+        }
+        // Any timers still in the wheel have been cancelled, so clear them out before restarting
+        removeCancelled();
+        startTime = System.nanoTime();
+        tick = 0;
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state != PENDING) continue;
+            // The bucket for tick t is visited once (t + 1) ticks have elapsed, so the timeout
+            // goes in the first bucket visited at or after its deadline.
+            final long elapsed = timeout.deadline - startTime;
+            long due = elapsed <= 0 ? 0 : (elapsed + tickNanos - 1) / tickNanos - 1;
+            if (due < tick) due = tick;
+            timeout.remainingRounds = (due - tick) / wheel.length;
+            wheel[(int) (due & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long tickDeadline) {
+        final String methodName = "expire";
+
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.state != PENDING) {
+                bucket.remove(timeout);
+            } else if (timeout.remainingRounds > 0) {
+                --timeout.remainingRounds;
+            } else if (timeout.deadline <= tickDeadline && state.compareAndSet(timeout, PENDING, EXPIRED)) {
+                bucket.remove(timeout);
+                promiseToTimeout.remove(timeout.promise, timeout);
+                pending.decrementAndGet();
+                try {
+                    timeout.promise.setSuccess(null);
+                } catch (RuntimeException e) {
+                    logger.data(this, methodName, "Exception completing timer promise", timeout.promise, e);
+                }
+            }
+            timeout = next;
+        }
+    }
+}
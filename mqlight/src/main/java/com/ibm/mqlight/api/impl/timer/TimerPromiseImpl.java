@@ -22,12 +22,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.impl.Component;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 
 public class TimerPromiseImpl implements Promise<Void> {
 
-    private static final Logger logger = LoggerFactory.getLogger(TimerPromiseImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(TimerPromiseImpl.class);
 
     private final Component component;
     private final Object context;
@@ -26,13 +26,13 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import com.ibm.mqlight.api.Promise;
-import com.ibm.mqlight.api.logging.Logger;
-import com.ibm.mqlight.api.logging.LoggerFactory;
+import com.ibm.mqlight.api.impl.logging.TraceLogger;
+import com.ibm.mqlight.api.impl.logging.TraceLoggerFactory;
 import com.ibm.mqlight.api.timer.TimerService;
 
 public class TimerServiceImpl implements TimerService {
 
-    private static final Logger logger = LoggerFactory.getLogger(TimerServiceImpl.class);
+    private static final TraceLogger logger = TraceLoggerFactory.getLogger(TimerServiceImpl.class);
 
     private static final int idleKeepAliveTimeMs = 500;
     private static final ScheduledThreadPoolExecutor executor;
@@ -59,7 +59,7 @@ public class TimerServiceImpl implements TimerService {
 
     private static class Timer implements Runnable {
 
-        private static final Logger logger = LoggerFactory.getLogger(Timer.class);
+        private static final TraceLogger logger = TraceLoggerFactory.getLogger(Timer.class);
 
         private final TimerServiceImpl service;
         private final Promise<Void> promise;
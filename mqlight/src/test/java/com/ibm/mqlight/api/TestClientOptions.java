@@ -18,6 +18,13 @@
  */
 package com.ibm.mqlight.api;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
 import junit.framework.AssertionFailedError;
 
 import org.junit.Test;
@@ -50,6 +57,153 @@ public class TestClientOptions {
         }
     }
 
+    @Test
+    public void writeCoalescing() {
+        ClientOptions opts = ClientOptions.builder().build();
+        assertEquals(0, opts.getWriteCoalescingMaxBytes());
+        assertEquals(0, opts.getWriteCoalescingMaxDelay());
+
+        opts = ClientOptions.builder().setWriteCoalescing(16384, 5).build();
+        assertEquals(16384, opts.getWriteCoalescingMaxBytes());
+        assertEquals(5, opts.getWriteCoalescingMaxDelay());
+
+        try {
+            ClientOptions.builder().setWriteCoalescing(-1, 5);
+            throw new AssertionFailedError("Negative maximum bytes should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientOptions.builder().setWriteCoalescing(1024, -1);
+            throw new AssertionFailedError("Negative maximum delay should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void maxSenderLinks() {
+        assertEquals(0, ClientOptions.builder().build().getMaxSenderLinks());
+        assertEquals(100, ClientOptions.builder().setMaxSenderLinks(100).build().getMaxSenderLinks());
+        try {
+            ClientOptions.builder().setMaxSenderLinks(-1);
+            throw new AssertionFailedError("Negative maximum sender links should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void senderLinkIdleTimeout() {
+        assertEquals(0, ClientOptions.builder().build().getSenderLinkIdleTimeout());
+        assertEquals(30000, ClientOptions.builder().setSenderLinkIdleTimeout(30000).build().getSenderLinkIdleTimeout());
+        try {
+            ClientOptions.builder().setSenderLinkIdleTimeout(-1);
+            throw new AssertionFailedError("Negative sender link idle timeout should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void maxInboundBufferedBytes() {
+        assertEquals(0, ClientOptions.builder().build().getMaxInboundBufferedBytes());
+        assertEquals(1048576, ClientOptions.builder().setMaxInboundBufferedBytes(1048576).build().getMaxInboundBufferedBytes());
+        try {
+            ClientOptions.builder().setMaxInboundBufferedBytes(-1);
+            throw new AssertionFailedError("Negative maximum inbound buffered bytes should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void sendBufferLimits() {
+        ClientOptions options = ClientOptions.builder().build();
+        assertEquals(0, options.getMaxSendBufferBytes());
+        assertEquals(0, options.getMaxSendBufferMessages());
+        options = ClientOptions.builder().setSendBufferLimits(65536, 100).build();
+        assertEquals(65536, options.getMaxSendBufferBytes());
+        assertEquals(100, options.getMaxSendBufferMessages());
+        try {
+            ClientOptions.builder().setSendBufferLimits(-1, 0);
+            throw new AssertionFailedError("Negative maximum send buffer bytes should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientOptions.builder().setSendBufferLimits(0, -1);
+            throw new AssertionFailedError("Negative maximum send buffer messages should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void sendBufferPolicy() {
+        assertEquals(ClientOptions.SendBufferPolicy.SIGNAL, ClientOptions.builder().build().getSendBufferPolicy());
+        assertEquals(ClientOptions.SendBufferPolicy.BLOCK, ClientOptions.builder().setSendBufferPolicy(ClientOptions.SendBufferPolicy.BLOCK).build().getSendBufferPolicy());
+        try {
+            ClientOptions.builder().setSendBufferPolicy(null);
+            throw new AssertionFailedError("A null send buffer policy should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void sendSpool() {
+        ClientOptions options = ClientOptions.builder().build();
+        assertNull(options.getSendSpoolDirectory());
+        assertEquals(false, options.isSpoolUnsettledSends());
+        final File directory = new File("spool");
+        options = ClientOptions.builder().setSendSpool(directory, true).build();
+        assertSame(directory, options.getSendSpoolDirectory());
+        assertEquals(true, options.isSpoolUnsettledSends());
+    }
+
+    @Test
+    public void jmxEnabled() {
+        assertEquals(false, ClientOptions.builder().build().isJmxEnabled());
+        assertEquals(true, ClientOptions.builder().setJmxEnabled(true).build().isJmxEnabled());
+        assertEquals(false, ClientOptions.builder().build().isPooledDeliveryBuffers());
+        assertEquals(true, ClientOptions.builder().setPooledDeliveryBuffers(true).build().isPooledDeliveryBuffers());
+    }
+
+    @Test
+    public void processingExecutor() {
+        assertNull(ClientOptions.builder().build().getProcessingExecutor());
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        assertSame(executor, ClientOptions.builder().setProcessingExecutor(executor).build().getProcessingExecutor());
+    }
+
+    @Test
+    public void callbackExecution() {
+        ClientOptions defaults = ClientOptions.builder().build();
+        assertEquals(ClientOptions.CallbackExecution.THREAD_POOL, defaults.getCallbackExecution());
+        assertEquals(5, defaults.getCallbackThreads());
+        ClientOptions opts = ClientOptions.builder().setCallbackExecution(ClientOptions.CallbackExecution.VIRTUAL_THREAD).setCallbackThreads(50).build();
+        assertEquals(ClientOptions.CallbackExecution.VIRTUAL_THREAD, opts.getCallbackExecution());
+        assertEquals(50, opts.getCallbackThreads());
+        try {
+            ClientOptions.builder().setCallbackExecution(null);
+            throw new AssertionFailedError("Null callback execution should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientOptions.builder().setCallbackThreads(0);
+            throw new AssertionFailedError("Zero callback threads should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
     @Test
     public void clientIdValidChars() {
         ClientOptions.builder().setId("abcdefghijklmnopqrstuvwxyz").build();
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.AssertionFailedError;
+
+import org.junit.Test;
+
+import com.ibm.mqlight.api.impl.callback.ForkJoinCallbackService;
+
+public class TestClientRuntime {
+
+    @Test
+    public void builderValidation() {
+        try {
+            ClientRuntime.builder().setCallbackExecution(null);
+            throw new AssertionFailedError("Null callback execution should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientRuntime.builder().setCallbackThreads(0);
+            throw new AssertionFailedError("Zero callback threads should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientRuntime.builder().setTimerResolution(0);
+            throw new AssertionFailedError("Zero timer resolution should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            ClientRuntime.builder().setProcessingThreads(-1);
+            throw new AssertionFailedError("Negative processing threads should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void shutdownWithoutClients() throws InterruptedException {
+        ClientRuntime runtime = ClientRuntime.builder().setCallbackExecution(ClientOptions.CallbackExecution.FORK_JOIN).setProcessingThreads(0).build();
+        assertTrue(runtime.getCallbackService() instanceof ForkJoinCallbackService);
+        runtime.shutdown();
+        runtime.shutdown();
+        assertTrue("Runtime should have terminated", runtime.awaitTermination(5, TimeUnit.SECONDS));
+        try {
+            runtime.createClient("amqp://localhost:1", null, null, null);
+            throw new AssertionFailedError("Client should not be created by a runtime that has been shut down");
+        } catch(IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void shutdownStopsClients() throws InterruptedException {
+        final int clientCount = 20;
+        ClientRuntime runtime = ClientRuntime.builder().setCallbackThreads(2).setProcessingThreads(2).build();
+        NonBlockingClient[] clients = new NonBlockingClient[clientCount];
+        for (int i = 0; i < clientCount; ++i) {
+            // Nothing is listening on this port, so the clients keep retrying until stopped
+            clients[i] = runtime.createClient("amqp://localhost:1", ClientOptions.builder().setId("client" + i).build(), null, null);
+            assertNotNull(clients[i]);
+        }
+        clients[0].stop(null, null);
+
+        runtime.shutdown();
+        assertTrue("Runtime should have terminated", runtime.awaitTermination(10, TimeUnit.SECONDS));
+        // The stop completion callback can run just before the client reports its new state
+        for (int i = 0; i < clientCount; ++i) {
+            for (int retry = 0; retry < 100 && clients[i].getState() != ClientState.STOPPED; ++retry) {
+                Thread.sleep(10);
+            }
+            assertEquals("Client " + i + " should have been stopped", ClientState.STOPPED, clients[i].getState());
+        }
+    }
+}
@@ -23,8 +23,10 @@ import static org.junit.Assert.assertNull;
 
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.AssertionFailedError;
@@ -45,6 +47,9 @@ public class TestNonBlockingClient {
         @Override public String getId() { return null; }
         @Override public String getService() { return null; }
         @Override public ClientState getState() { return null; }
+        @Override public long getSendBufferBytes() { return 0; }
+        @Override public int getSendBufferMessages() { return 0; }
+        @Override public ClientMetrics getMetrics() { return null; }
         @Override public <T> NonBlockingClient start(CompletionListener<T> listener, T context) { return null; }
         @Override public <T> void stop(CompletionListener<T> listener, T context) {}
 
@@ -112,6 +117,14 @@ public class TestNonBlockingClient {
             testAgainstExpectedValues(new Object[] {"sendJson", topic, json, properties, sendOptions, listener, context});
             return false;
         }
+        @Override
+        public <T> boolean sendBatch(String topic, List<?> data,
+                Map<String, Object> properties, SendOptions sendOptions,
+                CompletionListener<T> listener, T context)
+                throws StateException {
+            testAgainstExpectedValues(new Object[] {"sendBatch", topic, data, properties, sendOptions, listener, context});
+            return false;
+        }
 
         @Override
         public <T> NonBlockingClient subscribe(String topicPattern, SubscribeOptions subOptions,
@@ -288,6 +301,16 @@ public class TestNonBlockingClient {
         client.sendJson(topic, data, properties);
     }
 
+    @Test
+    public void sendBatch() {
+        String topic = "topic";
+        List<String> data = Arrays.asList("one", "two", "three");
+        StubCompletionListener listener = new StubCompletionListener();
+        Object context = new Object();
+        MockNonBlockingClient client = new MockNonBlockingClient(new Object[] {"sendBatch",  topic, data, null, NonBlockingClient.defaultSendOptions, listener, context});
+        client.sendBatch(topic, data, listener, context);
+    }
+
     @Test
     public void subscribe() {
         String topicPattern = "topicPattern";
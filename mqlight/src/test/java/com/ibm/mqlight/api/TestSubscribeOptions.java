@@ -18,6 +18,10 @@
  */
 package com.ibm.mqlight.api;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import junit.framework.AssertionFailedError;
 
 import java.util.concurrent.TimeUnit;
@@ -50,6 +54,20 @@ public class TestSubscribeOptions {
         }
     }
 
+    @Test
+    public void orderingValues() {
+        assertEquals(SubscribeOptions.Ordering.CLIENT, SubscribeOptions.builder().build().getOrdering());
+        for (SubscribeOptions.Ordering ordering : SubscribeOptions.Ordering.values()) {
+            assertEquals(ordering, SubscribeOptions.builder().setOrdering(ordering).build().getOrdering());
+        }
+        try {
+            SubscribeOptions.builder().setOrdering(null);
+            throw new AssertionFailedError("setOrdering of null should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
     @Test
     public void shareValues() {
         SubscribeOptions.builder().setShare(null);
@@ -108,4 +126,32 @@ public class TestSubscribeOptions {
         	// Expected
         }
     }
+
+    @Test
+    public void adaptiveCredit() {
+        SubscribeOptions fixed = SubscribeOptions.builder().setCredit(50).build();
+        assertFalse(fixed.isAdaptiveCredit());
+        assertEquals(50, fixed.getCredit());
+
+        SubscribeOptions adaptive = SubscribeOptions.builder().setAdaptiveCredit(10, 100).build();
+        assertTrue(adaptive.isAdaptiveCredit());
+        assertEquals(10, adaptive.getMinCredit());
+        assertEquals(100, adaptive.getMaxCredit());
+        assertEquals("Expected the default credit to be brought within the bounds", 100, adaptive.getCredit());
+        assertEquals(10, SubscribeOptions.builder().setCredit(0).setAdaptiveCredit(10, 100).build().getCredit());
+
+        SubscribeOptions.builder().setAdaptiveCredit(1, 1);
+        try {
+            SubscribeOptions.builder().setAdaptiveCredit(0, 10);
+            throw new AssertionFailedError("A minimum credit of zero should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            SubscribeOptions.builder().setAdaptiveCredit(10, 9);
+            throw new AssertionFailedError("A maximum credit less than the minimum should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+    }
 }
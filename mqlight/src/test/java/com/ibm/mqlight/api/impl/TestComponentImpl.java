@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestComponentImpl {
+
+    private static class SequencedMessage extends Message {
+        private final int producer;
+        private final int sequence;
+        private SequencedMessage(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class CheckingComponent extends ComponentImpl {
+        private final int[] nextSequence;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicBoolean concurrentDelivery = new AtomicBoolean(false);
+        private final AtomicBoolean outOfOrder = new AtomicBoolean(false);
+        private final AtomicInteger received = new AtomicInteger();
+        private final AtomicInteger drained = new AtomicInteger();
+        private volatile Thread lastThread = null;
+
+        private CheckingComponent(int producers) {
+            this(producers, null);
+        }
+
+        private CheckingComponent(int producers, Executor executor) {
+            super(executor);
+            nextSequence = new int[producers];
+        }
+
+        @Override
+        protected void onReceive(Message message) {
+            lastThread = Thread.currentThread();
+            if (active.incrementAndGet() != 1) concurrentDelivery.set(true);
+            SequencedMessage sm = (SequencedMessage)message;
+            if (nextSequence[sm.producer]++ != sm.sequence) outOfOrder.set(true);
+            received.incrementAndGet();
+            active.decrementAndGet();
+        }
+
+        @Override
+        protected void onMailboxDrained() {
+            if (active.incrementAndGet() != 1) concurrentDelivery.set(true);
+            drained.incrementAndGet();
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * The mailbox as it was implemented before it became lock-free: a LinkedList guarded by its
+     * own monitor, with every message delivered under a second monitor.  Used as the baseline
+     * for {@link TestComponentImpl#tellThroughput()}.
+     */
+    private static class LockedMailbox {
+        private final LinkedList<Message> queue = new LinkedList<>();
+        private boolean scheduled = false;
+        private final Object componentMonitor = new Object();
+        private final AtomicInteger received = new AtomicInteger();
+
+        private void tell(Message message) {
+            boolean execute;
+            synchronized(queue) {
+                queue.addLast(message);
+                execute = !scheduled;
+                if (execute) scheduled = true;
+            }
+            if (execute) {
+                while(true) {
+                    synchronized(queue) {
+                        if (queue.isEmpty()) {
+                            scheduled = false;
+                            break;
+                        }
+                        message = queue.removeFirst();
+                    }
+                    synchronized(componentMonitor) {
+                        received.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class CountingComponent extends ComponentImpl {
+        private final AtomicInteger received = new AtomicInteger();
+        @Override
+        protected void onReceive(Message message) {
+            received.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void singleProducer() {
+        CheckingComponent component = new CheckingComponent(1);
+        for (int i = 0; i < 100; ++i) {
+            component.tell(new SequencedMessage(0, i), ComponentImpl.NOBODY);
+        }
+        assertEquals(100, component.received.get());
+        assertEquals("Expected the mailbox to have been drained after each message", 100, component.drained.get());
+        assertFalse(component.outOfOrder.get());
+        assertFalse(component.hasQueuedMessages());
+    }
+
+    @Test
+    public void multipleProducers() throws InterruptedException {
+        final int producers = 8;
+        final int messagesPerProducer = 20000;
+        final CheckingComponent component = new CheckingComponent(producers);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < messagesPerProducer; ++i) {
+                        component.tell(new SequencedMessage(producer, i), ComponentImpl.NOBODY);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Expected every message to have been delivered", producers * messagesPerProducer, component.received.get());
+        assertFalse("Expected messages from each producer to be delivered in order", component.outOfOrder.get());
+        assertFalse("Expected onReceive never to be called concurrently", component.concurrentDelivery.get());
+        assertFalse(component.hasQueuedMessages());
+    }
+
+    @Test
+    public void drainedTellsSelf() {
+        final AtomicInteger received = new AtomicInteger();
+        ComponentImpl component = new ComponentImpl() {
+            private boolean told = false;
+            @Override
+            protected void onReceive(Message message) {
+                received.incrementAndGet();
+            }
+            @Override
+            protected void onMailboxDrained() {
+                if (!told) {
+                    told = true;
+                    tell(new SequencedMessage(0, 1), ComponentImpl.NOBODY);
+                }
+            }
+        };
+        component.tell(new SequencedMessage(0, 0), ComponentImpl.NOBODY);
+        assertEquals("Expected a message queued when the mailbox drained to be delivered", 2, received.get());
+        assertFalse(component.hasQueuedMessages());
+    }
+
+    @Test
+    public void executor() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final int messages = 1000;
+            CheckingComponent component = new CheckingComponent(1, executor);
+            for (int i = 0; i < messages; ++i) {
+                component.tell(new SequencedMessage(0, i), ComponentImpl.NOBODY);
+            }
+            for (int i = 0; i < 100 && component.received.get() < messages; ++i) {
+                Thread.sleep(50);
+            }
+            assertEquals(messages, component.received.get());
+            assertFalse(component.outOfOrder.get());
+            assertFalse(component.concurrentDelivery.get());
+            assertNotSame("Expected messages to be delivered on an executor thread", Thread.currentThread(), component.lastThread);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void executorRejects() {
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        CheckingComponent component = new CheckingComponent(1, executor);
+        component.tell(new SequencedMessage(0, 0), ComponentImpl.NOBODY);
+        assertEquals("Expected message to be delivered inline", 1, component.received.get());
+        assertSame(Thread.currentThread(), component.lastThread);
+    }
+
+    /**
+     * Runs <code>producers</code> threads, each telling <code>messagesPerProducer</code>
+     * messages to either a component or the locked mailbox.
+     *
+     * @return the elapsed time, in nanoseconds.
+     */
+    private static long timeTell(final int producers, final int messagesPerProducer, final ComponentImpl component, final LockedMailbox locked)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Message message = new SequencedMessage(0, 0);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < messagesPerProducer; ++i) {
+                        if (component != null) component.tell(message, ComponentImpl.NOBODY);
+                        else locked.tell(message);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Compares the throughput of {@link ComponentImpl#tell(Message, Component)} with that of the
+     * locked mailbox it replaced, for 1 to 16 producer threads.  Timings on a shared build
+     * machine are too noisy to assert on, so these are only reported - and this is only run when
+     * the <code>mqlight.benchmarks</code> system property is set to <code>true</code>.
+     */
+    @Test
+    public void tellThroughput() throws InterruptedException {
+        Assume.assumeTrue(Boolean.getBoolean("mqlight.benchmarks"));
+        final int messages = 4000000;
+        for (int producers : new int[] { 1, 2, 4, 8, 16 }) {
+            final int messagesPerProducer = messages / producers;
+            timeTell(producers, messagesPerProducer, new CountingComponent(), null);    // warm up
+            timeTell(producers, messagesPerProducer, null, new LockedMailbox());
+            CountingComponent component = new CountingComponent();
+            final long lockFreeNanos = timeTell(producers, messagesPerProducer, component, null);
+            LockedMailbox locked = new LockedMailbox();
+            final long lockedNanos = timeTell(producers, messagesPerProducer, null, locked);
+            assertEquals(producers * messagesPerProducer, component.received.get());
+            assertEquals(producers * messagesPerProducer, locked.received.get());
+            System.out.println(producers + " producers, " + (producers * messagesPerProducer) + " messages: "
+                    + "lock-free " + TimeUnit.NANOSECONDS.toMillis(lockFreeNanos) + "ms (" + lockFreeNanos / (producers * messagesPerProducer) + "ns/msg), "
+                    + "locked " + TimeUnit.NANOSECONDS.toMillis(lockedNanos) + "ms (" + lockedNanos / (producers * messagesPerProducer) + "ns/msg)");
+        }
+    }
+}
@@ -18,9 +18,15 @@
  */
 package com.ibm.mqlight.api.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -34,9 +40,12 @@ import junit.framework.AssertionFailedError;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedLong;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
 import org.junit.Test;
 
 import com.google.gson.Gson;
@@ -45,6 +54,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.ibm.mqlight.api.BytesDelivery;
 import com.ibm.mqlight.api.ClientOptions;
+import com.ibm.mqlight.api.ClientRuntimeException;
 import com.ibm.mqlight.api.Delivery;
 import com.ibm.mqlight.api.DestinationListener;
 import com.ibm.mqlight.api.JsonDelivery;
@@ -53,6 +63,7 @@ import com.ibm.mqlight.api.NonBlockingClient;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.StringDelivery;
+import com.ibm.mqlight.api.SubscribeOptions;
 import com.ibm.mqlight.api.callback.CallbackService;
 import com.ibm.mqlight.api.endpoint.Endpoint;
 import com.ibm.mqlight.api.endpoint.EndpointPromise;
@@ -153,6 +164,19 @@ public class TestDestinationListenerWrapper {
         assertSame("Excepted same error", expectedError, listener.actualError);
     }
 
+    @Test
+    public void onUnsubscribedOrdering() {
+        StubClient client = new StubClient();
+        for (SubscribeOptions.Ordering ordering : SubscribeOptions.Ordering.values()) {
+            OrderingCallbackService callbackService = new OrderingCallbackService();
+            DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(client, new GsonBuilder(),
+                    new MockListener(MockListener.Method.ON_UNSUBSCRIBED), null, ordering);
+            wrapper.onUnsubscribed(callbackService, "/kittens", null, null);
+            assertSame("Unexpected ordering for " + ordering, ordering == SubscribeOptions.Ordering.CLIENT ? client : wrapper,
+                       callbackService.orderingCtxs.get(0));
+        }
+    }
+
     @Test
     public void onUnsubscribedNullListener() {
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(new StubClient(), new GsonBuilder(), null, null);
@@ -203,7 +227,7 @@ public class TestDestinationListenerWrapper {
         QOS expectedQos = QOS.AT_LEAST_ONCE;
         byte[] msgData = createSerializedProtonMessage(new AmqpValue(new Binary(expectedData)), expectedTopic, expectedTtl, null, null, null);
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:" + expectedTopicPattern, null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:" + expectedTopicPattern, null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -236,7 +260,7 @@ public class TestDestinationListenerWrapper {
         QOS expectedQos = QOS.AT_LEAST_ONCE;
         byte[] msgData = createSerializedProtonMessage(new AmqpValue(expectedData), expectedTopic, expectedTtl, null, null, null);
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:" + expectedTopicPattern, null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:" + expectedTopicPattern, null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -262,7 +286,7 @@ public class TestDestinationListenerWrapper {
         QOS expectedQos = QOS.AT_LEAST_ONCE;
         byte[] msgData = "I bet this isn't a valid AMQP message".getBytes();
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:/malformed", null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:/malformed", null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -271,6 +295,92 @@ public class TestDestinationListenerWrapper {
 
     }
 
+    @Test
+    public void deliveryBufferReleased() {
+        StubClient expectedClient = new StubClient();
+        MockListener listener = new MockListener(MockListener.Method.ON_MALFORMED);
+        MockCallbackService callbackService = new MockCallbackService();
+
+        byte[] msgData = "I bet this isn't a valid AMQP message".getBytes();
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(msgData.length);
+        buf.writeBytes(msgData);
+
+        DeliveryRequest request = new DeliveryRequest(buf, QOS.AT_MOST_ONCE, "private:/malformed", null, null);
+        DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, null);
+        wrapper.onDelivery(callbackService, request, QOS.AT_MOST_ONCE, false);
+
+        assertEquals("Expected the pooled buffer to have been released", 0, buf.refCnt());
+        assertNull("Expected the buffer to have been taken from the request", request.buf);
+        MalformedDelivery delivery = (MalformedDelivery)listener.actualDelivery;
+        byte[] actualData = new byte[delivery.getData().remaining()];
+        delivery.getData().get(actualData);
+        assertArrayEquals("Expected malformed data to be a copy of the message data", msgData, actualData);
+    }
+
+    @Test
+    public void deliveryBufferReleasedWhenCallbackRejected() {
+        StubClient expectedClient = new StubClient();
+        MockListener listener = new MockListener(MockListener.Method.NONE);
+        CallbackService rejectingService = new CallbackService() {
+            @Override
+            public void run(Runnable runnable, Object orderingCtx, Promise<Void> promise) {
+                promise.setFailure(new ClientRuntimeException("rejected"));
+            }
+        };
+
+        byte[] msgData = createSerializedProtonMessage(new AmqpValue("data"), "/topic1", 0, null, null, null);
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(msgData.length);
+        buf.writeBytes(msgData);
+
+        DeliveryRequest request = new DeliveryRequest(buf, QOS.AT_MOST_ONCE, "private:/#", null, null);
+        DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, null);
+        wrapper.onDelivery(rejectingService, request, QOS.AT_MOST_ONCE, false);
+
+        assertEquals("Expected the pooled buffer to have been released", 0, buf.refCnt());
+        assertNull(request.buf);
+    }
+
+    @Test
+    public void propertiesDecodedAfterBufferReleased() {
+        StubClient expectedClient = new StubClient();
+        MockListener listener = new MockListener(MockListener.Method.ON_MESSAGE);
+        MockCallbackService callbackService = new MockCallbackService();
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("kind", "kitten");
+        byte[] msgData = createSerializedProtonMessage(new AmqpValue("data"), "/topic1", 0, properties, null, null);
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(msgData.length);
+        buf.writeBytes(msgData);
+
+        DeliveryRequest request = new DeliveryRequest(buf, QOS.AT_MOST_ONCE, "private:/#", null, null);
+        DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, null);
+        wrapper.onDelivery(callbackService, request, QOS.AT_MOST_ONCE, false);
+
+        // The address and properties are decoded from a copy of their sections, when first asked for
+        assertEquals("Expected the pooled buffer to have been released", 0, buf.refCnt());
+        assertEquals("Expected topic to match", "/topic1", listener.actualDelivery.getTopic());
+        assertEquals("Expected properties to match", "kitten", listener.actualDelivery.getProperties().get("kind"));
+    }
+
+    @Test
+    public void malformedDataBody() {
+        StubClient expectedClient = new StubClient();
+        MockListener listener = new MockListener(MockListener.Method.ON_MALFORMED);
+        MockCallbackService callbackService = new MockCallbackService();
+
+        org.apache.qpid.proton.message.Message protonMsg = Proton.message();
+        protonMsg.setBody(new Data(new Binary(new byte[] {1, 2, 3})));
+        byte[] msgData = new byte[1024];
+        int length = protonMsg.encode(msgData, 0, msgData.length);
+
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData, 0, length), QOS.AT_MOST_ONCE, "private:/#", null, null);
+        DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, null);
+        wrapper.onDelivery(callbackService, request, QOS.AT_MOST_ONCE, false);
+
+        assertEquals("Expected delivery to be of type malformed", Delivery.Type.MALFORMED, listener.actualDelivery.getType());
+        assertEquals("Expected malformed reason to be FORMATNOMAPPING", MalformedDelivery.MalformedReason.FORMATNOMAPPING, ((MalformedDelivery)listener.actualDelivery).getReason());
+    }
+
     public void malformedUnhandledAMQPBody() {
         StubClient expectedClient = new StubClient();
         MockListener listener = new MockListener(MockListener.Method.ON_MESSAGE);
@@ -283,7 +393,7 @@ public class TestDestinationListenerWrapper {
         QOS expectedQos = QOS.AT_LEAST_ONCE;
         byte[] msgData = createSerializedProtonMessage(new AmqpValue(new Integer(7)), expectedTopic, expectedTtl, null, null, null);
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:" + expectedTopicPattern, null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:" + expectedTopicPattern, null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -313,7 +423,7 @@ public class TestDestinationListenerWrapper {
         annotations.put(Symbol.getSymbol("x-opt-message-malformed-MQMD.CodedCharSetId"), expectedMQMDCCSID);
         byte[] msgData = createSerializedProtonMessage(new AmqpValue(expectedData), expectedTopic, expectedTtl, null, annotations, null);
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:" + expectedTopicPattern, null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:" + expectedTopicPattern, null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -368,7 +478,7 @@ public class TestDestinationListenerWrapper {
         QOS expectedQos = QOS.AT_LEAST_ONCE;
         byte[] msgData = createSerializedProtonMessage(new AmqpValue(expectedData), expectedTopic, expectedTtl, null, null, "application/json");
 
-        DeliveryRequest request = new DeliveryRequest(msgData, expectedQos, "private:" + expectedTopicPattern, null, null);
+        DeliveryRequest request = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), expectedQos, "private:" + expectedTopicPattern, null, null);
         DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(expectedClient, new GsonBuilder(), listener, expectedContext);
         wrapper.onDelivery(callbackService, request, expectedQos, false);
 
@@ -396,4 +506,97 @@ public class TestDestinationListenerWrapper {
             assertEquals("Expected array element #"+i+" to match", expectedArray[i], actual);
         }
     }
+
+    private class OrderingCallbackService extends MockCallbackService {
+        private final ArrayList<Object> orderingCtxs = new ArrayList<>();
+        @Override public void run(Runnable runnable, Object orderingCtx, Promise<Void> promise) {
+            orderingCtxs.add(orderingCtx);
+            super.run(runnable, orderingCtx, promise);
+        }
+    }
+
+    /**
+     * Delivers messages for topics "/topic1", "/topic1" and "/topic2" using the specified ordering.
+     * @return the ordering contexts that the callbacks were run with.
+     */
+    private ArrayList<Object> deliverWithOrdering(StubClient client, SubscribeOptions.Ordering ordering, DeliveryRequest[] requests) {
+        MockListener listener = new MockListener(MockListener.Method.ON_MESSAGE);
+        OrderingCallbackService callbackService = new OrderingCallbackService();
+        DestinationListenerWrapper<Object> wrapper = new DestinationListenerWrapper<Object>(client, new GsonBuilder(), listener, null, ordering);
+        String[] topics = new String[] {"/topic1", "/topic1", "/topic2"};
+        for (int i = 0; i < topics.length; ++i) {
+            byte[] msgData = createSerializedProtonMessage(new AmqpValue("data"), topics[i], 0, null, null, null);
+            requests[i] = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), QOS.AT_MOST_ONCE, "private:/#", null, null);
+            wrapper.onDelivery(callbackService, requests[i], QOS.AT_MOST_ONCE, true);
+            assertEquals("Expected topic to match", topics[i], listener.actualDelivery.getTopic());
+        }
+        callbackService.orderingCtxs.add(wrapper);
+        return callbackService.orderingCtxs;
+    }
+
+    private static ByteBuf encode(org.apache.qpid.proton.message.Message protonMsg) {
+        byte data[] = new byte[64 * 1024];
+        int length = protonMsg.encode(data, 0, data.length);
+        return Unpooled.wrappedBuffer(data, 0, length);
+    }
+
+    @Test
+    public void peekAddress() {
+        // Only the properties section, which is the smallest encoding of a message with an address
+        org.apache.qpid.proton.message.Message protonMsg = Proton.message();
+        protonMsg.setAddress("amqp:///kittens");
+        assertEquals("amqp:///kittens", DestinationListenerWrapper.peekAddress(encode(protonMsg)));
+
+        // All of the sections that can precede the properties section, with an address that needs a four byte length
+        StringBuilder longAddress = new StringBuilder("amqp:///");
+        while (longAddress.length() < 300) longAddress.append("kittens/");
+        Map<Symbol, Object> annotations = new HashMap<>();
+        annotations.put(Symbol.getSymbol("x-opt-annotation"), "value");
+        protonMsg = Proton.message();
+        protonMsg.setDurable(true);
+        protonMsg.setTtl(1000);
+        protonMsg.setDeliveryAnnotations(new DeliveryAnnotations(annotations));
+        protonMsg.setMessageAnnotations(new MessageAnnotations(annotations));
+        protonMsg.setMessageId("message-id");
+        protonMsg.setUserId(new byte[] {1, 2, 3});
+        protonMsg.setAddress(longAddress.toString());
+        protonMsg.setBody(new AmqpValue("data"));
+        ByteBuf buf = encode(protonMsg);
+        assertEquals(longAddress.toString(), DestinationListenerWrapper.peekAddress(buf));
+        assertEquals("Reader index should not have been changed", 0, buf.readerIndex());
+
+        // Messages without an address
+        protonMsg = Proton.message();
+        protonMsg.setBody(new AmqpValue("data"));
+        assertNull(DestinationListenerWrapper.peekAddress(encode(protonMsg)));
+        protonMsg.setMessageId(UnsignedLong.valueOf(1));
+        assertNull(DestinationListenerWrapper.peekAddress(encode(protonMsg)));
+        assertNull(DestinationListenerWrapper.peekAddress(Unpooled.wrappedBuffer(new byte[] {1, 2, 3})));
+
+        // Truncated messages
+        for (int length = 0; length < buf.readableBytes(); ++length) {
+            String address = DestinationListenerWrapper.peekAddress(buf.slice(0, length));
+            assertTrue("Unexpected address from truncated message: " + address, address == null || address.equals(longAddress.toString()));
+        }
+    }
+
+    @Test
+    public void onDeliveryOrdering() {
+        StubClient client = new StubClient();
+        DeliveryRequest[] requests = new DeliveryRequest[3];
+
+        ArrayList<Object> ctxs = deliverWithOrdering(client, SubscribeOptions.Ordering.CLIENT, requests);
+        for (int i = 0; i < 3; ++i) assertSame("Expected client ordering", client, ctxs.get(i));
+
+        ctxs = deliverWithOrdering(client, SubscribeOptions.Ordering.SUBSCRIPTION, requests);
+        for (int i = 0; i < 3; ++i) assertSame("Expected subscription ordering", ctxs.get(3), ctxs.get(i));
+
+        ctxs = deliverWithOrdering(client, SubscribeOptions.Ordering.TOPIC, requests);
+        assertEquals("Expected same topic to be ordered together", ctxs.get(0), ctxs.get(1));
+        assertNotSame("Expected different topics to be ordered separately", ctxs.get(0), ctxs.get(2));
+        assertTrue(!ctxs.get(0).equals(ctxs.get(2)));
+
+        ctxs = deliverWithOrdering(client, SubscribeOptions.Ordering.NONE, requests);
+        for (int i = 0; i < 3; ++i) assertSame("Expected no ordering", requests[i], ctxs.get(i));
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ibm.mqlight.api.ClientMetrics;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 16; ++value) {
+            assertEquals(value, LatencyHistogram.bucket(value));
+            assertEquals(value, LatencyHistogram.highestValue((int) value));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+
+        // Every value falls within the bounds of its bucket, which are within about 6% of each other
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; ++bucket) {
+            final long lowest = previousHighest + 1;
+            final long highest = LatencyHistogram.highestValue(bucket);
+            assertEquals(bucket, LatencyHistogram.bucket(lowest));
+            assertEquals(bucket, LatencyHistogram.bucket(highest));
+            assertTrue(highest - lowest <= lowest / 16);
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        ClientMetrics.Latency latency = new LatencyHistogram().snapshot();
+        assertEquals(0, latency.getCount());
+        assertEquals(0, latency.getMean(TimeUnit.NANOSECONDS));
+        assertEquals(0, latency.getMax(TimeUnit.NANOSECONDS));
+        assertEquals(0, latency.getValueAtPercentile(99, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        histogram.record(-1);
+        ClientMetrics.Latency latency = histogram.snapshot();
+
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+        assertEquals("Snapshot should not change", 1001, latency.getCount());
+
+        assertEquals(1000, latency.getMax(TimeUnit.MICROSECONDS));
+        assertEquals(500, latency.getMean(TimeUnit.MICROSECONDS), 1);
+        assertEquals(0, latency.getValueAtPercentile(0, TimeUnit.MICROSECONDS));
+        assertEquals(500, latency.getValueAtPercentile(50, TimeUnit.MICROSECONDS), 500 / 16);
+        assertEquals(990, latency.getValueAtPercentile(99, TimeUnit.MICROSECONDS), 990 / 16);
+        assertEquals(1000, latency.getValueAtPercentile(100, TimeUnit.MICROSECONDS));
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestMessageEncoder {
+
+    private static Message decode(ByteBuf buf) {
+        Message result = Proton.message();
+        result.decode(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+        return result;
+    }
+
+    @Test
+    public void testEncodeStringBody() {
+        Message msg = Proton.message();
+        msg.setAddress("amqp:///kittens");
+        msg.setTtl(1000);
+        msg.setBody(new AmqpValue("\u00a3\u20ac hello"));
+        msg.setContentType("text/plain");
+
+        ByteBuf buf = MessageEncoder.encode(msg);
+        try {
+            assertTrue("Expected buffer to be array backed", buf.hasArray());
+            assertTrue("Expected estimate to be an upper bound", MessageEncoder.estimateEncodedSize(msg) >= buf.readableBytes());
+            Message decoded = decode(buf);
+            assertEquals("amqp:///kittens", decoded.getAddress());
+            assertEquals(1000, decoded.getTtl());
+            assertEquals("\u00a3\u20ac hello", ((AmqpValue)decoded.getBody()).getValue());
+        } finally {
+            buf.release();
+        }
+        assertEquals("Expected buffer to have been released", 0, buf.refCnt());
+    }
+
+    @Test
+    public void testEncodeLargeBinaryBodyAndProperties() {
+        byte[] data = new byte[256 * 1024];
+        for (int i = 0; i < data.length; ++i) data[i] = (byte)i;
+        Map<String, Object> props = new HashMap<>();
+        props.put("boolean", true);
+        props.put("long", 123456789L);
+        props.put("double", 1.5d);
+        props.put("string", "value");
+        props.put("binary", new Binary(new byte[] {1, 2, 3}));
+        props.put("null", null);
+
+        Message msg = Proton.message();
+        msg.setAddress("amqp:///puppies");
+        msg.setApplicationProperties(new ApplicationProperties(props));
+        msg.setBody(new AmqpValue(new Binary(data)));
+
+        ByteBuf buf = MessageEncoder.encode(msg);
+        try {
+            assertTrue("Expected estimate to be an upper bound", MessageEncoder.estimateEncodedSize(msg) >= buf.readableBytes());
+            Message decoded = decode(buf);
+            assertArrayEquals(data, ((Binary)((AmqpValue)decoded.getBody()).getValue()).getArray());
+            assertEquals(props.size(), decoded.getApplicationProperties().getValue().size());
+            assertEquals("value", decoded.getApplicationProperties().getValue().get("string"));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testEncodeDataBody() {
+        Message msg = Proton.message();
+        msg.setBody(new Data(new Binary(new byte[] {5, 6, 7})));
+        ByteBuf buf = MessageEncoder.encode(msg);
+        try {
+            assertArrayEquals(new byte[] {5, 6, 7}, ((Data)decode(buf).getBody()).getValue().getArray());
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static void testEncodeByteBufferBody(ByteBuffer body, byte[] expected) {
+        Message msg = Proton.message();
+        msg.setAddress("amqp:///bytes");
+        msg.setTtl(5000);
+        final int position = body.position();
+        final int limit = body.limit();
+
+        ByteBuf buf = MessageEncoder.encode(msg, body);
+        try {
+            assertEquals("Expected buffer position to be unchanged", position, body.position());
+            assertEquals("Expected buffer limit to be unchanged", limit, body.limit());
+            Message decoded = decode(buf);
+            assertEquals("amqp:///bytes", decoded.getAddress());
+            assertEquals(5000, decoded.getTtl());
+            Binary binary = (Binary)((AmqpValue)decoded.getBody()).getValue();
+            byte[] actual = new byte[binary.getLength()];
+            System.arraycopy(binary.getArray(), binary.getArrayOffset(), actual, 0, actual.length);
+            assertArrayEquals(expected, actual);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static byte[] data(int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; ++i) result[i] = (byte)(i * 31);
+        return result;
+    }
+
+    @Test
+    public void testEncodeHeapByteBufferBody() {
+        for (int size : new int[] {0, 10, 255, 256, 1024, 64 * 1024, 1024 * 1024}) {
+            byte[] expected = data(size);
+            testEncodeByteBufferBody(ByteBuffer.wrap(expected), expected);
+        }
+
+        // Only the data between position and limit should be sent
+        byte[] backing = data(1024);
+        ByteBuffer slice = ByteBuffer.wrap(backing, 100, 500);
+        testEncodeByteBufferBody(slice, Arrays.copyOfRange(backing, 100, 600));
+    }
+
+    @Test
+    public void testEncodeDirectByteBufferBody() {
+        for (int size : new int[] {10, 1024, 64 * 1024, 1024 * 1024}) {
+            byte[] expected = data(size);
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(expected);
+            direct.flip();
+            testEncodeByteBufferBody(direct, expected);
+        }
+    }
+
+    @Test
+    public void testEncodeMappedByteBufferBody() throws IOException {
+        final byte[] expected = data(64 * 1024);
+        final File file = File.createTempFile("mqlight", ".bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(expected);
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, expected.length);
+            testEncodeByteBufferBody(mapped, expected);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnderestimateIsRetried() {
+        // A list body is not accounted for in the estimate, so a large one will overflow the first buffer
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) list.add("a reasonably long string value, number " + i);
+        Message msg = Proton.message();
+        msg.setBody(new AmqpValue(list));
+
+        ByteBuf buf = MessageEncoder.encode(msg);
+        try {
+            assertEquals(list, ((AmqpValue)decode(buf).getBody()).getValue());
+            assertEquals("Retry should have used a buffer of exactly the encoded size", buf.readableBytes(), buf.capacity());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testEncodeFailsAfterOneRetry() {
+        final AtomicInteger attempts = new AtomicInteger(0);
+        Message msg = new MessageImpl() {
+            @Override
+            public int encode(byte[] data, int offset, int length) {
+                attempts.incrementAndGet();
+                throw new BufferOverflowException();
+            }
+        };
+        msg.setBody(new AmqpValue("body"));
+
+        try {
+            MessageEncoder.encode(msg).release();
+            fail("Encoding should have failed");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals("Encoding should have been attempted at the estimated size, then the actual size", 2, attempts.get());
+    }
+
+    /**
+     * Encodes a message with a binary body the way that the client did before the body could be
+     * supplied separately: by copying the body into a byte array, which is then copied again
+     * when proton encodes the message.
+     */
+    private static ByteBuf encodeByCopying(Message msg, ByteBuffer body) {
+        byte[] data = new byte[body.remaining()];
+        body.duplicate().get(data);
+        msg.setBody(new AmqpValue(new Binary(data)));
+        return MessageEncoder.encode(msg);
+    }
+
+    private static long timeEncode(boolean copy, ByteBuffer body, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            Message msg = Proton.message();
+            msg.setAddress("amqp:///kittens");
+            ByteBuf buf = copy ? encodeByCopying(msg, body) : MessageEncoder.encode(msg, body);
+            buf.release();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Compares the time taken to encode messages with 1KB, 64KB and 1MB binary bodies, supplied
+     * in heap and direct buffers, with and without the body being copied before it is encoded.
+     * Timings on a shared build machine are too noisy to assert on, so these are only reported -
+     * and this is only run when the <code>mqlight.benchmarks</code> system property is set to
+     * <code>true</code>.
+     */
+    @Test
+    public void encodeComparison() {
+        Assume.assumeTrue(Boolean.getBoolean("mqlight.benchmarks"));
+        for (int size : new int[] { 1024, 64 * 1024, 1024 * 1024 }) {
+            // Encode around 1GB of message bodies each time
+            final int iterations = Math.max(100, (1024 * 1024 * 1024) / size);
+            for (ByteBuffer body : new ByteBuffer[] { ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size) }) {
+                timeEncode(true, body, iterations);     // warm up
+                timeEncode(false, body, iterations);
+                final long copyNanos = timeEncode(true, body, iterations);
+                final long directNanos = timeEncode(false, body, iterations);
+                System.out.println(size + " byte " + (body.isDirect() ? "direct" : "heap") + " body, " + iterations + " messages: "
+                        + "copied " + TimeUnit.NANOSECONDS.toMillis(copyNanos) + "ms (" + copyNanos / iterations + "ns/msg), "
+                        + "not copied " + TimeUnit.NANOSECONDS.toMillis(directNanos) + "ms (" + directNanos / iterations + "ns/msg)");
+            }
+        }
+    }
+}
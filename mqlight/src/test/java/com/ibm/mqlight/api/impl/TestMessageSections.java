@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.DeliveryAnnotations;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class TestMessageSections {
+
+    private static ByteBuf encode(Message protonMsg) {
+        byte data[] = new byte[64 * 1024];
+        int length = protonMsg.encode(data, 0, data.length);
+        return Unpooled.wrappedBuffer(data, 0, length);
+    }
+
+    private static Message fullMessage() {
+        Map<Symbol, Object> annotations = new HashMap<>();
+        annotations.put(Symbol.getSymbol("x-opt-annotation"), "value");
+        Map<Object, Object> properties = new HashMap<>();
+        properties.put("property", "value");
+        Message protonMsg = Proton.message();
+        protonMsg.setDurable(true);
+        protonMsg.setTtl(1000);
+        protonMsg.setDeliveryAnnotations(new DeliveryAnnotations(annotations));
+        protonMsg.setAddress("amqp:///kittens");
+        protonMsg.setContentType("application/json");
+        protonMsg.setApplicationProperties(new ApplicationProperties(properties));
+        protonMsg.setBody(new AmqpValue("data"));
+        return protonMsg;
+    }
+
+    @Test
+    public void findSections() {
+        ByteBuf buf = encode(fullMessage());
+        MessageSections sections = MessageSections.find(buf);
+        assertNotNull(sections);
+        assertEquals("Reader index should not have been changed", 0, buf.readerIndex());
+        assertTrue(sections.contains(MessageSections.HEADER));
+        assertTrue(sections.contains(MessageSections.DELIVERY_ANNOTATIONS));
+        assertFalse(sections.contains(MessageSections.MESSAGE_ANNOTATIONS));
+        assertTrue(sections.contains(MessageSections.PROPERTIES));
+        assertTrue(sections.contains(MessageSections.APPLICATION_PROPERTIES));
+        assertTrue(sections.contains(MessageSections.AMQP_VALUE));
+        assertFalse(sections.contains(MessageSections.FOOTER));
+
+        assertEquals(1000, sections.getUnsignedInt(MessageSections.HEADER, MessageSections.HEADER_TTL));
+        assertEquals("amqp:///kittens", sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_TO));
+        assertEquals("application/json", sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_CONTENT_TYPE));
+
+        // Each slice is a message made up of only those sections
+        Message decoded = Proton.message();
+        ByteBuf body = sections.slice(MessageSections.AMQP_VALUE, MessageSections.AMQP_VALUE);
+        decoded.decode(body.array(), body.arrayOffset() + body.readerIndex(), body.readableBytes());
+        assertEquals("data", ((AmqpValue)decoded.getBody()).getValue());
+        assertNull(decoded.getAddress());
+
+        byte[] properties = sections.copy(MessageSections.PROPERTIES, MessageSections.APPLICATION_PROPERTIES);
+        decoded = Proton.message();
+        decoded.decode(properties, 0, properties.length);
+        assertEquals("amqp:///kittens", decoded.getAddress());
+        assertEquals("value", decoded.getApplicationProperties().getValue().get("property"));
+        assertNull(decoded.getBody());
+
+        assertNull(sections.slice(MessageSections.MESSAGE_ANNOTATIONS, MessageSections.MESSAGE_ANNOTATIONS));
+        assertNull(sections.copy(MessageSections.FOOTER, MessageSections.FOOTER));
+    }
+
+    @Test
+    public void missingFields() {
+        Message protonMsg = Proton.message();
+        protonMsg.setBody(new AmqpValue("data"));
+        MessageSections sections = MessageSections.find(encode(protonMsg));
+        assertEquals(0, sections.getUnsignedInt(MessageSections.HEADER, MessageSections.HEADER_TTL));
+        assertNull(sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_TO));
+
+        // A properties section that ends before the content type
+        protonMsg.setAddress("amqp:///kittens");
+        sections = MessageSections.find(encode(protonMsg));
+        assertEquals("amqp:///kittens", sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_TO));
+        assertNull(sections.getString(MessageSections.PROPERTIES, MessageSections.PROPERTIES_CONTENT_TYPE));
+
+        // A short ttl, encoded as a smalluint
+        protonMsg.setTtl(100);
+        sections = MessageSections.find(encode(protonMsg));
+        assertEquals(100, sections.getUnsignedInt(MessageSections.HEADER, MessageSections.HEADER_TTL));
+    }
+
+    @Test
+    public void symbolicDescriptors() {
+        // An amqp-value section holding a string, with a symbolic descriptor
+        byte[] descriptor = "amqp:amqp-value:*".getBytes();
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(0x00).writeByte(0xa3).writeByte(descriptor.length).writeBytes(descriptor);
+        buf.writeByte(0xa1).writeByte(4).writeBytes("data".getBytes());
+        MessageSections sections = MessageSections.find(buf);
+        assertNotNull(sections);
+        byte[] body = sections.copy(MessageSections.AMQP_VALUE, MessageSections.AMQP_VALUE);
+        assertEquals(buf.readableBytes(), body.length);
+        Message decoded = Proton.message();
+        decoded.decode(body, 0, body.length);
+        assertEquals("data", ((AmqpValue)decoded.getBody()).getValue());
+    }
+
+    @Test
+    public void invalidMessages() {
+        assertNull(MessageSections.find(Unpooled.wrappedBuffer(new byte[] {1, 2, 3})));
+        // Not a section descriptor
+        assertNull(MessageSections.find(Unpooled.wrappedBuffer(new byte[] {0x00, 0x53, 0x10, 0x40})));
+        // Sections out of order, or repeated
+        assertNull(MessageSections.find(Unpooled.wrappedBuffer(new byte[] {0x00, 0x53, 0x77, 0x40, 0x00, 0x53, 0x73, 0x45})));
+        assertNull(MessageSections.find(Unpooled.wrappedBuffer(new byte[] {0x00, 0x53, 0x77, 0x40, 0x00, 0x53, 0x77, 0x40})));
+        assertNotNull(MessageSections.find(Unpooled.wrappedBuffer(new byte[] {0x00, 0x53, 0x75, (byte)0xa0, 0x00, 0x00, 0x53, 0x75, (byte)0xa0, 0x00})));
+
+        // Truncated messages
+        ByteBuf buf = encode(fullMessage());
+        for (int length = 1; length < buf.readableBytes(); ++length) {
+            MessageSections sections = MessageSections.find(buf.slice(0, length));
+            if (sections != null) {
+                assertFalse("Unexpected body in truncated message", sections.contains(MessageSections.AMQP_VALUE));
+            }
+        }
+    }
+}
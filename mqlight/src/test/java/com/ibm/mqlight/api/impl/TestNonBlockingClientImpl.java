@@ -18,6 +18,8 @@
  */
 package com.ibm.mqlight.api.impl;
 
+import io.netty.buffer.Unpooled;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -27,6 +29,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -35,18 +40,27 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
 import junit.framework.AssertionFailedError;
 
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.gson.GsonBuilder;
 import com.ibm.mqlight.api.ClientException;
+import com.ibm.mqlight.api.ClientMetrics;
 import com.ibm.mqlight.api.ClientOptions;
 import com.ibm.mqlight.api.ClientOptions.SSLOptions;
 import com.ibm.mqlight.api.ClientState;
@@ -59,6 +73,7 @@ import com.ibm.mqlight.api.NonBlockingClient;
 import com.ibm.mqlight.api.NonBlockingClientListener;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.QOS;
+import com.ibm.mqlight.api.SendBufferFullException;
 import com.ibm.mqlight.api.SendOptions;
 import com.ibm.mqlight.api.StoppedException;
 import com.ibm.mqlight.api.SubscribeOptions;
@@ -72,10 +87,13 @@ import com.ibm.mqlight.api.impl.callback.SameThreadCallbackService;
 import com.ibm.mqlight.api.impl.engine.CloseRequest;
 import com.ibm.mqlight.api.impl.engine.CloseResponse;
 import com.ibm.mqlight.api.impl.engine.DeliveryRequest;
+import com.ibm.mqlight.api.impl.engine.DeliveryResponse;
 import com.ibm.mqlight.api.impl.engine.DisconnectNotification;
+import com.ibm.mqlight.api.impl.engine.DrainNotification;
 import com.ibm.mqlight.api.impl.engine.EngineConnection;
 import com.ibm.mqlight.api.impl.engine.OpenRequest;
 import com.ibm.mqlight.api.impl.engine.OpenResponse;
+import com.ibm.mqlight.api.impl.engine.SendBatchRequest;
 import com.ibm.mqlight.api.impl.engine.SendRequest;
 import com.ibm.mqlight.api.impl.engine.SendResponse;
 import com.ibm.mqlight.api.impl.engine.SubscribeRequest;
@@ -86,6 +104,9 @@ import com.ibm.mqlight.api.timer.TimerService;
 
 public class TestNonBlockingClientImpl {
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     private class StubEndpointService implements EndpointService {
         @Override public void lookup(EndpointPromise promise) {}
         @Override public void onSuccess(Endpoint endpoint) {}
@@ -490,9 +511,9 @@ public class TestNonBlockingClientImpl {
         assertEquals("Expected a single message to have been sent to the mock engine component", 1, client.getMessages().size());
         InternalSend<?> send = (InternalSend<?>)client.getMessages().get(0);
         byte[] msgData = new byte[send.length];
-        System.arraycopy(send.buf.array(), 0, msgData, 0, send.length);
+        System.arraycopy(send.buf.array(), send.buf.arrayOffset(), msgData, 0, send.length);
 
-        DeliveryRequest dr = new DeliveryRequest(msgData, QOS.AT_MOST_ONCE, "/kittens", null, null);
+        DeliveryRequest dr = new DeliveryRequest(Unpooled.wrappedBuffer(msgData), QOS.AT_MOST_ONCE, "/kittens", null, null);
         TestDestinationListener destinationListener = new TestDestinationListener();
         DestinationListenerWrapper<Void> wrapper = new DestinationListenerWrapper<>(client, new GsonBuilder(), destinationListener, null);
         wrapper.onDelivery(new SameThreadCallbackService(), dr, QOS.AT_MOST_ONCE, false);
@@ -915,6 +936,283 @@ public class TestNonBlockingClientImpl {
        assertEquals("Exception passed to completion listener should match", exception, compListener.onErrorException);
     }
 
+    @Test
+    public void testSendBufferFullRejectsSend() {
+        class TestClientListener extends MockNonBlockingClientListener {
+            boolean drained = false;
+            public TestClientListener() { super(true); }
+            @Override public void onStarted(NonBlockingClient client, Void context) {}
+            @Override public void onDrain(NonBlockingClient client, Void context) { drained = true; }
+        }
+        MockComponent engine = new MockComponent();
+        TestClientListener listener = new TestClientListener();
+        ClientOptions options = ClientOptions.builder().setSendBufferLimits(0, 1).setSendBufferPolicy(ClientOptions.SendBufferPolicy.REJECT).build();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, listener, null);
+        OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+        client.tell(new OpenResponse(openRequest, new EngineConnection()), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        MockCompletionListener compListener1 = new MockCompletionListener();
+        assertFalse("Send should have filled the send buffer", client.send("/kittens", "data", null, compListener1, null));
+        assertEquals(1, client.getSendBufferMessages());
+        assertTrue(client.getSendBufferBytes() > 0);
+
+        MockCompletionListener compListener2 = new MockCompletionListener();
+        assertFalse("Send should have been rejected", client.send("/kittens", "data", null, compListener2, null));
+        assertTrue("Completion listener for rejected send should have been called", compListener2.onErrorCalled);
+        assertTrue(compListener2.onErrorException instanceof SendBufferFullException);
+        assertEquals(2, engine.getMessages().size());
+        assertEquals(1, client.getSendBufferMessages());
+
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(1), null), engine);
+        assertTrue(compListener1.onSuccessCalled);
+        assertEquals(0, client.getSendBufferMessages());
+        assertEquals(0, client.getSendBufferBytes());
+        assertTrue("onDrain should have been called once the send buffer emptied", listener.drained);
+    }
+
+    @Test
+    public void testBlockingSendFromCallbackIsRejected() {
+        final MockCompletionListener compListener1 = new MockCompletionListener();
+        final MockCompletionListener compListener2 = new MockCompletionListener();
+        class TestClientListener extends MockNonBlockingClientListener {
+            public TestClientListener() { super(true); }
+            @Override public void onStarted(NonBlockingClient client, Void context) {
+                // Runs on the client's processing thread, so the second send must not wait for room
+                client.send("/kittens", "data", null, compListener1, null);
+                client.send("/kittens", "data", null, compListener2, null);
+            }
+            @Override public void onDrain(NonBlockingClient client, Void context) {}
+        }
+        MockComponent engine = new MockComponent();
+        ClientOptions options = ClientOptions.builder().setSendBufferLimits(0, 1).setSendBufferPolicy(ClientOptions.SendBufferPolicy.BLOCK).build();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, new TestClientListener(), null);
+        OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+        client.tell(new OpenResponse(openRequest, new EngineConnection()), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        assertTrue("Completion listener for second send should have been called", compListener2.onErrorCalled);
+        assertTrue(compListener2.onErrorException instanceof SendBufferFullException);
+        assertEquals(1, client.getSendBufferMessages());
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(1), null), engine);
+        assertTrue(compListener1.onSuccessCalled);
+    }
+
+    @Test
+    public void testSendBufferDrainSignalled() {
+        class TestClientListener extends MockNonBlockingClientListener {
+            int drains = 0;
+            public TestClientListener() { super(true); }
+            @Override public void onStarted(NonBlockingClient client, Void context) {}
+            @Override public void onDrain(NonBlockingClient client, Void context) { ++drains; }
+        }
+        MockComponent engine = new MockComponent();
+        TestClientListener listener = new TestClientListener();
+        ClientOptions options = ClientOptions.builder().setSendBufferLimits(0, 2).build();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, listener, null);
+        OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+        client.tell(new OpenResponse(openRequest, new EngineConnection()), engine);
+
+        client.send("/kittens", "data", null, null, null);
+        client.tell(new DrainNotification(), engine);
+        assertFalse("Send should have filled the send buffer", client.send("/kittens", "data", null, null, null));
+        client.tell(new DrainNotification(), engine);
+        assertEquals("Network drain should wait for the send buffer to drain", 0, listener.drains);
+
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(1), null), engine);
+        assertEquals(0, listener.drains);
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(2), null), engine);
+        assertEquals(1, listener.drains);
+    }
+
+    @Test
+    public void testMetrics() {
+        MockComponent engine = new MockComponent();
+        MockNonBlockingClientListener listener = new MockNonBlockingClientListener(false);
+        EngineConnection engineConnection = new EngineConnection();
+        NonBlockingClientImpl client = openCommon(engine, listener);
+        OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+        client.tell(new OpenResponse(openRequest, engineConnection), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        ClientMetrics metrics = client.getMetrics();
+        for (QOS qos : QOS.values()) {
+            assertEquals(0, metrics.getMessagesSent(qos));
+            assertEquals(0, metrics.getMessagesReceived(qos));
+        }
+        assertEquals(0, metrics.getSendLatency().getCount());
+        assertEquals("Same thread callback service does not report queued callbacks", -1, metrics.getQueuedCallbacks());
+
+        // Sends are counted once they complete
+        client.send("/kittens", "data", null, null, null);
+        client.send("/kittens", "more data", null, SendOptions.builder().setQos(QOS.AT_LEAST_ONCE).build(), null, null);
+        assertEquals(3, engine.getMessages().size());
+        assertEquals(2, client.getMetrics().getOutstandingSends());
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(1), null), engine);
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(2), null), engine);
+        metrics = client.getMetrics();
+        assertEquals(0, metrics.getOutstandingSends());
+        assertEquals(1, metrics.getMessagesSent(QOS.AT_MOST_ONCE));
+        assertEquals(1, metrics.getMessagesSent(QOS.AT_LEAST_ONCE));
+        assertTrue(metrics.getBytesSent(QOS.AT_LEAST_ONCE) > metrics.getBytesSent(QOS.AT_MOST_ONCE));
+        assertEquals("Only at least once sends have their latency recorded", 1, metrics.getSendLatency().getCount());
+
+        // Deliveries are counted on arrival, and are unconfirmed until the client settles them
+        client.subscribe("/kittens", SubscribeOptions.builder().setQos(QOS.AT_LEAST_ONCE).setAutoConfirm(false).build(),
+                new DestinationAdapter<Void>() {}, null, null);
+        client.tell(new SubscribeResponse(engineConnection, new SubscriptionTopic("/kittens", null)), engine);
+        DeliveryRequest deliveryRequest = new DeliveryRequest(Unpooled.wrappedBuffer(new byte[10]), QOS.AT_LEAST_ONCE, "private:/kittens", null, null);
+        client.tell(deliveryRequest, engine);
+        metrics = client.getMetrics();
+        assertEquals(1, metrics.getMessagesReceived(QOS.AT_LEAST_ONCE));
+        assertEquals(10, metrics.getBytesReceived(QOS.AT_LEAST_ONCE));
+        assertEquals(Integer.valueOf(1), metrics.getUnconfirmedDeliveries().get("private:/kittens"));
+
+        client.tell(new DeliveryResponse(deliveryRequest), engine);
+        metrics = client.getMetrics();
+        assertEquals(Integer.valueOf(0), metrics.getUnconfirmedDeliveries().get("private:/kittens"));
+        assertEquals(1, metrics.getConfirmLatency().getCount());
+        assertEquals(0, metrics.getReconnects());
+    }
+
+    @Test
+    public void testMBean() throws JMException {
+        MockComponent engine = new MockComponent();
+        MockNonBlockingClientListener listener = new MockNonBlockingClientListener(false);
+        EngineConnection engineConnection = new EngineConnection();
+        ClientOptions options = ClientOptions.builder().setId("mbean/client").setJmxEnabled(true).build();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, listener, null);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = client.getMonitor().getName();
+        assertEquals(ObjectName.quote("mbean/client"), name.getKeyProperty("id"));
+        try {
+            assertTrue("MBean should have been registered", server.isRegistered(name));
+            assertEquals("mbean/client", server.getAttribute(name, "Id"));
+            assertEquals("STARTING", server.getAttribute(name, "State"));
+
+            OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+            client.tell(new OpenResponse(openRequest, engineConnection), engine);
+            assertEquals("STARTED", server.getAttribute(name, "State"));
+            assertEquals(String.valueOf(NonBlockingClientState.Started), server.getAttribute(name, "InternalState"));
+            assertEquals("null:0", server.getAttribute(name, "Endpoint"));
+            assertEquals(0L, server.getAttribute(name, "BytesWritten"));
+            assertEquals(0L, server.getAttribute(name, "BytesRead"));
+            assertEquals(0, server.getAttribute(name, "InProgressOutboundDeliveries"));
+            assertEquals(0, server.getAttribute(name, "InflightQos0Sends"));
+
+            client.subscribe("/kittens", SubscribeOptions.builder().setQos(QOS.AT_LEAST_ONCE).setCredit(10).build(),
+                    new DestinationAdapter<Void>() {}, null, null);
+            client.tell(new SubscribeResponse(engineConnection, new SubscriptionTopic("/kittens", null)), engine);
+            CompositeData[] subscriptions = (CompositeData[])server.getAttribute(name, "Subscriptions");
+            assertEquals(1, subscriptions.length);
+            assertEquals("private:/kittens", subscriptions[0].get("address"));
+            assertEquals("ESTABLISHED", subscriptions[0].get("state"));
+            assertEquals("AT_LEAST_ONCE", subscriptions[0].get("qos"));
+            assertEquals(10, subscriptions[0].get("credit"));
+            assertEquals(0, subscriptions[0].get("pendingDeliveries"));
+
+            client.stop(null, null);
+            CloseRequest closeRequest = (CloseRequest)engine.getMessages().get(engine.getMessages().size() - 1);
+            client.tell(new CloseResponse(closeRequest), engine);
+            assertEquals(ClientState.STOPPED, client.getState());
+            assertFalse("MBean should have been unregistered", server.isRegistered(name));
+        } finally {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testSendBatch() {
+        class TestClientListener extends MockNonBlockingClientListener {
+            public TestClientListener() { super(true); }
+            @Override public void onStarted(NonBlockingClient client, Void context) {}
+        }
+        class CountingCompletionListener extends MockCompletionListener {
+            int calls = 0;
+            @Override public void onSuccess(NonBlockingClient client, Object context) {
+                ++calls;
+                super.onSuccess(client, context);
+            }
+            @Override public void onError(NonBlockingClient client, Object context, Exception exception) {
+                ++calls;
+                super.onError(client, context, exception);
+            }
+        }
+        MockComponent engine = new MockComponent();
+        TestClientListener listener = new TestClientListener();
+        EngineConnection engineConnection = new EngineConnection();
+
+        NonBlockingClientImpl client = openCommon(engine, listener);
+        OpenRequest openRequest = (OpenRequest)engine.getMessages().get(0);
+        client.tell(new OpenResponse(openRequest, engineConnection), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        // All the messages in a batch should reach the engine as a single request, and the
+        // completion listener should only be called once all of the messages have been sent.
+        CountingCompletionListener compListener = new CountingCompletionListener();
+        SendOptions sendOptions = SendOptions.builder().setQos(QOS.AT_LEAST_ONCE).build();
+        Map<String, Object> props = new HashMap<>();
+        props.put("key", "value");
+        client.sendBatch("/kittens", Arrays.asList("data", ByteBuffer.wrap(new byte[] {1, 2, 3}), new int[] {4, 5}), props, sendOptions, compListener, null);
+        assertEquals(2, engine.getMessages().size());
+        assertTrue(engine.getMessages().get(1) instanceof SendBatchRequest);
+        SendBatchRequest batchRequest = (SendBatchRequest)engine.getMessages().get(1);
+        assertEquals(3, batchRequest.requests.size());
+
+        client.tell(new SendResponse(batchRequest.requests.get(0), null), engine);
+        client.tell(new SendResponse(batchRequest.requests.get(2), null), engine);
+        assertEquals("Completion listener should not be called until all sends complete", 0, compListener.calls);
+        client.tell(new SendResponse(batchRequest.requests.get(1), null), engine);
+        assertEquals(1, compListener.calls);
+        assertTrue("Completion listener for batch should have been called", compListener.onSuccessCalled);
+
+        // A failure of any message in the batch should be reported, once, to the listener
+        compListener = new CountingCompletionListener();
+        client.sendBatch("/kittens", Arrays.asList("one", "two"), null, sendOptions, compListener, null);
+        assertEquals(3, engine.getMessages().size());
+        batchRequest = (SendBatchRequest)engine.getMessages().get(2);
+        final Exception exception = new Exception("something nasty, I'm sure");
+        client.tell(new SendResponse(batchRequest.requests.get(0), exception), engine);
+        client.tell(new SendResponse(batchRequest.requests.get(1), null), engine);
+        assertEquals(1, compListener.calls);
+        assertTrue("Completion listener for batch should have been called", compListener.onErrorCalled);
+        assertEquals("Exception passed to completion listener should match", exception, compListener.onErrorException);
+
+        // Invalid batches
+        try {
+            client.sendBatch("/kittens", new LinkedList<String>(), null, sendOptions, compListener, null);
+            fail("Expected an empty batch to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            client.sendBatch("/kittens", Arrays.asList("one", null), null, sendOptions, compListener, null);
+            fail("Expected a batch containing null to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            client.sendBatch(null, Arrays.asList("one"), null, sendOptions, compListener, null);
+            fail("Expected a null topic to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Once stopping, the batch should be rejected
+        client.stop(null, null);
+        assertEquals(ClientState.STOPPING, client.getState());
+        try {
+            client.sendBatch("/kittens", Arrays.asList("one"), null, sendOptions, compListener, null);
+            fail("Expected batch to be rejected when the client is stopped");
+        } catch (StoppedException e) {
+            // Expected
+        }
+    }
+
     @Test
     public void testThrowingExceptionInCallbackStopsClient() {
         final RuntimeException exception = new RuntimeException("");
@@ -947,6 +1245,73 @@ public class TestNonBlockingClientImpl {
         assertEquals("Expected exception to have been propagated to onStopped", exception, listener.onStoppedException.getCause());
     }
 
+    @Test
+    public void testStopWaitsForCallbacksWithOtherOrdering() throws InterruptedException {
+        // Runs callbacks for the client's own ordering context on the calling thread, and any
+        // others on a new thread each
+        final LinkedList<Thread> threads = new LinkedList<>();
+        class ThreadPerCallbackService implements CallbackService {
+            @Override
+            public void run(final Runnable runnable, Object orderingCtx, final Promise<Void> promise) {
+                if (orderingCtx instanceof NonBlockingClientImpl) {
+                    runnable.run();
+                    promise.setSuccess(null);
+                } else {
+                    Thread thread = new Thread() {
+                        @Override public void run() {
+                            runnable.run();
+                            promise.setSuccess(null);
+                        }
+                    };
+                    threads.add(thread);
+                    thread.start();
+                }
+            }
+        }
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        DestinationAdapter<Void> destinationListener = new DestinationAdapter<Void>() {
+            @Override
+            public void onMessage(NonBlockingClient client, Void context, Delivery delivery) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        MockComponent engine = new MockComponent();
+        EngineConnection engineConnection = new EngineConnection();
+        NonBlockingClientImpl client = new NonBlockingClientImpl(new MockEndpointService(), new ThreadPerCallbackService(), engine,
+                new MockTimerService(), null, null, new MockNonBlockingClientListener(false), null);
+        client.tell(new OpenResponse((OpenRequest)engine.getMessages().get(0), engineConnection), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        client.subscribe("/kittens", SubscribeOptions.builder().setOrdering(SubscribeOptions.Ordering.SUBSCRIPTION).build(),
+                destinationListener, null, null);
+        client.tell(new SubscribeResponse(engineConnection, new SubscriptionTopic("/kittens", null)), engine);
+        org.apache.qpid.proton.message.Message protonMsg = Proton.message();
+        protonMsg.setAddress("amqp:///kittens");
+        protonMsg.setBody(new AmqpValue("data"));
+        byte[] data = new byte[1024];
+        int length = protonMsg.encode(data, 0, data.length);
+        client.tell(new DeliveryRequest(Unpooled.wrappedBuffer(data, 0, length), QOS.AT_MOST_ONCE, "private:/kittens", null, null), engine);
+        assertTrue("onMessage should have been called", entered.await(10, TimeUnit.SECONDS));
+
+        client.stop(null, null);
+        CloseRequest closeRequest = (CloseRequest)engine.getMessages().get(engine.getMessages().size() - 1);
+        client.tell(new CloseResponse(closeRequest), engine);
+        assertEquals("Client should not stop while onMessage is still running", ClientState.STOPPING, client.getState());
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals(ClientState.STOPPED, client.getState());
+    }
+
     @Test
     public void testSubscriptionTopicSplit() {
         String[] results = new SubscriptionTopic("private:/kittens").split();
@@ -1009,9 +1374,103 @@ public class TestNonBlockingClientImpl {
         assertTrue(queuedQos1Listener.onErrorException instanceof StoppedException);
     }
 
+    @Test
+    public void testSendSpool() throws IOException {
+        final File directory = folder.getRoot();
+        SendSpool spool = new SendSpool(directory, SendSpool.DEFAULT_SEGMENT_SIZE);
+        spool.append("/recovered", QOS.AT_LEAST_ONCE, false, Unpooled.wrappedBuffer(new byte[] {1, 2, 3}));
+        spool.close();
+
+        MockComponent engine = new MockComponent();
+        MockNonBlockingClientListener listener = new MockNonBlockingClientListener(false);
+        ClientOptions options = ClientOptions.builder().setSendSpool(directory, false).setSendBufferLimits(0, 100).build();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, listener, null);
+        assertEquals("Send should have been recovered from the spool", 1, client.getSendBufferMessages());
+
+        // Sends made before the client connects are spooled, in a new segment file
+        MockCompletionListener queuedListener = new MockCompletionListener();
+        client.send("/queued", "data", null, SendOptions.builder().setQos(QOS.AT_LEAST_ONCE).build(), queuedListener, null);
+        assertEquals(2, client.getSendBufferMessages());
+        assertEquals(3, directory.list().length);
+
+        // Once connected, the recovered send is sent, followed by the spooled send
+        EngineConnection engineConnection = new EngineConnection();
+        client.tell(new OpenResponse((OpenRequest)engine.getMessages().get(0), engineConnection), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+        assertEquals(3, engine.getMessages().size());
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(1), null), engine);
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(2), null), engine);
+        assertTrue(queuedListener.onSuccessCalled);
+        assertEquals(0, client.getSendBufferMessages());
+        assertEquals("Segment file for the recovered send should have been deleted", 2, directory.list().length);
+
+        // Stopping the client fails spooled sends, and releases the spool directory
+        client.tell(new DisconnectNotification(engineConnection, new ClientException("you got disconnected!")), engine);
+        assertEquals(ClientState.RETRYING, client.getState());
+        MockCompletionListener stoppedListener = new MockCompletionListener();
+        client.send("/stopped", "data", null, SendOptions.builder().setQos(QOS.AT_LEAST_ONCE).build(), stoppedListener, null);
+        client.stop(null, null);
+        client.tell(new OpenResponse((OpenRequest)engine.getMessages().get(3), new ClientException("")), engine);
+        assertEquals(ClientState.STOPPED, client.getState());
+        assertTrue(stoppedListener.onErrorException instanceof StoppedException);
+
+        spool = new SendSpool(directory, SendSpool.DEFAULT_SEGMENT_SIZE);
+        assertTrue("Failed sends should not be recovered", spool.getRecovered().isEmpty());
+        spool.close();
+    }
+
+    @Test
+    public void testBreakInboundLinksSpoolsOutstandingSends() {
+        final File directory = folder.getRoot();
+        MockComponent engine = new MockComponent();
+        MockNonBlockingClientListener listener = new MockNonBlockingClientListener(false);
+        ClientOptions options = ClientOptions.builder().setSendSpool(directory, false).build();
+        final LinkedList<InternalSend<?>> sends = new LinkedList<>();
+        NonBlockingClientImpl client =
+                new NonBlockingClientImpl(new MockEndpointService(), new SameThreadCallbackService(), engine, new MockTimerService(), null, options, listener, null) {
+                    @Override
+                    public void tell(Message message, Component self) {
+                        if (message instanceof InternalSend<?>) {
+                            sends.addLast((InternalSend<?>)message);
+                        }
+                        super.tell(message, self);
+                    }
+                };
+        EngineConnection engineConnection = new EngineConnection();
+        client.tell(new OpenResponse((OpenRequest)engine.getMessages().get(0), engineConnection), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+
+        // An at-least-once send is only held in memory while it is outstanding
+        MockCompletionListener sendListener = new MockCompletionListener();
+        client.send("/outstanding", "data", null, SendOptions.builder().setQos(QOS.AT_LEAST_ONCE).build(), sendListener, null);
+        assertEquals(2, engine.getMessages().size());
+        assertEquals(1, sends.size());
+        assertNotNull(sends.get(0).buf);
+        assertEquals("Only the spool's lock file should exist", 1, directory.list().length);
+
+        // Breaking the connection spools the outstanding send, and releases its buffer
+        client.tell(new DisconnectNotification(engineConnection, new ClientException("you got disconnected!")), engine);
+        assertEquals(ClientState.RETRYING, client.getState());
+        assertEquals("Outstanding send should have been spooled", 2, directory.list().length);
+        assertNull("Buffer for the spooled send should have been released", sends.get(0).buf);
+        assertFalse(sendListener.onSuccessCalled);
+
+        // Once reconnected, the send is read back from the spool and sent again
+        client.tell(new OpenResponse((OpenRequest)engine.getMessages().get(2), new EngineConnection()), engine);
+        assertEquals(ClientState.STARTED, client.getState());
+        assertEquals(4, engine.getMessages().size());
+        assertTrue(engine.getMessages().get(3) instanceof SendRequest);
+        org.apache.qpid.proton.message.Message msg = decodeProtonMessage(sends.get(0));
+        assertEquals("data", ((AmqpValue)msg.getBody()).getValue());
+        client.tell(new SendResponse((SendRequest)engine.getMessages().get(3), null), engine);
+        assertTrue(sendListener.onSuccessCalled);
+        assertEquals(0, client.getSendBufferMessages());
+    }
+
     private org.apache.qpid.proton.message.Message decodeProtonMessage(InternalSend<?> send) {
         org.apache.qpid.proton.message.Message result = Proton.message();
-        result.decode(send.buf.array(), 0, send.length);
+        result.decode(send.buf.array(), send.buf.arrayOffset(), send.length);
         return result;
     }
 
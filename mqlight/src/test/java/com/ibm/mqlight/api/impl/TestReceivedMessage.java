@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.junit.Test;
+
+public class TestReceivedMessage {
+
+    @Test
+    public void subscribedTopic() {
+        ReceivedMessage private1 = new ReceivedMessage("private:/kittens/#", null, null);
+        assertEquals("/kittens/#", private1.getTopicPattern());
+        assertNull(private1.getShare());
+
+        ReceivedMessage shared = new ReceivedMessage("share:myshare:/kittens/#", null, null);
+        assertEquals("/kittens/#", shared.getTopicPattern());
+        assertEquals("myshare", shared.getShare());
+    }
+
+    @Test
+    public void topic() {
+        assertEquals("kittens/cute", new ReceivedMessage("private:#", "amqp:///kittens/cute", null).getTopic());
+        assertEquals("kittens", new ReceivedMessage("private:#", "kittens", null).getTopic());
+        assertEquals("", new ReceivedMessage("private:#", null, null).getTopic());
+        assertEquals("", new ReceivedMessage("private:#", "not a valid uri", null).getTopic());
+    }
+
+    @Test
+    public void properties() {
+        Map<Object, Object> values = new HashMap<>();
+        values.put("string", "value");
+        values.put("number", 1L);
+        values.put("null", null);
+        values.put("binary", new Binary(new byte[] {1, 2, 3}));
+        values.put("unsupported", new Object());
+        values.put(7, "not a string key");
+        ReceivedMessage message = new ReceivedMessage("private:#", null, new ApplicationProperties(values));
+
+        Map<String, Object> properties = message.getProperties();
+        assertEquals(4, properties.size());
+        assertEquals("value", properties.get("string"));
+        assertEquals(1L, properties.get("number"));
+        assertTrue(properties.containsKey("null"));
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[])properties.get("binary"));
+        assertFalse(properties.containsKey("unsupported"));
+
+        // Later calls see the same copy of the properties
+        assertSame(properties, message.getProperties());
+    }
+
+    @Test
+    public void encodedProperties() {
+        org.apache.qpid.proton.message.Message protonMsg = Proton.message();
+        protonMsg.setAddress("amqp:///kittens/cute");
+        Map<Object, Object> values = new HashMap<>();
+        values.put("string", "value");
+        protonMsg.setApplicationProperties(new ApplicationProperties(values));
+        byte[] data = new byte[1024];
+        int length = protonMsg.encode(data, 0, data.length);
+
+        ReceivedMessage message = new ReceivedMessage("private:#", Arrays.copyOf(data, length));
+        assertEquals("kittens/cute", message.getTopic());
+        assertEquals(1, message.getProperties().size());
+        assertEquals("value", message.getProperties().get("string"));
+
+        // Properties that cannot be decoded are treated as absent
+        message = new ReceivedMessage("private:#", new byte[] {0x00, 0x53, 0x74, (byte)0xc1});
+        assertEquals("", message.getTopic());
+        assertTrue(message.getProperties().isEmpty());
+        assertTrue(new ReceivedMessage("private:#", null).getProperties().isEmpty());
+    }
+
+    @Test
+    public void noProperties() {
+        assertTrue(new ReceivedMessage("private:#", null, null).getProperties().isEmpty());
+        assertTrue(new ReceivedMessage("private:#", null, new ApplicationProperties(null)).getProperties().isEmpty());
+    }
+}
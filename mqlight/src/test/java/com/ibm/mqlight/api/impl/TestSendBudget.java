@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestSendBudget {
+
+    @Test
+    public void unlimited() {
+        SendBudget budget = new SendBudget(0, 0);
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(budget.tryAdd(1024, 1));
+        }
+        assertFalse(budget.isFull());
+        assertTrue(budget.isBelowLowWatermark());
+        assertEquals(1024000, budget.getBytes());
+        assertEquals(1000, budget.getMessages());
+        assertFalse("An unlimited budget never crosses its low watermark", budget.remove(1024000, 1000));
+    }
+
+    @Test
+    public void messageLimit() {
+        SendBudget budget = new SendBudget(0, 4);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(budget.tryAdd(10, 1));
+            assertFalse(budget.isFull());
+        }
+        assertTrue(budget.tryAdd(10, 1));
+        assertTrue(budget.isFull());
+        assertFalse(budget.tryAdd(10, 1));
+        assertEquals(4, budget.getMessages());
+
+        assertFalse(budget.remove(10, 1));
+        assertFalse(budget.isFull());
+        assertFalse(budget.isBelowLowWatermark());
+        assertFalse(budget.remove(10, 1));
+        assertTrue("Budget should have dropped below half of its limit", budget.remove(10, 1));
+        assertTrue(budget.isBelowLowWatermark());
+        assertFalse(budget.remove(10, 1));
+    }
+
+    @Test
+    public void byteLimit() {
+        SendBudget budget = new SendBudget(100, 0);
+        assertTrue(budget.tryAdd(60, 1));
+        assertFalse(budget.tryAdd(60, 1));
+        assertTrue(budget.tryAdd(40, 1));
+        assertTrue(budget.isFull());
+        assertFalse(budget.remove(40, 1));
+        assertTrue(budget.remove(60, 1));
+        assertEquals(0, budget.getBytes());
+    }
+
+    @Test
+    public void drainOnlyReportedWhenRequested() {
+        SendBudget budget = new SendBudget(0, 2);
+        budget.add(10, 2);
+        assertFalse("No drain was requested", budget.remove(10, 2));
+
+        // A drain requested while full is reported by the removal that empties the budget,
+        // whichever thread gets to the budget first
+        budget.add(10, 2);
+        assertTrue(budget.requestDrainIfFull());
+        assertTrue(budget.isDrainRequested());
+        assertTrue(budget.remove(10, 2));
+        assertFalse(budget.isDrainRequested());
+
+        budget.add(10, 1);
+        assertFalse(budget.requestDrainIfFull());
+        budget.requestDrain();
+        assertTrue(budget.remove(10, 1));
+
+        budget.requestDrain();
+        assertFalse("An empty budget has nothing to drain", budget.isDrainRequested());
+    }
+
+    @Test
+    public void emptyBudgetAlwaysAccepts() throws InterruptedException {
+        SendBudget budget = new SendBudget(100, 0);
+        assertTrue("An oversized message should be accepted into an empty budget", budget.tryAdd(1000, 1));
+        assertTrue(budget.isFull());
+        assertFalse(budget.tryAdd(1, 1));
+        budget.remove(1000, 1);
+        budget.addWhenRoom(1000, 1);
+        assertEquals(1000, budget.getBytes());
+    }
+
+    @Test
+    public void addWhenRoomWaits() throws InterruptedException {
+        final SendBudget budget = new SendBudget(0, 1);
+        budget.add(10, 1);
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    budget.addWhenRoom(20, 1);
+                    added.countDown();
+                } catch(InterruptedException e) {
+                    // Leave the latch unreleased.
+                }
+            }
+        };
+        thread.start();
+        assertFalse("Add should have waited for room", added.await(100, TimeUnit.MILLISECONDS));
+        budget.remove(10, 1);
+        assertTrue("Add should have completed once there was room", added.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(20, budget.getBytes());
+        assertEquals(1, budget.getMessages());
+    }
+
+    @Test(expected=InterruptedException.class)
+    public void addWhenRoomInterrupted() throws InterruptedException {
+        SendBudget budget = new SendBudget(0, 1);
+        budget.add(10, 1);
+        Thread.currentThread().interrupt();
+        try {
+            budget.addWhenRoom(10, 1);
+        } finally {
+            assertEquals(1, budget.getMessages());
+        }
+    }
+}
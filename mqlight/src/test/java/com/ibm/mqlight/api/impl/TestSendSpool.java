@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.AssertionFailedError;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.mqlight.api.QOS;
+
+public class TestSendSpool {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] payload(int length, int seed) {
+        final byte[] result = new byte[length];
+        for (int i = 0; i < length; ++i) result[i] = (byte)(seed + i);
+        return result;
+    }
+
+    private static byte[] toArray(ByteBuf buf) {
+        final byte[] result = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), result);
+        buf.release();
+        return result;
+    }
+
+    private int segmentFiles(File directory) {
+        return directory.list().length - 1;    // Excluding the lock file
+    }
+
+    @Test
+    public void appendAndRead() throws IOException {
+        SendSpool spool = new SendSpool(folder.getRoot(), 1024);
+        assertTrue(spool.getRecovered().isEmpty());
+
+        final ByteBuf buf = Unpooled.wrappedBuffer(payload(100, 7));
+        buf.readerIndex(10);
+        SendSpool.Record record = spool.append("/kittens", QOS.AT_LEAST_ONCE, true, buf);
+        assertNotNull(record);
+        assertEquals("Appending should not consume the buffer", 90, buf.readableBytes());
+        assertEquals("/kittens", record.topic);
+        assertEquals(QOS.AT_LEAST_ONCE, record.qos);
+        assertTrue(record.retainLink);
+        assertEquals(90, record.length);
+
+        final byte[] expected = new byte[90];
+        buf.getBytes(10, expected);
+        assertArrayEquals(expected, toArray(spool.read(record)));
+        spool.close();
+    }
+
+    @Test
+    public void segmentsRollAndAreDeletedOnceSettled() throws IOException {
+        final File directory = folder.getRoot();
+        SendSpool spool = new SendSpool(directory, 1024);
+        List<SendSpool.Record> records = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            records.add(spool.append("/kittens", QOS.AT_MOST_ONCE, false, Unpooled.wrappedBuffer(payload(200, i))));
+        }
+        assertTrue("Records should have been spread over several segments", spool.getSegmentCount() > 4);
+        assertEquals(spool.getSegmentCount(), segmentFiles(directory));
+
+        // Settling the records of all but the segment being appended to deletes those segments
+        for (int i = 0; i < 18; ++i) {
+            spool.settle(records.get(i));
+        }
+        assertEquals(1, spool.getSegmentCount());
+        assertEquals(1, segmentFiles(directory));
+
+        // Settling a record twice has no further effect
+        spool.settle(records.get(0));
+        assertEquals(1, spool.getSegmentCount());
+
+        // The segment being appended to is kept until the next segment is started
+        spool.settle(records.get(18));
+        spool.settle(records.get(19));
+        assertEquals(1, spool.getSegmentCount());
+        spool.append("/kittens", QOS.AT_MOST_ONCE, false, Unpooled.wrappedBuffer(payload(1000, 0)));
+        assertEquals(1, spool.getSegmentCount());
+        assertEquals(1, segmentFiles(directory));
+        spool.close();
+    }
+
+    @Test
+    public void largeRecord() throws IOException {
+        SendSpool spool = new SendSpool(folder.getRoot(), 1024);
+        final byte[] data = payload(10000, 3);
+        SendSpool.Record record = spool.append("/kittens", QOS.AT_MOST_ONCE, false, Unpooled.wrappedBuffer(data));
+        assertArrayEquals(data, toArray(spool.read(record)));
+        spool.close();
+    }
+
+    @Test
+    public void recoverPendingRecords() throws IOException {
+        final File directory = folder.getRoot();
+        SendSpool spool = new SendSpool(directory, 1024);
+        List<SendSpool.Record> records = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            records.add(spool.append("/topic/" + i, i % 2 == 0 ? QOS.AT_MOST_ONCE : QOS.AT_LEAST_ONCE, i % 3 == 0, Unpooled.wrappedBuffer(payload(300, i))));
+        }
+        spool.settle(records.get(0));
+        spool.settle(records.get(1));
+        spool.settle(records.get(5));
+        spool.close();
+
+        spool = new SendSpool(directory, 1024);
+        List<SendSpool.Record> recovered = spool.getRecovered();
+        assertEquals(7, recovered.size());
+        int index = 0;
+        for (int i = 2; i < 10; ++i) {
+            if (i == 5) continue;
+            SendSpool.Record record = recovered.get(index++);
+            assertEquals("/topic/" + i, record.topic);
+            assertEquals(i % 2 == 0 ? QOS.AT_MOST_ONCE : QOS.AT_LEAST_ONCE, record.qos);
+            assertEquals(i % 3 == 0, record.retainLink);
+            assertArrayEquals(payload(300, i), toArray(spool.read(record)));
+        }
+
+        // New records go into a new segment, after the recovered ones
+        SendSpool.Record record = spool.append("/new", QOS.AT_MOST_ONCE, false, Unpooled.wrappedBuffer(payload(10, 0)));
+        for (SendSpool.Record r : recovered) {
+            spool.settle(r);
+        }
+        assertEquals(1, spool.getSegmentCount());
+        spool.settle(record);
+        spool.close();
+
+        spool = new SendSpool(directory, 1024);
+        assertTrue(spool.getRecovered().isEmpty());
+        assertEquals(0, segmentFiles(directory));
+        spool.close();
+    }
+
+    @Test
+    public void directoryInUse() throws IOException {
+        final File directory = new File(folder.getRoot(), "spool");
+        SendSpool spool = new SendSpool(directory, 1024);
+        assertTrue("Spool directory should have been created", directory.isDirectory());
+        try {
+            new SendSpool(directory, 1024);
+            throw new AssertionFailedError("A spool directory should not be usable by two spools at once");
+        } catch(IOException e) {
+            // Expected.
+        }
+        spool.close();
+        new SendSpool(directory, 1024).close();
+    }
+
+    @Test
+    public void unusableDirectory() throws IOException {
+        final File file = folder.newFile();
+        try {
+            new SendSpool(file, 1024);
+            throw new AssertionFailedError("A file should not be usable as a spool directory");
+        } catch(IOException e) {
+            assertFalse(file.isDirectory());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.callback.MockCallbackPromise.Method;
+
+public class TestForkJoinCallbackService {
+
+    @Test
+    public void successfulCallback() throws InterruptedException {
+        CallbackService cbs = new ForkJoinCallbackService(5);
+        MockCallbackPromise promise = new MockCallbackPromise(Method.SUCCESS, false);
+        final AtomicBoolean run = new AtomicBoolean(false);
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {
+                run.set(true);
+            }
+        }, new Object(), promise);
+
+        assertTrue("Promise should have been completed", promise.waitForComplete(2500));
+        assertTrue("Promise should have been completed successfully", promise.isSuccessful());
+        assertTrue("Runnable should have been run!", run.get());
+    }
+
+    @Test
+    public void exceptionThrownInCallback() throws InterruptedException {
+        CallbackService cbs = new ForkJoinCallbackService(5);
+        MockCallbackPromise promise = new MockCallbackPromise(Method.FAILURE, false);
+        final RuntimeException exception = new RuntimeException();
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {
+                throw exception;
+            }
+        }, new Object(), promise);
+
+        assertTrue("Promise should have been completed", promise.waitForComplete(2500));
+        assertTrue("Promise should not have been completed successfully", !promise.isSuccessful());
+        assertSame("Exception should have been thrown from run()!", exception, promise.getException());
+    }
+
+    @Test
+    public void errorThrownInCallback() throws InterruptedException {
+        CallbackService cbs = new ForkJoinCallbackService(5);
+        MockCallbackPromise promise = new MockCallbackPromise(Method.FAILURE, false);
+        final Error error = new AssertionError();
+        final Object ctx = new Object();
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {
+                throw error;
+            }
+        }, ctx, promise);
+
+        assertTrue("Promise should have been completed", promise.waitForComplete(2500));
+        assertTrue("Promise should not have been completed successfully", !promise.isSuccessful());
+        assertSame("Error should have been thrown from run()!", error, promise.getException().getCause());
+
+        // The ordering context should still be usable
+        MockCallbackPromise promise2 = new MockCallbackPromise(Method.SUCCESS, false);
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {}
+        }, ctx, promise2);
+        assertTrue("Promise should have been completed", promise2.waitForComplete(2500));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidParallelism() {
+        new ForkJoinCallbackService(0);
+    }
+
+    @Test
+    public void metrics() throws InterruptedException {
+        ForkJoinCallbackService cbs = new ForkJoinCallbackService(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object ctx = new Object();
+        MockCallbackPromise blocked = new MockCallbackPromise(Method.SUCCESS, false);
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, ctx, blocked);
+        MockCallbackPromise[] promises = new MockCallbackPromise[3];
+        for (int i = 0; i < promises.length; ++i) {
+            promises[i] = new MockCallbackPromise(Method.SUCCESS, false);
+            cbs.run(new Runnable() {
+                @Override
+                public void run() {}
+            }, i == 0 ? ctx : new Object(), promises[i]);
+        }
+
+        long deadline = System.currentTimeMillis() + 2500;
+        while (cbs.getQueuedCallbackCount() != 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, cbs.getQueuedCallbackCount());
+        assertEquals(3, cbs.getActiveOrderingContextCount());
+
+        release.countDown();
+        assertTrue("Promise should have been completed", blocked.waitForComplete(2500));
+        for (MockCallbackPromise promise : promises) {
+            assertTrue("Promise should have been completed", promise.waitForComplete(2500));
+        }
+        deadline = System.currentTimeMillis() + 2500;
+        while (cbs.getActiveOrderingContextCount() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cbs.getQueuedCallbackCount());
+        assertEquals("Idle ordering contexts should be discarded", 0, cbs.getActiveOrderingContextCount());
+    }
+
+    private static class SequencedPromise extends MockCallbackPromise {
+        private final AtomicInteger counter;
+        private final boolean fail;
+        private int sequence;
+        private SequencedPromise(AtomicInteger counter, boolean fail) {
+            super(fail ? Method.FAILURE : Method.SUCCESS, false);
+            this.counter = counter;
+            this.fail = fail;
+        }
+        private Runnable getRunnable() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    sequence = counter.getAndIncrement();
+                    if (fail) throw new RuntimeException();
+                }
+            };
+        }
+    }
+
+    @Test
+    public void stress() throws InterruptedException {
+        final int callbacks = 10000;
+        final int orderingContexts = 50;
+        final ForkJoinCallbackService callbackService = new ForkJoinCallbackService(5);
+        final AtomicInteger counter = new AtomicInteger();
+
+        @SuppressWarnings("unchecked")
+        ArrayList<SequencedPromise>[] promiseList = new ArrayList[orderingContexts];
+        Object[] contexts = new Object[orderingContexts];
+        for (int i = 0; i < orderingContexts; ++i) {
+            promiseList[i] = new ArrayList<>();
+            contexts[i] = new Object();
+        }
+
+        ArrayList<SequencedPromise> allPromises = new ArrayList<>(callbacks);
+        Random random = new Random();
+        for (int i = 0; i < callbacks; ++i) {
+            SequencedPromise promise = new SequencedPromise(counter, random.nextInt(100) < 5);
+            int x = random.nextInt(orderingContexts);
+            allPromises.add(promise);
+            promiseList[x].add(promise);
+            callbackService.run(promise.getRunnable(), contexts[x], promise);
+        }
+
+        for (int i = 0; i < allPromises.size(); ++i) {
+            SequencedPromise p = allPromises.get(i);
+            assertTrue("Expected promise #" + i + " to have been completed", p.waitForComplete(1000));
+            assertEquals("Promise #" + i + " completed with wrong outcome", p.getExpectedMethod() == Method.SUCCESS, p.isSuccessful());
+        }
+
+        // Check within a context promises were completed in order
+        for (int i = 0; i < orderingContexts; ++i) {
+            for (int j = 1; j < promiseList[i].size(); ++j) {
+                int n = promiseList[i].get(j - 1).sequence;
+                int m = promiseList[i].get(j).sequence;
+                assertTrue("Out of order promise completion: i=" + i + " j=" + j + " n=" + n + " m=" + m, n < m);
+            }
+        }
+    }
+
+    private static long timeCallbacks(CallbackService callbackService, int callbacks, int orderingContexts) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(callbacks);
+        final Object[] contexts = new Object[orderingContexts];
+        for (int i = 0; i < orderingContexts; ++i) contexts[i] = new Object();
+        // Give the contexts uneven amounts of work so that a fixed mapping of contexts to threads
+        // leaves some threads busier than others.
+        final Runnable[] runnables = new Runnable[orderingContexts];
+        for (int i = 0; i < orderingContexts; ++i) {
+            final int spins = (i % 4 == 0) ? 2000 : 50;
+            runnables[i] = new Runnable() {
+                @Override
+                public void run() {
+                    long x = 0;
+                    for (int j = 0; j < spins; ++j) x += j ^ x;
+                    if (x == 42) Thread.yield();
+                    latch.countDown();
+                }
+            };
+        }
+        MockCallbackPromise promise = new MockCallbackPromise(Method.SUCCESS, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < callbacks; ++i) {
+            callbackService.run(runnables[i % orderingContexts], contexts[i % orderingContexts], promise);
+        }
+        assertTrue("Callbacks did not complete in time", latch.await(30, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the same workload through this service and {@link ThreadPoolCallbackService}
+     * and reports the elapsed times.  Timings on a shared build machine are too noisy to
+     * assert on, so this only checks that both services complete the work - and is only run
+     * when the <code>mqlight.benchmarks</code> system property is set to <code>true</code>.
+     */
+    @Test
+    public void throughputComparison() throws InterruptedException {
+        Assume.assumeTrue(Boolean.getBoolean("mqlight.benchmarks"));
+        final int callbacks = 100000;
+        final int orderingContexts = 64;
+        final int threads = 4;
+        final CallbackService forkJoin = new ForkJoinCallbackService(threads);
+        final CallbackService threadPool = new ThreadPoolCallbackService(threads);
+
+        // Warm up both services before timing them
+        timeCallbacks(forkJoin, callbacks, orderingContexts);
+        timeCallbacks(threadPool, callbacks, orderingContexts);
+
+        long forkJoinNanos = timeCallbacks(forkJoin, callbacks, orderingContexts);
+        long threadPoolNanos = timeCallbacks(threadPool, callbacks, orderingContexts);
+        System.out.println("ForkJoinCallbackService: " + callbacks + " callbacks in " + TimeUnit.NANOSECONDS.toMillis(forkJoinNanos) + "ms, "
+                + "ThreadPoolCallbackService: " + callbacks + " callbacks in " + TimeUnit.NANOSECONDS.toMillis(threadPoolNanos) + "ms");
+    }
+}
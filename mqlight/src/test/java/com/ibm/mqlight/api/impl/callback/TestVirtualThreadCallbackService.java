@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.callback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ibm.mqlight.api.ClientRuntimeException;
+import com.ibm.mqlight.api.callback.CallbackService;
+import com.ibm.mqlight.api.impl.callback.MockCallbackPromise.Method;
+
+public class TestVirtualThreadCallbackService {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidPoolSize() {
+        new VirtualThreadCallbackService(0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullExecutor() {
+        new ExecutorCallbackService(null);
+    }
+
+    /**
+     * An executor that holds on to the tasks it is given, until they are run by the test - or
+     * rejects them.
+     */
+    private static class HeldTaskExecutor implements Executor {
+        private final LinkedList<Runnable> tasks = new LinkedList<>();
+        private boolean reject = false;
+        @Override public void execute(Runnable task) {
+            if (reject) throw new RejectedExecutionException();
+            tasks.addLast(task);
+        }
+    }
+
+    private static final Runnable noop = new Runnable() {
+        @Override public void run() {}
+    };
+
+    @Test
+    public void rejectedWhenScheduled() {
+        HeldTaskExecutor executor = new HeldTaskExecutor();
+        ExecutorCallbackService cbs = new ExecutorCallbackService(executor);
+        Object ctx = new Object();
+
+        executor.reject = true;
+        MockCallbackPromise promise = new MockCallbackPromise(Method.FAILURE);
+        cbs.run(noop, ctx, promise);
+        assertTrue("Promise should have been failed", promise.isComplete());
+        assertTrue(promise.getException() instanceof ClientRuntimeException);
+        assertEquals(0, cbs.getQueuedCallbackCount());
+        assertEquals(0, cbs.getActiveOrderingContextCount());
+
+        // The ordering context should not be left stuck behind the rejected callback
+        executor.reject = false;
+        promise = new MockCallbackPromise(Method.SUCCESS);
+        cbs.run(noop, ctx, promise);
+        assertEquals(1, executor.tasks.size());
+        executor.tasks.removeFirst().run();
+        assertTrue("Promise should have been completed", promise.isComplete());
+        assertEquals(0, cbs.getQueuedCallbackCount());
+        assertEquals(0, cbs.getActiveOrderingContextCount());
+    }
+
+    @Test
+    public void rejectedWhenRescheduled() {
+        HeldTaskExecutor executor = new HeldTaskExecutor();
+        ExecutorCallbackService cbs = new ExecutorCallbackService(executor);
+        Object ctx = new Object();
+
+        // More callbacks than are run in one go, so that the queue has to be rescheduled
+        final int callbacks = 100;
+        ArrayList<MockCallbackPromise> promises = new ArrayList<>();
+        for (int i = 0; i < callbacks; ++i) {
+            MockCallbackPromise promise = new MockCallbackPromise(Method.NONE, false);
+            promises.add(promise);
+            cbs.run(noop, ctx, promise);
+        }
+        assertEquals(1, executor.tasks.size());
+        assertEquals(callbacks, cbs.getQueuedCallbackCount());
+
+        executor.reject = true;
+        executor.tasks.removeFirst().run();
+        int succeeded = 0;
+        for (MockCallbackPromise promise : promises) {
+            assertTrue("Promise should have been completed", promise.isComplete());
+            if (promise.isSuccessful()) {
+                ++succeeded;
+            } else {
+                assertTrue(promise.getException() instanceof ClientRuntimeException);
+            }
+        }
+        assertTrue("Some callbacks should have been run before the queue was rescheduled", succeeded > 0 && succeeded < callbacks);
+        assertEquals(0, cbs.getQueuedCallbackCount());
+        assertEquals(0, cbs.getActiveOrderingContextCount());
+    }
+
+    @Test
+    public void blockedCallbackDoesNotStallOtherContexts() throws InterruptedException {
+        CallbackService cbs = new VirtualThreadCallbackService(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object blockedCtx = new Object();
+        MockCallbackPromise blocked = new MockCallbackPromise(Method.SUCCESS, false);
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, blockedCtx, blocked);
+        MockCallbackPromise sameCtx = new MockCallbackPromise(Method.SUCCESS, false);
+        cbs.run(new Runnable() {
+            @Override
+            public void run() {}
+        }, blockedCtx, sameCtx);
+
+        // Callbacks for other contexts should still be run, even those that would have
+        // shared a thread with the blocked context in ThreadPoolCallbackService
+        for (int i = 0; i < 20; ++i) {
+            MockCallbackPromise promise = new MockCallbackPromise(Method.SUCCESS, false);
+            cbs.run(new Runnable() {
+                @Override
+                public void run() {}
+            }, new Object(), promise);
+            assertTrue("Promise #" + i + " should have been completed", promise.waitForComplete(2500));
+        }
+
+        assertFalse("Blocked callback should not have completed", blocked.isComplete());
+        assertFalse("Callback in the blocked context should be waiting", sameCtx.isComplete());
+        release.countDown();
+        assertTrue("Promise should have been completed", blocked.waitForComplete(2500));
+        assertTrue("Promise should have been completed", sameCtx.waitForComplete(2500));
+    }
+
+    @Test
+    public void manyBlockedCallbacks() throws InterruptedException {
+        // More blocking callbacks than there are threads in the fallback pool - they should all
+        // complete once released
+        final int callbacks = 50;
+        CallbackService cbs = new VirtualThreadCallbackService(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(VirtualThreadCallbackService.isVirtualThreadSupported() ? callbacks : 4);
+        ArrayList<MockCallbackPromise> promises = new ArrayList<>();
+        for (int i = 0; i < callbacks; ++i) {
+            MockCallbackPromise promise = new MockCallbackPromise(Method.SUCCESS, false);
+            promises.add(promise);
+            cbs.run(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, new Object(), promise);
+        }
+        assertTrue("Callbacks should have started", started.await(2500, TimeUnit.MILLISECONDS));
+        release.countDown();
+        for (MockCallbackPromise promise : promises) {
+            assertTrue("Promise should have been completed", promise.waitForComplete(2500));
+            assertTrue("Promise should have been completed successfully", promise.isSuccessful());
+        }
+    }
+
+    @Test
+    public void ordering() throws InterruptedException {
+        CallbackService cbs = new VirtualThreadCallbackService(4);
+        final Object ctx = new Object();
+        final ArrayList<Integer> order = new ArrayList<>();
+        MockCallbackPromise last = null;
+        for (int i = 0; i < 1000; ++i) {
+            final int n = i;
+            last = new MockCallbackPromise(Method.SUCCESS, false);
+            cbs.run(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized(order) {
+                        order.add(n);
+                    }
+                }
+            }, ctx, last);
+        }
+        assertTrue("Promise should have been completed", last.waitForComplete(2500));
+        synchronized(order) {
+            assertEquals(1000, order.size());
+            for (int i = 0; i < order.size(); ++i) {
+                assertEquals(Integer.valueOf(i), order.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestAdaptiveCredit {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void initialWindowWithinBounds() {
+        assertEquals(10, new AdaptiveCredit(10, 100, 1).getWindow());
+        assertEquals(50, new AdaptiveCredit(10, 100, 50).getWindow());
+        assertEquals(100, new AdaptiveCredit(10, 100, 1024).getWindow());
+    }
+
+    @Test
+    public void windowSizedFromRateAndRoundTrip() {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100000, 10);
+        long now = 0;
+
+        // The server uses up the initial credit, then a round trip of 50ms passes before the
+        // next message arrives, followed by a message settled every millisecond
+        credit.delivered(now, 100, 0);
+        credit.granted(now, 0);
+        now += 50 * MILLIS;
+        credit.delivered(now, 100, 9);
+        assertEquals(50 * MILLIS, credit.getRoundTripTime());
+        for (int i = 0; i < 200; ++i) {
+            now += MILLIS;
+            credit.settled(now);
+        }
+
+        // 1000 messages a second for 50ms, with headroom, is 100 messages
+        assertEquals(1000, credit.getSettleRate(), 1);
+        assertEquals(100, credit.getWindow(), 2);
+    }
+
+    @Test
+    public void windowBounded() {
+        AdaptiveCredit fast = new AdaptiveCredit(5, 20, 10);
+        AdaptiveCredit slow = new AdaptiveCredit(5, 20, 10);
+        long now = 0;
+        fast.delivered(now, 1, 0);
+        slow.delivered(now, 1, 0);
+        fast.granted(now, 0);
+        slow.granted(now, 0);
+        now += 100 * MILLIS;
+        fast.delivered(now, 1, 9);
+        slow.delivered(now, 1, 9);
+        for (int i = 0; i < 100; ++i) {
+            now += 100 * MILLIS;
+            for (int j = 0; j < 1000; ++j) {
+                fast.settled(now);
+            }
+            slow.settled(now);
+        }
+        assertEquals("Expected a fast consumer to get the maximum credit", 20, fast.getWindow());
+        assertEquals("Expected a slow consumer to get the minimum credit", 5, slow.getWindow());
+    }
+
+    @Test
+    public void averageMessageSize() {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 10, 1);
+        assertEquals(0, credit.getAverageMessageSize());
+        credit.delivered(0, 800, 1);
+        assertEquals(800, credit.getAverageMessageSize());
+        credit.delivered(0, 0, 1);
+        assertEquals(700, credit.getAverageMessageSize());
+    }
+
+    @Test
+    public void idleAtSubscribe() {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100000, 10);
+        long now = 0;
+
+        // Credit granted when subscribing is not used until a message is published, ten
+        // seconds later - which says nothing about the round trip
+        credit.granted(now, 0);
+        now += 10000 * MILLIS;
+        credit.delivered(now, 100, 9);
+        assertEquals("Expected no round trip sample from an idle link", 0, credit.getRoundTripTime());
+
+        // Once messages are flowing, and the server uses up the link's credit, the round trip
+        // is measured from the next grant
+        for (int i = 0; i < 9; ++i) {
+            now += MILLIS;
+            credit.delivered(now, 100, 8 - i);
+        }
+        credit.granted(now, 0);
+        now += 20 * MILLIS;
+        credit.delivered(now, 100, 9);
+        assertEquals(20 * MILLIS, credit.getRoundTripTime());
+    }
+
+    @Test
+    public void noSampleWhileCreditRemains() {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100000, 10);
+        credit.delivered(0, 100, 5);
+        credit.granted(0, 5);
+        credit.delivered(50 * MILLIS, 100, 9);
+        assertEquals("Expected no round trip sample when the server still had credit", 0, credit.getRoundTripTime());
+    }
+
+    @Test
+    public void roundTripDecays() {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100000, 10);
+        long now = 0;
+        credit.delivered(now, 100, 0);
+        credit.granted(now, 0);
+        now += 100 * MILLIS;
+        credit.delivered(now, 100, 9);
+        assertEquals(100 * MILLIS, credit.getRoundTripTime());
+
+        // A consumer whose credit never runs out takes no more samples, so the round trip
+        // decays - and with it the window - until the credit does run out
+        for (int i = 0; i < 10000; ++i) {
+            now += MILLIS;
+            credit.settled(now);
+        }
+        final long decayed = credit.getRoundTripTime();
+        assertTrue("Expected the round trip to have decayed: " + decayed, decayed < 50 * MILLIS);
+        assertTrue(decayed > 0);
+        final int window = credit.getWindow();
+        assertTrue("Expected the window to have shrunk: " + window, window < 200);
+
+        // Running out of credit measures the round trip again
+        credit.delivered(now, 100, 0);
+        credit.granted(now, 0);
+        now += 100 * MILLIS;
+        credit.delivered(now, 100, 9);
+        assertEquals(decayed + (100 * MILLIS - decayed) / 8, credit.getRoundTripTime());
+    }
+}
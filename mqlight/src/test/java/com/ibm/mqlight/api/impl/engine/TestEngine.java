@@ -25,15 +25,23 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import io.netty.buffer.PooledByteBufAllocator;
+
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.transport.ErrorCondition;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
 import org.apache.qpid.proton.engine.Event;
 import org.apache.qpid.proton.engine.Handler;
+import org.apache.qpid.proton.engine.Link;
 import org.apache.qpid.proton.engine.Receiver;
 import org.apache.qpid.proton.engine.Sender;
 import org.junit.Test;
@@ -43,7 +51,9 @@ import com.ibm.mqlight.api.NetworkException;
 import com.ibm.mqlight.api.Promise;
 import com.ibm.mqlight.api.QOS;
 import com.ibm.mqlight.api.endpoint.Endpoint;
+import com.ibm.mqlight.api.impl.Component;
 import com.ibm.mqlight.api.impl.ComponentImpl;
+import com.ibm.mqlight.api.impl.Message;
 import com.ibm.mqlight.api.impl.MockComponent;
 import com.ibm.mqlight.api.impl.SubscriptionTopic;
 import com.ibm.mqlight.api.impl.network.ConnectionError;
@@ -232,6 +242,226 @@ public class TestEngine {
         assertEquals("Expected two more messages to have been sent to component", 3, component.getMessages().size());
         assertTrue("Expected message 2 to be of type DrainNotification", component.getMessages().get(1) instanceof DrainNotification);
         assertTrue("Expected message 3 to be of type SendResponse", component.getMessages().get(2) instanceof SendResponse);
+        assertEquals(0, openResponse.connection.getInflightQos0Count());
+        assertEquals(0, openResponse.connection.getInProgressOutboundDeliveryCount());
+    }
+
+    @Test
+    public void sendAtLeastOnceInProgress() {
+        NetworkService network = new MockNetworkService(new MockHandler());
+        MockComponent component = new MockComponent();
+
+        Engine engine = new Engine(network, new MockTimerService());
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id"), component);
+        OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+
+        engine.tell(new SendRequest(openResponse.connection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_LEAST_ONCE, true), component);
+        assertEquals("Expected the send to be in progress until the server settles it", 1, openResponse.connection.getInProgressOutboundDeliveryCount());
+        assertEquals(0, openResponse.connection.getInflightQos0Count());
+    }
+
+    @Test
+    public void sendBatch() {
+        NetworkService network = new MockNetworkService(new MockHandler());
+        TimerService timer = new MockTimerService();
+        Endpoint endpoint = new StubEndpoint();
+        MockComponent component = new MockComponent();
+
+        Engine engine = new Engine(network, timer);
+        OpenRequest expectedOpenRequest = new OpenRequest(endpoint, "client-id");
+        engine.tell(expectedOpenRequest, component);
+        OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+
+        List<SendRequest> requests = new LinkedList<>();
+        for (int i = 0; i < 3; ++i) {
+            requests.add(new SendRequest(openResponse.connection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true));
+        }
+        engine.tell(new SendBatchRequest(requests), component);
+        assertEquals("Expected four more messages to have been sent to component", 5, component.getMessages().size());
+        assertTrue("Expected message 2 to be of type DrainNotification", component.getMessages().get(1) instanceof DrainNotification);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue("Expected message " + (i + 3) + " to be of type SendResponse", component.getMessages().get(i + 2) instanceof SendResponse);
+            assertSame("Expected responses in the same order as the requests", requests.get(i), ((SendResponse)component.getMessages().get(i + 2)).request);
+        }
+    }
+
+    private class CountingNetworkService implements NetworkService {
+        private int writes = 0;
+        @Override
+        public void connect(Endpoint endpoint, NetworkListener listener, Promise<NetworkChannel> promise) {
+            promise.setSuccess(new MockNetworkChannel(listener, new MockHandler()) {
+                @Override
+                public void write(ByteBuffer buffer, Promise<Boolean> promise) {
+                    ++writes;
+                    super.write(buffer, promise);
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens a connection and sends a message (to establish a sending link).  When the engine
+     * responds to this, queues a number of further send requests for the engine to process.
+     * @return the number of times the engine wrote to the network while processing the queued sends.
+     */
+    private int writesForQueuedSends(int writeCoalescingMaxBytes, final int sends) {
+        final CountingNetworkService network = new CountingNetworkService();
+        final Engine engine = new Engine(network, new MockTimerService());
+        final int[] writesAtFirstResponse = new int[1];
+        MockComponent component = new MockComponent() {
+            private boolean first = true;
+            @Override
+            public synchronized void tell(Message message, Component self) {
+                super.tell(message, self);
+                if (message instanceof SendResponse && first) {
+                    first = false;
+                    writesAtFirstResponse[0] = network.writes;
+                    for (int i = 0; i < sends; ++i) {
+                        engine.tell(new SendRequest(((SendResponse)message).request.connection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), this);
+                    }
+                }
+            }
+        };
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id", writeCoalescingMaxBytes, 1000, 0, 0), component);
+        OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+        engine.tell(new SendRequest(openResponse.connection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+
+        int responses = 0;
+        for (Message message : component.getMessages()) {
+            if (message instanceof SendResponse) ++responses;
+        }
+        assertEquals("Expected a response for each send", sends + 1, responses);
+        return network.writes - writesAtFirstResponse[0];
+    }
+
+    @Test
+    public void writeCoalescing() {
+        final int uncoalescedWrites = writesForQueuedSends(0, 5);
+        final int coalescedWrites = writesForQueuedSends(64 * 1024, 5);
+        assertTrue("Expected fewer writes when coalescing (" + coalescedWrites + " vs " + uncoalescedWrites + ")", coalescedWrites < uncoalescedWrites);
+        assertEquals("Expected the queued sends to be coalesced into a single write", 1, coalescedWrites);
+
+        // A byte threshold smaller than a single message means every write is made immediately
+        assertEquals(uncoalescedWrites, writesForQueuedSends(1, 5));
+    }
+
+    private int openSenderLinks(EngineConnection engineConnection) {
+        int count = 0;
+        Link link = engineConnection.connection.linkHead(EnumSet.of(EndpointState.ACTIVE), null);
+        while (link != null) {
+            if (link instanceof Sender) ++count;
+            link = link.next(EnumSet.of(EndpointState.ACTIVE), null);
+        }
+        return count;
+    }
+
+    @Test
+    public void senderLinks() {
+        MockComponent component = new MockComponent();
+        Engine engine = new Engine(new MockNetworkService(new MockHandler()), new MockTimerService());
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id", 0, 0, 2, 0), component);
+        EngineConnection engineConnection = ((OpenResponse)component.getMessages().get(0)).connection;
+
+        // Repeated sends to the same topic re-use the same link
+        for (int i = 0; i < 3; ++i) {
+            engine.tell(new SendRequest(engineConnection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        }
+        assertEquals("Expected a single sending link", 1, openSenderLinks(engineConnection));
+        assertSame(engineConnection.senders.get("topic1").sender, engineConnection.lookupSender("topic1"));
+
+        // Sending to more topics than the limit closes the least recently used links
+        for (int i = 2; i <= 5; ++i) {
+            engine.tell(new SendRequest(engineConnection, "topic" + i, wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        }
+        assertEquals("Expected the number of sending links to be capped", 2, openSenderLinks(engineConnection));
+        assertEquals(2, engineConnection.senders.size());
+        assertNull("Expected least recently used link to have been closed", engineConnection.lookupSender("topic1"));
+        assertNotNull(engineConnection.lookupSender("topic5"));
+
+        // Links that are not retained are forgotten
+        engine.tell(new SendRequest(engineConnection, "topic6", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, false), component);
+        assertNull(engineConnection.lookupSender("topic6"));
+
+        int responses = 0;
+        for (Message message : component.getMessages()) {
+            if (message instanceof SendResponse) {
+                assertNull(((SendResponse)message).cause);
+                ++responses;
+            }
+        }
+        assertEquals("Expected a response for each send", 8, responses);
+    }
+
+    private class RecordingTimerService implements TimerService {
+        private final LinkedList<Promise<Void>> scheduled = new LinkedList<>();
+        private final LinkedList<Promise<Void>> cancelled = new LinkedList<>();
+        @Override
+        public void schedule(long delay, Promise<Void> promise) {
+            scheduled.add(promise);
+        }
+        @Override
+        public void cancel(Promise<Void> promise) {
+            cancelled.add(promise);
+        }
+    }
+
+    @Test
+    public void senderLinkIdleTimeout() throws InterruptedException {
+        MockComponent component = new MockComponent();
+        RecordingTimerService timer = new RecordingTimerService();
+        Engine engine = new Engine(new MockNetworkService(new MockHandler()), timer);
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id", 0, 0, 0, 1), component);
+        EngineConnection engineConnection = ((OpenResponse)component.getMessages().get(0)).connection;
+        int timersAtOpen = timer.scheduled.size();
+
+        engine.tell(new SendRequest(engineConnection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        engine.tell(new SendRequest(engineConnection, "topic2", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        assertEquals("Expected one timer to be scheduled for closing idle links", timersAtOpen + 1, timer.scheduled.size());
+        assertEquals(2, openSenderLinks(engineConnection));
+
+        Thread.sleep(5);
+        timer.scheduled.getLast().setSuccess(null);
+        assertEquals("Expected idle links to have been closed", 0, openSenderLinks(engineConnection));
+        assertEquals(0, engineConnection.senders.size());
+        assertNull(engineConnection.senderReaperPromise);
+        assertEquals("Expected no further timers once all links are closed", timersAtOpen + 1, timer.scheduled.size());
+
+        // Sending again opens a new link, and re-arms the timer - which is cancelled when the connection closes
+        engine.tell(new SendRequest(engineConnection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        assertEquals(1, openSenderLinks(engineConnection));
+        assertEquals(timersAtOpen + 2, timer.scheduled.size());
+        engine.tell(new CloseRequest(engineConnection), component);
+        assertTrue("Expected timer to be cancelled on close", timer.cancelled.contains(timer.scheduled.getLast()));
+    }
+
+    @Test
+    public void idleTimeoutUsesOneTimer() throws InterruptedException {
+        MockComponent component = new MockComponent();
+        RecordingTimerService timer = new RecordingTimerService();
+        Engine engine = new Engine(new MockNetworkService(new MockHandler()), timer);
+        Endpoint endpoint = new StubEndpoint() {
+            @Override public int getIdleTimeout() { return 60000; }
+        };
+        engine.tell(new OpenRequest(endpoint, "client-id"), component);
+        EngineConnection engineConnection = ((OpenResponse)component.getMessages().get(0)).connection;
+        assertEquals("Expected one timer to be scheduled for the idle timeout", 1, timer.scheduled.size());
+        assertSame(timer.scheduled.getFirst(), engineConnection.timerPromise);
+
+        // Processing events does not re-arm the timer
+        for (int i = 0; i < 10; ++i) {
+            engine.tell(new SendRequest(engineConnection, "topic1", wrappedBuffer(new byte[]{1, 2, 3}), 3, QOS.AT_MOST_ONCE, true), component);
+        }
+        assertEquals("Expected no more timers to be scheduled", 1, timer.scheduled.size());
+        assertEquals("Expected no timers to be cancelled", 0, timer.cancelled.size());
+
+        // When the timer pops, the transport is ticked and the timer re-armed
+        timer.scheduled.getFirst().setSuccess(null);
+        assertEquals("Expected the timer to be re-armed", 2, timer.scheduled.size());
+        assertSame(timer.scheduled.getLast(), engineConnection.timerPromise);
+        assertTrue("Connection should not have been closed", !engineConnection.closed);
+
+        engine.tell(new CloseRequest(engineConnection), component);
+        assertTrue("Expected timer to be cancelled on close", timer.cancelled.contains(timer.scheduled.getLast()));
     }
 
     @Test
@@ -274,6 +504,67 @@ public class TestEngine {
         assertTrue("Delivery should have been marked as settled", handler.delivery.remotelySettled());
     }
 
+    @Test
+    public void receiveAdaptiveCredit() {
+        MockHandler handler = new MockHandler();
+        MockNetworkService network = new MockNetworkService(handler);
+        MockComponent component = new MockComponent();
+
+        Engine engine = new Engine(network, new MockTimerService());
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id"), component);
+        OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+        EngineConnection engineConnection = openResponse.connection;
+
+        engine.tell(new SubscribeRequest(engineConnection, new SubscriptionTopic("topic1"), QOS.AT_LEAST_ONCE, 10, 0, 1, 2), component);
+        assertTrue("Expected message 3 to be of type DeliveryRequest", component.getMessages().get(2) instanceof DeliveryRequest);
+        EngineConnection.SubscriptionData subData = engineConnection.subscriptionData.get("topic1");
+        assertEquals("Expected initial credit to be capped at the maximum, less the delivery", 1, subData.receiver.getCredit());
+        assertEquals(3, engineConnection.inboundBufferedBytes);
+
+        engine.tell(new DeliveryResponse((DeliveryRequest)component.getMessages().get(2)), component);
+        assertEquals(0, engineConnection.inboundBufferedBytes);
+        assertEquals("Expected credit to be topped up to the window", 2, subData.receiver.getCredit());
+        assertEquals(2, engineConnection.getCreditWindow("topic1"));
+    }
+
+    @Test
+    public void receivePooledDeliveryBuffers() {
+        for (boolean pooled : new boolean[] { false, true }) {
+            MockHandler handler = new MockHandler();
+            MockNetworkService network = new MockNetworkService(handler);
+            MockComponent component = new MockComponent();
+
+            Engine engine = new Engine(network, new MockTimerService());
+            engine.tell(new OpenRequest(new StubEndpoint(), "client-id", 0, 0, 0, 0, 0, pooled), component);
+            OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+
+            engine.tell(new SubscribeRequest(openResponse.connection, new SubscriptionTopic("topic1"), QOS.AT_LEAST_ONCE, 10, 0), component);
+            DeliveryRequest request = (DeliveryRequest)component.getMessages().get(2);
+            assertEquals("Expected the message to be received into a " + (pooled ? "pooled" : "newly allocated") + " buffer",
+                    pooled, request.buf.alloc() instanceof PooledByteBufAllocator);
+            request.releaseBuf();
+        }
+    }
+
+    @Test
+    public void receiveAdaptiveCreditByteLimit() {
+        MockHandler handler = new MockHandler();
+        MockNetworkService network = new MockNetworkService(handler);
+        MockComponent component = new MockComponent();
+
+        Engine engine = new Engine(network, new MockTimerService());
+        engine.tell(new OpenRequest(new StubEndpoint(), "client-id", 0, 0, 0, 0, 1), component);
+        OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
+        EngineConnection engineConnection = openResponse.connection;
+
+        engine.tell(new SubscribeRequest(engineConnection, new SubscriptionTopic("topic1"), QOS.AT_LEAST_ONCE, 2, 0, 1, 10), component);
+        EngineConnection.SubscriptionData subData = engineConnection.subscriptionData.get("topic1");
+        assertEquals(1, subData.receiver.getCredit());
+
+        engine.tell(new DeliveryResponse((DeliveryRequest)component.getMessages().get(2)), component);
+        assertEquals("Expected no more credit than one message, as the byte limit is smaller than a message", 1, subData.receiver.getCredit());
+    }
+
     @Test
     public void unsubscribe() {
         MockHandler handler = new MockHandler();
@@ -288,6 +579,7 @@ public class TestEngine {
         OpenResponse openResponse = (OpenResponse)component.getMessages().get(0);
 
         engine.tell(new SubscribeRequest(openResponse.connection, new SubscriptionTopic("topic1"), QOS.AT_MOST_ONCE, 10, 0), component);
+        assertEquals("Expected no credit window without adaptive credit", -1, openResponse.connection.getCreditWindow("topic1"));
 
         engine.tell(new UnsubscribeRequest(openResponse.connection, new SubscriptionTopic("topic1"), true), component);
         assertEquals("Expected to have received 4 messages to the component", 4, component.getMessages().size());
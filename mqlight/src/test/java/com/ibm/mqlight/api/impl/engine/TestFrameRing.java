@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.transport.Disposition;
+import org.apache.qpid.proton.amqp.transport.Flow;
+import org.apache.qpid.proton.amqp.transport.Open;
+import org.apache.qpid.proton.amqp.transport.Transfer;
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.junit.Test;
+
+import com.ibm.mqlight.api.impl.logging.FlightRecorder;
+
+public class TestFrameRing {
+
+    private static TransportFrame transfer(int handle, int deliveryId, int size) {
+        Transfer transfer = new Transfer();
+        transfer.setHandle(UnsignedInteger.valueOf(handle));
+        transfer.setDeliveryId(UnsignedInteger.valueOf(deliveryId));
+        return new TransportFrame(0, transfer, new Binary(new byte[size]));
+    }
+
+    private static String dump(FlightRecorder.Recording recording) {
+        StringBuilder sb = new StringBuilder();
+        recording.dump(sb, "\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void capacityMustBePowerOfTwo() {
+        assertEquals(FrameRing.DEFAULT_CAPACITY, new FrameRing("client").getCapacity());
+        for (int capacity : new int[] {0, -1, 3}) {
+            try {
+                new FrameRing("client", capacity);
+                throw new AssertionError("Capacity " + capacity + " should have been rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void framesRecorded() {
+        FrameRing ring = new FrameRing("client1", 8);
+        ring.sent(new TransportFrame(0, new Open(), null));
+        Flow flow = new Flow();
+        flow.setHandle(UnsignedInteger.valueOf(2));
+        flow.setDeliveryCount(UnsignedInteger.valueOf(7));
+        ring.received(new TransportFrame(1, flow, null));
+        ring.sent(transfer(3, 4, 100));
+        Disposition disposition = new Disposition();
+        disposition.setFirst(UnsignedInteger.valueOf(4));
+        ring.received(new TransportFrame(0, disposition, null));
+        assertEquals(4, ring.getCount());
+
+        String[] lines = dump(ring).split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("Protocol frames for client client1 (4 recorded"));
+        assertTrue(lines[1], lines[1].matches(".* sent +OPEN +channel=0 size=0"));
+        assertTrue(lines[2], lines[2].matches(".* received +FLOW +channel=1 handle=2 delivery=7 size=0"));
+        assertTrue(lines[3], lines[3].matches(".* sent +TRANSFER +channel=0 handle=3 delivery=4 size=100"));
+        assertTrue(lines[4], lines[4].matches(".* received +DISPOSITION +channel=0 delivery=4 size=0"));
+    }
+
+    @Test
+    public void oldestFramesOverwritten() {
+        FrameRing ring = new FrameRing("client2", 4);
+        for (int i = 0; i < 10; ++i) {
+            ring.sent(transfer(0, i, i));
+        }
+        assertEquals(10, ring.getCount());
+
+        String[] lines = dump(ring).split("\n");
+        // The oldest remaining record is omitted, as it would be the next to be overwritten
+        assertEquals(4, lines.length);
+        for (int i = 1; i < lines.length; ++i) {
+            assertTrue(lines[i], lines[i].endsWith("delivery=" + (6 + i) + " size=" + (6 + i)));
+        }
+    }
+
+    @Test
+    public void recordingsDumpedByFlightRecorder() {
+        FrameRing active = new FrameRing("activeClient", 4);
+        FrameRing failed = new FrameRing("failedClient", 4);
+        active.sent(new TransportFrame(0, new Open(), null));
+        failed.sent(new TransportFrame(0, new Open(), null));
+        try {
+            FlightRecorder.register(active);
+            FlightRecorder.register(failed);
+            FlightRecorder.retain(failed);
+            StringBuilder sb = new StringBuilder();
+            FlightRecorder.dump(sb, "\n");
+            String output = sb.toString();
+            assertTrue(output, output.contains("client activeClient"));
+            assertTrue(output, output.contains("client failedClient"));
+
+            FlightRecorder.unregister(active);
+            FlightRecorder.unregister(failed);
+            sb.setLength(0);
+            FlightRecorder.dump(sb, "\n");
+            assertFalse(sb.toString().contains("activeClient"));
+            assertFalse(sb.toString().contains("failedClient"));
+        } finally {
+            FlightRecorder.unregister(active);
+            FlightRecorder.unregister(failed);
+        }
+    }
+}
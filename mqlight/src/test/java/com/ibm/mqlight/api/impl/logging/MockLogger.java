@@ -28,6 +28,8 @@ class MockLogger implements org.slf4j.Logger {
   private final String name;
   
   private final LinkedList<MockEvent> events = new LinkedList<MockEvent>();
+
+  private boolean traceEnabled = true;
   
   public MockLogger(String name) {
     this.name = name;
@@ -36,6 +38,10 @@ class MockLogger implements org.slf4j.Logger {
   public MockEvent getEvent() {
     return events.removeFirst();
   }
+
+  public void setTraceEnabled(boolean traceEnabled) {
+    this.traceEnabled = traceEnabled;
+  }
   
   
   @Override
@@ -225,12 +231,12 @@ class MockLogger implements org.slf4j.Logger {
 
   @Override
   public boolean isTraceEnabled() {
-    return true;
+    return traceEnabled;
   }
 
   @Override
   public boolean isTraceEnabled(Marker marker) {
-    return true;
+    return traceEnabled;
   }
 
   @Override
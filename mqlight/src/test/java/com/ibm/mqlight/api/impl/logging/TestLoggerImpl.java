@@ -19,21 +19,29 @@
 
 package com.ibm.mqlight.api.impl.logging;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.MDC;
 
+import com.ibm.mqlight.api.impl.ComponentImpl;
+import com.ibm.mqlight.api.impl.Message;
 import com.ibm.mqlight.api.logging.FFDCProbeId;
 import com.ibm.mqlight.api.logging.Logger;
 import com.ibm.mqlight.api.logging.LoggerFactory;
@@ -408,4 +416,123 @@ public class TestLoggerImpl {
     }
   }
 
+  @Test
+  public void testFixedArity() {
+
+    final MockLogger logger = new MockLogger("testFixedArity");
+    final TraceLogger testLogger = new LoggerImpl(logger);
+    final String methodName = "testFixedArityMethod";
+    final Object arg1 = 1, arg2 = "two", arg3 = new ProcessBuilder();
+
+    testLogger.entry(this, methodName, arg1);
+    assertArrayEquals("Unexpected args", new Object[] {this, arg1}, logger.getEvent().args);
+    testLogger.entry(this, methodName, arg1, arg2);
+    assertArrayEquals("Unexpected args", new Object[] {this, arg1, arg2}, logger.getEvent().args);
+    testLogger.data(this, methodName, arg1);
+    MockEvent event = logger.getEvent();
+    assertEquals("Unexpected marker", LogMarker.DATA.getValue(), event.marker);
+    assertArrayEquals("Unexpected args", new Object[] {this, arg1}, event.args);
+    testLogger.data(this, methodName, arg1, arg2);
+    assertArrayEquals("Unexpected args", new Object[] {this, arg1, arg2}, logger.getEvent().args);
+    testLogger.data(this, methodName, arg1, arg2, arg3);
+    assertArrayEquals("Unexpected args", new Object[] {this, arg1, arg2, arg3}, logger.getEvent().args);
+
+    try {
+      event = logger.getEvent();
+      fail("Unexpected event: "+event);
+    } catch(NoSuchElementException e) {
+    }
+  }
+
+  @Test
+  public void testTraceDisabled() {
+
+    final boolean monitored = TraceSettings.getGeneration() != 0;
+    try {
+      final MockLogger logger = new MockLogger("testTraceDisabled");
+      final TraceLogger testLogger = new LoggerImpl(logger);
+      final String methodName = "testTraceDisabledMethod";
+
+      // Without monitoring, the SLF4J logger is asked every time
+      TraceSettings.setMonitored(false);
+      logger.setTraceEnabled(false);
+      assertFalse(testLogger.isTraceEnabled());
+      logger.setTraceEnabled(true);
+      assertTrue(testLogger.isTraceEnabled());
+
+      // With monitoring, the value is cached until a change is reported
+      TraceSettings.setMonitored(true);
+      logger.setTraceEnabled(false);
+      assertFalse(testLogger.isTraceEnabled());
+      logger.setTraceEnabled(true);
+      assertFalse("Trace enabled should have been cached", testLogger.isTraceEnabled());
+      TraceSettings.changed();
+      assertTrue(testLogger.isTraceEnabled());
+      logger.setTraceEnabled(false);
+      TraceSettings.changed();
+
+      testLogger.entry(methodName);
+      testLogger.entry(this, methodName);
+      testLogger.entry(this, methodName, 1);
+      testLogger.entry(this, methodName, 1, 2, 3, 4);
+      testLogger.exit(this, methodName, 1);
+      testLogger.data(this, methodName, 1, 2);
+      testLogger.throwing(this, methodName, new Exception());
+      try {
+        final MockEvent event = logger.getEvent();
+        fail("Unexpected event: "+event);
+      } catch(NoSuchElementException e) {
+      }
+    } finally {
+      TraceSettings.setMonitored(monitored);
+    }
+  }
+
+  @Test
+  public void testNoAllocationWhenTraceDisabled() {
+
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+    Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+    final MockLogger logger = new MockLogger("testNoAllocationWhenTraceDisabled");
+    logger.setTraceEnabled(false);
+    final TraceLogger testLogger = new LoggerImpl(logger);
+    final String methodName = "testNoAllocationMethod";
+    final Object arg1 = new Object(), arg2 = "arg2", arg3 = Boolean.TRUE;
+    final int calls = 100000;
+
+    final long threadId = Thread.currentThread().getId();
+    final long before = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < calls; ++i) {
+      testLogger.entry(this, methodName, arg1, arg2, arg3);
+      testLogger.data(this, methodName, arg1, arg2);
+      testLogger.exit(this, methodName, arg3);
+    }
+    final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+    assertTrue("Trace calls allocated " + allocated + " bytes with trace disabled", allocated < calls);
+
+    // Delivering a message to a component should allocate nothing beyond the node that holds it in the component's queue
+    Assume.assumeFalse(TraceLoggerFactory.getLogger(ComponentImpl.class).isTraceEnabled());
+    final Message message = new Message() {};
+    final ComponentImpl component = new ComponentImpl() {
+      @Override
+      protected void onReceive(Message message) {}
+    };
+    final Queue<Message> queue = new ConcurrentLinkedQueue<>();
+    final long beforeQueue = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < calls; ++i) {
+      queue.offer(message);
+      queue.poll();
+    }
+    final long queueAllocated = threadBean.getThreadAllocatedBytes(threadId) - beforeQueue;
+    final long beforeTell = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < calls; ++i) {
+      component.tell(message, ComponentImpl.NOBODY);
+    }
+    final long tellAllocated = threadBean.getThreadAllocatedBytes(threadId) - beforeTell;
+    assertTrue("ComponentImpl.tell allocated " + tellAllocated + " bytes with trace disabled, compared to " + queueAllocated + " bytes to queue the messages",
+               tellAllocated - queueAllocated < calls);
+  }
 }
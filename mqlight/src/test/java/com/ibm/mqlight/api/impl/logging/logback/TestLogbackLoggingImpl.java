@@ -177,6 +177,61 @@ public class TestLogbackLoggingImpl {
     }
   }
   
+  @Test
+  public void testBufferedTrace() throws IOException {
+    
+    LogbackLoggingImpl.stop(); // Ensures logging is stopped (in case a previous test enabled it)
+    
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final PrintStream ps = new PrintStream(baos, true);
+    final PrintStream savedErr = System.err;
+    try {
+      System.setErr(ps);
+      LogbackLoggingImpl.setDefaultRequiredMQLightLogLevel("all");
+      LogbackLoggingImpl.setDefaultTraceBufferSize("1024");
+      LogbackLoggingImpl.setup();
+      
+      logger.data(this, "testBufferedTrace", "test buffered trace data");
+      
+      // Stopping logging writes any trace still held in the buffer
+      LogbackLoggingImpl.stop();
+      System.err.flush();
+      final String traceData = baos.toString();
+      assertTrue("missing trace line", traceData.contains("test buffered trace data"));
+      assertTrue("missing thread id", traceData.contains(String.format("%04d", Thread.currentThread().getId())));
+    } finally {
+      LogbackLoggingImpl.stop();
+      LogbackLoggingImpl.setDefaultTraceBufferSize(null);
+      System.setErr(savedErr);
+    }
+  }
+
+  @Test
+  public void testBadTraceBufferSize() throws IOException {
+    
+    LogbackLoggingImpl.stop(); // Ensures logging is stopped (in case a previous test enabled it)
+    
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final PrintStream ps = new PrintStream(baos, true);
+    final PrintStream savedErr = System.err;
+    try {
+      System.setErr(ps);
+      LogbackLoggingImpl.setDefaultRequiredMQLightLogLevel("all");
+      LogbackLoggingImpl.setDefaultTraceBufferSize("lots");
+      LogbackLoggingImpl.setup();
+      
+      System.err.flush();
+      assertTrue("missing error line", baos.toString().contains("ERROR: MQ Light trace buffer size 'lots' is invalid"));
+      logger.data(this, "testBadTraceBufferSize", "test unbuffered trace data");
+      System.err.flush();
+      assertTrue("missing trace line", baos.toString().contains("test unbuffered trace data"));
+    } finally {
+      LogbackLoggingImpl.stop();
+      LogbackLoggingImpl.setDefaultTraceBufferSize(null);
+      System.setErr(savedErr);
+    }
+  }
+
   // TODO add tests for when a custom log environment has been setup, to ensure it is preserve
   
 }
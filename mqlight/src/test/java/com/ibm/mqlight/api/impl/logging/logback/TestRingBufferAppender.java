@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.logging.logback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.AssertionFailedError;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+import com.ibm.mqlight.api.impl.logging.LogMarker;
+
+public class TestRingBufferAppender {
+
+  private static class RecordingAppender extends AppenderBase<ILoggingEvent> {
+    private final List<ILoggingEvent> events = Collections.synchronizedList(new ArrayList<ILoggingEvent>());
+    private final List<String> tids = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+    private final TIDConverter tidConverter = new TIDConverter();
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      events.add(event);
+      tids.add(tidConverter.convert(event));
+      threads.add(Thread.currentThread());
+    }
+  }
+
+  private static MockILoggingEvent event(int producer, int index) {
+    return new MockILoggingEvent(null, LogMarker.DATA.getValue(), "event", null, producer, index);
+  }
+
+  @Test
+  public void testCapacity() {
+    final RecordingAppender recorder = new RecordingAppender();
+    assertEquals(8, new RingBufferAppender(recorder, 5).getCapacity());
+    assertEquals(8, new RingBufferAppender(recorder, 8).getCapacity());
+    assertEquals(1, new RingBufferAppender(recorder, 1).getCapacity());
+    try {
+      new RingBufferAppender(recorder, 0);
+      throw new AssertionFailedError("A capacity of zero should have been rejected");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testEventsWrittenInOrderOnWriterThread() {
+    final RecordingAppender recorder = new RecordingAppender();
+    final RingBufferAppender appender = new RingBufferAppender(recorder, 16);
+    appender.setContext(new LoggerContext());
+    appender.start();
+    assertTrue("Appender being written to should have been started", recorder.isStarted());
+
+    for (int i = 0; i < 1000; ++i) {
+      // Yield periodically, so that the writer can keep up and nothing is dropped
+      if (i % 8 == 0) {
+        while (i - recorder.events.size() > 8) Thread.yield();
+      }
+      appender.doAppend(event(0, i));
+    }
+    appender.stop();
+    assertFalse("Appender being written to should have been stopped", recorder.isStarted());
+
+    assertEquals(0, appender.getDroppedCount());
+    assertEquals(1000, recorder.events.size());
+    final String tid = String.format("%04d", Thread.currentThread().getId());
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(String.valueOf(i), recorder.events.get(i).getArgumentArray()[2]);
+      assertEquals("Thread id should be of the thread that generated the event", tid, recorder.tids.get(i));
+      assertTrue(recorder.threads.get(i) instanceof RingBufferAppender.WriterThread);
+    }
+  }
+
+  @Test
+  public void testEventsDroppedWhenFull() throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final RecordingAppender recorder = new RecordingAppender() {
+      @Override
+      protected void append(ILoggingEvent event) {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.append(event);
+      }
+    };
+    final RingBufferAppender appender = new RingBufferAppender(recorder, 4);
+    appender.setContext(new LoggerContext());
+    appender.start();
+
+    // Block the writer writing the first event, then fill the ring buffer and overflow it
+    appender.doAppend(event(0, 0));
+    assertTrue(writing.await(10, TimeUnit.SECONDS));
+    for (int i = 1; i < 8; ++i) {
+      appender.doAppend(event(0, i));
+    }
+    assertEquals(3, appender.getDroppedCount());
+
+    release.countDown();
+    appender.stop();
+
+    assertEquals(6, recorder.events.size());
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(String.valueOf(i), recorder.events.get(i).getArgumentArray()[2]);
+    }
+    final ILoggingEvent dropped = recorder.events.get(5);
+    assertSame(LogMarker.DATA.getValue(), dropped.getMarker());
+    assertEquals("Dropped event count should have been reported", 3L, dropped.getArgumentArray()[1]);
+  }
+
+  @Test
+  public void testArgumentsCapturedWhenAppended() throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final RecordingAppender recorder = new RecordingAppender() {
+      @Override
+      protected void append(ILoggingEvent event) {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.append(event);
+      }
+    };
+    final RingBufferAppender appender = new RingBufferAppender(recorder, 4);
+    appender.setContext(new LoggerContext());
+    appender.start();
+
+    // Block the writer, then change an argument after its event has been appended
+    appender.doAppend(event(0, 0));
+    assertTrue(writing.await(10, TimeUnit.SECONDS));
+    final Object source = new Object();
+    final StringBuilder mutable = new StringBuilder("before");
+    final MockILoggingEvent event = new MockILoggingEvent(null, LogMarker.DATA.getValue(), "event", source, mutable, "string", null);
+    appender.doAppend(event);
+    mutable.setLength(0);
+    mutable.append("after");
+
+    release.countDown();
+    appender.stop();
+
+    assertEquals(2, recorder.events.size());
+    final Object[] args = recorder.events.get(1).getArgumentArray();
+    assertSame("Object that generated the event should have been kept", source, args[0]);
+    assertEquals("Argument should reflect its state when the event was appended", "before", args[1]);
+    assertEquals("string", args[2]);
+    assertEquals(null, args[3]);
+    assertSame("Original event's arguments should not have been changed", mutable, event.args[1]);
+
+    final ILoggingEvent unchanged = new MockILoggingEvent(null, LogMarker.DATA.getValue(), "event", source, "string", null);
+    assertSame("Event with only string arguments should not have been copied", unchanged, RingBufferAppender.snapshot(unchanged));
+  }
+
+  @Test
+  public void testConcurrentProducers() throws InterruptedException {
+    final RecordingAppender recorder = new RecordingAppender();
+    final RingBufferAppender appender = new RingBufferAppender(recorder, 1 << 16);
+    appender.setContext(new LoggerContext());
+    appender.start();
+
+    final int producers = 4;
+    final int events = 10000;
+    final Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; ++p) {
+      final int producer = p;
+      threads[p] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < events; ++i) {
+            appender.doAppend(event(producer, i));
+          }
+        }
+      };
+      threads[p].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    appender.stop();
+
+    assertEquals(0, appender.getDroppedCount());
+    assertEquals(producers * events, recorder.events.size());
+    final int[] next = new int[producers];
+    for (ILoggingEvent event : recorder.events) {
+      final int producer = Integer.parseInt((String) event.getArgumentArray()[1]);
+      assertEquals("Events from each producer should be written in order", String.valueOf(next[producer]++), event.getArgumentArray()[2]);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.ibm.mqlight.api.Promise;
 
 class MockNetworkWritePromise implements Promise<Boolean> {
     private AtomicBoolean done = new AtomicBoolean(false);
+    private AtomicBoolean drained = new AtomicBoolean(false);
 
     @Override
     public boolean isComplete() {
@@ -34,9 +35,14 @@ class MockNetworkWritePromise implements Promise<Boolean> {
 
     @Override
     public void setSuccess(Boolean drained) {
+        this.drained.set(drained);
         done.set(true);
     }
 
+    public boolean isDrained() {
+        return drained.get();
+    }
+
     @Override
     public void setFailure(Exception exception) {
         done.set(true);
@@ -931,6 +931,54 @@ public class TestNettyNetworkService {
         assertTrue("Expected network service to end!", nn.awaitTermination(NETWORK_WAIT_TIMEOUT_SECONDS));
     }
 
+    @Test
+    public void writeManySmallBuffers() throws Exception {
+        NettyNetworkService nn = new NettyNetworkService();
+        ReceiveListener testListener = new ReceiveListener(34567);
+
+        LinkedList<Event> events = new LinkedList<>();
+        MockNetworkListener listener = new MockNetworkListener(events);
+        MockNetworkConnectPromise promise = new MockNetworkConnectPromise(events);
+        nn.connect(new StubEndpoint("localhost", 34567), listener, promise);
+
+        for (int i = 0 ; i < 20; ++i) {
+            if (promise.isComplete()) break;
+            Thread.sleep(50);
+        }
+        assertTrue("Expected connect promise to be marked completed", promise.isComplete());
+        assertNotNull("Expected connect promise to contain a channel, events are: "+promise.getEvents(), promise.getChannel());
+
+        byte[] data = new byte[1024];
+        Arrays.fill(data, (byte)45);
+        MockNetworkWritePromise[] promises = new MockNetworkWritePromise[1000];
+        for (int i = 0; i < promises.length; ++i) {
+            promises[i] = new MockNetworkWritePromise();
+            promise.getChannel().write(ByteBuffer.wrap(data), promises[i]);
+        }
+
+        for (int j = 0; j < 100; ++j) {
+            if (promises[promises.length - 1].isComplete()) break;
+            Thread.sleep(50);
+        }
+        for (int i = 0; i < promises.length; ++i) {
+            assertTrue("Expected promise #" + i + " to have been completed", promises[i].isComplete());
+        }
+        assertTrue("Expected the last write to report that the channel has drained", promises[promises.length - 1].isDrained());
+
+        MockNetworkClosePromise closePromise = new MockNetworkClosePromise();
+        promise.getChannel().close(closePromise);
+        for (int i = 0 ; i < 20; ++i) {
+            if (closePromise.isComplete()) break;
+            Thread.sleep(50);
+        }
+        assertTrue("Expected close promise to be marked done", closePromise.isComplete());
+        assertTrue("Expected listener to end!", testListener.join(LISTENER_WAIT_TIMEOUT_SECONDS));
+
+        assertEquals("Expected to have received same amount of data as was sent", data.length * promises.length, testListener.getBytesRead());
+
+        assertTrue("Expected network service to end!", nn.awaitTermination(NETWORK_WAIT_TIMEOUT_SECONDS));
+    }
+
     @Test
     public void readData() throws IOException, InterruptedException {
         NettyNetworkService nn = new NettyNetworkService();
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ibm.mqlight.api.impl.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.AssertionFailedError;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.ibm.mqlight.api.Promise;
+import com.ibm.mqlight.api.timer.TimerService;
+
+public class TestHashedWheelTimerService {
+
+    private static class MockPromise implements Promise<Void> {
+        private volatile boolean complete = false;
+        private volatile boolean setFailureCalled = false;
+        private volatile boolean setSuccessCalled = false;
+        private volatile long completedAt = 0;
+
+        @Override
+        public synchronized void setFailure(Exception exception) throws IllegalStateException {
+            if (complete) throw new IllegalStateException();
+            setFailureCalled = true;
+            complete = true;
+        }
+
+        @Override
+        public synchronized void setSuccess(Void result) throws IllegalStateException {
+            if (complete) throw new IllegalStateException();
+            completedAt = System.nanoTime();
+            setSuccessCalled = true;
+            complete = true;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private static void waitForComplete(MockPromise promise, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (!promise.isComplete() && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void goldenPath() throws InterruptedException {
+        HashedWheelTimerService timer = new HashedWheelTimerService();
+        MockPromise promise = new MockPromise();
+        long t1 = System.nanoTime();
+        timer.schedule(250, promise);
+
+        waitForComplete(promise, 1000);
+        assertTrue("Promise should have completed by now!", promise.isComplete());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(promise.completedAt - t1);
+        if (elapsed < 250) throw new AssertionFailedError("Promise completed too quickly in " + elapsed +"ms (expected 250ms)");
+        assertFalse("Promise should not have been marked as failed", promise.setFailureCalled);
+        assertEquals(0, timer.getPendingTimerCount());
+        timer.shutdown();
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        HashedWheelTimerService timer = new HashedWheelTimerService();
+        MockPromise promise = new MockPromise();
+        timer.schedule(250, promise);
+        assertEquals(1, timer.getPendingTimerCount());
+        timer.cancel(promise);
+        assertTrue("Promise should have completed by now!", promise.isComplete());
+        assertTrue("Promise should have been marked as failed", promise.setFailureCalled);
+        assertEquals(0, timer.getPendingTimerCount());
+
+        Thread.sleep(350);
+        assertFalse("Promise should not have been marked as successful", promise.setSuccessCalled);
+        timer.shutdown();
+    }
+
+    @Test
+    public void cancelCompleted() throws InterruptedException {
+        HashedWheelTimerService timer = new HashedWheelTimerService();
+        MockPromise promise = new MockPromise();
+        timer.schedule(20, promise);
+        waitForComplete(promise, 1000);
+        assertTrue("Promise should have completed by now!", promise.isComplete());
+
+        timer.cancel(promise);   // Should have no ill effects...
+        assertFalse(promise.setFailureCalled);
+
+        // The timer should still work after it has been idle
+        MockPromise promise2 = new MockPromise();
+        timer.schedule(20, promise2);
+        waitForComplete(promise2, 1000);
+        assertTrue("Promise should have completed by now!", promise2.setSuccessCalled);
+        timer.shutdown();
+    }
+
+    @Test
+    public void neverEarly() throws InterruptedException {
+        // A small wheel, so that most timers need more than one turn of the wheel
+        HashedWheelTimerService timer = new HashedWheelTimerService(2, TimeUnit.MILLISECONDS, 8);
+        ArrayList<MockPromise> promises = new ArrayList<>();
+        ArrayList<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            MockPromise promise = new MockPromise();
+            long delay = (i * 7) % 150;
+            deadlines.add(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+            timer.schedule(delay, promise);
+            promises.add(promise);
+        }
+        for (int i = 0; i < promises.size(); ++i) {
+            MockPromise promise = promises.get(i);
+            waitForComplete(promise, 2000);
+            assertTrue("Promise " + i + " should have completed", promise.setSuccessCalled);
+            assertTrue("Promise " + i + " completed early", promise.completedAt >= deadlines.get(i));
+        }
+        assertEquals(0, timer.getPendingTimerCount());
+        timer.shutdown();
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new HashedWheelTimerService(0, TimeUnit.MILLISECONDS, 8);
+            throw new AssertionFailedError("Zero tick duration should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            new HashedWheelTimerService(1, null, 8);
+            throw new AssertionFailedError("Null time unit should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            new HashedWheelTimerService(1, TimeUnit.MILLISECONDS, 0);
+            throw new AssertionFailedError("Zero ticks per wheel should have been rejected");
+        } catch(IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private static class CountingPromise implements Promise<Void> {
+        @Override public void setFailure(Exception exception) {}
+        @Override public void setSuccess(Void result) {}
+        @Override public boolean isComplete() { return false; }
+    }
+
+    /**
+     * Schedules, then cancels, <code>count</code> timers that are not due for an hour.
+     * @return the time taken to schedule and to cancel the timers, in milliseconds.
+     */
+    private static long[] scheduleAndCancel(TimerService timer, int count) {
+        CountingPromise[] promises = new CountingPromise[count];
+        for (int i = 0; i < count; ++i) promises[i] = new CountingPromise();
+        long t1 = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            timer.schedule(3600000 + (i % 1000), promises[i]);
+        }
+        long t2 = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            timer.cancel(promises[i]);
+        }
+        long t3 = System.nanoTime();
+        return new long[] { TimeUnit.NANOSECONDS.toMillis(t2 - t1), TimeUnit.NANOSECONDS.toMillis(t3 - t2) };
+    }
+
+    /**
+     * Compares the cost of scheduling and cancelling timers with {@link TimerServiceImpl}, with
+     * 10 thousand, 100 thousand and 1 million timers outstanding.  Timings on a shared build
+     * machine are too noisy to assert on, so these are only reported - and this is only run
+     * when the <code>mqlight.benchmarks</code> system property is set to <code>true</code>.
+     */
+    @Test
+    public void outstandingTimersComparison() {
+        Assume.assumeTrue(Boolean.getBoolean("mqlight.benchmarks"));
+        HashedWheelTimerService wheel = new HashedWheelTimerService();
+        TimerService executor = new TimerServiceImpl();
+        scheduleAndCancel(wheel, 10000);     // warm up
+        scheduleAndCancel(executor, 10000);
+        for (int count : new int[] { 10000, 100000, 1000000 }) {
+            long[] wheelTimes = scheduleAndCancel(wheel, count);
+            assertEquals(0, wheel.getPendingTimerCount());
+            long[] executorTimes = scheduleAndCancel(executor, count);
+            System.out.println(count + " timers: HashedWheelTimerService schedule " + wheelTimes[0] + "ms, cancel " + wheelTimes[1] + "ms; "
+                    + "TimerServiceImpl schedule " + executorTimes[0] + "ms, cancel " + executorTimes[1] + "ms");
+        }
+        wheel.shutdown();
+    }
+}